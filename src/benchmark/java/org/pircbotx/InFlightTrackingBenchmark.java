@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+
+/**
+ * Contention of tracking in flight listener tasks from several threads,
+ * comparing the previous synchronized LinkedListMultimap with the per bot
+ * counter in {@link ThreadedListenerManager.ManagedFutureTask}. Other tasks
+ * stay in flight the whole time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-nop.xml")
+@Threads(4)
+@State(Scope.Benchmark)
+public class InFlightTrackingBenchmark {
+	protected static final Runnable NOOP = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+	@Param({"0", "64"})
+	public int inFlight;
+	protected Multimap<PircBotX, FutureTask<Void>> runningListeners;
+	protected ThreadedListenerManager manager;
+	protected Listener listener;
+	protected Event event;
+
+	@Setup
+	public void setup() {
+		PircBotX bot = new PircBotX(new Configuration.Builder()
+				.setName("PircBotXBot")
+				.addServer("127.0.0.1")
+				.buildConfiguration());
+		event = new ConnectEvent(bot);
+		listener = new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+			}
+		};
+		runningListeners = LinkedListMultimap.create();
+		manager = new ThreadedListenerManager();
+		for (int i = 0; i < inFlight; i++) {
+			runningListeners.put(bot, new FutureTask<Void>(NOOP, null));
+			manager.new ManagedFutureTask(listener, event, NOOP);
+		}
+	}
+
+	@Benchmark
+	public FutureTask<Void> lockedMultimap() {
+		final PircBotX bot = event.getBot();
+		FutureTask<Void> task = new FutureTask<Void>(NOOP, null) {
+			@Override
+			protected void done() {
+				synchronized (runningListeners) {
+					runningListeners.remove(bot, this);
+				}
+			}
+		};
+		synchronized (runningListeners) {
+			runningListeners.put(bot, task);
+		}
+		task.run();
+		return task;
+	}
+
+	@Benchmark
+	public FutureTask<Void> inFlightCounter() {
+		FutureTask<Void> task = manager.new ManagedFutureTask(listener, event, NOOP);
+		task.run();
+		return task;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of splitting a numeric nobody listens to, comparing the old
+ * tokenizeLine + copy into an ImmutableList with {@link IrcMessage}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrcMessageBenchmark {
+	@Param({
+		":irc.server.example 353 bot = #channel :@op +voice user1 user2 user3 user4 user5 user6",
+		":irc.server.example 352 bot #channel ~login some.host.example irc.server.example nick H@ :0 Real Name"
+	})
+	public String line;
+
+	@Benchmark
+	public void tokenizeLine(Blackhole blackhole) {
+		List<String> parsedLine = Utils.tokenizeLine(line);
+		String source = parsedLine.remove(0);
+		String command = parsedLine.remove(0);
+		blackhole.consume(source);
+		blackhole.consume(Utils.tryParseInt(command, -1));
+		blackhole.consume(ImmutableList.copyOf(parsedLine));
+	}
+
+	@Benchmark
+	public void ircMessage(Blackhole blackhole) {
+		IrcMessage message = IrcMessage.parse(line);
+		blackhole.consume(message.hasSource());
+		blackhole.consume(message.getNumeric());
+		blackhole.consume(message.getParam(0));
+	}
+}
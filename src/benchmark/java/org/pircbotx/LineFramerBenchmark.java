@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.base.CharMatcher;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare reading and tokenizing lines with {@link LineFramer} and
+ * {@link IrcMessage} against the previous BufferedReader + double trim +
+ * {@link Utils#tokenizeLine(java.lang.String) } path. Run with
+ * {@code -prof gc} to see the allocation rate per line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineFramerBenchmark {
+	protected static final int LINES = 1000;
+	protected static final String[] SAMPLE_LINES = {
+		":nick!~login@some.host.example PRIVMSG #channel :Hello there, how is everybody doing today?",
+		"@time=2022-01-01T00:00:00.000Z;account=nick :nick!~login@some.host.example PRIVMSG #channel :Tagged message",
+		":nick!~login@some.host.example PRIVMSG #channel :Ünïcödé messäge with 世界",
+		":irc.server.example 353 bot = #channel :@op +voice user1 user2 user3 user4 user5 user6",
+		"PING :irc.server.example"
+	};
+	protected RepeatingInputStream readerStream;
+	protected BufferedReader reader;
+	protected RepeatingInputStream framerStream;
+	protected LineFramer framer;
+
+	@Setup
+	public void setup() {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < LINES; i++)
+			data.append(SAMPLE_LINES[i % SAMPLE_LINES.length]).append("\r\n");
+		byte[] bytes = data.toString().getBytes(StandardCharsets.UTF_8);
+
+		readerStream = new RepeatingInputStream(bytes);
+		reader = new BufferedReader(new InputStreamReader(readerStream, StandardCharsets.UTF_8));
+		framerStream = new RepeatingInputStream(bytes);
+		framer = new LineFramer(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void bufferedReader(Blackhole blackhole) throws IOException {
+		for (int i = 0; i < LINES; i++) {
+			//InputParser.handleLine then Utils.tokenizeLine both trimmed
+			String line = CharMatcher.whitespace().trimFrom(reader.readLine());
+			blackhole.consume(Utils.tokenizeLine(line));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void lineFramer(Blackhole blackhole) throws IOException {
+		for (int i = 0; i < LINES; i++)
+			blackhole.consume(IrcMessage.parse(framer.readLine(framerStream)).getParams());
+	}
+
+	/**
+	 * Endless stream that simulates a socket, returning at most 4096 bytes per
+	 * read
+	 */
+	protected static class RepeatingInputStream extends InputStream {
+		protected final byte[] data;
+		protected int position = 0;
+
+		public RepeatingInputStream(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			byte value = data[position];
+			position = (position + 1) % data.length;
+			return value & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			int read = Math.min(Math.min(length, 4096), data.length - position);
+			System.arraycopy(data, position, buffer, offset, read);
+			position = (position + read) % data.length;
+			return read;
+		}
+	}
+}
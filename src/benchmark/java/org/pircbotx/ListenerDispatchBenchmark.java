@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.EventDispatcher;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.Subscribe;
+import org.pircbotx.hooks.SubscriberListener;
+import org.pircbotx.hooks.events.WhoEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+
+/**
+ * Cost of delivering an event to a single listener method with
+ * {@link ListenerAdapter}, the {@link Subscribe} dispatcher generated by
+ * SubscribeProcessor, and the reflection fallback. WhoEvent is near the end of
+ * the ListenerAdapter instanceof chain
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListenerDispatchBenchmark {
+	protected Event event;
+	protected Listener adapter;
+	protected Listener generated;
+	protected Listener reflective;
+
+	@Setup
+	public void setup(final Blackhole blackhole) {
+		event = new WhoEvent(null, "#channel", null);
+		adapter = new ListenerAdapter() {
+			@Override
+			public void onWho(WhoEvent event) throws Exception {
+				blackhole.consume(event);
+			}
+		};
+		generated = new SubscriberListener(new WhoSubscriber(blackhole));
+		final EventDispatcher reflectiveDispatcher = SubscriberListener.createReflectiveDispatcher(WhoSubscriber.class);
+		final WhoSubscriber reflectiveSubscriber = new WhoSubscriber(blackhole);
+		reflective = new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				reflectiveDispatcher.dispatch(reflectiveSubscriber, event);
+			}
+		};
+	}
+
+	@Benchmark
+	public void listenerAdapter() throws Exception {
+		adapter.onEvent(event);
+	}
+
+	@Benchmark
+	public void generatedDispatcher() throws Exception {
+		generated.onEvent(event);
+	}
+
+	@Benchmark
+	public void reflectiveDispatcher() throws Exception {
+		reflective.onEvent(event);
+	}
+
+	public static class WhoSubscriber {
+		protected final Blackhole blackhole;
+
+		public WhoSubscriber(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Subscribe
+		public void onWho(WhoEvent event) {
+			blackhole.consume(event);
+		}
+
+		@Subscribe
+		public void onGenericMessage(GenericMessageEvent event) {
+			blackhole.consume(event);
+		}
+	}
+}
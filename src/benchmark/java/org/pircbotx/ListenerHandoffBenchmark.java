@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.managers.AbstractListenerManager;
+import org.pircbotx.hooks.managers.RingBufferListenerManager;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+
+/**
+ * Time from dispatching an event to a listener running in another thread, the
+ * handoff between the bot thread and listeners. Use the percentiles of the
+ * sample time. Logging is disabled since the managers log every event at debug
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-nop.xml")
+@State(Scope.Thread)
+public class ListenerHandoffBenchmark {
+	@Param({"threaded", "ringBusySpin", "ringYield", "ringPark"})
+	public String manager;
+	protected AbstractListenerManager listenerManager;
+	protected Event event;
+	protected volatile Event lastEvent;
+
+	@Setup
+	public void setup() {
+		if (manager.equals("threaded"))
+			listenerManager = new ThreadedListenerManager();
+		else if (manager.equals("ringBusySpin"))
+			listenerManager = new RingBufferListenerManager(1024, RingBufferListenerManager.WaitStrategy.BUSY_SPIN);
+		else if (manager.equals("ringYield"))
+			listenerManager = new RingBufferListenerManager(1024, RingBufferListenerManager.WaitStrategy.YIELD);
+		else
+			listenerManager = new RingBufferListenerManager(1024, RingBufferListenerManager.WaitStrategy.PARK);
+		listenerManager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				lastEvent = event;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (listenerManager instanceof RingBufferListenerManager)
+			((RingBufferListenerManager) listenerManager).shutdown();
+		else
+			((ThreadedListenerManager) listenerManager).shutdown();
+	}
+
+	@Benchmark
+	public Event handoff() {
+		Event curEvent = new ConnectEvent(null);
+		listenerManager.onEvent(curEvent);
+		while (lastEvent != curEvent)
+			//Let the listener thread run on machines with few cores
+			Thread.yield();
+		return curEvent;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.ListenerRoute;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.managers.ListenerTypeIndex;
+
+/**
+ * Finding the listeners of a message when every channel of every bot has a
+ * short lived listener, comparing listeners that check the bot and channel
+ * themselves with listeners routed by {@link ListenerRoute}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-nop.xml")
+@State(Scope.Thread)
+public class ListenerRoutingBenchmark {
+	protected static final int CHANNELS_PER_BOT = 50;
+	@Param({"1", "20"})
+	public int bots;
+	protected ListenerTypeIndex filteredIndex;
+	protected ListenerTypeIndex routedIndex;
+	protected MessageEvent event;
+
+	@Setup
+	public void setup() {
+		List<Listener> filtered = new ArrayList<Listener>();
+		List<Listener> routed = new ArrayList<Listener>();
+		for (int i = 0; i < bots; i++) {
+			final PircBotX bot = new PircBotX(new Configuration.Builder()
+					.setName("PircBotXBot")
+					.addServer("127.0.0.1")
+					.buildConfiguration());
+			User user = bot.getUserChannelDao().createUser(new UserHostmask(bot, "nick!login@host"));
+			for (int j = 0; j < CHANNELS_PER_BOT; j++) {
+				final Channel channel = bot.getUserChannelDao().createChannel("#channel" + j);
+				filtered.add(new ListenerAdapter() {
+					@Override
+					public void onMessage(MessageEvent event) throws Exception {
+						if (event.getBot() == bot && event.getChannel() == channel)
+							event.getMessage();
+					}
+				});
+				routed.add(ListenerRoute.channels(channel).wrap(new ListenerAdapter() {
+					@Override
+					public void onMessage(MessageEvent event) throws Exception {
+						event.getMessage();
+					}
+				}));
+				if (i == 0 && j == 0)
+					event = new MessageEvent(bot, channel, channel.getName(), user, user, "hi", MessageTags.EMPTY);
+			}
+		}
+		filteredIndex = new ListenerTypeIndex();
+		filteredIndex.setListeners(filtered);
+		routedIndex = new ListenerTypeIndex();
+		routedIndex.setListeners(routed);
+	}
+
+	@Benchmark
+	public void filtered(Blackhole blackhole) throws Exception {
+		dispatch(filteredIndex.getListeners(event), blackhole);
+	}
+
+	@Benchmark
+	public void routed(Blackhole blackhole) throws Exception {
+		dispatch(routedIndex.getListeners(event), blackhole);
+	}
+
+	protected void dispatch(List<Listener> listeners, Blackhole blackhole) throws Exception {
+		for (Listener curListener : listeners)
+			curListener.onEvent(event);
+		blackhole.consume(listeners);
+	}
+}
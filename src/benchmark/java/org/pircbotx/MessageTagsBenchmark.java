@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of the tags on a PRIVMSG from a tag heavy server when only one tag is
+ * read, comparing the old StringTokenizer + split + regex unescape into an
+ * ImmutableMap with {@link MessageTags}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageTagsBenchmark {
+	protected static final String RAW_TAGS = "account=nick;batch=abc123;bot;+draft/reply=msgid1;"
+			+ "msgid=AbCdEfGhIjKlMnOp;time=2022-01-01T00:00:00.000Z;+typing=done;"
+			+ "+draft/react=\\:thumbsup\\:;example.com/label=a\\svalue;solanum.chat/ip=192.0.2.1;"
+			+ "solanum.chat/identified;+example/client-only=value;draft/channel-context=#channel";
+	protected static final Pattern UNESCAPE_PATTERN = Pattern.compile("(\\\\:|\\\\s|\\\\\\\\|\\\\r|\\\\n)");
+
+	@Benchmark
+	public void immutableMap(Blackhole blackhole) {
+		ImmutableMap.Builder<String, String> tags = ImmutableMap.builder();
+		StringTokenizer tokenizer = new StringTokenizer(RAW_TAGS);
+		while (tokenizer.hasMoreTokens()) {
+			String tag = tokenizer.nextToken(";");
+			if (tag.contains("=")) {
+				String[] parts = tag.split("=", 2);
+				tags.put(parts[0], regexUnescape(parts.length == 2 ? parts[1] : ""));
+			} else
+				tags.put(tag, "");
+		}
+		blackhole.consume(tags.build().get("time"));
+	}
+
+	@Benchmark
+	public void messageTags(Blackhole blackhole) {
+		blackhole.consume(MessageTags.parse(RAW_TAGS).get("time"));
+	}
+
+	@Benchmark
+	public void messageTagsAll(Blackhole blackhole) {
+		blackhole.consume(MessageTags.parse(RAW_TAGS).asMap());
+	}
+
+	/**
+	 * The previous Utils.unescapeV3TagValue
+	 */
+	protected static String regexUnescape(String value) {
+		Matcher matcher = UNESCAPE_PATTERN.matcher(value);
+		StringBuffer unescaped = new StringBuffer();
+		while (matcher.find()) {
+			String group = matcher.group(1);
+			String replacement;
+			if (group.equals("\\:"))
+				replacement = ";";
+			else if (group.equals("\\s"))
+				replacement = " ";
+			else if (group.equals("\\r"))
+				replacement = "\r";
+			else if (group.equals("\\n"))
+				replacement = "\n";
+			else
+				replacement = "\\";
+			matcher.appendReplacement(unescaped, Matcher.quoteReplacement(replacement));
+		}
+		matcher.appendTail(unescaped);
+		return unescaped.toString();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding the members of a NAMES reply for a large channel, comparing a write
+ * to the {@link UserChannelDao} for every user and level like the
+ * {@link InputParser} previously did with staging them in a
+ * {@link UserChannelDao.MemberBatch} committed once. Every 10th user is an op
+ * and every 4th is voiced
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-nop.xml")
+@State(Scope.Thread)
+public class NamesIngestionBenchmark {
+	@Param({"50000"})
+	public int users;
+	protected PircBotX bot;
+	protected String[] nicks;
+	protected UserChannelDao<User, Channel> dao;
+	protected Channel channel;
+
+	@Setup
+	public void setup() {
+		bot = new PircBotX(new Configuration.Builder()
+				.setName("PircBotXBot")
+				.addServer("127.0.0.1")
+				.buildConfiguration());
+		nicks = new String[users];
+		for (int i = 0; i < users; i++)
+			nicks[i] = "User" + i;
+	}
+
+	@Setup(Level.Invocation)
+	public void setupDao() {
+		dao = new UserChannelDao<User, Channel>(bot, bot.getConfiguration().getBotFactory());
+		channel = dao.createChannel("#aChannel");
+	}
+
+	@Benchmark
+	public UserChannelDao<User, Channel> perUser() {
+		for (int i = 0; i < nicks.length; i++) {
+			User user;
+			if (!dao.containsUser(nicks[i]))
+				user = dao.createUser(new UserHostmask(bot, nicks[i]));
+			else
+				user = dao.getUser(nicks[i]);
+			Channel chan = dao.getChannel("#aChannel");
+			dao.addUserToChannel(user, chan);
+			if (i % 10 == 0)
+				dao.addUserToLevel(UserLevel.OP, user, chan);
+			if (i % 4 == 0)
+				dao.addUserToLevel(UserLevel.VOICE, user, chan);
+		}
+		return dao;
+	}
+
+	@Benchmark
+	public UserChannelDao<User, Channel> batch() {
+		UserChannelDao.MemberBatch<User, Channel> batch = dao.createMemberBatch();
+		for (int i = 0; i < nicks.length; i++) {
+			User user = batch.getUser(nicks[i]);
+			if (user == null)
+				user = bot.getConfiguration().getBotFactory().createUser(new UserHostmask(bot, nicks[i]));
+			batch.addUserToChannel(user, channel);
+			if (i % 10 == 0)
+				batch.addUserToLevel(UserLevel.OP, user, channel);
+			if (i % 4 == 0)
+				batch.addUserToLevel(UserLevel.VOICE, user, channel);
+		}
+		batch.commit();
+		return dao;
+	}
+}
@@ -17,8 +17,9 @@
  */
 package org.pircbotx;
 
-import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.AtomicSafeInitializer;
@@ -36,7 +37,6 @@ import com.google.common.collect.PeekingIterator;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
@@ -47,16 +47,16 @@ import lombok.extern.slf4j.Slf4j;
 @EqualsAndHashCode(of = {"name", "bot"})
 @Slf4j
 @Getter
-@Setter(AccessLevel.PROTECTED)
 public class Channel implements Comparable<Channel> {
 	/**
 	 * The name of the channel. Will never change
 	 */
 	protected final String name;
+	private static final AtomicInteger CHANNEL_ID_COUNTER = new AtomicInteger();
 	/**
-	 * Unique UUID for this channel <i>instance</i>
+	 * Unique id for this channel <i>instance</i>, ids are assigned in order
 	 */
-	protected final UUID channelId;
+	protected final int channelId;
 	/**
 	 * The bot that this channel came from
 	 */
@@ -69,7 +69,6 @@ public class Channel implements Comparable<Channel> {
 			return bot.getConfiguration().getBotFactory().createOutputChannel(bot, Channel.this);
 		}
 	};
-	@Setter(AccessLevel.NONE)
 	protected String mode = "";
 	/**
 	 * The current channel topic
@@ -118,7 +117,6 @@ public class Channel implements Comparable<Channel> {
 	 */
 	protected String channelKey = null;
 	@Getter(AccessLevel.NONE)
-	@Setter(AccessLevel.NONE)
 	protected CountDownLatch modeChangeLatch = null;
 	@Getter(AccessLevel.NONE)
 	protected final Object modeChangeLock = new Object();
@@ -126,7 +124,7 @@ public class Channel implements Comparable<Channel> {
 	protected Channel(PircBotX bot, String name) {
 		this.bot = bot;
 		this.name = name;
-		this.channelId = UUID.randomUUID();
+		this.channelId = CHANNEL_ID_COUNTER.getAndIncrement();
 	}
 
 	/**
@@ -144,6 +142,74 @@ public class Channel implements Comparable<Channel> {
 		return bot.getUserChannelDao();
 	}
 
+	/**
+	 * Called before changing the channel so snapshots created before can
+	 * still get the current values
+	 */
+	protected void preserve() {
+		getDao().preserveChannel(this);
+	}
+
+	protected void setTopic(String topic) {
+		preserve();
+		this.topic = topic;
+	}
+
+	protected void setTopicTimestamp(long topicTimestamp) {
+		preserve();
+		this.topicTimestamp = topicTimestamp;
+	}
+
+	protected void setCreateTimestamp(long createTimestamp) {
+		preserve();
+		this.createTimestamp = createTimestamp;
+	}
+
+	protected void setTopicSetter(UserHostmask topicSetter) {
+		preserve();
+		this.topicSetter = topicSetter;
+	}
+
+	protected void setModerated(boolean moderated) {
+		preserve();
+		this.moderated = moderated;
+	}
+
+	protected void setNoExternalMessages(boolean noExternalMessages) {
+		preserve();
+		this.noExternalMessages = noExternalMessages;
+	}
+
+	protected void setInviteOnly(boolean inviteOnly) {
+		preserve();
+		this.inviteOnly = inviteOnly;
+	}
+
+	protected void setSecret(boolean secret) {
+		preserve();
+		this.secret = secret;
+	}
+
+	protected void setChannelPrivate(boolean channelPrivate) {
+		preserve();
+		this.channelPrivate = channelPrivate;
+	}
+
+	protected void setTopicProtection(boolean topicProtection) {
+		preserve();
+		this.topicProtection = topicProtection;
+	}
+
+	protected void setChannelLimit(int channelLimit) {
+		preserve();
+		this.channelLimit = channelLimit;
+	}
+
+	protected void setChannelKey(String channelKey) {
+		preserve();
+		this.channelKey = channelKey;
+	}
+
 	/**
 	 * Send a line to the channel.
 	 *
@@ -158,6 +224,7 @@ public class Channel implements Comparable<Channel> {
 	}
 
 	protected void parseMode(String rawMode) {
+		preserve();
 		synchronized (modeChangeLock) {
 			if (rawMode.contains(" ") || (mode != null && mode.contains(" "))) {
 				//Mode contains arguments which are impossible to parse.
@@ -328,6 +395,7 @@ public class Channel implements Comparable<Channel> {
 	 * @param mode
 	 */
 	protected void setMode(String mode, ImmutableList<String> modeParsed) {
+		preserve();
 		synchronized (modeChangeLock) {
 			this.mode = mode;
 
@@ -364,6 +432,25 @@ public class Channel implements Comparable<Channel> {
 		return getDao().getUsers(this);
 	}
 
+	/**
+	 * Get the number of users in this channel without creating a set
+	 *
+	 * @return Number of users in this channel
+	 */
+	public int getUserCount() {
+		return getDao().getUserCount(this);
+	}
+
+	/**
+	 * Run the action for each user in this channel, in no particular order,
+	 * without creating a set
+	 *
+	 * @param action Action to run for each user
+	 */
+	public void forEachUser(Consumer<? super User> action) {
+		getDao().forEachUser(this, action);
+	}
+
 	/**
 	 * Get all the user's nicks in this channel
 	 *
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.IOException;
+import lombok.Data;
+
+/**
+ * Handles a command sent by a user or the server, eg PRIVMSG or JOIN. Add to
+ * {@link Configuration.Builder#addCommandHandler(org.pircbotx.CommandHandler) }
+ * to handle a command PircBotX doesn't support or to replace a built-in
+ * handler. Commands without a handler are dispatched as an
+ * {@link org.pircbotx.hooks.events.UnknownEvent}
+ */
+@Data
+public abstract class CommandHandler {
+	/**
+	 * The command in upper case
+	 */
+	protected final String command;
+
+	/**
+	 * @param parser The parser of the bot that received the line
+	 * @param target First parameter of the line without a leading :
+	 * @param source The user that sent the command
+	 * @param sourceUser The source user if it's known, otherwise null
+	 * @param channel The channel the target refers to if it's known, otherwise
+	 * null
+	 * @param ircMessage The line
+	 * @param tags Parsed IRCv3 tags
+	 */
+	public abstract void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException;
+}
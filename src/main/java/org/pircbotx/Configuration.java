@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,8 +32,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocketFactory;
 
 import org.apache.commons.lang3.StringUtils;
 import org.pircbotx.cap.CapHandler;
@@ -49,6 +54,8 @@ import org.pircbotx.delay.StaticReadonlyDelay;
 import org.pircbotx.exception.IrcException;
 import org.pircbotx.hooks.CoreHooks;
 import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.Subscribe;
+import org.pircbotx.hooks.SubscriberListener;
 import org.pircbotx.hooks.managers.ListenerManager;
 import org.pircbotx.hooks.managers.ThreadedListenerManager;
 import org.pircbotx.output.OutputCAP;
@@ -57,6 +64,7 @@ import org.pircbotx.output.OutputDCC;
 import org.pircbotx.output.OutputIRC;
 import org.pircbotx.output.OutputRaw;
 import org.pircbotx.output.OutputUser;
+import org.pircbotx.snapshot.SnapshotScope;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -90,6 +98,7 @@ public class Configuration {
 	protected final String channelPrefixes;
 	protected final String userLevelPrefixes;
 	protected final boolean snapshotsEnabled;
+	protected final SnapshotScope snapshotScope;
 	//DCC
 	protected final boolean dccFilenameQuotes;
 	protected final ImmutableList<Integer> dccPorts;
@@ -102,12 +111,17 @@ public class Configuration {
 	protected final ImmutableList<ServerEntry> servers;
 	protected final String serverPassword;
 	protected final SocketFactory socketFactory;
+	protected final SelectorEngine selectorEngine;
+	protected final SSLContext sslContext;
 	protected final InetAddress localAddress;
 	protected final Charset encoding;
 	protected final Locale locale;
 	protected final int socketConnectTimeout;
 	protected final int socketTimeout;
 	protected final int maxLineLength;
+	protected final int userHostmaskCacheSize;
+	protected final long queryCacheTtl;
+	protected final int inputPipelineCapacity;
 	protected final boolean autoSplitMessage;
 	protected final boolean autoNickChange;
 	protected final Delay messageDelay;
@@ -130,6 +144,8 @@ public class Configuration {
 	protected final boolean capEnabled;
 	protected final ImmutableList<CapHandler> capHandlers;
 	protected final ImmutableSortedMap<Character, ChannelModeHandler> channelModeHandlers;
+	protected final ImmutableMap<String, CommandHandler> commandHandlers;
+	protected final ImmutableSortedMap<Integer, ServerResponseHandler> serverResponseHandlers;
 	protected final BotFactory botFactory;
 
 	/**
@@ -163,7 +179,12 @@ public class Configuration {
 			checkArgument(serverEntry.getPort() > 0 && serverEntry.getPort() <= 65535, "Port must be between 1 and 65535");
 		}
 		checkNotNull(builder.getSocketFactory(), "Socket factory cannot be null");
+		if (builder.getSelectorEngine() != null)
+			checkArgument(!(builder.getSocketFactory() instanceof SSLSocketFactory), "SSL socket factories cannot be used with a SelectorEngine, set an SSLContext instead");
+		else
+			checkArgument(builder.getSslContext() == null, "SSLContext is only used with a SelectorEngine, use an SSLSocketFactory instead");
 		checkNotNull(builder.getEncoding(), "Encoding cannot be null");
+		checkArgument(LineFramer.isAsciiCompatible(builder.getEncoding()), "Encoding must decode the bytes 0-127 as ASCII, eg UTF-8");
 		checkNotNull(builder.getLocale(), "Locale cannot be null");
 		checkArgument(builder.getSocketConnectTimeout() > 0, "Socket connect timeout must greater than 0");
 		checkArgument(builder.getSocketTimeout() > 0, "Socket timeout must greater than 0");
@@ -181,9 +202,17 @@ public class Configuration {
 		checkArgument(StringUtils.isNotBlank(builder.getNickservNick()), "Nickserv nick cannot be blank");
 		checkArgument(builder.getAutoReconnectAttempts() > 0, "setAutoReconnectAttempts must be greater than 0");
 		checkNotNull(builder.getAutoReconnectDelay(), "setAutoReconnectDelay cannot be null");
+		checkArgument(builder.getUserHostmaskCacheSize() >= 0, "User hostmask cache size cannot be negative");
+		checkArgument(builder.getQueryCacheTtl() >= 0, "Query cache TTL cannot be negative");
+		checkArgument(builder.getInputPipelineCapacity() >= 0, "Input pipeline capacity cannot be negative");
+		if (builder.getInputPipelineCapacity() != 0)
+			checkArgument(builder.getSelectorEngine() == null, "The input pipeline cannot be used with a SelectorEngine");
+		checkNotNull(builder.getSnapshotScope(), "Snapshot scope cannot be null");
 		checkNotNull(builder.getListenerManager(), "Must specify listener manager");
 		checkNotNull(builder.getCapHandlers(), "Cap handlers list cannot be null");
 		checkNotNull(builder.getChannelModeHandlers(), "Channel mode handlers list cannot be null");
+		checkNotNull(builder.getCommandHandlers(), "Command handlers list cannot be null");
+		checkNotNull(builder.getServerResponseHandlers(), "Server response handlers list cannot be null");
 		checkNotNull(builder.getBotFactory(), "Must specify bot factory");
 
 		this.webIrcEnabled = builder.isWebIrcEnabled();
@@ -199,6 +228,7 @@ public class Configuration {
 		this.channelPrefixes = builder.getChannelPrefixes().trim();
 		this.userLevelPrefixes = builder.getUserLevelPrefixes().trim();
 		this.snapshotsEnabled = builder.isSnapshotsEnabled();
+		this.snapshotScope = builder.getSnapshotScope();
 		this.dccFilenameQuotes = builder.isDccFilenameQuotes();
 		this.dccPorts = ImmutableList.copyOf(builder.getDccPorts());
 		this.dccLocalAddress = builder.getDccLocalAddress();
@@ -209,12 +239,17 @@ public class Configuration {
 		this.servers = ImmutableList.copyOf(builder.getServers());
 		this.serverPassword = builder.getServerPassword();
 		this.socketFactory = builder.getSocketFactory();
+		this.selectorEngine = builder.getSelectorEngine();
+		this.sslContext = builder.getSslContext();
 		this.localAddress = builder.getLocalAddress();
 		this.encoding = builder.getEncoding();
 		this.locale = builder.getLocale();
 		this.socketConnectTimeout = builder.getSocketConnectTimeout();
 		this.socketTimeout = builder.getSocketTimeout();
 		this.maxLineLength = builder.getMaxLineLength();
+		this.userHostmaskCacheSize = builder.getUserHostmaskCacheSize();
+		this.queryCacheTtl = builder.getQueryCacheTtl();
+		this.inputPipelineCapacity = builder.getInputPipelineCapacity();
 		this.autoSplitMessage = builder.isAutoSplitMessage();
 		this.autoNickChange = builder.isAutoNickChange();
 		this.messageDelay = builder.getMessageDelay();
@@ -238,6 +273,17 @@ public class Configuration {
 		for (ChannelModeHandler curHandler : builder.getChannelModeHandlers())
 			channelModeHandlersBuilder.put(curHandler.getMode(), curHandler);
 		this.channelModeHandlers = channelModeHandlersBuilder.build();
+		//Later handlers replace earlier ones so built-in handlers can be overridden
+		Map<String, CommandHandler> commandHandlersBuilder = new HashMap<String, CommandHandler>();
+		for (CommandHandler curHandler : builder.getCommandHandlers())
+			commandHandlersBuilder.put(curHandler.getCommand(), curHandler);
+		this.commandHandlers = ImmutableMap.copyOf(commandHandlersBuilder);
+		Map<Integer, ServerResponseHandler> serverResponseHandlersBuilder = new HashMap<Integer, ServerResponseHandler>();
+		for (ServerResponseHandler curHandler : builder.getServerResponseHandlers()) {
+			checkArgument(curHandler.getCode() >= 0 && curHandler.getCode() < 1000, "Server response handler code must be between 0 and 999: %s", curHandler.getCode());
+			serverResponseHandlersBuilder.put(curHandler.getCode(), curHandler);
+		}
+		this.serverResponseHandlers = ImmutableSortedMap.copyOf(serverResponseHandlersBuilder);
 		this.shutdownHookEnabled = builder.isShutdownHookEnabled();
 		this.botFactory = builder.getBotFactory();
 	}
@@ -308,20 +354,26 @@ public class Configuration {
 		 */
 		protected String userLevelPrefixes = UserLevel.getSymbols() + "!";
 		/**
-		 * Enable creation of snapshots, default true. In bulk datasets or very
-		 * lower power devices, creating snapshots can be a relatively expensive
-		 * operation for every
-		 * {@link org.pircbotx.hooks.types.GenericSnapshotEvent} (eg PartEvent,
-		 * QuitEvent) since the entire UserChannelDao with all of its users and
-		 * channels is cloned. This can optionally disabled by setting this to
-		 * false, however this makes all
+		 * Enable creation of snapshots, default true. Creating a snapshot for
+		 * every {@link org.pircbotx.hooks.types.GenericSnapshotEvent} (eg
+		 * PartEvent, QuitEvent) is cheap since users and channels are only
+		 * copied when a listener looks them up, see {@link #snapshotScope}.
+		 * This can optionally disabled by setting this to false, however this
+		 * makes all
 		 * {@link org.pircbotx.hooks.types.GenericSnapshotEvent#getUserChannelDaoSnapshot()}
 		 * calls return null.
-		 * <p>
-		 * In regular usage disabling snapshots is not necessary because there
-		 * relatively few user QUITs and PARTs per second.
 		 */
 		protected boolean snapshotsEnabled = true;
+		/**
+		 * What snapshots in events contain, default
+		 * {@link SnapshotScope#ALL}. Listeners that hold on to events for a
+		 * long time (eg slow listeners on a busy
+		 * {@link org.pircbotx.hooks.managers.ThreadedListenerManager}) keep
+		 * the old values of everything changed since, use
+		 * {@link SnapshotScope#AFFECTED} to only keep the user and channel
+		 * the event is about.
+		 */
+		protected SnapshotScope snapshotScope = SnapshotScope.ALL;
 		//DCC
 		/**
 		 * If true sends filenames in quotes, otherwise uses underscores,
@@ -372,13 +424,27 @@ public class Configuration {
 		 * }
 		 */
 		protected SocketFactory socketFactory = SocketFactory.getDefault();
+		/**
+		 * Shared non-blocking engine to run the connection on instead of a
+		 * blocking socket with its own thread, default null. Bots on an engine
+		 * ignore {@link #getSocketFactory() }
+		 *
+		 * @see SelectorEngine
+		 */
+		protected SelectorEngine selectorEngine = null;
+		/**
+		 * Context used to create the {@link SSLEngine} for TLS connections on a
+		 * {@link #getSelectorEngine() }, default null for plain text
+		 */
+		protected SSLContext sslContext = null;
 		/**
 		 * Address to bind to when connecting to IRC server, default null
 		 */
 		protected InetAddress localAddress = null;
 		/**
 		 * Charset encoding to use for connection, defaults to
-		 * {@link Charset#defaultCharset()}
+		 * {@link Charset#defaultCharset()}. Must be ASCII compatible, so not
+		 * eg UTF-16
 		 */
 		protected Charset encoding = Charset.defaultCharset();
 		/**
@@ -401,6 +467,24 @@ public class Configuration {
 		 * Maximum line length of IRC server, defaults 512 characters
 		 */
 		protected int maxLineLength = 512;
+		/**
+		 * Number of parsed hostmasks to keep in each bot's
+		 * {@link UserHostmaskCache}, 0 to disable. Defaults to 1024
+		 */
+		protected int userHostmaskCacheSize = 1024;
+		/**
+		 * Milliseconds to reuse the result of a WHOIS, WHO or NAMES request
+		 * made through {@link QueryCache}, 0 to only share outstanding
+		 * requests. Defaults to 1 minute
+		 */
+		protected long queryCacheTtl = 60 * 1000;
+		/**
+		 * Lines and events buffered between the stages of the bot's
+		 * {@link InputPipeline}, 0 to read, parse and dispatch lines on the
+		 * bot's thread. Default 0. Cannot be used with a
+		 * {@link #getSelectorEngine() }
+		 */
+		protected int inputPipelineCapacity = 0;
 		/**
 		 * Enable or disable automatic message splitting to fit
 		 * {@link #getMaxLineLength()} to prevent the IRC server from possibly
@@ -527,6 +611,16 @@ public class Configuration {
 		 * basic modes that are generally supported on most IRC servers
 		 */
 		protected final List<ChannelModeHandler> channelModeHandlers = Lists.newArrayList(InputParser.DEFAULT_CHANNEL_MODE_HANDLERS);
+		/**
+		 * Handlers for commands like PRIVMSG, defaults to built-in handlers.
+		 * Later handlers for the same command replace earlier ones
+		 */
+		protected final List<CommandHandler> commandHandlers = Lists.newArrayList(InputParser.DEFAULT_COMMAND_HANDLERS);
+		/**
+		 * Handlers for numeric server responses, defaults to built-in
+		 * handlers. Later handlers for the same numeric replace earlier ones
+		 */
+		protected final List<ServerResponseHandler> serverResponseHandlers = Lists.newArrayList(InputParser.DEFAULT_SERVER_RESPONSE_HANDLERS);
 		/**
 		 * The {@link BotFactory} to use
 		 */
@@ -557,6 +651,7 @@ public class Configuration {
 			this.channelPrefixes = configuration.getChannelPrefixes();
 			this.userLevelPrefixes = configuration.getUserLevelPrefixes();
 			this.snapshotsEnabled = configuration.isSnapshotsEnabled();
+			this.snapshotScope = configuration.getSnapshotScope();
 			this.dccFilenameQuotes = configuration.isDccFilenameQuotes();
 			this.dccPorts.clear();
 			this.dccPorts.addAll(configuration.getDccPorts());
@@ -569,12 +664,17 @@ public class Configuration {
 			this.servers.addAll(configuration.getServers());
 			this.serverPassword = configuration.getServerPassword();
 			this.socketFactory = configuration.getSocketFactory();
+			this.selectorEngine = configuration.getSelectorEngine();
+			this.sslContext = configuration.getSslContext();
 			this.localAddress = configuration.getLocalAddress();
 			this.encoding = configuration.getEncoding();
 			this.locale = configuration.getLocale();
 			this.socketConnectTimeout = configuration.getSocketConnectTimeout();
 			this.socketTimeout = configuration.getSocketTimeout();
 			this.maxLineLength = configuration.getMaxLineLength();
+			this.userHostmaskCacheSize = configuration.getUserHostmaskCacheSize();
+			this.queryCacheTtl = configuration.getQueryCacheTtl();
+			this.inputPipelineCapacity = configuration.getInputPipelineCapacity();
 			this.autoSplitMessage = configuration.isAutoSplitMessage();
 			this.autoNickChange = configuration.isAutoNickChange();
 			this.messageDelay = configuration.getMessageDelay();
@@ -598,6 +698,10 @@ public class Configuration {
 			this.capHandlers.addAll(configuration.getCapHandlers());
 			this.channelModeHandlers.clear();
 			this.channelModeHandlers.addAll(configuration.getChannelModeHandlers().values());
+			this.commandHandlers.clear();
+			this.commandHandlers.addAll(configuration.getCommandHandlers().values());
+			this.serverResponseHandlers.clear();
+			this.serverResponseHandlers.addAll(configuration.getServerResponseHandlers().values());
 			this.shutdownHookEnabled = configuration.isShutdownHookEnabled();
 			this.botFactory = configuration.getBotFactory();
 		}
@@ -621,6 +725,7 @@ public class Configuration {
 			this.channelPrefixes = otherBuilder.getChannelPrefixes();
 			this.userLevelPrefixes = otherBuilder.getUserLevelPrefixes();
 			this.snapshotsEnabled = otherBuilder.isSnapshotsEnabled();
+			this.snapshotScope = otherBuilder.getSnapshotScope();
 			this.dccFilenameQuotes = otherBuilder.isDccFilenameQuotes();
 			this.dccPorts.clear();
 			this.dccPorts.addAll(otherBuilder.getDccPorts());
@@ -633,12 +738,17 @@ public class Configuration {
 			this.servers.addAll(otherBuilder.getServers());
 			this.serverPassword = otherBuilder.getServerPassword();
 			this.socketFactory = otherBuilder.getSocketFactory();
+			this.selectorEngine = otherBuilder.getSelectorEngine();
+			this.sslContext = otherBuilder.getSslContext();
 			this.localAddress = otherBuilder.getLocalAddress();
 			this.encoding = otherBuilder.getEncoding();
 			this.locale = otherBuilder.getLocale();
 			this.socketConnectTimeout = otherBuilder.getSocketConnectTimeout();
 			this.socketTimeout = otherBuilder.getSocketTimeout();
 			this.maxLineLength = otherBuilder.getMaxLineLength();
+			this.userHostmaskCacheSize = otherBuilder.getUserHostmaskCacheSize();
+			this.queryCacheTtl = otherBuilder.getQueryCacheTtl();
+			this.inputPipelineCapacity = otherBuilder.getInputPipelineCapacity();
 			this.autoSplitMessage = otherBuilder.isAutoSplitMessage();
 			this.autoNickChange = otherBuilder.isAutoNickChange();
 			this.messageDelay = otherBuilder.getMessageDelay();
@@ -661,6 +771,10 @@ public class Configuration {
 			this.capHandlers.addAll(otherBuilder.getCapHandlers());
 			this.channelModeHandlers.clear();
 			this.channelModeHandlers.addAll(otherBuilder.getChannelModeHandlers());
+			this.commandHandlers.clear();
+			this.commandHandlers.addAll(otherBuilder.getCommandHandlers());
+			this.serverResponseHandlers.clear();
+			this.serverResponseHandlers.addAll(otherBuilder.getServerResponseHandlers());
 			this.shutdownHookEnabled = otherBuilder.isShutdownHookEnabled();
 			this.botFactory = otherBuilder.getBotFactory();
 		}
@@ -709,6 +823,30 @@ public class Configuration {
 			return this;
 		}
 
+		/**
+		 * Add a command handler, replacing any existing handler for the same
+		 * command
+		 *
+		 * @see #getCommandHandlers()
+		 * @param handler
+		 */
+		public Builder addCommandHandler(@NonNull CommandHandler handler) {
+			getCommandHandlers().add(handler);
+			return this;
+		}
+
+		/**
+		 * Add a server response handler, replacing any existing handler for
+		 * the same numeric
+		 *
+		 * @see #getServerResponseHandlers()
+		 * @param handler
+		 */
+		public Builder addServerResponseHandler(@NonNull ServerResponseHandler handler) {
+			getServerResponseHandlers().add(handler);
+			return this;
+		}
+
 		/**
 		 * Add a collection of listeners to the current ListenerManager
 		 *
@@ -733,6 +871,17 @@ public class Configuration {
 			return this;
 		}
 
+		/**
+		 * Add an object with {@link Subscribe} methods to the current
+		 * ListenerManager
+		 *
+		 * @see SubscriberListener
+		 * @param subscriber
+		 */
+		public Builder addSubscriber(Object subscriber) {
+			return addListener(new SubscriberListener(subscriber));
+		}
+
 		public Builder addAutoJoinChannels(@NonNull Iterable<String> channels) {
 			for (String curChannel : channels) {
 				addAutoJoinChannel(curChannel);
@@ -974,6 +1123,14 @@ public class Configuration {
 			return new InputParser(bot);
 		}
 
+		public SelectorConnection createSelectorConnection(PircBotX bot, SocketChannel channel) throws IOException {
+			SSLContext sslContext = bot.getConfiguration().getSslContext();
+			SSLEngine sslEngine = (sslContext != null)
+					? sslContext.createSSLEngine(bot.getServerHostname(), bot.getServerPort())
+					: null;
+			return new SelectorConnection(bot, channel, sslEngine);
+		}
+
 		public DccHandler createDccHandler(PircBotX bot) {
 			return new DccHandler(bot);
 		}
@@ -1000,6 +1157,18 @@ public class Configuration {
 			return new ServerInfo(bot);
 		}
 
+		public InputPipeline createInputPipeline(PircBotX bot) {
+			return new InputPipeline(bot, bot.getConfiguration().getInputPipelineCapacity());
+		}
+
+		public UserHostmaskCache createUserHostmaskCache(PircBotX bot) {
+			return new UserHostmaskCache(bot, bot.getConfiguration().getUserHostmaskCacheSize());
+		}
+
+		public QueryCache createQueryCache(PircBotX bot) {
+			return new QueryCache(bot, bot.getConfiguration().getQueryCacheTtl(), 60 * 1000, TimeUnit.MILLISECONDS);
+		}
+
 		public UserHostmask createUserHostmask(PircBotX bot, String hostmask) {
 			return new UserHostmask(bot, hostmask);
 		}
@@ -128,9 +128,7 @@ public class IdentServer implements Closeable, Runnable {
 	 * Start the ident server in a new thread.
 	 */
 	public void start() {
-		runningThread = new Thread(this);
-		runningThread.setName("IdentServer");
-		runningThread.start();
+		runningThread = VirtualThreads.start(this, "IdentServer", false);
 	}
 
 	/**
@@ -46,13 +46,14 @@ import static org.pircbotx.ReplyConstants.RPL_YOUREOPER;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 import java.util.TreeMap;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -148,6 +149,8 @@ public class InputParser implements Closeable {
 	protected static final ImmutableList<String> CONNECT_CODES = ImmutableList.of("001", "002", "003", "004", "005",
 			"251", "252", "253", "254", "255", "375", "376");
 	protected static final ImmutableList<ChannelModeHandler> DEFAULT_CHANNEL_MODE_HANDLERS;
+	protected static final ImmutableList<CommandHandler> DEFAULT_COMMAND_HANDLERS;
+	protected static final ImmutableList<ServerResponseHandler> DEFAULT_SERVER_RESPONSE_HANDLERS;
 
 	static {
 		DEFAULT_CHANNEL_MODE_HANDLERS = ImmutableList.<ChannelModeHandler>builder()	
@@ -246,7 +249,7 @@ public class InputParser implements Closeable {
 					@Override
 					public void handleMode(PircBotX bot, Channel channel, UserHostmask sourceHostmask, User sourceUser, PeekingIterator<String> params, boolean adding, boolean dispatchEvent) {
 						if (dispatchEvent) {
-							UserHostmask banHostmask = bot.getConfiguration().getBotFactory().createUserHostmask(bot, params.next());
+							UserHostmask banHostmask = bot.getUserHostmaskCache().get(params.next());
 							if (adding)
 								Utils.dispatchEvent(bot, new SetChannelBanEvent(bot, channel, sourceHostmask, sourceUser, banHostmask));
 							else
@@ -321,9 +324,724 @@ public class InputParser implements Closeable {
 					}
 				})
 				.build();
+
+		DEFAULT_COMMAND_HANDLERS = ImmutableList.<CommandHandler>builder()
+				.add(new CommandHandler("PRIVMSG") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						String message = ircMessage.getParam(1, "");
+						if (message.startsWith("\u0001") && message.endsWith("\u0001")) {
+							sourceUser = parser.createUserIfNull(sourceUser, source);
+							String request = message.substring(1, message.length() - 1);
+							if (request.equals("VERSION"))
+								// VERSION request
+								Utils.dispatchEvent(bot, new VersionEvent(bot, source, sourceUser, channel));
+							else if (request.startsWith("ACTION "))
+								// ACTION request
+								Utils.dispatchEvent(bot, new ActionEvent(bot, source, sourceUser, channel, target, request.substring(7), tags));
+							else if (request.startsWith("PING "))
+								// PING request
+								Utils.dispatchEvent(bot, new PingEvent(bot, source, sourceUser, channel, request.substring(5)));
+							else if (request.equals("TIME"))
+								// TIME request
+								Utils.dispatchEvent(bot, new TimeEvent(bot, channel, source, sourceUser));
+							else if (request.equals("FINGER"))
+								// FINGER request
+								Utils.dispatchEvent(bot, new FingerEvent(bot, source, sourceUser, channel));
+							else if (request.startsWith("DCC ")) {
+								// This is a DCC request.
+								boolean success = bot.getDccHandler().processDcc(source, sourceUser, request);
+								if (!success)
+									// The DccManager didn't know what to do with the line.
+									Utils.dispatchEvent(bot, new UnknownEvent(bot, target, source.getNick(), command, ircMessage, tags));
+							} else
+								// An unknown CTCP message - ignore it.
+								Utils.dispatchEvent(bot, new UnknownEvent(bot, target, source.getNick(), command, ircMessage, tags));
+						} else if (channel != null) {
+							// This is a normal message to a channel.
+							sourceUser = parser.createUserIfNull(sourceUser, source);
+							Utils.dispatchEvent(bot, new MessageEvent(bot, channel, target, source, sourceUser, message, tags));
+						} else {
+							// This is a private message to us.
+							//Add to private message
+							sourceUser = parser.createUserIfNull(sourceUser, source);
+							Utils.dispatchEvent(bot, new PrivateMessageEvent(bot, source, sourceUser, message, tags));
+						}
+					}
+				})
+				.add(new CommandHandler("JOIN") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Someone is joining a channel.
+						if (source.getNick().equalsIgnoreCase(bot.getNick())) {
+							//Its us, get channel info
+							channel = bot.getUserChannelDao().createChannel(target);
+							if (bot.getConfiguration().isOnJoinWhoEnabled())
+								bot.sendRaw().rawLine("WHO " + target);
+							if (bot.getConfiguration().isOnJoinModeEnabled())
+								bot.sendRaw().rawLine("MODE " + target);
+						}
+						//Create user if it doesn't exist already
+						sourceUser = parser.createUserIfNull(sourceUser, source);
+
+						bot.getUserChannelDao().addUserToChannel(sourceUser, channel);
+						bot.getQueryCache().invalidateChannel(channel.getName());
+						Utils.dispatchEvent(bot, new JoinEvent(bot, channel, source, sourceUser, tags));
+					}
+				})
+				.add(new CommandHandler("PART") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Someone is parting from a channel.
+						String message = ircMessage.getParam(1, "");
+						UserChannelDaoSnapshot daoSnapshot;
+						ChannelSnapshot channelSnapshot;
+						UserSnapshot sourceSnapshot;
+						boolean dispatchEvent = Utils.hasListeners(bot, PartEvent.class);
+						if (dispatchEvent && bot.getConfiguration().isSnapshotsEnabled()) {
+							daoSnapshot = bot.getUserChannelDao().createSnapshot(bot.getConfiguration().getSnapshotScope(), sourceUser, channel);
+							channelSnapshot = daoSnapshot.getChannel(channel.getName());
+							sourceSnapshot = daoSnapshot.getUser(source);
+						} else {
+							daoSnapshot = null;
+							channelSnapshot = null;
+							sourceSnapshot = null;
+						}
+
+						if (source.getNick().equalsIgnoreCase(bot.getNick()))
+							//We parted the channel
+							bot.getUserChannelDao().removeChannel(channel);
+						else
+							//Just remove the user from memory
+							bot.getUserChannelDao().removeUserFromChannel(sourceUser, channel);
+						bot.getQueryCache().invalidateChannel(channel.getName());
+						if (dispatchEvent)
+							Utils.dispatchEvent(bot, new PartEvent(bot, daoSnapshot, channelSnapshot, channel.getName(), source, sourceSnapshot, message, tags));
+					}
+				})
+				.add(new CommandHandler("NICK") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Somebody is changing their nick.
+						sourceUser = parser.createUserIfNull(sourceUser, source);
+						String newNick = target;
+						bot.getQueryCache().invalidateUser(source.getNick(), sourceUser);
+						bot.getQueryCache().invalidateUser(newNick, null);
+						bot.getUserChannelDao().renameUser(sourceUser, newNick);
+						//Old hostmask won't be used again
+						bot.getUserHostmaskCache().invalidate(ircMessage.getSource());
+						if (source.getNick().equals(bot.getNick()))
+							// Update our nick if it was us that changed nick.
+							bot.setNick(newNick);
+						Utils.dispatchEvent(bot, new NickChangeEvent(bot, source.getNick(), newNick, source, sourceUser, tags));
+					}
+				})
+				.add(new CommandHandler("NOTICE") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Someone is sending a notice.
+						String message = ircMessage.getParam(1, "");
+						Utils.dispatchEvent(bot, new NoticeEvent(bot, source, sourceUser, channel, target, message, tags));
+					}
+				})
+				.add(new CommandHandler("QUIT") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						UserChannelDaoSnapshot daoSnapshot;
+						UserSnapshot sourceSnapshot;
+						boolean dispatchEvent = Utils.hasListeners(bot, QuitEvent.class);
+						if (dispatchEvent && bot.getConfiguration().isSnapshotsEnabled()) {
+							daoSnapshot = bot.getUserChannelDao().createSnapshot(bot.getConfiguration().getSnapshotScope(), sourceUser, null);
+							sourceSnapshot = daoSnapshot.getUser(sourceUser.getNick());
+						} else {
+							daoSnapshot = null;
+							sourceSnapshot = null;
+						}
+						//A real target is missing, so index is off
+						String reason = target;
+						// Someone has quit from the IRC server.
+						bot.getQueryCache().invalidateUser(source.getNick(), sourceUser);
+						if (!source.getNick().equals(bot.getNick()))
+							//Someone else
+							bot.getUserChannelDao().removeUser(sourceUser);
+						if (dispatchEvent)
+							Utils.dispatchEvent(bot, new QuitEvent(bot, daoSnapshot, source, sourceSnapshot, reason, tags));
+					}
+				})
+				.add(new CommandHandler("KICK") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Somebody has been kicked from a channel.
+						String message = ircMessage.getParam(1, "");
+						UserHostmask recipientHostmask = bot.getUserHostmaskCache().get(message);
+						User recipient = bot.getUserChannelDao().getUser(message);
+
+						if (recipient.getNick().equals(bot.getNick()))
+							//We were just kicked
+							bot.getUserChannelDao().removeChannel(channel);
+						else
+							//Someone else
+							bot.getUserChannelDao().removeUserFromChannel(recipient, channel);
+						bot.getQueryCache().invalidateChannel(channel.getName());
+						Utils.dispatchEvent(bot, new KickEvent(bot, channel, source, sourceUser, recipientHostmask, recipient, ircMessage.getParam(2), tags));
+					}
+				})
+				.add(new CommandHandler("MODE") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Somebody is changing the mode on a channel or user (Use long form since mode isn't after a : )
+						String line = ircMessage.getBody();
+						String mode = line.substring(line.indexOf(target, 2) + target.length() + 1);
+						if (mode.startsWith(":"))
+							mode = mode.substring(1);
+						//TODO: ummm... what does this do?
+						//Handle situations where source doesn't have a full username (IE server setting user mode on connect)
+						//User sourceModeUser = sourceUser;
+						//if (sourceModeUser == null)
+						//	sourceModeUser = bot.getUserChannelDao().getUser(source);
+						parser.processMode(source, sourceUser, target, mode, tags);
+					}
+				})
+				.add(new CommandHandler("TOPIC") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Someone is changing the topic.
+						String message = ircMessage.getParam(1, "");
+						long currentTime = System.currentTimeMillis();
+						String oldTopic = channel.getTopic();
+						channel.setTopic(message);
+						channel.setTopicSetter(source);
+						channel.setTopicTimestamp(currentTime);
+
+						Utils.dispatchEvent(bot, new TopicEvent(bot, channel, oldTopic, message, source, currentTime, true, tags));
+					}
+				})
+				.add(new CommandHandler("INVITE") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						// Somebody is inviting somebody else into a channel.
+						String message = ircMessage.getParam(1, "");
+						Utils.dispatchEvent(bot, new InviteEvent(bot, source, sourceUser, message));
+					}
+				})
+				.add(new CommandHandler("AWAY") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						//IRCv3 AWAY notify
+						if (ircMessage.getParamCount() == 0)
+							sourceUser.setAwayMessage("");
+						else
+							sourceUser.setAwayMessage(ircMessage.getParam(0));
+					}
+				})
+				.add(new CommandHandler("CHGHOST") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						//IRCv3 chghost: :nick!oldLogin@oldHost CHGHOST newLogin newHost
+						if (sourceUser != null && ircMessage.getParamCount() >= 2)
+							sourceUser.updateHostmask(bot.getConfiguration().getBotFactory()
+									.createUserHostmask(bot, null, source.getNick(), ircMessage.getParam(0), ircMessage.getParam(1)));
+						//Old hostmask won't be used again
+						bot.getUserHostmaskCache().invalidate(ircMessage.getSource());
+						//No dedicated event
+						Utils.dispatchEvent(bot, new UnknownEvent(bot, target, source.getNick(), command, ircMessage, tags));
+					}
+				})
+				.add(new CommandHandler("ACCOUNT") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) throws IOException {
+						//IRCv3 account-notify: :nick!login@host ACCOUNT accountname
+						//Cached WHOIS has the old account
+						bot.getQueryCache().invalidateUser(source.getNick(), null);
+						//No dedicated event
+						Utils.dispatchEvent(bot, new UnknownEvent(bot, target, source.getNick(), command, ircMessage, tags));
+					}
+				})
+				.build();
+
+		DEFAULT_SERVER_RESPONSE_HANDLERS = ImmutableList.<ServerResponseHandler>builder()
+				.add(new ServerResponseHandler(433) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: * AnAlreadyUsedName :Nickname already in use
+						//EXAMPLE: AnAlreadyUsedName :Nickname already in use (spec)
+						//TODO: When output parsing is implemented intercept outgoing NICK?
+						//Nickname in use, rename
+						boolean autoNickChange = bot.getConfiguration().isAutoNickChange();
+						String autoNewNick = null;
+						String usedNick;
+
+						boolean doAutoNickChange = false;
+						//Ignore cases where we already have a valid nick but changed to a used one
+						if (message.getParamCount() == 3) {
+							usedNick = message.getParam(1);
+							if (message.getParam(0).equals("*")) {
+								doAutoNickChange = true;
+							}
+						} //For spec-compilant servers, if were not logged in its safe to assume we don't have a valid nick on connect
+						else {
+							usedNick = message.getParam(0);
+							if (!bot.loggedIn) {
+								doAutoNickChange = true;
+							}
+						}
+
+						if (autoNickChange && doAutoNickChange) {
+							parser.nickSuffix++;
+							autoNewNick = bot.getConfiguration().getName() + parser.nickSuffix;
+							bot.sendIRC().changeNick(autoNewNick);
+							bot.setNick(autoNewNick);
+							bot.getUserChannelDao().renameUser(bot.getUserChannelDao().getUser(usedNick), autoNewNick);
+						}
+
+						Utils.dispatchEvent(bot, new NickAlreadyInUseEvent(bot, usedNick, autoNewNick, autoNickChange));
+					}
+				})
+				.add(new ServerResponseHandler(RPL_LISTSTART) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 321 Channel :Users Name (actual text)
+						//A channel list is about to be sent
+						parser.channelListBuilder = ImmutableList.builder();
+						parser.channelListRunning = true;
+					}
+				})
+				.add(new ServerResponseHandler(RPL_LIST) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//This is part of a full channel listing as part of /LIST
+						//EXAMPLE: 322 lordquackstar #xomb 12 :xomb exokernel project @ www.xomb.org
+						String channel = message.getParam(1);
+						int userCount = Utils.tryParseInt(message.getParam(2), -1);
+						String topic = message.getParam(3);
+						parser.channelListBuilder.add(new ChannelListEntry(channel, userCount, topic));
+					}
+				})
+				.add(new ServerResponseHandler(RPL_LISTEND) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 323 :End of /LIST
+						//End of channel list, dispatch event
+						Utils.dispatchEvent(bot, new ChannelInfoEvent(bot, parser.channelListBuilder.build()));
+						parser.channelListBuilder = null;
+						parser.channelListRunning = false;
+					}
+				})
+				.add(new ServerResponseHandler(RPL_TOPIC) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 332 PircBotX #aChannel :I'm some random topic
+						//This is topic about a channel we've just joined. From /JOIN or /TOPIC
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+						String topic = message.getParam(2);
+
+						channel.setTopic(topic);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_TOPICINFO) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 333 PircBotX #aChannel ISetTopic 1564842512
+						//This is information on the topic of the channel we've just joined. From /JOIN or /TOPIC
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+						UserHostmask setBy = bot.getUserHostmaskCache().get(message.getParam(2));
+						long date = Utils.tryParseLong(message.getParam(3), -1);
+
+						channel.setTopicTimestamp(date * 1000);
+						channel.setTopicSetter(setBy);
+
+						Utils.dispatchEvent(bot, new TopicEvent(bot, channel, null, channel.getTopic(), setBy, date, false, MessageTags.EMPTY));
+					}
+				})
+				.add(new ServerResponseHandler(RPL_WHOREPLY) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 352 PircBotX #aChannel ~someName 74.56.56.56.my.Hostmask wolfe.freenode.net someNick H :0 Full Name
+						//Part of a WHO reply on information on individual users
+
+						String channelName = message.getParam(1);
+						//Levels are only tracked for joined channels
+						Channel channel = bot.getUserChannelDao().containsChannel(channelName) ? bot.getUserChannelDao().getChannel(channelName) : null;
+
+						//Setup user
+
+						String login = message.getParam(2);
+						String userHost = message.getParam(3);
+						String serverName = message.getParam(4);
+						String nick = message.getParam(5);
+						String rawFlags = message.getParam(6);
+
+						UserHostmask curUserHostmask = bot.getConfiguration()
+								.getBotFactory()
+								.createUserHostmask(bot, null, nick, login, userHost);
+						User curUser = bot.getUserChannelDao().containsUser(nick) ? bot.getUserChannelDao().getUser(nick) : bot.getConfiguration()
+								.getBotFactory()
+								.createUser(curUserHostmask);
+						curUser.updateHostmask(curUserHostmask);
+
+
+
+						curUser.setServer(serverName);
+						//Associate with channel and levels in one write
+						if (channel != null) {
+							UserChannelDao.MemberBatch<User, Channel> batch = bot.getUserChannelDao().createMemberBatch();
+							batch.addUserToChannel(curUser, channel);
+							for (char prefixChar : rawFlags.toCharArray()) {
+								UserLevel level = UserLevel.fromSymbol(prefixChar);
+								if (level != null)
+									batch.addUserToLevel(level, curUser, channel);
+							}
+							batch.commit();
+						}
+						parser.processUserStatus(null, curUser, rawFlags);
+						//Extra parsing needed since tokenizer stopped at :
+						String rawEnding = message.getParam(7);
+						int rawEndingSpaceIndex = rawEnding.indexOf(' ');
+
+						int hops;
+						String realName;
+						if (rawEndingSpaceIndex == -1) {
+							//parsedResponse data is trimmed, so if the index == -1, then there was no real name given and the space separating hops from real name was trimmed.
+							hops = Integer.parseInt(rawEnding);
+							realName = "";
+						} else {
+							//parsedResponse data contains a real name
+							hops =  Integer.parseInt(rawEnding.substring(0, rawEndingSpaceIndex));
+							realName = rawEnding.substring(rawEndingSpaceIndex + 1);
+						}
+
+						curUser.setHops(hops);
+						curUser.setRealName(realName);
+
+
+						if (parser.whoListBuilder == null) {
+							parser.whoListBuilder = new ImmutableList.Builder<User>();
+						}
+						parser.whoListBuilder.add(curUser);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_ENDOFWHO) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 315 PircBotX #aChannel :End of /WHO list
+						//End of the WHO reply
+
+
+						String query = message.getParam(1);
+						Channel channel = bot.getUserChannelDao().containsChannel(query) ? bot.getUserChannelDao().getChannel(query) : new Channel(bot, query);
+						Utils.dispatchEvent(bot, new UserListEvent(bot, channel, bot.getUserChannelDao().getUsers(channel), true));
+						Utils.dispatchEvent(bot, new WhoEvent(bot, query, parser.whoListBuilder != null ? parser.whoListBuilder.build() : ImmutableList.of() ));
+
+						parser.whoListBuilder = null;
+					}
+				})
+				.add(new ServerResponseHandler(RPL_CHANNELMODEIS) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 324 PircBotX #aChannel +cnt
+						//Full channel mode (In response to MODE <channel>)
+						String channelName = message.getParam(1);
+						Channel channel = bot.getUserChannelDao().containsChannel(channelName) ? bot.getUserChannelDao().getChannel(channelName) : new Channel(bot, channelName);
+						ImmutableList<String> modeParsed = message.getParams().subList(2, message.getParamCount());
+						String mode = StringUtils.join(modeParsed, ' ');
+
+						channel.setMode(mode, modeParsed);
+						Utils.dispatchEvent(bot, new ModeEvent(bot, channel, null, null, mode, modeParsed, MessageTags.EMPTY));
+					}
+				})
+				.add(new ServerResponseHandler(329) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//EXAMPLE: 329 lordquackstar #botters 1199140245
+						//Tells when channel was created. From /JOIN
+						String channelName = message.getParam(1);
+						Channel channel = bot.getUserChannelDao().containsChannel(channelName) ? bot.getUserChannelDao().getChannel(channelName) : new Channel(bot, channelName);
+						int createDate = Utils.tryParseInt(message.getParam(2), -1);
+
+						//Set in channel
+						channel.setCreateTimestamp(createDate);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_MOTDSTART) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Example: 375 PircBotX :- wolfe.freenode.net Message of the Day -
+						//Motd is starting, reset the StringBuilder
+						parser.motdBuilder = new StringBuilder();
+					}
+				})
+				.add(new ServerResponseHandler(RPL_MOTD) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Example: 372 PircBotX :- Welcome to wolfe.freenode.net in Manchester, England, Uk!  Thanks to
+						//This is part of the MOTD, aidd a new line
+						if (StringUtils.isNotBlank(message.getParam(1))) {
+							parser.motdBuilder.append(CharMatcher.whitespace().trimFrom(message.getParam(1).substring(1))).append('\n');
+						} else {
+							parser.motdBuilder.append('\n');
+						}
+					}
+				})
+				.add(new ServerResponseHandler(RPL_ENDOFMOTD) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Example: PircBotX :End of /MOTD command.
+						//End of MOTD, clean it and dispatch MotdEvent
+						ServerInfo serverInfo = bot.getServerInfo();
+						serverInfo.setMotd(parser.motdBuilder.toString().trim());
+						parser.motdBuilder = null;
+						Utils.dispatchEvent(bot, new MotdEvent(bot, serverInfo.getMotd()));
+					}
+				})
+				.add(new ServerInfoResponseHandler(4))
+				.add(new ServerInfoResponseHandler(5))
+				.add(new ServerResponseHandler(RPL_WHOISUSER) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Example: 311 TheLQ Plazma ~Plazma freenode/staff/plazma * :Plazma Rooolz!
+						//New whois is starting
+						String whoisNick = message.getParam(1);
+
+						WhoisEvent.Builder builder = WhoisEvent.builder();
+						builder.nick(whoisNick);
+						builder.login(message.getParam(2));
+						builder.hostname(message.getParam(3));
+						builder.realname(message.getParam(5));
+						parser.whoisBuilder.put(whoisNick, builder);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_AWAY) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Example: 301 PircBotXUser TheLQ_ :I'm away, sorry
+						//Can be sent during whois
+						String nick = message.getParam(1);
+						String awayMessage = message.getParam(2);
+						if (bot.getUserChannelDao().containsUser(nick))
+							bot.getUserChannelDao().getUser(nick).setAwayMessage(awayMessage);
+						if (parser.whoisBuilder.containsKey(nick))
+							parser.whoisBuilder.get(nick).awayMessage(awayMessage);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_WHOISCHANNELS) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Example: 319 TheLQ Plazma :+#freenode
+						//Channel list from whois. Re-tokenize since they're after the :
+						String whoisNick = message.getParam(1);
+						ImmutableList<String> parsedChannels = ImmutableList.copyOf(Utils.tokenizeLine(message.getParam(2)));
+
+						parser.whoisBuilder.get(whoisNick).channels(parsedChannels);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_WHOISSERVER) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Server info from whois
+						//312 TheLQ Plazma leguin.freenode.net :Ume?, SE, EU
+						String whoisNick = message.getParam(1);
+
+						parser.whoisBuilder.get(whoisNick).server(message.getParam(2));
+						parser.whoisBuilder.get(whoisNick).serverInfo(message.getParam(3));
+					}
+				})
+				.add(new ServerResponseHandler(RPL_WHOISIDLE) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Idle time from whois
+						//317 TheLQ md_5 6077 1347373349 :seconds idle, signon time
+						String whoisNick = message.getParam(1);
+
+						parser.whoisBuilder.get(whoisNick).idleSeconds(Long.parseLong(message.getParam(2)));
+						parser.whoisBuilder.get(whoisNick).signOnTime(Long.parseLong(message.getParam(3)));
+					}
+				})
+				.add(new ServerResponseHandler(330) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						String rawResponse = message.getBody();
+						//RPL_WHOISACCOUNT: Extra Whois info
+						//330 TheLQ Utoxin Utoxin :is logged in as
+						//Make sure we set registered as to the nick, not to the note after the colon
+						String registeredNick = "";
+						if (!rawResponse.endsWith(":" + message.getParam(2)))
+							registeredNick = message.getParam(2);
+						parser.whoisBuilder.get(message.getParam(1)).registeredAs(registeredNick);
+					}
+				})
+				.add(new ServerResponseHandler(307) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//If shown, tells us that the user is registered with nickserv
+						//307 TheLQ TheLQ-PircBotX :has identified for this nick
+						parser.whoisBuilder.get(message.getParam(1)).registeredAs("");
+					}
+				})
+				.add(new ServerResponseHandler(ERR_NOSUCHSERVER) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Whois failed when doing "WHOIS invaliduser invaliduser"
+						//402 TheLQ asdfasdf :No such server
+						String whoisNick = message.getParam(1);
+						WhoisEvent event = WhoisEvent.builder()
+								.nick(whoisNick)
+								.exists(false)
+								.generateEvent(bot);
+						Utils.dispatchEvent(bot, event);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_WHOIS_SECURE) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//If present, tells us that the user is using a secure connection
+						//671 TheLQ TheLQ-PircBotX :is using a secure connection
+						parser.whoisBuilder.get(message.getParam(1)).secureConnection(true);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_WHOISOPERATOR) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//If present, tells us that the user is using a irc operator
+						//313 TheLQ TheLQ-PircBotX :is a IRCop
+						String nick = message.getParam(1);
+						if (bot.getUserChannelDao().containsUser(nick)) {
+							bot.getUserChannelDao().getUser(nick).setIrcop(true);
+						}
+						parser.whoisBuilder.get(nick).ircOp(true);
+					}
+				})
+				.add(new ServerResponseHandler(RPL_ENDOFWHOIS) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//End of whois
+						//318 TheLQ Plazma :End of /WHOIS list.
+						String whoisNick = message.getParam(1);
+						WhoisEvent.Builder builder;
+						if (parser.whoisBuilder.containsKey(whoisNick)) {
+							builder = parser.whoisBuilder.get(whoisNick);
+							builder.exists(true);
+						} else {
+							builder = WhoisEvent.builder();
+							builder.nick(whoisNick);
+							builder.exists(false);
+						}
+						Utils.dispatchEvent(bot, builder.generateEvent(bot));
+						parser.whoisBuilder.remove(whoisNick);
+					}
+				})
+				.add(new ServerResponseHandler(367) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Ban list entry
+						//367 TheLQ #aChannel *!*@test1.host TheLQ!~quackstar@some.host 1415143822
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+
+						UserHostmask recipient = bot.getUserHostmaskCache().get(message.getParam(2));
+						UserHostmask source = bot.getUserHostmaskCache().get(message.getParam(3));
+						long time = Long.parseLong(message.getParam(4));
+						parser.banListBuilder.put(channel, new BanListEvent.Entry(recipient, source, time));
+						log.debug("Adding entry");
+					}
+				})
+				.add(new ServerResponseHandler(368) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Ban list is finished
+						//368 TheLQ #aChannel :End of Channel Ban List
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+						ImmutableList<BanListEvent.Entry> entries = ImmutableList.copyOf(parser.banListBuilder.removeAll(channel));
+						log.debug("Dispatching event");
+						Utils.dispatchEvent(bot, new BanListEvent(bot, channel, entries));
+					}
+				})
+				.add(new ServerResponseHandler(RPL_NAMREPLY) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//NAMES response
+						//353 PircBotXUser = #aChannel :aUser1 aUser2
+						//Members of each line are added in one write
+						Channel chan = bot.getUserChannelDao().getChannel(message.getParam(2));
+						UserChannelDao.MemberBatch<User, Channel> batch = bot.getUserChannelDao().createMemberBatch();
+						for (String curUser : StringUtils.split(message.getParam(3))) {
+							//Siphon off any levels this user has
+							String nick = curUser;
+							List<UserLevel> levels = new ArrayList<>();
+							UserLevel parsedLevel;
+							while ((parsedLevel = UserLevel.fromSymbol(nick.charAt(0))) != null) {
+								nick = nick.substring(1);
+								levels.add(parsedLevel);
+							}
+
+							User user = batch.getUser(nick);
+							if (user == null)
+								//Create user with nick only
+								user = bot.getConfiguration().getBotFactory().createUser(new UserHostmask(bot, nick));
+							batch.addUserToChannel(user, chan);
+
+							//Now that the user is created, add them to the appropiate levels
+							for (UserLevel curLevel : levels) {
+								batch.addUserToLevel(curLevel, user, chan);
+							}
+						}
+						batch.commit();
+					}
+				})
+				.add(new ServerResponseHandler(RPL_ENDOFNAMES) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//NAMES response finished
+						//366 PircBotXUser #aChannel :End of /NAMES list.
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+						Utils.dispatchEvent(bot, new UserListEvent(bot, channel, bot.getUserChannelDao().getUsers(channel), false));
+					}
+				})
+				.add(new ServerResponseHandler(RPL_YOUREOPER) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//OPER success response
+						//381 PircBotXUser :You are now an IRCOp
+						Utils.dispatchEvent(bot, new OperSuccessEvent(bot));
+					}
+				})
+				.add(new ServerResponseHandler(ERR_NOOPERHOST) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//OPER failed response
+						//491 PircBotXUser :Invalid oper credentials
+						Utils.dispatchEvent(bot, new OperFailedEvent(bot));
+					}
+				})
+				.add(new ServerResponseHandler(728) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Quiet list entry
+						//728 TheLQ #aChannel q *!*@test1.host TheLQ!~quackstar@some.host 162602897
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+
+						UserHostmask recipient = bot.getUserHostmaskCache().get(message.getParam(3));
+						UserHostmask source = bot.getUserHostmaskCache().get(message.getParam(4));
+						long time = Long.parseLong(message.getParam(5));
+						parser.quietListBuilder.put(channel, new QuietListEvent.Entry(recipient, source, time));
+					}
+				})
+				.add(new ServerResponseHandler(729) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						//Quiet list is finished
+						//729 TheLQ #aChannel q :End of Channel Quiet List
+						Channel channel = bot.getUserChannelDao().getChannel(message.getParam(1));
+						ImmutableList<QuietListEvent.Entry> entries = ImmutableList.copyOf(parser.quietListBuilder.removeAll(channel));
+						Utils.dispatchEvent(bot, new QuietListEvent(bot, channel, entries));
+					}
+				})
+				.build();
 	}
 	protected final Configuration configuration;
 	protected final PircBotX bot;
+	/**
+	 * {@link Configuration#getServerResponseHandlers() } indexed by numeric
+	 */
+	protected final ServerResponseHandler[] serverResponseHandlers = new ServerResponseHandler[1000];
 	protected final List<CapHandler> capHandlersFinished = new ArrayList<>();
 	protected boolean capEndSent = false;
 	protected BufferedReader inputReader;
@@ -345,51 +1063,39 @@ public class InputParser implements Closeable {
 	public InputParser(PircBotX bot) {
 		this.bot = bot;
 		this.configuration = bot.getConfiguration();
+		for (ServerResponseHandler curHandler : configuration.getServerResponseHandlers().values())
+			serverResponseHandlers[curHandler.getCode()] = curHandler;
 	}
 
 	/**
 	 * This method handles events when any line of text arrives from the server,
 	 * then dispatching the appropriate event.
 	 *
-	 * @param rawLine The raw line of text from the server.
+	 * @param rawLine The raw line of text from the server, without surrounding
+	 * whitespace as framed by {@link LineFramer}
 	 */
 	public void handleLine(@NonNull String rawLine) throws IOException, IrcException {
-		String line = CharMatcher.whitespace().trimFrom(rawLine);
-		log.info(INPUT_MARKER, line);
-
-		// Parse out v3Tags before
-		ImmutableMap.Builder<String, String> tags = ImmutableMap.builder();
-		if (line.startsWith("@")) {
-			//This message has IRCv3 tags
-			String v3Tags = line.substring(1, line.indexOf(" "));
-			line = line.substring(line.indexOf(" ") + 1);
-
-			StringTokenizer tokenizer = new StringTokenizer(v3Tags);
-
-			while (tokenizer.hasMoreTokens()) {
-				String tag = tokenizer.nextToken(";");
-				if (tag.contains("=")) {
-					String[] parts = tag.split("=", 2);
-					String value = (parts.length == 2 ? parts[1] : "");
-					tags.put(parts[0], Utils.unescapeV3TagValue(value));
-				} else {
-					tags.put(tag, "");
-				}
-			}
-		}
+		handleMessage(IrcMessage.parse(rawLine));
+	}
+
+	/**
+	 * Handle a line already parsed, eg by the {@link InputPipeline}.
+	 *
+	 * @param message Line without surrounding whitespace
+	 */
+	public void handleMessage(@NonNull IrcMessage message) throws IOException, IrcException {
+		log.info(INPUT_MARKER, message.getLine());
 
-		List<String> parsedLine = Utils.tokenizeLine(line);
+		String line = message.getBody();
 
-		String sourceRaw = "";
-		if (parsedLine.get(0).charAt(0) == ':')
-			sourceRaw = parsedLine.remove(0);
+		MessageTags tags = message.getTags();
 
-		String command = parsedLine.remove(0).toUpperCase(configuration.getLocale());
+		String command = message.getCommand().toUpperCase(configuration.getLocale());
 
 		// Check for server pings.
 		if (command.equals("PING")) {
 			// Respond to the ping and return immediately.
-			configuration.getListenerManager().onEvent(new ServerPingEvent(bot, parsedLine.get(0)));
+			Utils.dispatchEvent(bot, new ServerPingEvent(bot, message.getParam(0)));
 			return;
 		} else if (command.startsWith("ERROR")) {
 			//Server is shutting us down
@@ -397,14 +1103,14 @@ public class InputParser implements Closeable {
 			return;
 		}
 
-		String target = (parsedLine.isEmpty()) ? "" : parsedLine.get(0);
+		String target = message.getParam(0, "");
 		if (target.startsWith(":"))
 			target = target.substring(1);
 
 		//Make sure this is a valid IRC line
-		if (!sourceRaw.startsWith(":")) {
+		if (!message.hasSource()) {
 			// We don't know what this line means.
-			configuration.getListenerManager().onEvent(new UnknownEvent(bot, target, "", command, line, parsedLine, tags.build()));
+			Utils.dispatchEvent(bot, new UnknownEvent(bot, target, "", command, message, tags));
 			if (!bot.loggedIn)
 				//Pass to CapHandlers, could be important
 				for (CapHandler curCapHandler : configuration.getCapHandlers())
@@ -415,19 +1121,19 @@ public class InputParser implements Closeable {
 		}
 
 		if (!bot.loggedIn)
-			processConnect(line, command, target, parsedLine);
+			processConnect(line, command, target, message.getParams());
 
 		//Might be a backend code 
-		int code = Utils.tryParseInt(command, -1);
+		int code = message.getNumeric();
 		if (code != -1) {
-			processServerResponse(code, line, parsedLine);
+			processServerResponse(code, message);
 			//Do not continue
 			return;
 		}
 
 		//Must be from user
-		UserHostmask source = bot.getConfiguration().getBotFactory().createUserHostmask(bot, sourceRaw.substring(1));
-		processCommand(target, source, command, line, parsedLine, tags.build());
+		UserHostmask source = bot.getUserHostmaskCache().get(message.getSource());
+		processCommand(target, source, command, message, tags);
 	}
 
 	/**
@@ -448,7 +1154,7 @@ public class InputParser implements Closeable {
 			bot.onLoggedIn(parsedLine.get(0));
 			log.debug("Logged onto server.");
 
-			configuration.getListenerManager().onEvent(new ConnectEvent(bot));
+			Utils.dispatchEvent(bot, new ConnectEvent(bot));
 
 			//Handle automatic on connect stuff
 			if (configuration.getNickservPassword() != null)
@@ -487,17 +1193,28 @@ public class InputParser implements Closeable {
 		else if (code.equals("670")) {
 			//Server is saying that we can upgrade to TLS
 			log.debug("Upgrading to TLS connection");
-			SSLSocketFactory sslSocketFactory = ((SSLSocketFactory) SSLSocketFactory.getDefault());
-			for (CapHandler curCapHandler : configuration.getCapHandlers())
-				if (curCapHandler instanceof TLSCapHandler)
-					sslSocketFactory = ((TLSCapHandler) curCapHandler).getSslSocketFactory();
-			SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(
-					bot.getSocket(),
-					bot.getLocalAddress().getHostAddress(),
-					bot.getSocket().getPort(),
-					true);
-			sslSocket.startHandshake();
-			bot.changeSocket(sslSocket);
+			if (bot.selectorConnection != null) {
+				//Non-blocking connection, handshake is done by the SelectorEngine
+				SSLContext sslContext;
+				try {
+					sslContext = (configuration.getSslContext() != null) ? configuration.getSslContext() : SSLContext.getDefault();
+				} catch (NoSuchAlgorithmException e) {
+					throw new IOException("Cannot get default SSLContext", e);
+				}
+				bot.selectorConnection.startTls(sslContext.createSSLEngine(bot.getServerHostname(), bot.getServerPort()));
+			} else {
+				SSLSocketFactory sslSocketFactory = ((SSLSocketFactory) SSLSocketFactory.getDefault());
+				for (CapHandler curCapHandler : configuration.getCapHandlers())
+					if (curCapHandler instanceof TLSCapHandler)
+						sslSocketFactory = ((TLSCapHandler) curCapHandler).getSslSocketFactory();
+				SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(
+						bot.getSocket(),
+						bot.getLocalAddress().getHostAddress(),
+						bot.getSocket().getPort(),
+						true);
+				sslSocket.startHandshake();
+				bot.changeSocket(sslSocket);
+			}
 
 			//Notify CAP Handlers
 			for (CapHandler curCapHandler : configuration.getCapHandlers())
@@ -553,162 +1270,48 @@ public class InputParser implements Closeable {
 		}
 	}
 
+	/**
+	 * @deprecated Use {@link #processCommand(java.lang.String, org.pircbotx.UserHostmask, java.lang.String, org.pircbotx.IrcMessage, org.pircbotx.MessageTags)
+	 * }, parsedLine is ignored
+	 */
+	@Deprecated
 	public void processCommand(String target, UserHostmask source, String command, String line, List<String> parsedLine, ImmutableMap<String, String> tags) throws IOException {
+		processCommand(target, source, command, IrcMessage.parse(line), MessageTags.copyOf(tags));
+	}
+
+	/**
+	 * Process a command sent by a user
+	 *
+	 * @param target First parameter of the line without a leading :
+	 * @param source The user that sent the command
+	 * @param command The command in upper case
+	 * @param ircMessage The line without tags
+	 * @param tags Parsed IRCv3 tags
+	 */
+	public void processCommand(String target, UserHostmask source, String command, IrcMessage ircMessage, MessageTags tags) throws IOException {
+		CommandHandler handler = configuration.getCommandHandlers().get(command);
+		if (handler == null) {
+			// If we reach this point, then we've found something that the PircBotX
+			// Doesn't currently deal with. Nothing to update so skip looking up the source
+			Utils.dispatchEvent(bot, new UnknownEvent(bot, target, source.getNick(), command, ircMessage, tags));
+			return;
+		}
+
 		//If the channel matches a prefix, then its a channel
 		Channel channel = (target.length() != 0 && bot.getUserChannelDao().containsChannel(target))
 				? bot.getUserChannelDao().getChannel(target) : null;
-		String message = parsedLine.size() >= 2 ? parsedLine.get(1) : "";
 		//Try to load the source user if it exists
 		User sourceUser = bot.getUserChannelDao().containsUser(source) ? bot.getUserChannelDao().getUser(source) : null;
+		handler.handleCommand(this, bot, target, source, sourceUser, channel, ircMessage, tags);
+	}
 
-		// Check for CTCP requests.
-		if (command.equals("PRIVMSG") && message.startsWith("\u0001") && message.endsWith("\u0001")) {
-			sourceUser = createUserIfNull(sourceUser, source);
-			String request = message.substring(1, message.length() - 1);
-			if (request.equals("VERSION"))
-				// VERSION request
-				configuration.getListenerManager().onEvent(new VersionEvent(bot, source, sourceUser, channel));
-			else if (request.startsWith("ACTION "))
-				// ACTION request
-				configuration.getListenerManager().onEvent(new ActionEvent(bot, source, sourceUser, channel, target, request.substring(7), tags));
-			else if (request.startsWith("PING "))
-				// PING request
-				configuration.getListenerManager().onEvent(new PingEvent(bot, source, sourceUser, channel, request.substring(5)));
-			else if (request.equals("TIME"))
-				// TIME request
-				configuration.getListenerManager().onEvent(new TimeEvent(bot, channel, source, sourceUser));
-			else if (request.equals("FINGER"))
-				// FINGER request
-				configuration.getListenerManager().onEvent(new FingerEvent(bot, source, sourceUser, channel));
-			else if (request.startsWith("DCC ")) {
-				// This is a DCC request.
-				boolean success = bot.getDccHandler().processDcc(source, sourceUser, request);
-				if (!success)
-					// The DccManager didn't know what to do with the line.
-					configuration.getListenerManager().onEvent(new UnknownEvent(bot, target, source.getNick(), command, line, parsedLine, tags));
-			} else
-				// An unknown CTCP message - ignore it.
-				configuration.getListenerManager().onEvent(new UnknownEvent(bot, target, source.getNick(), command, line, parsedLine, tags));
-		} else if (command.equals("PRIVMSG") && channel != null) {
-			// This is a normal message to a channel.
-			sourceUser = createUserIfNull(sourceUser, source);
-			configuration.getListenerManager().onEvent(new MessageEvent(bot, channel, target, source, sourceUser, message, tags));
-		} else if (command.equals("PRIVMSG")) {
-			// This is a private message to us.
-			//Add to private message
-			sourceUser = createUserIfNull(sourceUser, source);
-			configuration.getListenerManager().onEvent(new PrivateMessageEvent(bot, source, sourceUser, message, tags));
-		} else if (command.equals("JOIN")) {
-			// Someone is joining a channel.
-			if (source.getNick().equalsIgnoreCase(bot.getNick())) {
-				//Its us, get channel info
-				channel = bot.getUserChannelDao().createChannel(target);
-				if (configuration.isOnJoinWhoEnabled())
-					bot.sendRaw().rawLine("WHO " + target);
-				if (configuration.isOnJoinModeEnabled())
-					bot.sendRaw().rawLine("MODE " + target);
-			}
-			//Create user if it doesn't exist already
-			sourceUser = createUserIfNull(sourceUser, source);
-
-			bot.getUserChannelDao().addUserToChannel(sourceUser, channel);
-			configuration.getListenerManager().onEvent(new JoinEvent(bot, channel, source, sourceUser, tags));
-		} else if (command.equals("PART")) {
-			// Someone is parting from a channel.
-			UserChannelDaoSnapshot daoSnapshot;
-			ChannelSnapshot channelSnapshot;
-			UserSnapshot sourceSnapshot;
-			if (configuration.isSnapshotsEnabled()) {
-				daoSnapshot = bot.getUserChannelDao().createSnapshot();
-				channelSnapshot = daoSnapshot.getChannel(channel.getName());
-				sourceSnapshot = daoSnapshot.getUser(source);
-			} else {
-				daoSnapshot = null;
-				channelSnapshot = null;
-				sourceSnapshot = null;
-			}
-
-			if (source.getNick().equalsIgnoreCase(bot.getNick()))
-				//We parted the channel
-				bot.getUserChannelDao().removeChannel(channel);
-			else
-				//Just remove the user from memory
-				bot.getUserChannelDao().removeUserFromChannel(sourceUser, channel);
-			configuration.getListenerManager().onEvent(new PartEvent(bot, daoSnapshot, channelSnapshot, channel.getName(), source, sourceSnapshot, message, tags));
-		} else if (command.equals("NICK")) {
-			// Somebody is changing their nick.
-			sourceUser = createUserIfNull(sourceUser, source);
-			String newNick = target;
-			bot.getUserChannelDao().renameUser(sourceUser, newNick);
-			if (source.getNick().equals(bot.getNick()))
-				// Update our nick if it was us that changed nick.
-				bot.setNick(newNick);
-			configuration.getListenerManager().onEvent(new NickChangeEvent(bot, source.getNick(), newNick, source, sourceUser, tags));
-		} else if (command.equals("NOTICE")) {
-			// Someone is sending a notice.
-			configuration.getListenerManager().onEvent(new NoticeEvent(bot, source, sourceUser, channel, target, message, tags));
-		} else if (command.equals("QUIT")) {
-			UserChannelDaoSnapshot daoSnapshot;
-			UserSnapshot sourceSnapshot;
-			if (configuration.isSnapshotsEnabled()) {
-				daoSnapshot = bot.getUserChannelDao().createSnapshot();
-				sourceSnapshot = daoSnapshot.getUser(sourceUser.getNick());
-			} else {
-				daoSnapshot = null;
-				sourceSnapshot = null;
-			}
-			//A real target is missing, so index is off
-			String reason = target;
-			// Someone has quit from the IRC server.
-			if (!source.getNick().equals(bot.getNick()))
-				//Someone else
-				bot.getUserChannelDao().removeUser(sourceUser);
-			configuration.getListenerManager().onEvent(new QuitEvent(bot, daoSnapshot, source, sourceSnapshot, reason, tags));
-		} else if (command.equals("KICK")) {
-			// Somebody has been kicked from a channel.
-			UserHostmask recipientHostmask = bot.getConfiguration().getBotFactory().createUserHostmask(bot, message);
-			User recipient = bot.getUserChannelDao().getUser(message);
-
-			if (recipient.getNick().equals(bot.getNick()))
-				//We were just kicked
-				bot.getUserChannelDao().removeChannel(channel);
-			else
-				//Someone else
-				bot.getUserChannelDao().removeUserFromChannel(recipient, channel);
-			configuration.getListenerManager().onEvent(new KickEvent(bot, channel, source, sourceUser, recipientHostmask, recipient, parsedLine.get(2), tags));
-		} else if (command.equals("MODE")) {
-			// Somebody is changing the mode on a channel or user (Use long form since mode isn't after a : )
-			String mode = line.substring(line.indexOf(target, 2) + target.length() + 1);
-			if (mode.startsWith(":"))
-				mode = mode.substring(1);
-			//TODO: ummm... what does this do?
-			//Handle situations where source doesn't have a full username (IE server setting user mode on connect)
-			//User sourceModeUser = sourceUser;
-			//if (sourceModeUser == null)
-			//	sourceModeUser = bot.getUserChannelDao().getUser(source);
-			processMode(source, sourceUser, target, mode, tags);
-		} else if (command.equals("TOPIC")) {
-			// Someone is changing the topic.
-			long currentTime = System.currentTimeMillis();
-			String oldTopic = channel.getTopic();
-			channel.setTopic(message);
-			channel.setTopicSetter(source);
-			channel.setTopicTimestamp(currentTime);
-
-			configuration.getListenerManager().onEvent(new TopicEvent(bot, channel, oldTopic, message, source, currentTime, true, tags));
-		} else if (command.equals("INVITE")) {
-			// Somebody is inviting somebody else into a channel.
-			configuration.getListenerManager().onEvent(new InviteEvent(bot, source, sourceUser, message));
-		} else if (command.equals("AWAY"))
-			//IRCv3 AWAY notify
-			if (parsedLine.isEmpty())
-				sourceUser.setAwayMessage("");
-			else
-				sourceUser.setAwayMessage(parsedLine.get(0));
-		else
-			// If we reach this point, then we've found something that the PircBotX
-			// Doesn't currently deal with.
-			configuration.getListenerManager().onEvent(new UnknownEvent(bot, target, source.getNick(), command, line, parsedLine, tags));
+	/**
+	 * @deprecated Use {@link #processServerResponse(int, org.pircbotx.IrcMessage)
+	 * }, parsedResponseOrig is ignored
+	 */
+	@Deprecated
+	public void processServerResponse(int code, String rawResponse, List<String> parsedResponseOrig) {
+		processServerResponse(code, IrcMessage.parse(rawResponse));
 	}
 
 	/**
@@ -721,361 +1324,14 @@ public class InputParser implements Closeable {
 	 * javadoc generated documentation.
 	 *
 	 * @param code The three-digit numerical code for the response.
+	 * @param message The line without tags
 	 */
-	public void processServerResponse(int code, String rawResponse, List<String> parsedResponseOrig) {
-		ImmutableList<String> parsedResponse = ImmutableList.copyOf(parsedResponseOrig);
-		//Parsed response format: Everything after code
-		if (code == 433) {
-			//EXAMPLE: * AnAlreadyUsedName :Nickname already in use
-			//EXAMPLE: AnAlreadyUsedName :Nickname already in use (spec)
-			//TODO: When output parsing is implemented intercept outgoing NICK?
-			//Nickname in use, rename
-			boolean autoNickChange = configuration.isAutoNickChange();
-			String autoNewNick = null;
-			String usedNick;
-
-			boolean doAutoNickChange = false;
-			//Ignore cases where we already have a valid nick but changed to a used one
-			if (parsedResponse.size() == 3) {
-				usedNick = parsedResponse.get(1);
-				if (parsedResponse.get(0).equals("*")) {
-					doAutoNickChange = true;
-				}
-			} //For spec-compilant servers, if were not logged in its safe to assume we don't have a valid nick on connect
-			else {
-				usedNick = parsedResponse.get(0);
-				if (!bot.loggedIn) {
-					doAutoNickChange = true;
-				}
-			}
-
-			if (autoNickChange && doAutoNickChange) {
-				nickSuffix++;
-				autoNewNick = configuration.getName() + nickSuffix;
-				bot.sendIRC().changeNick(autoNewNick);
-				bot.setNick(autoNewNick);
-				bot.getUserChannelDao().renameUser(bot.getUserChannelDao().getUser(usedNick), autoNewNick);
-			}
-
-			configuration.getListenerManager().onEvent(new NickAlreadyInUseEvent(bot, usedNick, autoNewNick, autoNickChange));
-		} else if (code == RPL_LISTSTART) {
-			//EXAMPLE: 321 Channel :Users Name (actual text)
-			//A channel list is about to be sent
-			channelListBuilder = ImmutableList.builder();
-			channelListRunning = true;
-		} else if (code == RPL_LIST) {
-			//This is part of a full channel listing as part of /LIST
-			//EXAMPLE: 322 lordquackstar #xomb 12 :xomb exokernel project @ www.xomb.org
-			String channel = parsedResponse.get(1);
-			int userCount = Utils.tryParseInt(parsedResponse.get(2), -1);
-			String topic = parsedResponse.get(3);
-			channelListBuilder.add(new ChannelListEntry(channel, userCount, topic));
-		} else if (code == RPL_LISTEND) {
-			//EXAMPLE: 323 :End of /LIST
-			//End of channel list, dispatch event
-			configuration.getListenerManager().onEvent(new ChannelInfoEvent(bot, channelListBuilder.build()));
-			channelListBuilder = null;
-			channelListRunning = false;
-		} else if (code == RPL_TOPIC) {
-			//EXAMPLE: 332 PircBotX #aChannel :I'm some random topic
-			//This is topic about a channel we've just joined. From /JOIN or /TOPIC
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			String topic = parsedResponse.get(2);
-
-			channel.setTopic(topic);
-		} else if (code == RPL_TOPICINFO) {
-			//EXAMPLE: 333 PircBotX #aChannel ISetTopic 1564842512
-			//This is information on the topic of the channel we've just joined. From /JOIN or /TOPIC
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			UserHostmask setBy = configuration.getBotFactory().createUserHostmask(bot, parsedResponse.get(2));
-			long date = Utils.tryParseLong(parsedResponse.get(3), -1);
-
-			channel.setTopicTimestamp(date * 1000);
-			channel.setTopicSetter(setBy);
-
-			configuration.getListenerManager().onEvent(new TopicEvent(bot, channel, null, channel.getTopic(), setBy, date, false, ImmutableMap.of()));
-		} else if (code == RPL_WHOREPLY) {
-			//EXAMPLE: 352 PircBotX #aChannel ~someName 74.56.56.56.my.Hostmask wolfe.freenode.net someNick H :0 Full Name
-			//Part of a WHO reply on information on individual users
-			
-			String channelName = parsedResponse.get(1);
-			Channel channel = bot.getUserChannelDao().containsChannel(channelName) ? bot.getUserChannelDao().getChannel(channelName) : new Channel(bot, channelName);
-
-			//Setup user
-			
-			String login = parsedResponse.get(2);
-			String userHost = parsedResponse.get(3);
-			String serverName = parsedResponse.get(4);
-			String nick = parsedResponse.get(5);
-			String rawFlags = parsedResponse.get(6);
-
-			UserHostmask curUserHostmask = bot.getConfiguration()
-					.getBotFactory()
-					.createUserHostmask(bot, null, nick, login, userHost);
-			User curUser = bot.getUserChannelDao().containsUser(nick) ? bot.getUserChannelDao().getUser(nick) : bot.getConfiguration()
-					.getBotFactory()
-					.createUser(curUserHostmask);
-			curUser.updateHostmask(curUserHostmask);
-
-			
-			
-			curUser.setServer(serverName);
-			processUserStatus(channel, curUser, rawFlags);
-			//Extra parsing needed since tokenizer stopped at :
-			String rawEnding = parsedResponse.get(7);
-			int rawEndingSpaceIndex = rawEnding.indexOf(' ');
-			
-			int hops;
-			String realName;
-			if (rawEndingSpaceIndex == -1) {
-				//parsedResponse data is trimmed, so if the index == -1, then there was no real name given and the space separating hops from real name was trimmed.
-				hops = Integer.parseInt(rawEnding);
-				realName = "";
-			} else {
-				//parsedResponse data contains a real name
-				hops =  Integer.parseInt(rawEnding.substring(0, rawEndingSpaceIndex));
-				realName = rawEnding.substring(rawEndingSpaceIndex + 1);
-			}
-			
-			curUser.setHops(hops);
-			curUser.setRealName(realName);
-			
-			
-			if (whoListBuilder == null) {
-				whoListBuilder = new ImmutableList.Builder<User>();
-			}
-			whoListBuilder.add(curUser);
-
-			//Associate with channel
-			if (bot.getUserChannelDao().containsChannel(channelName)) {
-				bot.getUserChannelDao().addUserToChannel(curUser, channel);
-			}
-		} else if (code == RPL_ENDOFWHO) {
-			//EXAMPLE: 315 PircBotX #aChannel :End of /WHO list
-			//End of the WHO reply
-			
-						
-			String query = parsedResponse.get(1);
-			Channel channel = bot.getUserChannelDao().containsChannel(query) ? bot.getUserChannelDao().getChannel(query) : new Channel(bot, query);
-			configuration.getListenerManager().onEvent(new UserListEvent(bot, channel, bot.getUserChannelDao().getUsers(channel), true));
-			configuration.getListenerManager().onEvent(new WhoEvent(bot, query, whoListBuilder != null ? whoListBuilder.build() : ImmutableList.of() ));
-			
-			whoListBuilder = null;
-			
-			
-		} else if (code == RPL_CHANNELMODEIS) {
-			//EXAMPLE: 324 PircBotX #aChannel +cnt
-			//Full channel mode (In response to MODE <channel>)
-			String channelName = parsedResponse.get(1);
-			Channel channel = bot.getUserChannelDao().containsChannel(channelName) ? bot.getUserChannelDao().getChannel(channelName) : new Channel(bot, channelName);
-			ImmutableList<String> modeParsed = parsedResponse.subList(2, parsedResponse.size());
-			String mode = StringUtils.join(modeParsed, ' ');
-
-			channel.setMode(mode, modeParsed);
-			configuration.getListenerManager().onEvent(new ModeEvent(bot, channel, null, null, mode, modeParsed, ImmutableMap.of()));
-		} else if (code == 329) {
-			//EXAMPLE: 329 lordquackstar #botters 1199140245
-			//Tells when channel was created. From /JOIN
-			String channelName = parsedResponse.get(1);
-			Channel channel = bot.getUserChannelDao().containsChannel(channelName) ? bot.getUserChannelDao().getChannel(channelName) : new Channel(bot, channelName);
-			int createDate = Utils.tryParseInt(parsedResponse.get(2), -1);
-
-			//Set in channel
-			channel.setCreateTimestamp(createDate);
-		} else if (code == RPL_MOTDSTART)
-			//Example: 375 PircBotX :- wolfe.freenode.net Message of the Day -
-			//Motd is starting, reset the StringBuilder
-			motdBuilder = new StringBuilder();
-		else if (code == RPL_MOTD) {
-			//Example: 372 PircBotX :- Welcome to wolfe.freenode.net in Manchester, England, Uk!  Thanks to
-			//This is part of the MOTD, aidd a new line
-			if (StringUtils.isNotBlank(parsedResponse.get(1))) {
-				motdBuilder.append(CharMatcher.whitespace().trimFrom(parsedResponse.get(1).substring(1))).append('\n');
-			} else {
-				motdBuilder.append('\n');
-			}
-		} else if (code == RPL_ENDOFMOTD) {
-			//Example: PircBotX :End of /MOTD command.
-			//End of MOTD, clean it and dispatch MotdEvent
-			ServerInfo serverInfo = bot.getServerInfo();
-			serverInfo.setMotd(motdBuilder.toString().trim());
-			motdBuilder = null;
-			configuration.getListenerManager().onEvent(new MotdEvent(bot, serverInfo.getMotd()));
-		} else if (code == 4 || code == 5) {
-			//Example: 004 PircBotX sendak.freenode.net ircd-seven-1.1.3 DOQRSZaghilopswz CFILMPQbcefgijklmnopqrstvz bkloveqjfI
-			//Server info line, remove ending comment and let ServerInfo class parse it
-			int endCommentIndex = rawResponse.lastIndexOf(" :");
-			if (endCommentIndex > 1) {
-				String endComment = rawResponse.substring(endCommentIndex + 2);
-				int lastIndex = parsedResponseOrig.size() - 1;
-				if (endComment.equals(parsedResponseOrig.get(lastIndex)))
-					parsedResponseOrig.remove(lastIndex);
-			}
-			bot.getServerInfo().parse(code, parsedResponseOrig);
-		} else if (code == RPL_WHOISUSER) {
-			//Example: 311 TheLQ Plazma ~Plazma freenode/staff/plazma * :Plazma Rooolz!
-			//New whois is starting
-			String whoisNick = parsedResponse.get(1);
-
-			WhoisEvent.Builder builder = WhoisEvent.builder();
-			builder.nick(whoisNick);
-			builder.login(parsedResponse.get(2));
-			builder.hostname(parsedResponse.get(3));
-			builder.realname(parsedResponse.get(5));
-			whoisBuilder.put(whoisNick, builder);
-		} else if (code == RPL_AWAY) {
-			//Example: 301 PircBotXUser TheLQ_ :I'm away, sorry
-			//Can be sent during whois
-			String nick = parsedResponse.get(1);
-			String awayMessage = parsedResponse.get(2);
-			if (bot.getUserChannelDao().containsUser(nick))
-				bot.getUserChannelDao().getUser(nick).setAwayMessage(awayMessage);
-			if (whoisBuilder.containsKey(nick))
-				whoisBuilder.get(nick).awayMessage(awayMessage);
-		} else if (code == RPL_WHOISCHANNELS) {
-			//Example: 319 TheLQ Plazma :+#freenode
-			//Channel list from whois. Re-tokenize since they're after the :
-			String whoisNick = parsedResponse.get(1);
-			ImmutableList<String> parsedChannels = ImmutableList.copyOf(Utils.tokenizeLine(parsedResponse.get(2)));
-
-			whoisBuilder.get(whoisNick).channels(parsedChannels);
-		} else if (code == RPL_WHOISSERVER) {
-			//Server info from whois
-			//312 TheLQ Plazma leguin.freenode.net :Ume?, SE, EU
-			String whoisNick = parsedResponse.get(1);
-
-			whoisBuilder.get(whoisNick).server(parsedResponse.get(2));
-			whoisBuilder.get(whoisNick).serverInfo(parsedResponse.get(3));
-		} else if (code == RPL_WHOISIDLE) {
-			//Idle time from whois
-			//317 TheLQ md_5 6077 1347373349 :seconds idle, signon time
-			String whoisNick = parsedResponse.get(1);
-
-			whoisBuilder.get(whoisNick).idleSeconds(Long.parseLong(parsedResponse.get(2)));
-			whoisBuilder.get(whoisNick).signOnTime(Long.parseLong(parsedResponse.get(3)));
-		} else if (code == 330) {
-			//RPL_WHOISACCOUNT: Extra Whois info
-			//330 TheLQ Utoxin Utoxin :is logged in as
-			//Make sure we set registered as to the nick, not to the note after the colon
-			String registeredNick = "";
-			if (!rawResponse.endsWith(":" + parsedResponse.get(2)))
-				registeredNick = parsedResponse.get(2);
-			whoisBuilder.get(parsedResponse.get(1)).registeredAs(registeredNick);
-		} else if (code == 307) {
-			//If shown, tells us that the user is registered with nickserv
-			//307 TheLQ TheLQ-PircBotX :has identified for this nick
-			whoisBuilder.get(parsedResponse.get(1)).registeredAs("");
-		} else if (code == ERR_NOSUCHSERVER) {
-			//Whois failed when doing "WHOIS invaliduser invaliduser"
-			//402 TheLQ asdfasdf :No such server
-			String whoisNick = parsedResponse.get(1);
-			WhoisEvent event = WhoisEvent.builder()
-					.nick(whoisNick)
-					.exists(false)
-					.generateEvent(bot);
-			configuration.getListenerManager().onEvent(event);
-		} else if (code == RPL_WHOIS_SECURE) {
-			//If present, tells us that the user is using a secure connection
-			//671 TheLQ TheLQ-PircBotX :is using a secure connection
-			whoisBuilder.get(parsedResponse.get(1)).secureConnection(true);
-		} else if (code == RPL_WHOISOPERATOR) {
-			//If present, tells us that the user is using a irc operator
-			//313 TheLQ TheLQ-PircBotX :is a IRCop
-			String nick = parsedResponse.get(1);
-			if (bot.getUserChannelDao().containsUser(nick)) {
-				bot.getUserChannelDao().getUser(nick).setIrcop(true);
-			}
-			whoisBuilder.get(nick).ircOp(true);
-		
-		} else if (code == RPL_ENDOFWHOIS) {
-			//End of whois
-			//318 TheLQ Plazma :End of /WHOIS list.
-			String whoisNick = parsedResponse.get(1);
-			WhoisEvent.Builder builder;
-			if (whoisBuilder.containsKey(whoisNick)) {
-				builder = whoisBuilder.get(whoisNick);
-				builder.exists(true);
-			} else {
-				builder = WhoisEvent.builder();
-				builder.nick(whoisNick);
-				builder.exists(false);
-			}
-			configuration.getListenerManager().onEvent(builder.generateEvent(bot));
-			whoisBuilder.remove(whoisNick);
-		} else if (code == 367) {
-			//Ban list entry
-			//367 TheLQ #aChannel *!*@test1.host TheLQ!~quackstar@some.host 1415143822
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-
-			UserHostmask recipient = bot.getConfiguration().getBotFactory().createUserHostmask(bot, parsedResponse.get(2));
-			UserHostmask source = bot.getConfiguration().getBotFactory().createUserHostmask(bot, parsedResponse.get(3));
-			long time = Long.parseLong(parsedResponse.get(4));
-			banListBuilder.put(channel, new BanListEvent.Entry(recipient, source, time));
-			log.debug("Adding entry");
-		} else if (code == 368) {
-			//Ban list is finished
-			//368 TheLQ #aChannel :End of Channel Ban List
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			ImmutableList<BanListEvent.Entry> entries = ImmutableList.copyOf(banListBuilder.removeAll(channel));
-			log.debug("Dispatching event");
-			configuration.getListenerManager().onEvent(new BanListEvent(bot, channel, entries));
-		} else if (code == RPL_NAMREPLY) {
-			//NAMES response
-			//353 PircBotXUser = #aChannel :aUser1 aUser2
-			for (String curUser : StringUtils.split(parsedResponse.get(3))) {
-				//Siphon off any levels this user has
-				String nick = curUser;
-				List<UserLevel> levels = new ArrayList<>();
-				UserLevel parsedLevel;
-				while ((parsedLevel = UserLevel.fromSymbol(nick.charAt(0))) != null) {
-					nick = nick.substring(1);
-					levels.add(parsedLevel);
-				}
-
-				User user;
-				if (!bot.getUserChannelDao().containsUser(nick))
-					//Create user with nick only
-					user = bot.getUserChannelDao().createUser(new UserHostmask(bot, nick));
-				else
-					user = bot.getUserChannelDao().getUser(nick);
-				Channel chan = bot.getUserChannelDao().getChannel(parsedResponse.get(2));
-				bot.getUserChannelDao().addUserToChannel(user, chan);
-
-				//Now that the user is created, add them to the appropiate levels
-				for (UserLevel curLevel : levels) {
-					bot.getUserChannelDao().addUserToLevel(curLevel, user, chan);
-				}
-			}
-		} else if (code == RPL_ENDOFNAMES) {
-			//NAMES response finished
-			//366 PircBotXUser #aChannel :End of /NAMES list.			
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));			
-			configuration.getListenerManager().onEvent(new UserListEvent(bot, channel, bot.getUserChannelDao().getUsers(channel), false));
-		} else if (code == RPL_YOUREOPER) {
-			//OPER success response
-			//381 PircBotXUser :You are now an IRCOp
-			configuration.getListenerManager().onEvent(new OperSuccessEvent(bot) );	
-		} else if (code == ERR_NOOPERHOST) {
-			//OPER failed response
-			//491 PircBotXUser :Invalid oper credentials
-			configuration.getListenerManager().onEvent(new OperFailedEvent(bot) );
-		} else if (code == 728) {
-			//Quiet list entry
-      //728 TheLQ #aChannel q *!*@test1.host TheLQ!~quackstar@some.host 162602897
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-
-			UserHostmask recipient = bot.getConfiguration().getBotFactory().createUserHostmask(bot, parsedResponse.get(3));
-			UserHostmask source = bot.getConfiguration().getBotFactory().createUserHostmask(bot, parsedResponse.get(4));
-			long time = Long.parseLong(parsedResponse.get(5));
-			quietListBuilder.put(channel, new QuietListEvent.Entry(recipient, source, time));
-		} else if (code == 729) {
-			//Quiet list is finished
-      //729 TheLQ #aChannel q :End of Channel Quiet List
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			ImmutableList<QuietListEvent.Entry> entries = ImmutableList.copyOf(quietListBuilder.removeAll(channel));
-			configuration.getListenerManager().onEvent(new QuietListEvent(bot, channel, entries));
-    }
-		configuration.getListenerManager().onEvent(new ServerResponseEvent(bot, code, rawResponse, parsedResponse));
+	public void processServerResponse(int code, IrcMessage message) {
+		ServerResponseHandler handler = code >= 0 && code < serverResponseHandlers.length ? serverResponseHandlers[code] : null;
+		if (handler != null)
+			handler.handleResponse(this, bot, message);
+		if (configuration.getListenerManager().hasListeners(ServerResponseEvent.class))
+			Utils.dispatchEvent(bot, new ServerResponseEvent(bot, message));
 	}
 
 	/**
@@ -1089,7 +1345,7 @@ public class InputParser implements Closeable {
 	 * @param target The channel or nick that the mode operation applies to.
 	 * @param mode The mode that has been set.
 	 */
-	public void processMode(UserHostmask userHostmask, User user, String target, String mode, ImmutableMap<String, String> tags) {
+	public void processMode(UserHostmask userHostmask, User user, String target, String mode, MessageTags tags) {
 		if (configuration.getChannelPrefixes().indexOf(target.charAt(0)) >= 0) {
 			// The mode of a channel is being changed.
 			Channel channel = bot.getUserChannelDao().getChannel(target);
@@ -1112,21 +1368,22 @@ public class InputParser implements Closeable {
 						modeHandler.handleMode(bot, channel, userHostmask, user, params, adding, true);
 				}
 			}
-			configuration.getListenerManager().onEvent(new ModeEvent(bot, channel, userHostmask, user, mode, modeParsed, tags));
+			Utils.dispatchEvent(bot, new ModeEvent(bot, channel, userHostmask, user, mode, modeParsed, tags));
 		} else {
 			// The mode of a user is being changed.
-			UserHostmask targetHostmask = bot.getConfiguration().getBotFactory().createUserHostmask(bot, target);
+			UserHostmask targetHostmask = bot.getUserHostmaskCache().get(target);
 			User targetUser = bot.getUserChannelDao().getUser(target);
-			configuration.getListenerManager().onEvent(new UserModeEvent(bot, userHostmask, user, targetHostmask, targetUser, mode, tags));
+			Utils.dispatchEvent(bot, new UserModeEvent(bot, userHostmask, user, targetHostmask, targetUser, mode, tags));
 		}
 	}
 
 	public void processUserStatus(Channel chan, User user, String prefix) {
-		for (char prefixChar : prefix.toCharArray()) {
-			UserLevel level = UserLevel.fromSymbol(prefixChar);
-			if (level != null)
-				bot.getUserChannelDao().addUserToLevel(level, user, chan);
-		}
+		if (chan != null)
+			for (char prefixChar : prefix.toCharArray()) {
+				UserLevel level = UserLevel.fromSymbol(prefixChar);
+				if (level != null)
+					bot.getUserChannelDao().addUserToLevel(level, user, chan);
+			}
 		//Assume here (H) if there is no G
 		user.setAwayMessage(prefix.contains("G") ? "" : null);
 		user.setIrcop(prefix.contains("*"));
@@ -1152,6 +1409,8 @@ public class InputParser implements Closeable {
 		motdBuilder = null;
 		channelListRunning = false;
 		channelListBuilder = null;
+		bot.getUserHostmaskCache().invalidateAll();
+		bot.getQueryCache().invalidateAll();
 	}
 
 	protected static abstract class OpChannelModeHandler extends ChannelModeHandler {
@@ -1168,7 +1427,7 @@ public class InputParser implements Closeable {
 			if (recipient.startsWith(":"))
 				recipient = recipient.substring(1);
 			
-			UserHostmask recipientHostmask = bot.getConfiguration().getBotFactory().createUserHostmask(bot, recipient);
+			UserHostmask recipientHostmask = bot.getUserHostmaskCache().get(recipient);
 			User recipientUser = null;
 			if (bot.getUserChannelDao().containsUser(recipient)) {
 				recipientUser = bot.getUserChannelDao().getUser(recipient);
@@ -1184,4 +1443,29 @@ public class InputParser implements Closeable {
 
 		public abstract void dispatchEvent(PircBotX bot, Channel channel, UserHostmask sourceHostmask, User sourceUser, UserHostmask recipientHostmask, User recipientUser, boolean adding);
 	}
+
+	/**
+	 * 004 RPL_MYINFO and 005 RPL_ISUPPORT
+	 */
+	protected static class ServerInfoResponseHandler extends ServerResponseHandler {
+		public ServerInfoResponseHandler(int code) {
+			super(code);
+		}
+
+		@Override
+		public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+			String rawResponse = message.getBody();
+			//Example: 004 PircBotX sendak.freenode.net ircd-seven-1.1.3 DOQRSZaghilopswz CFILMPQbcefgijklmnopqrstvz bkloveqjfI
+			//Server info line, remove ending comment and let ServerInfo class parse it
+			List<String> serverInfoParams = message.getParams();
+			int endCommentIndex = rawResponse.lastIndexOf(" :");
+			if (endCommentIndex > 1) {
+				String endComment = rawResponse.substring(endCommentIndex + 2);
+				int lastIndex = message.getParamCount() - 1;
+				if (endComment.equals(message.getParam(lastIndex)))
+					serverInfoParams = serverInfoParams.subList(0, lastIndex);
+			}
+			bot.getServerInfo().parse(code, serverInfoParams);
+		}
+	}
 }
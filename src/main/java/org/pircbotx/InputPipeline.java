@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.InterruptedIOException;
+
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.events.ExceptionEvent;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Processes the lines of a bot's connection in 3 stages, each on its own
+ * thread, instead of reading, parsing and dispatching every line on the bot's
+ * thread. Enabled with {@link Configuration#getInputPipelineCapacity() }.
+ * <ol>
+ * <li>The reader thread reads and decodes lines from the socket and parses
+ * them into {@link IrcMessage}s, including their tags.</li>
+ * <li>The bot's thread applies each message in order with the
+ * {@link InputParser}, the only thread changing the bot's state.</li>
+ * <li>The dispatch thread passes the events the bot's thread created to the
+ * {@link org.pircbotx.hooks.managers.ListenerManager}, in order.</li>
+ * </ol>
+ * Stages are connected by bounded queues holding up to the configured
+ * capacity. A stage waits when the next one falls behind, so a slow listener
+ * eventually stops the bot from reading like it does without the pipeline.
+ * <p>
+ * Unlike dispatching on the bot's thread, state may have already changed for
+ * later lines by the time a listener receives an event, as with the
+ * {@link org.pircbotx.hooks.managers.ThreadedListenerManager}. Use the
+ * snapshots in events when this matters. Events dispatched by other threads
+ * (eg {@link org.pircbotx.hooks.events.OutputEvent}) skip the dispatch
+ * thread.
+ */
+@Slf4j
+public class InputPipeline {
+	protected final PircBotX bot;
+	protected final SpscQueue<IrcMessage> messages;
+	protected final SpscQueue<Event> events;
+	/**
+	 * Thread running {@link #run() }, events it dispatches go through the
+	 * dispatch thread
+	 */
+	@Getter
+	protected volatile Thread applyThread;
+	protected Thread readerThread;
+	protected Thread dispatchThread;
+	/**
+	 * Set once the bot's thread stops taking lines
+	 */
+	protected volatile boolean stopped;
+	/**
+	 * Exception that ended reading, handled on the bot's thread after the
+	 * lines read before it
+	 */
+	protected volatile Exception readException;
+
+	/**
+	 * @param capacity Lines and events each queue can hold, rounded up to a
+	 * power of 2
+	 */
+	public InputPipeline(@NonNull PircBotX bot, int capacity) {
+		this.bot = bot;
+		this.messages = new SpscQueue<IrcMessage>(capacity);
+		this.events = new SpscQueue<Event>(capacity);
+	}
+
+	/**
+	 * Start the reader and dispatch threads and apply lines on the calling
+	 * thread until the connection is closed or the thread is interrupted.
+	 * Every event is dispatched before returning.
+	 */
+	public void run() {
+		applyThread = Thread.currentThread();
+		readerThread = VirtualThreads.start(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		}, "bot" + bot.getBotId() + "-input-reader", true);
+		dispatchThread = VirtualThreads.start(new Runnable() {
+			@Override
+			public void run() {
+				dispatchEvents();
+			}
+		}, "bot" + bot.getBotId() + "-input-dispatch", true);
+
+		try {
+			IrcMessage message;
+			while ((message = messages.take()) != null) {
+				bot.processMessage(message);
+
+				if (Thread.interrupted()) {
+					log.error("--- PircBotX interrupted during parsing, aborting reconnect loop and shutting down ---");
+					bot.stopBotReconnect();
+					return;
+				}
+			}
+
+			Exception exception = readException;
+			if (exception != null) {
+				bot.disconnectException = exception;
+				//Something is wrong. Assume its bad and begin disconnect
+				String debug = "Exception encountered when reading next line from server";
+				log.error(debug, exception);
+				Utils.dispatchEvent(bot, new ExceptionEvent(bot, exception, debug));
+			}
+		} catch (InterruptedException e) {
+			log.error("--- PircBotX interrupted during read, aborting reconnect loop and shutting down ---");
+			bot.stopBotReconnect();
+		} finally {
+			stopped = true;
+			//Stop the reader if it's waiting for room, the socket is closed on shutdown
+			readerThread.interrupt();
+			applyThread = null;
+			events.close();
+			Uninterruptibles.joinUninterruptibly(dispatchThread);
+		}
+	}
+
+	/**
+	 * Stage 1: read and parse lines until the connection is closed
+	 */
+	protected void read() {
+		try {
+			while (!stopped) {
+				String line;
+				try {
+					line = bot.readLine();
+				} catch (InterruptedIOException iioe) {
+					if (stopped)
+						break;
+					// This will happen if we haven't received anything from the server for a while.
+					// So we shall send it a ping to check that we are still connected.
+					bot.sendRaw().rawLine("PING " + (System.currentTimeMillis() / 1000));
+					continue;
+				} catch (Exception e) {
+					if (!stopped && !bot.getSocket().isClosed())
+						readException = e;
+					break;
+				}
+				if (line == null)
+					break;
+
+				IrcMessage message = IrcMessage.parse(line);
+				prepare(message);
+				messages.put(message);
+			}
+		} catch (InterruptedException e) {
+			//Bot's thread stopped
+		} finally {
+			messages.close();
+		}
+	}
+
+	/**
+	 * Create the parts of the message the {@link InputParser} uses, so the
+	 * bot's thread doesn't have to
+	 */
+	protected void prepare(IrcMessage message) {
+		message.getBody();
+		message.getCommand();
+		message.getParams();
+		if (message.hasSource())
+			message.getSource();
+		//Indexes the tags
+		if (message.hasTags())
+			message.getTags().isEmpty();
+	}
+
+	/**
+	 * Stage 3: dispatch events until the bot's thread stops
+	 */
+	protected void dispatchEvents() {
+		try {
+			Event event;
+			while ((event = events.take()) != null)
+				try {
+					bot.getConfiguration().getListenerManager().onEvent(event);
+				} catch (Exception e) {
+					log.error("Exception dispatching event " + event, e);
+				}
+		} catch (InterruptedException e) {
+			log.error("Dispatch thread interrupted, dropping remaining events", e);
+		}
+	}
+
+	/**
+	 * Queue an event for the dispatch thread if called from the bot's thread
+	 *
+	 * @return False if the event wasn't queued and should be dispatched by
+	 * the caller
+	 */
+	public boolean dispatch(@NonNull Event event) {
+		if (Thread.currentThread() != applyThread)
+			return false;
+		try {
+			events.put(event);
+			return true;
+		} catch (InterruptedException e) {
+			//Stops the bot's thread after the current line
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @return Lines read but not yet applied
+	 */
+	public int getQueuedLines() {
+		return messages.size();
+	}
+
+	/**
+	 * @return Events created but not yet dispatched
+	 */
+	public int getQueuedEvents() {
+		return events.size();
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.Arrays;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+
+import lombok.NonNull;
+
+/**
+ * A line from the server split into IRCv3 tags, source, command and
+ * parameters. Parsing only records where each part starts and ends in the
+ * original line, Strings are created the first time a part is requested.
+ * <p>
+ * Parameters are split the same way as
+ * {@link Utils#tokenizeLine(java.lang.String) }: by single spaces, with
+ * everything after a parameter starting with : being the last parameter (with
+ * the : removed).
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class IrcMessage {
+	private static final int[] NO_OFFSETS = new int[0];
+	private final String line;
+	/**
+	 * Start of the line after the tags, 0 if there are no tags
+	 */
+	private final int bodyStart;
+	private final boolean hasTags;
+	private final boolean hasSource;
+	/**
+	 * Start and end pairs of each token in the body: the source (if any), the
+	 * command, then the parameters
+	 */
+	private final int[] offsets;
+	private final int tokenCount;
+	private final int commandToken;
+	private String body;
+	private String source;
+	private String command;
+	private String[] params;
+	private ImmutableList<String> paramList;
+	private MessageTags tags;
+
+	private IrcMessage(String line, int bodyStart, boolean hasTags, int[] offsets, int tokenCount) {
+		this.line = line;
+		this.bodyStart = bodyStart;
+		this.hasTags = hasTags;
+		this.offsets = offsets;
+		this.tokenCount = tokenCount;
+		this.hasSource = tokenCount > 0 && line.charAt(offsets[0]) == ':';
+		this.commandToken = hasSource ? 1 : 0;
+	}
+
+	/**
+	 * Record the offsets of each part of the line. Does not create any
+	 * Strings.
+	 *
+	 * @param line A line from the server without line ending or surrounding
+	 * whitespace
+	 */
+	public static IrcMessage parse(@NonNull String line) {
+		int length = line.length();
+		int pos = 0;
+		boolean hasTags = false;
+		if (length > 0 && line.charAt(0) == '@') {
+			hasTags = true;
+			int tagsEnd = line.indexOf(' ');
+			pos = tagsEnd == -1 ? length : tagsEnd + 1;
+			while (pos < length && CharMatcher.whitespace().matches(line.charAt(pos)))
+				pos++;
+		}
+		int bodyStart = pos;
+		if (pos == length)
+			return new IrcMessage(line, bodyStart, hasTags, NO_OFFSETS, 0);
+
+		//Same split as Utils.tokenizeLine
+		//Room for a source, command and 15 params (the RFC 1459 max) before growing
+		int[] offsets = new int[34];
+		int tokenCount = 0;
+		int end;
+		while (true) {
+			if (tokenCount * 2 == offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			if (tokenCount != 0 && line.charAt(pos) == ':') {
+				offsets[tokenCount * 2] = pos + 1;
+				offsets[tokenCount * 2 + 1] = length;
+				tokenCount++;
+				break;
+			}
+			end = line.indexOf(' ', pos);
+			offsets[tokenCount * 2] = pos;
+			offsets[tokenCount * 2 + 1] = end == -1 ? length : end;
+			tokenCount++;
+			if (end == -1 || end + 1 == length)
+				break;
+			pos = end + 1;
+		}
+		return new IrcMessage(line, bodyStart, hasTags, offsets, tokenCount);
+	}
+
+	/**
+	 * The full line as received, including tags
+	 */
+	public String getLine() {
+		return line;
+	}
+
+	/**
+	 * The line without IRCv3 tags
+	 */
+	public String getBody() {
+		if (body == null)
+			body = bodyStart == 0 ? line : line.substring(bodyStart);
+		return body;
+	}
+
+	public boolean hasTags() {
+		return hasTags;
+	}
+
+	/**
+	 * The unparsed IRCv3 tags without the leading @
+	 *
+	 * @return The tags or an empty string if there are none
+	 */
+	public String getRawTags() {
+		if (!hasTags)
+			return "";
+		int tagsEnd = line.indexOf(' ');
+		return line.substring(1, tagsEnd == -1 ? line.length() : tagsEnd);
+	}
+
+	/**
+	 * The IRCv3 tags, parsed when first accessed
+	 *
+	 * @return The tags or {@link MessageTags#EMPTY} if there are none
+	 */
+	public MessageTags getTags() {
+		if (!hasTags)
+			return MessageTags.EMPTY;
+		MessageTags result = tags;
+		if (result == null) {
+			int tagsEnd = line.indexOf(' ');
+			tags = result = new MessageTags(line, 1, tagsEnd == -1 ? line.length() : tagsEnd);
+		}
+		return result;
+	}
+
+	public boolean hasSource() {
+		return hasSource;
+	}
+
+	/**
+	 * The source of the line without the leading :, usually a server name or
+	 * nick!login@host
+	 *
+	 * @return The source or an empty string if there is none
+	 */
+	public String getSource() {
+		if (!hasSource)
+			return "";
+		if (source == null)
+			source = line.substring(offsets[0] + 1, offsets[1]);
+		return source;
+	}
+
+	/**
+	 * The command or numeric as received, not converted to upper case
+	 *
+	 * @return The command or an empty string if the line doesn't have one
+	 */
+	public String getCommand() {
+		if (commandToken >= tokenCount)
+			return "";
+		if (command == null)
+			command = line.substring(offsets[commandToken * 2], offsets[commandToken * 2 + 1]);
+		return command;
+	}
+
+	/**
+	 * Parse the command as a numeric reply without creating the command String
+	 *
+	 * @return The numeric or -1 if the command isn't 3 digits
+	 */
+	public int getNumeric() {
+		if (commandToken >= tokenCount)
+			return -1;
+		int start = offsets[commandToken * 2];
+		if (offsets[commandToken * 2 + 1] - start != 3)
+			return -1;
+		int numeric = 0;
+		for (int i = start; i < start + 3; i++) {
+			char curChar = line.charAt(i);
+			if (curChar < '0' || curChar > '9')
+				return -1;
+			numeric = numeric * 10 + (curChar - '0');
+		}
+		return numeric;
+	}
+
+	public int getParamCount() {
+		return Math.max(0, tokenCount - commandToken - 1);
+	}
+
+	/**
+	 * Get a single parameter, creating the String on first access
+	 *
+	 * @param index Index of the parameter, 0 is the first one after the
+	 * command
+	 * @throws IndexOutOfBoundsException If there isn't a parameter at the index
+	 */
+	public String getParam(int index) {
+		if (index < 0 || index >= getParamCount())
+			throw new IndexOutOfBoundsException("Index " + index + " but only " + getParamCount() + " params");
+		String[] curParams = params;
+		if (curParams == null)
+			params = curParams = new String[getParamCount()];
+		String param = curParams[index];
+		if (param == null) {
+			int token = commandToken + 1 + index;
+			param = curParams[index] = line.substring(offsets[token * 2], offsets[token * 2 + 1]);
+		}
+		return param;
+	}
+
+	/**
+	 * Get a parameter or a default value
+	 *
+	 * @return The parameter or defaultValue if there isn't one at the index
+	 */
+	public String getParam(int index, String defaultValue) {
+		if (index < 0 || index >= getParamCount())
+			return defaultValue;
+		return getParam(index);
+	}
+
+	/**
+	 * All parameters. Use {@link #getParam(int) } when only some are needed
+	 */
+	public ImmutableList<String> getParams() {
+		ImmutableList<String> result = paramList;
+		if (result == null) {
+			ImmutableList.Builder<String> builder = ImmutableList.builder();
+			for (int i = 0; i < getParamCount(); i++)
+				builder.add(getParam(i));
+			paramList = result = builder.build();
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof IrcMessage && ((IrcMessage) obj).line.equals(line);
+	}
+
+	@Override
+	public int hashCode() {
+		return line.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return line;
+	}
+}
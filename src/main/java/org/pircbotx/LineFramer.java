@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.CharMatcher;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits the raw bytes received from the server into lines. The byte buffer
+ * and the char buffer lines are decoded into are reused, so the only
+ * allocation per line is the resulting String.
+ * <p>
+ * Lines are returned without the line ending and surrounding whitespace, as
+ * trimmed by {@link CharMatcher#whitespace() }. Like
+ * {@link java.io.BufferedReader#readLine() }, lines end with a line feed, a
+ * carriage return, or both. Lines longer than {@link #MAX_TAGS_LENGTH} plus
+ * the max line length are truncated to that length instead of being buffered
+ * without bound.
+ * <p>
+ * Line endings are found in the raw bytes, so the charset must decode the
+ * bytes 0-127 as ASCII.
+ * <p>
+ * Not thread safe, each connection needs its own framer.
+ */
+@Slf4j
+public class LineFramer {
+	/**
+	 * Max bytes of the IRCv3 tags section including the leading @ and trailing
+	 * space
+	 */
+	public static final int MAX_TAGS_LENGTH = 8191;
+	/**
+	 * Default max bytes of a line not counting IRCv3 tags, well above the 512
+	 * bytes of RFC 1459 for servers that allow longer lines. Unrelated to
+	 * {@link Configuration#getMaxLineLength() } which only limits output
+	 */
+	public static final int DEFAULT_MAX_LINE_LENGTH = 8192;
+	protected static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+	protected final int maxLineLength;
+	protected final CharsetDecoder decoder;
+	/**
+	 * Truncated lines are cut before a character that doesn't fit instead of
+	 * inside it
+	 */
+	protected final boolean utf8;
+	/**
+	 * Received bytes, always in write mode. Unframed bytes are between
+	 * {@link #lineStart} and the position
+	 */
+	protected ByteBuffer buffer;
+	/**
+	 * View of {@link #buffer} given to the decoder
+	 */
+	protected ByteBuffer lineView;
+	protected CharBuffer chars = CharBuffer.allocate(1024);
+	protected int lineStart = 0;
+	/**
+	 * Bytes before this index are known to not contain a line feed
+	 */
+	protected int scanned = 0;
+	/**
+	 * Skipping the rest of a line that's too long
+	 */
+	protected boolean discarding = false;
+	/**
+	 * The last line ended with a carriage return, so skip a following line
+	 * feed
+	 */
+	protected boolean skipLineFeed = false;
+
+	/**
+	 * Create a framer using {@link #DEFAULT_MAX_LINE_LENGTH}
+	 */
+	public LineFramer(Charset encoding) {
+		this(encoding, DEFAULT_MAX_LINE_LENGTH);
+	}
+
+	/**
+	 * @param encoding Charset lines are decoded with
+	 * @param maxLineLength Maximum bytes of a line not counting IRCv3 tags or
+	 * the line ending
+	 */
+	public LineFramer(@NonNull Charset encoding, int maxLineLength) {
+		checkArgument(maxLineLength > 0, "Max line length must be positive");
+		checkArgument(isAsciiCompatible(encoding), "Encoding %s doesn't decode the bytes 0-127 as ASCII", encoding);
+		this.maxLineLength = maxLineLength;
+		this.decoder = encoding.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.utf8 = StandardCharsets.UTF_8.equals(encoding);
+		setBuffer(ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, MAX_TAGS_LENGTH + maxLineLength + 1)));
+	}
+
+	/**
+	 * Buffer to put received bytes in, eg with
+	 * {@link java.nio.channels.ReadableByteChannel#read(java.nio.ByteBuffer) }.
+	 * Must be called again after {@link #nextLine() } or
+	 * {@link #ensureRemaining(int) }, which can replace or move the buffer
+	 *
+	 * @return The buffer in write mode, with room for at least one byte
+	 */
+	public ByteBuffer getBuffer() {
+		compact();
+		return buffer;
+	}
+
+	/**
+	 * Make sure {@link #getBuffer() } has room for the given number of bytes,
+	 * eg for {@link javax.net.ssl.SSLEngine#unwrap(java.nio.ByteBuffer, java.nio.ByteBuffer)
+	 * }
+	 */
+	public void ensureRemaining(int needed) {
+		compact();
+		if (buffer.remaining() >= needed)
+			return;
+		ByteBuffer newBuffer = ByteBuffer.allocate(buffer.position() + needed);
+		buffer.flip();
+		newBuffer.put(buffer);
+		setBuffer(newBuffer);
+	}
+
+	/**
+	 * Read from the stream until a full line is available
+	 *
+	 * @return The next line, or null if the stream ended
+	 * @see java.io.BufferedReader#readLine()
+	 */
+	public String readLine(InputStream in) throws IOException {
+		String line;
+		while ((line = nextLine()) == null) {
+			compact();
+			int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if (read == -1)
+				return finish();
+			buffer.position(buffer.position() + read);
+		}
+		return line;
+	}
+
+	/**
+	 * Frame the next complete line from the bytes received so far
+	 *
+	 * @return The line, or null if more bytes are needed
+	 */
+	public String nextLine() {
+		byte[] bytes = buffer.array();
+		int end = buffer.position();
+		int limit = MAX_TAGS_LENGTH + maxLineLength;
+		while (true) {
+			if (skipLineFeed && lineStart < end) {
+				skipLineFeed = false;
+				if (bytes[lineStart] == '\n') {
+					lineStart++;
+					scanned = Math.max(scanned, lineStart);
+				}
+			}
+
+			int lineEnd = -1;
+			for (int i = scanned; i < end; i++)
+				if (bytes[i] == '\n' || bytes[i] == '\r') {
+					lineEnd = i;
+					break;
+				}
+
+			if (lineEnd == -1) {
+				scanned = end;
+				if (discarding) {
+					//Never need these bytes
+					lineStart = end;
+					return null;
+				}
+				if (end - lineStart > limit) {
+					int start = lineStart;
+					discarding = true;
+					lineStart = end;
+					String line = decode(bytes, start, truncate(start, end));
+					if (line != null)
+						return line;
+				}
+				return null;
+			}
+
+			int start = lineStart;
+			lineStart = scanned = lineEnd + 1;
+			if (bytes[lineEnd] == '\r') {
+				if (lineStart == end)
+					//Line feed may be in the next read
+					skipLineFeed = true;
+				else if (bytes[lineStart] == '\n')
+					lineStart = scanned = lineStart + 1;
+			}
+			if (discarding) {
+				discarding = false;
+				continue;
+			}
+			String line = decode(bytes, start, truncate(start, lineEnd));
+			if (line != null)
+				return line;
+		}
+	}
+
+	/**
+	 * The stream has ended, return what's left as the last line like
+	 * {@link java.io.BufferedReader#readLine() } does
+	 *
+	 * @return The unterminated last line, or null if there isn't one
+	 */
+	public String finish() {
+		int start = lineStart;
+		int end = buffer.position();
+		lineStart = scanned = end;
+		skipLineFeed = false;
+		if (discarding) {
+			discarding = false;
+			return null;
+		}
+		if (start == end)
+			return null;
+		return decode(buffer.array(), start, truncate(start, end));
+	}
+
+	/**
+	 * @return The end of the line, moved back if the line is too long
+	 */
+	protected int truncate(int start, int end) {
+		int limit = MAX_TAGS_LENGTH + maxLineLength;
+		if (end - start <= limit)
+			return end;
+		log.warn("Truncating line from server with {} bytes to {} bytes", end - start, limit);
+		int cut = start + limit;
+		if (utf8)
+			//Don't split a character, back off to the start of its first byte
+			for (int i = 0; i < 3 && cut > start && (buffer.array()[cut] & 0xC0) == 0x80; i++)
+				cut--;
+		return cut;
+	}
+
+	/**
+	 * Decode the bytes into a String, trimming whitespace
+	 *
+	 * @return The line or null if it is blank
+	 */
+	protected String decode(byte[] bytes, int start, int end) {
+		//ASCII whitespace is trimmed before decoding, the rest after
+
+		while (start < end && isWhitespace(bytes[start]))
+			start++;
+		while (end > start && isWhitespace(bytes[end - 1]))
+			end--;
+		int length = end - start;
+		if (length == 0)
+			return null;
+
+		//Lines with only ASCII skip the decoder
+		char[] charArray = ensureChars(length).array();
+		int i = 0;
+		for (; i < length; i++) {
+			byte curByte = bytes[start + i];
+			if (curByte < 0)
+				break;
+			charArray[i] = (char) curByte;
+		}
+		if (i == length)
+			return new String(charArray, 0, length);
+
+		ensureChars((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+		chars.clear();
+		lineView.limit(end).position(start);
+		decoder.reset();
+		decoder.decode(lineView, chars, true);
+		decoder.flush(chars);
+		String line = CharMatcher.whitespace().trimFrom(new String(chars.array(), 0, chars.position()));
+		return line.isEmpty() ? null : line;
+	}
+
+	protected CharBuffer ensureChars(int length) {
+		if (chars.capacity() < length)
+			chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+		return chars;
+	}
+
+	/**
+	 * Move unframed bytes to the start of the buffer
+	 */
+	protected void compact() {
+		if (lineStart == 0)
+			return;
+		int remaining = buffer.position() - lineStart;
+		if (remaining > 0)
+			System.arraycopy(buffer.array(), lineStart, buffer.array(), 0, remaining);
+		buffer.position(remaining);
+		scanned -= lineStart;
+		lineStart = 0;
+	}
+
+	protected void setBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.lineView = buffer.duplicate();
+	}
+
+	protected static boolean isWhitespace(byte value) {
+		return value == ' ' || value == '\r' || value == '\n' || value == '\t' || value == 0x0B || value == '\f';
+	}
+
+	protected static boolean isAsciiCompatible(Charset encoding) {
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++)
+			ascii[i] = (byte) i;
+		String decoded = new String(ascii, encoding);
+		if (decoded.length() != ascii.length)
+			return false;
+		for (int i = 0; i < ascii.length; i++)
+			if (decoded.charAt(i) != i)
+				return false;
+		return true;
+	}
+}
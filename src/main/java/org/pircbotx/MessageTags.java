@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+
+import lombok.NonNull;
+
+/**
+ * Read only view of IRCv3 message tags. Nothing is parsed until the tags are
+ * first accessed, then only the position of each key and value is recorded.
+ * Values are unescaped the first time they are requested with
+ * {@link #get(java.lang.Object) }. Iterating creates an {@link ImmutableMap}
+ * of all tags once.
+ * <p>
+ * If a key is repeated the last value is used. Tags without a value map to an
+ * empty string.
+ * <p>
+ * Safe to share between threads.
+ *
+ * @see <a href="https://ircv3.net/specs/extensions/message-tags">https://ircv3.net/specs/extensions/message-tags</a>
+ */
+public final class MessageTags extends AbstractMap<String, String> {
+	/**
+	 * Tags of a line without any
+	 */
+	public static final MessageTags EMPTY = new MessageTags("", 0, 0);
+	private final String source;
+	private final int start;
+	private final int end;
+	/**
+	 * Key start, key end, value start, value end of each tag, value start is
+	 * -1 if the tag has no value. Written last when indexing so reading it
+	 * makes {@link #values} visible
+	 */
+	private volatile int[] offsets;
+	private String[] values;
+	private volatile ImmutableMap<String, String> map;
+
+	MessageTags(String source, int start, int end) {
+		this.source = source;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @param rawTags Tags as sent by the server without the leading @, eg
+	 * {@code aaa=bbb;ccc;example.com/ddd=eee}
+	 */
+	public static MessageTags parse(@NonNull String rawTags) {
+		if (rawTags.isEmpty())
+			return EMPTY;
+		return new MessageTags(rawTags, 0, rawTags.length());
+	}
+
+	/**
+	 * Escape and join already parsed tags
+	 */
+	public static MessageTags copyOf(@NonNull Map<String, String> tags) {
+		if (tags instanceof MessageTags)
+			return (MessageTags) tags;
+		if (tags.isEmpty())
+			return EMPTY;
+		StringBuilder rawTags = new StringBuilder();
+		for (Map.Entry<String, String> curTag : tags.entrySet()) {
+			if (rawTags.length() != 0)
+				rawTags.append(';');
+			rawTags.append(curTag.getKey());
+			String value = curTag.getValue();
+			if (value == null || value.isEmpty())
+				continue;
+			rawTags.append('=');
+			for (int i = 0; i < value.length(); i++) {
+				char curChar = value.charAt(i);
+				switch (curChar) {
+					case ';':
+						rawTags.append("\\:");
+						break;
+					case ' ':
+						rawTags.append("\\s");
+						break;
+					case '\\':
+						rawTags.append("\\\\");
+						break;
+					case '\r':
+						rawTags.append("\\r");
+						break;
+					case '\n':
+						rawTags.append("\\n");
+						break;
+					default:
+						rawTags.append(curChar);
+				}
+			}
+		}
+		return parse(rawTags.toString());
+	}
+
+	/**
+	 * Find the key and value of each tag in a single pass
+	 */
+	private int[] index() {
+		int[] curOffsets = offsets;
+		if (curOffsets != null)
+			return curOffsets;
+
+		int tagCount = 0;
+		for (int i = start; i < end; i++)
+			if (source.charAt(i) == ';')
+				tagCount++;
+		curOffsets = new int[(tagCount + 1) * 4];
+		int tag = 0;
+		int tagStart = start;
+		while (tagStart < end) {
+			int tagEnd = tagStart;
+			int equals = -1;
+			for (; tagEnd < end; tagEnd++) {
+				char curChar = source.charAt(tagEnd);
+				if (curChar == ';')
+					break;
+				if (curChar == '=' && equals == -1)
+					equals = tagEnd;
+			}
+			int keyEnd = equals == -1 ? tagEnd : equals;
+			if (keyEnd > tagStart) {
+				curOffsets[tag * 4] = tagStart;
+				curOffsets[tag * 4 + 1] = keyEnd;
+				curOffsets[tag * 4 + 2] = equals == -1 ? -1 : equals + 1;
+				curOffsets[tag * 4 + 3] = tagEnd;
+				tag++;
+			}
+			tagStart = tagEnd + 1;
+		}
+		if (tag * 4 != curOffsets.length) {
+			int[] trimmed = new int[tag * 4];
+			System.arraycopy(curOffsets, 0, trimmed, 0, trimmed.length);
+			curOffsets = trimmed;
+		}
+		values = new String[tag];
+		offsets = curOffsets;
+		return curOffsets;
+	}
+
+	/**
+	 * @return Index of the last tag with the key, or -1
+	 */
+	private int find(int[] curOffsets, String key) {
+		for (int tag = curOffsets.length / 4 - 1; tag >= 0; tag--) {
+			int keyStart = curOffsets[tag * 4];
+			int keyLength = curOffsets[tag * 4 + 1] - keyStart;
+			if (keyLength == key.length() && source.regionMatches(keyStart, key, 0, keyLength))
+				return tag;
+		}
+		return -1;
+	}
+
+	private String value(int[] curOffsets, int tag) {
+		String[] curValues = values;
+		String value = curValues[tag];
+		if (value == null) {
+			int valueStart = curOffsets[tag * 4 + 2];
+			value = valueStart == -1 ? "" : Utils.unescapeV3TagValue(source, valueStart, curOffsets[tag * 4 + 3]);
+			curValues[tag] = value;
+		}
+		return value;
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String) || start == end)
+			return null;
+		int[] curOffsets = index();
+		int tag = find(curOffsets, (String) key);
+		return tag == -1 ? null : value(curOffsets, tag);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && start != end && find(index(), (String) key) != -1;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return start == end || index().length == 0;
+	}
+
+	@Override
+	public int size() {
+		return asMap().size();
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return asMap().entrySet();
+	}
+
+	/**
+	 * Parse and unescape every tag
+	 */
+	public ImmutableMap<String, String> asMap() {
+		ImmutableMap<String, String> result = map;
+		if (result == null) {
+			int[] curOffsets = index();
+			ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+			for (int tag = 0; tag < curOffsets.length / 4; tag++) {
+				String key = source.substring(curOffsets[tag * 4], curOffsets[tag * 4 + 1]);
+				if (find(curOffsets, key) == tag)
+					builder.put(key, value(curOffsets, tag));
+			}
+			map = result = builder.build();
+		}
+		return result;
+	}
+
+	/**
+	 * The tags as sent by the server
+	 */
+	public String getRawTags() {
+		return source.substring(start, end);
+	}
+}
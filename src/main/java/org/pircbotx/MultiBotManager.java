@@ -34,14 +34,14 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.hooks.managers.FairListenerManager;
+import org.pircbotx.hooks.managers.ListenerManager;
 import org.pircbotx.output.OutputIRC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +60,10 @@ import org.slf4j.LoggerFactory;
  * shutdown
  * </ol> {@link #executeBot(org.pircbotx.PircBotX)} is overridable if you wish
  * to do your own connecting
+ * <p>
+ * Bots sharing a {@link FairListenerManager} can be added with a
+ * {@link FairListenerManager.BotQuota} so a busy network can't delay the
+ * listeners of the others
  */
 @Slf4j
 public class MultiBotManager {
@@ -75,13 +79,12 @@ public class MultiBotManager {
 	protected final Object stateLock = new Object[0];
 
 	/**
-	 * Create MultiBotManager with a cached thread pool.
+	 * Create MultiBotManager with a cached thread pool, or a virtual thread per
+	 * bot if {@link VirtualThreads#isEnabled() }.
 	 */
 	public MultiBotManager() {
 		managerNumber = MANAGER_COUNT.getAndIncrement();
-		ThreadPoolExecutor defaultPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
-		defaultPool.allowCoreThreadTimeOut(true);
-		this.botPool = MoreExecutors.listeningDecorator(defaultPool);
+		this.botPool = MoreExecutors.listeningDecorator(VirtualThreads.newCachedThreadPool("multiBotManager" + managerNumber + "-bot%d", false));
 	}
 
 	/**
@@ -119,6 +122,23 @@ public class MultiBotManager {
 		addNetwork(new PircBotX(config));
 	}
 
+	/**
+	 * Adds a managed bot using the specified configuration, limited by the
+	 * quota
+	 *
+	 * @param config A configuration with a {@link FairListenerManager}
+	 * @param quota Quota of the bot in the listener manager
+	 * @see #addNetwork(org.pircbotx.PircBotX,
+	 * org.pircbotx.hooks.managers.FairListenerManager.BotQuota)
+	 */
+	@Synchronized("stateLock")
+	public void addNetwork(Configuration config, FairListenerManager.BotQuota quota) {
+		checkNotNull(config, "Configuration cannot be null");
+		if (state != State.NEW && state != State.RUNNING)
+			throw new RuntimeException("MultiBotManager is not running. State: " + state);
+		addNetwork(new PircBotX(config), quota);
+	}
+
 	/**
 	 * Alias of {@link #addNetwork(org.pircbotx.PircBotX) }
 	 *
@@ -148,6 +168,40 @@ public class MultiBotManager {
 			throw new RuntimeException("MultiBotManager is not running. State: " + state);
 	}
 
+	/**
+	 * Adds a bot to be managed with its own quota of listener threads and
+	 * queued events
+	 *
+	 * @param bot An existing <b>unconnected</b> bot with a
+	 * {@link FairListenerManager}
+	 * @param quota Quota of the bot in the listener manager
+	 */
+	@Synchronized("stateLock")
+	public void addNetwork(PircBotX bot, FairListenerManager.BotQuota quota) {
+		checkNotNull(bot, "Bot cannot be null");
+		checkNotNull(quota, "Quota cannot be null");
+		getFairListenerManager(bot).setQuota(bot, quota);
+		addNetwork(bot);
+	}
+
+	/**
+	 * Queue and counters of a managed bot, including how long its events
+	 * waited for a listener thread
+	 *
+	 * @param bot A bot with a {@link FairListenerManager}
+	 */
+	public FairListenerManager.BotStats getBotStats(PircBotX bot) {
+		checkNotNull(bot, "Bot cannot be null");
+		return getFairListenerManager(bot).getStats(bot);
+	}
+
+	protected static FairListenerManager getFairListenerManager(PircBotX bot) {
+		ListenerManager listenerManager = bot.getConfiguration().getListenerManager();
+		checkArgument(listenerManager instanceof FairListenerManager,
+				"Bot #%s must use a FairListenerManager for quotas, not %s", bot.getBotId(), listenerManager.getClass().getName());
+		return (FairListenerManager) listenerManager;
+	}
+
 	/**
 	 * Start the manager, connecting all queued bots.
 	 */
@@ -169,7 +223,10 @@ public class MultiBotManager {
 
 	protected ListenableFuture<Void> startBot(final PircBotX bot) {
 		checkNotNull(bot, "Bot cannot be null");
-		ListenableFuture<Void> future = botPool.submit(new BotRunner(bot));
+		//Bots on a SelectorEngine don't need a thread from the bot pool
+		ListenableFuture<Void> future = (bot.getConfiguration().getSelectorEngine() != null)
+				? bot.startBotAsync()
+				: botPool.submit(new BotRunner(bot));
 		synchronized (runningBotsLock) {
 			runningBots.put(bot, future);
 			runningBotsNumbers.put(bot, bot.getBotId());
@@ -217,6 +274,14 @@ public class MultiBotManager {
 				log.debug("Waiting 5 seconds for bot(s) [{}] to terminate ", commaJoiner.join(runningBots.values()));
 			}
 		while (!botPool.awaitTermination(5, TimeUnit.SECONDS));
+
+		//Bots on a SelectorEngine aren't in the bot pool
+		synchronized (runningBotsLock) {
+			while (!runningBots.isEmpty()) {
+				log.debug("Waiting 5 seconds for bot(s) [{}] to terminate ", commaJoiner.join(runningBots.values()));
+				runningBotsLock.wait(5000);
+			}
+		}
 	}
 
 	/**
@@ -280,9 +345,12 @@ public class MultiBotManager {
 		}
 
 		protected void remove() {
+			if (bot.getConfiguration().getListenerManager() instanceof FairListenerManager)
+				((FairListenerManager) bot.getConfiguration().getListenerManager()).removeBot(bot);
 			synchronized (runningBotsLock) {
 				runningBots.remove(bot);
 				runningBotsNumbers.remove(bot);
+				runningBotsLock.notifyAll();
 
 				//Change state to TERMINATED if this is the last but to be removed during shutdown
 				if (runningBots.isEmpty() && state == State.STOPPING)
@@ -17,11 +17,18 @@
  */
 package org.pircbotx;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -30,10 +37,16 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -44,8 +57,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.pircbotx.dcc.DccHandler;
 import org.pircbotx.exception.IrcException;
+import org.pircbotx.hooks.EventWaiters;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.*;
+import org.pircbotx.hooks.types.GenericEvent;
 import org.pircbotx.output.OutputCAP;
 import org.pircbotx.output.OutputDCC;
 import org.pircbotx.output.OutputIRC;
@@ -97,12 +112,47 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 	protected final UserChannelDao<User, Channel> userChannelDao;
 	@Getter
 	protected final DccHandler dccHandler;
+	/**
+	 * Parsed hostmasks of recent lines
+	 */
+	@Getter
+	protected final UserHostmaskCache userHostmaskCache;
+	@Getter
+	protected final EventWaiters eventWaiters = new EventWaiters(this);
+	@Getter
+	protected final QueryCache queryCache;
 	protected final ServerInfo serverInfo;
 	//Connection stuff.
 	@Getter(AccessLevel.PROTECTED)
 	protected Socket socket;
+	protected InputStream inputStream;
+	/**
+	 * Frames lines read from {@link #inputStream}
+	 */
+	protected LineFramer inputFramer;
+	/**
+	 * Optional reader used instead of {@link #inputStream}, null by default
+	 */
 	protected BufferedReader inputReader;
 	protected Writer outputWriter;
+	/**
+	 * Connection on the {@link Configuration#getSelectorEngine() }, null when
+	 * using a blocking socket
+	 */
+	protected volatile SelectorConnection selectorConnection;
+	/**
+	 * {@link #pauseReading() } calls not yet resumed, guarded by
+	 * readPauseLock
+	 */
+	protected int readPauses;
+	protected final Object readPauseLock = new Object[0];
+	/**
+	 * Pipeline processing lines while connected when
+	 * {@link Configuration#getInputPipelineCapacity() } is set, otherwise
+	 * null
+	 */
+	protected volatile InputPipeline inputPipeline;
+	protected SettableFuture<Void> startFuture;
 	protected final OutputRaw outputRaw;
 	protected final OutputIRC outputIRC;
 	protected final OutputCAP outputCAP;
@@ -146,6 +196,8 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 
 		//Pre-insert an initial User representing the bot itself
 		this.userChannelDao = configuration.getBotFactory().createUserChannelDao(this);
+		this.userHostmaskCache = configuration.getBotFactory().createUserHostmaskCache(this);
+		this.queryCache = configuration.getBotFactory().createQueryCache(this);
 		UserHostmask botHostmask = configuration.getBotFactory().createUserHostmask(this, null, configuration.getName(), configuration.getLogin(), null);
 		getUserChannelDao().createUser(botHostmask);
 
@@ -168,6 +220,23 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 	 * @throws IrcException
 	 */
 	public void startBot() throws IOException, IrcException {
+		if (configuration.getSelectorEngine() != null) {
+			//Lines are read by the SelectorEngine, just wait for the bot to finish
+			try {
+				startBotAsync().get();
+			} catch (InterruptedException e) {
+				stopBotReconnect();
+				close();
+				throw new RuntimeException("Interrupted while waiting for bot to finish", e);
+			} catch (ExecutionException e) {
+				Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+				Throwables.throwIfInstanceOf(e.getCause(), IrcException.class);
+				Throwables.throwIfUnchecked(e.getCause());
+				throw new RuntimeException(e.getCause());
+			}
+			return;
+		}
+
 		//Begin magic
 		reconnectStopped = false;
 		do {
@@ -219,6 +288,196 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 		} while (connectAttempts < configuration.getAutoReconnectAttempts());
 	}
 
+	/**
+	 * Start the bot on the {@link Configuration#getSelectorEngine() } without
+	 * blocking the calling thread. Like {@link #startBot() }, this will
+	 * reconnect if {@link Configuration#isAutoReconnect()} is true.
+	 *
+	 * @return Future that completes once the bot is finished and will not
+	 * reconnect, or fails with the same exceptions {@link #startBot() } throws
+	 */
+	public ListenableFuture<Void> startBotAsync() {
+		if (configuration.getSelectorEngine() == null)
+			throw new IllegalStateException("startBotAsync requires a SelectorEngine in the configuration");
+		synchronized (stateLock) {
+			if (startFuture != null && !startFuture.isDone())
+				throw new IllegalStateException("Bot has already been started");
+			startFuture = SettableFuture.create();
+		}
+		reconnectStopped = false;
+		configuration.getSelectorEngine().schedule(new Runnable() {
+			@Override
+			public void run() {
+				connectAsync();
+			}
+		}, 0, TimeUnit.MILLISECONDS);
+		return startFuture;
+	}
+
+	/**
+	 * Single connect attempt for {@link #startBotAsync() }. Each address is
+	 * connected to by the {@link SelectorEngine} without waiting on a thread,
+	 * though resolving the server hostnames still blocks a worker thread as
+	 * the JDK has no asynchronous resolver. Once connected
+	 * {@link #onSelectorConnectionClosed(org.pircbotx.SelectorConnection, java.lang.Exception)
+	 * } continues when the connection closes.
+	 */
+	protected void connectAsync() {
+		LinkedHashMap<InetSocketAddress, Exception> connectExceptions = new LinkedHashMap<>();
+		List<InetSocketAddress> addresses = new ArrayList<>();
+		connectAttemptTotal++;
+		connectAttempts++;
+		try {
+			synchronized (stateLock) {
+				prepareConnect();
+			}
+			for (Configuration.ServerEntry curServerEntry : configuration.getServers())
+				try {
+					for (InetAddress curAddress : InetAddress.getAllByName(curServerEntry.getHostname()))
+						addresses.add(new InetSocketAddress(curAddress, curServerEntry.getPort()));
+				} catch (UnknownHostException e) {
+					connectExceptions.put(InetSocketAddress.createUnresolved(curServerEntry.getHostname(), curServerEntry.getPort()), e);
+					log.warn("Failed to resolve {}", curServerEntry.getHostname(), e);
+				}
+		} catch (Exception e) {
+			connectAsyncFailed(connectExceptions, new InetSocketAddress(serverHostname, serverPort), e);
+			return;
+		}
+		connectNextAsync(addresses.iterator(), connectExceptions);
+	}
+
+	/**
+	 * Connect to the next address, or give up on this attempt if none are left
+	 */
+	protected void connectNextAsync(final Iterator<InetSocketAddress> addressItr, final LinkedHashMap<InetSocketAddress, Exception> connectExceptions) {
+		if (!addressItr.hasNext()) {
+			finishConnectFailed(connectExceptions);
+			continueAsync();
+			return;
+		}
+
+		final InetSocketAddress address = addressItr.next();
+		log.debug("Atempting to connect to {} on port {}", address.getAddress(), address.getPort());
+		final SocketChannel channel;
+		ListenableFuture<Void> connected;
+		try {
+			channel = SocketChannel.open();
+			try {
+				channel.bind(new InetSocketAddress(configuration.getLocalAddress(), 0));
+				connected = configuration.getSelectorEngine().connect(channel, address, configuration.getSocketConnectTimeout());
+			} catch (Exception e) {
+				channel.close();
+				throw e;
+			}
+		} catch (Exception e) {
+			connectExceptions.put(address, e);
+			log.warn("Failed to connect to {} on port {}", address.getAddress(), address.getPort(), e);
+			connectNextAsync(addressItr, connectExceptions);
+			return;
+		}
+
+		Futures.addCallback(connected, new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				try {
+					serverHostname = address.getHostString();
+					serverPort = address.getPort();
+					onConnected(channel.socket());
+				} catch (Exception e) {
+					connectAsyncFailed(connectExceptions, address, e);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				connectExceptions.put(address, t instanceof Exception ? (Exception) t : new RuntimeException(t));
+				log.warn("Failed to connect to {} on port {}", address.getAddress(), address.getPort(), t);
+				connectNextAsync(addressItr, connectExceptions);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Serious error while connecting, same as an exception from
+	 * {@link #connect() } in {@link #startBot() }
+	 */
+	protected void connectAsyncFailed(LinkedHashMap<InetSocketAddress, Exception> connectExceptions, InetSocketAddress address, Exception e) {
+		log.error("Exception encountered during connect", e);
+		connectExceptions.put(address, e);
+		finishConnectFailed(connectExceptions);
+		if (!configuration.isAutoReconnect()) {
+			startFuture.setException(new RuntimeException("Exception encountered during connect", e));
+			return;
+		}
+		continueAsync();
+	}
+
+	protected void finishConnectFailed(LinkedHashMap<InetSocketAddress, Exception> connectExceptions) {
+		Utils.dispatchEvent(this, new ConnectAttemptFailedEvent(this,
+				configuration.getAutoReconnectAttempts() - connectAttempts,
+				ImmutableMap.copyOf(connectExceptions)));
+
+		//Cleanup if not already called
+		synchronized (stateLock) {
+			if (state != State.DISCONNECTED)
+				shutdown();
+		}
+	}
+
+	/**
+	 * Called once the {@link SelectorConnection} has closed and all lines read
+	 * before that have been parsed.
+	 */
+	protected void onSelectorConnectionClosed(SelectorConnection connection, Exception readException) {
+		synchronized (stateLock) {
+			if (connection != selectorConnection)
+				//Already shutdown
+				return;
+			if (readException != null) {
+				disconnectException = readException;
+				//Something is wrong. Assume its bad and begin disconnect
+				String debug = "Exception encountered when reading next line from server";
+				log.error(debug, readException);
+				Utils.dispatchEvent(this, new ExceptionEvent(this, readException, debug));
+			}
+			if (state != State.DISCONNECTED)
+				shutdown();
+		}
+		continueAsync();
+	}
+
+	/**
+	 * Decide whether {@link #startBotAsync() } is finished or needs to
+	 * reconnect, same as the loop in {@link #startBot() }
+	 */
+	protected void continueAsync() {
+		//No longer connected to the server
+		if (!configuration.isAutoReconnect()) {
+			startFuture.set(null);
+			return;
+		}
+		if (reconnectStopped) {
+			log.debug("stopBotReconnect() called, exiting reconnect loop");
+			startFuture.set(null);
+			return;
+		}
+		if (connectAttempts >= configuration.getAutoReconnectAttempts()) {
+			startFuture.setException(new IOException("Failed to connect to IRC server(s) after " + connectAttempts + " attempts"));
+			return;
+		}
+
+		//Optionally pause between attempts, useful if network is temporarily down
+		long delay = configuration.getAutoReconnectDelay().getDelay();
+		if (delay > 0)
+			log.debug("Pausing for {} milliseconds before connecting again", delay);
+		configuration.getSelectorEngine().schedule(new Runnable() {
+			@Override
+			public void run() {
+				connectAsync();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
 	/**
 	 * Do not try connecting again in the future.
 	 */
@@ -236,22 +495,7 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 	 */
 	protected ImmutableMap<InetSocketAddress, Exception> connect() throws IOException, IrcException {
 		synchronized (stateLock) {
-			//Server id
-			Utils.addBotToMDC(this);
-			if (isConnected())
-				throw new IrcException(IrcException.Reason.ALREADY_CONNECTED, "Must disconnect from server before connecting again");
-			if (getState() == State.CONNECTED)
-				throw new RuntimeException("Bot is not connected but state is State.CONNECTED. This shouldn't happen");
-			if (configuration.isIdentServerEnabled() && IdentServer.getServer() == null)
-				throw new RuntimeException("UseIdentServer is enabled but no IdentServer has been started");
-
-			//Reset capabilities
-			enabledCapabilities = new ArrayList<String>();
-
-			//Pre-insert an initial User representing the bot itself
-			getUserChannelDao().close();
-			UserHostmask botHostmask = configuration.getBotFactory().createUserHostmask(this, null, configuration.getName(), configuration.getLogin(), null);
-			getUserChannelDao().createUser(botHostmask);
+			prepareConnect();
 
 			//On each server the user gives us, try to connect to all the IP addresses
 			ImmutableMap.Builder<InetSocketAddress, Exception> connectExceptions = ImmutableMap.builder();
@@ -268,7 +512,7 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 					serverAddresses = InetAddress.getAllByName(serverHostname);
 				} catch (UnknownHostException hostException) {
 					try {
-						socket = configuration.getSocketFactory().createSocket(serverHostname, curServerEntry.getPort());
+						socket = createSocket(serverHostname, curServerEntry.getPort());
 						serverPort = curServerEntry.getPort();
 						break ServerEntryLoop;
 					} catch (Exception ex) {
@@ -292,7 +536,7 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 					);
 					log.debug("{}Atempting to connect to {} on port {}", debug, curAddress, curServerEntry.getPort());
 					try {
-						socket = configuration.getSocketFactory().createSocket();
+						socket = createSocket();
 						socket.bind(new InetSocketAddress(configuration.getLocalAddress(), 0));
 						socket.connect(new InetSocketAddress(curAddress, curServerEntry.getPort()), configuration.getSocketConnectTimeout());
 
@@ -314,11 +558,46 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 			if (socket == null || (socket != null && !socket.isConnected())) {
 				return connectExceptions.build();
 			}
+		}
+
+		onConnected(socket);
+		return ImmutableMap.of();
+	}
+
+	/**
+	 * Checks and resets state before connecting. Called while holding the
+	 * state lock
+	 */
+	protected void prepareConnect() throws IrcException {
+		//Server id
+		Utils.addBotToMDC(this);
+		if (isConnected())
+			throw new IrcException(IrcException.Reason.ALREADY_CONNECTED, "Must disconnect from server before connecting again");
+		if (getState() == State.CONNECTED)
+			throw new RuntimeException("Bot is not connected but state is State.CONNECTED. This shouldn't happen");
+		if (configuration.isIdentServerEnabled() && IdentServer.getServer() == null)
+			throw new RuntimeException("UseIdentServer is enabled but no IdentServer has been started");
+
+		//Reset capabilities
+		enabledCapabilities = new ArrayList<String>();
+
+		//Pre-insert an initial User representing the bot itself
+		getUserChannelDao().close();
+		UserHostmask botHostmask = configuration.getBotFactory().createUserHostmask(this, null, configuration.getName(), configuration.getLogin(), null);
+		getUserChannelDao().createUser(botHostmask);
+	}
+
+	/**
+	 * Log in to the server once the socket is connected and start processing
+	 * lines
+	 */
+	protected void onConnected(Socket connectedSocket) throws IOException {
+		synchronized (stateLock) {
 			state = State.CONNECTED;
-			socket.setSoTimeout(configuration.getSocketTimeout());
+			connectedSocket.setSoTimeout(configuration.getSocketTimeout());
 			log.info("Connected to server.");
 
-			changeSocket(socket);
+			changeSocket(connectedSocket);
 		}
 
 		configuration.getListenerManager().onEvent(new SocketConnectEvent(this));
@@ -349,21 +628,64 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 
 		//Start input to start accepting lines
 		startLineProcessing();
+	}
 
-		return ImmutableMap.of();
+	/**
+	 * Create an unconnected socket, backed by a {@link SocketChannel} when
+	 * using a {@link SelectorEngine}
+	 */
+	protected Socket createSocket() throws IOException {
+		if (configuration.getSelectorEngine() != null)
+			return SocketChannel.open().socket();
+		return configuration.getSocketFactory().createSocket();
+	}
+
+	/**
+	 * Create a socket connected to the given host, backed by a
+	 * {@link SocketChannel} when using a {@link SelectorEngine}
+	 */
+	protected Socket createSocket(String hostname, int port) throws IOException {
+		if (configuration.getSelectorEngine() != null)
+			return SocketChannel.open(new InetSocketAddress(hostname, port)).socket();
+		return configuration.getSocketFactory().createSocket(hostname, port);
 	}
 
 	protected void changeSocket(Socket socket) throws IOException {
 		this.socket = socket;
-		this.inputReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), configuration.getEncoding()));
+		if (configuration.getSelectorEngine() != null) {
+			this.selectorConnection = configuration.getBotFactory().createSelectorConnection(this, socket.getChannel());
+			this.inputStream = null;
+			this.inputFramer = null;
+			this.inputReader = null;
+			this.outputWriter = selectorConnection.createWriter();
+			configuration.getSelectorEngine().register(selectorConnection);
+			return;
+		}
+		this.inputStream = socket.getInputStream();
+		this.inputFramer = new LineFramer(configuration.getEncoding());
+		this.inputReader = null;
 		this.outputWriter = new OutputStreamWriter(socket.getOutputStream(), configuration.getEncoding());
 	}
 
 	protected void startLineProcessing() {
-		while (processNextLine()) {
-			//see processNextLine
+		if (selectorConnection != null) {
+			//Lines are read by the SelectorEngine which calls shutdown() once the connection closes
+			selectorConnection.startReading();
+			return;
 		}
 
+		if (configuration.getInputPipelineCapacity() > 0) {
+			inputPipeline = configuration.getBotFactory().createInputPipeline(this);
+			try {
+				inputPipeline.run();
+			} finally {
+				inputPipeline = null;
+			}
+		} else
+			while (processNextLine()) {
+				//see processNextLine
+			}
+
 		//Now that the socket is definitely closed call event, log, and kill the OutputThread
 		shutdown();
 	}
@@ -376,7 +698,7 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 		//Get line from the server
 		String line;
 		try {
-			line = inputReader.readLine();
+			line = readLine();
 		} catch (InterruptedIOException iioe) {
 			// This will happen if we haven't received anything from the server for a while.
 			// So we shall send it a ping to check that we are still connected.
@@ -412,6 +734,95 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 			return false;
 
 		//Start acting the line
+		processLine(line);
+
+		if (Thread.interrupted()) {
+			log.error("--- PircBotX interrupted during parsing, aborting reconnect loop and shutting down ---");
+			stopBotReconnect();
+			return false;
+		}
+		
+		return true;
+	}
+
+	/**
+	 * Read the next line from the server, blocking until one is available
+	 *
+	 * @return The line without surrounding whitespace, or null if the
+	 * connection was closed
+	 */
+	protected String readLine() throws IOException {
+		awaitReadingResumed();
+		if (inputReader != null) {
+			String line = inputReader.readLine();
+			return line == null ? null : CharMatcher.whitespace().trimFrom(line);
+		}
+		return inputFramer.readLine(inputStream);
+	}
+
+	/**
+	 * Stop reading from the server until every call is matched by
+	 * {@link #resumeReading() }, letting TCP push back on the server. Lines
+	 * already read are still processed. Pauses carry over reconnects
+	 */
+	public void pauseReading() {
+		synchronized (readPauseLock) {
+			if (readPauses++ != 0)
+				return;
+		}
+		readPauseChanged();
+	}
+
+	/**
+	 * Undo one {@link #pauseReading() }
+	 *
+	 * @throws IllegalStateException If reading isn't paused
+	 */
+	public void resumeReading() {
+		synchronized (readPauseLock) {
+			if (readPauses == 0)
+				throw new IllegalStateException("Reading isn't paused");
+			if (--readPauses != 0)
+				return;
+			readPauseLock.notifyAll();
+		}
+		readPauseChanged();
+	}
+
+	public boolean isReadingPaused() {
+		synchronized (readPauseLock) {
+			return readPauses != 0;
+		}
+	}
+
+	protected void readPauseChanged() {
+		SelectorConnection connection = selectorConnection;
+		if (connection != null)
+			connection.readPauseChanged();
+	}
+
+	/**
+	 * Block a blocking socket's reading thread while reading is paused
+	 */
+	protected void awaitReadingResumed() throws IOException {
+		synchronized (readPauseLock) {
+			//Recheck the socket as closing it doesn't wake this
+			while (readPauses != 0 && (socket == null || !socket.isClosed()))
+				try {
+					readPauseLock.wait(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while reading is paused", e);
+				}
+		}
+	}
+
+	/**
+	 * Parse a single line received from the server
+	 *
+	 * @param line Raw line without line endings
+	 */
+	protected void processLine(String line) {
 		try {
 			inputParser.handleLine(line);
 		} catch (Exception e) {
@@ -420,14 +831,20 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 			log.error(debug, e);
 			Utils.dispatchEvent(this, new ExceptionEvent(this, e, debug));
 		}
+	}
 
-		if (Thread.interrupted()) {
-			log.error("--- PircBotX interrupted during parsing, aborting reconnect loop and shutting down ---");
-			stopBotReconnect();
-			return false;
+	/**
+	 * Apply a line already parsed by the {@link InputPipeline}
+	 */
+	protected void processMessage(IrcMessage message) {
+		try {
+			inputParser.handleMessage(message);
+		} catch (Exception e) {
+			//Exception in client code. Just log and continue
+			String debug = "Exception encountered when parsing line " + message.getLine();
+			log.error(debug, e);
+			Utils.dispatchEvent(this, new ExceptionEvent(this, e, debug));
 		}
-		
-		return true;
 	}
 
 	/**
@@ -446,8 +863,10 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 		outputWriter.write(line + "\r\n");
 		outputWriter.flush();
 
-		List<String> lineParts = Utils.tokenizeLine(line);
-		getConfiguration().getListenerManager().onEvent(new OutputEvent(this, line, lineParts));
+		if (getConfiguration().getListenerManager().hasListeners(OutputEvent.class)) {
+			List<String> lineParts = Utils.tokenizeLine(line);
+			getConfiguration().getListenerManager().onEvent(new OutputEvent(this, line, lineParts));
+		}
 	}
 
 	protected void onLoggedIn(String nick) {
@@ -461,6 +880,34 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 			Runtime.getRuntime().addShutdownHook(shutdownHook = new PircBotX.BotShutdownHook(this));
 	}
 
+	/**
+	 * Wait for the next event of this bot that matches without blocking.
+	 * Waiters are indexed by event type so events of other types never reach
+	 * them
+	 *
+	 * @param eventClass Event class or interface to wait for
+	 * @param filter Only complete with events that pass
+	 * @param timeout Time to wait, Long.MAX_VALUE to wait forever
+	 * @param unit Unit of timeout
+	 * @return A future completed with the event or exceptionally with a
+	 * {@link java.util.concurrent.TimeoutException}
+	 * @see EventWaiters
+	 */
+	public <E extends GenericEvent> CompletableFuture<E> awaitEvent(@NonNull Class<E> eventClass, @NonNull Predicate<? super E> filter,
+			long timeout, @NonNull TimeUnit unit) {
+		return eventWaiters.await(eventClass, filter, timeout, unit);
+	}
+
+	/**
+	 * Wait forever for the next event of this bot that matches
+	 *
+	 * @see #awaitEvent(java.lang.Class, java.util.function.Predicate, long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public <E extends GenericEvent> CompletableFuture<E> awaitEvent(@NonNull Class<E> eventClass, @NonNull Predicate<? super E> filter) {
+		return eventWaiters.await(eventClass, filter, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
 	public OutputRaw sendRaw() {
 		return outputRaw;
 	}
@@ -592,6 +1039,11 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 	 * @see OutputIRC#quitServer()
 	 */
 	public void close() {
+		SelectorConnection connection = selectorConnection;
+		if (connection != null) {
+			connection.close(null, true);
+			return;
+		}
 		try {
 			socket.close();
 		} catch (Exception e) {
@@ -616,7 +1068,10 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 				IdentServer.getServer().removeIdentEntry(socket.getInetAddress(), socket.getPort(), socket.getLocalPort(), configuration.getLogin());
 
 			//Close the socket from here and let the threads die
-			if (socket != null && !socket.isClosed())
+			if (selectorConnection != null) {
+				selectorConnection.close(null, true);
+				selectorConnection = null;
+			} else if (socket != null && !socket.isClosed())
 				try {
 					socket.close();
 				} catch (Exception e) {
@@ -633,7 +1088,11 @@ public class PircBotX implements Comparable<PircBotX>, Closeable {
 
 			//Clear relevant variables of information
 			loggedIn = false;
-			daoSnapshot = (configuration.isSnapshotsEnabled()) ? userChannelDao.createSnapshot() : null;
+			if (configuration.isSnapshotsEnabled()) {
+				User botUser = userChannelDao.containsUser(getNick()) ? userChannelDao.getUser(getNick()) : null;
+				daoSnapshot = userChannelDao.createSnapshot(configuration.getSnapshotScope(), botUser, null);
+			} else
+				daoSnapshot = null;
 			userChannelDao.close();
 			inputParser.close();
 			dccHandler.close();
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import lombok.NonNull;
+import org.pircbotx.hooks.events.UserListEvent;
+import org.pircbotx.hooks.events.WhoEvent;
+import org.pircbotx.hooks.events.WhoisEvent;
+import org.pircbotx.hooks.types.GenericEvent;
+
+/**
+ * Per-bot WHOIS, WHO and NAMES requests. Concurrent requests for the same
+ * target share one outstanding request and the result is reused for
+ * {@link Configuration#getQueryCacheTtl() } milliseconds after it arrives, so
+ * repeated lookups don't cost rate limited output lines.
+ * <p>
+ * Results of a user are invalidated when they change nick, quit or change
+ * account, results of a channel when anyone joins or leaves it. Failed or
+ * timed out requests are never reused.
+ */
+public class QueryCache {
+	/**
+	 * Maximum number of results kept for each type of request
+	 */
+	protected static final int MAXIMUM_SIZE = 1024;
+	protected final PircBotX bot;
+	protected final long ttlNanos;
+	/**
+	 * Time to wait for a reply before failing the request
+	 */
+	protected final long timeoutMillis;
+	protected final Cache<String, Query<WhoisEvent>> whois = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+	protected final Cache<String, Query<WhoEvent>> who = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+	protected final Cache<String, Query<UserListEvent>> names = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+	public QueryCache(@NonNull PircBotX bot, long ttl, long timeout, @NonNull TimeUnit unit) {
+		this.bot = bot;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.timeoutMillis = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Send "WHOIS nick nick" unless a request for the nick is outstanding or
+	 * cached
+	 *
+	 * @return Future completed with the WhoisEvent of the nick
+	 */
+	public CompletableFuture<WhoisEvent> whois(@NonNull final String nick) {
+		return request(whois, nick, WhoisEvent.class, new Predicate<WhoisEvent>() {
+			@Override
+			public boolean test(WhoisEvent event) {
+				return event.getNick().equalsIgnoreCase(nick);
+			}
+		}, "WHOIS " + nick + " " + nick);
+	}
+
+	/**
+	 * Send "WHO target" unless a request for the target is outstanding or
+	 * cached
+	 *
+	 * @param target A nick, channel or mask
+	 * @return Future completed with the WhoEvent of the target
+	 */
+	public CompletableFuture<WhoEvent> who(@NonNull final String target) {
+		return request(who, target, WhoEvent.class, new Predicate<WhoEvent>() {
+			@Override
+			public boolean test(WhoEvent event) {
+				return event.getQuery().equalsIgnoreCase(target);
+			}
+		}, "WHO " + target);
+	}
+
+	/**
+	 * Send "NAMES channel" unless a request for the channel is outstanding or
+	 * cached
+	 *
+	 * @return Future completed with the UserListEvent of the channel
+	 */
+	public CompletableFuture<UserListEvent> names(@NonNull final String channel) {
+		return request(names, channel, UserListEvent.class, new Predicate<UserListEvent>() {
+			@Override
+			public boolean test(UserListEvent event) {
+				return event.getChannel().getName().equalsIgnoreCase(channel);
+			}
+		}, "NAMES " + channel);
+	}
+
+	protected <E extends GenericEvent> CompletableFuture<E> request(Cache<String, Query<E>> cache, String target,
+			Class<E> eventClass, Predicate<? super E> filter, String line) {
+		final String key = target.toLowerCase(bot.getConfiguration().getLocale());
+		final long now = System.nanoTime();
+		final Query<E> created = new Query<E>();
+		Query<E> query = cache.asMap().compute(key, new BiFunction<String, Query<E>, Query<E>>() {
+			@Override
+			public Query<E> apply(String key, Query<E> existing) {
+				return existing != null && !existing.isExpired(now, ttlNanos) ? existing : created;
+			}
+		});
+		if (query != created)
+			return query.copy();
+
+		//Wait before sending so the reply can't be missed
+		final Cache<String, Query<E>> requests = cache;
+		bot.awaitEvent(eventClass, filter, timeoutMillis, TimeUnit.MILLISECONDS).whenComplete(new BiConsumer<E, Throwable>() {
+			@Override
+			public void accept(E event, Throwable error) {
+				created.completedNanos = System.nanoTime();
+				if (error != null) {
+					requests.asMap().remove(key, created);
+					created.future.completeExceptionally(error);
+				} else
+					created.future.complete(event);
+			}
+		});
+		bot.sendRaw().rawLine(line);
+		return created.copy();
+	}
+
+	/**
+	 * Forget results of the nick and the channels the user is in, eg when they
+	 * change nick, quit or change account
+	 */
+	public void invalidateUser(@NonNull String nick, User user) {
+		if (isEmpty())
+			return;
+		String key = nick.toLowerCase(bot.getConfiguration().getLocale());
+		whois.invalidate(key);
+		who.invalidate(key);
+		if (user != null && bot.getUserChannelDao().containsUser(user.getNick()))
+			for (Channel curChannel : bot.getUserChannelDao().getChannels(user))
+				invalidateChannel(curChannel.getName());
+	}
+
+	/**
+	 * Forget results of the channel, eg when someone joins or leaves it
+	 */
+	public void invalidateChannel(@NonNull String channel) {
+		if (isEmpty())
+			return;
+		String key = channel.toLowerCase(bot.getConfiguration().getLocale());
+		who.invalidate(key);
+		names.invalidate(key);
+	}
+
+	public void invalidateAll() {
+		whois.invalidateAll();
+		who.invalidateAll();
+		names.invalidateAll();
+	}
+
+	protected boolean isEmpty() {
+		return whois.size() == 0 && who.size() == 0 && names.size() == 0;
+	}
+
+	protected static class Query<E> {
+		protected final CompletableFuture<E> future = new CompletableFuture<E>();
+		/**
+		 * When the reply arrived, only valid once the future is done
+		 */
+		protected volatile long completedNanos;
+
+		/**
+		 * Future for a single caller, so cancelling it doesn't affect the
+		 * others
+		 */
+		protected CompletableFuture<E> copy() {
+			return future.thenApply(Function.<E>identity());
+		}
+
+		protected boolean isExpired(long now, long ttlNanos) {
+			if (!future.isDone())
+				return false;
+			return future.isCompletedExceptionally() || now - completedNanos >= ttlNanos;
+		}
+	}
+}
@@ -89,6 +89,8 @@ public class ReplayServer {
 	protected static class WrapperListenerManager implements ListenerManager {
 		private static interface ImplExclude {
 			public void onEvent(Event event);
+
+			public boolean hasListeners(Class<? extends Event> eventClass);
 		}
 		@Delegate(excludes = ImplExclude.class)
 		protected final ListenerManager impl;
@@ -99,6 +101,12 @@ public class ReplayServer {
 			eventQueue.add(event);
 			impl.onEvent(event);
 		}
+
+		@Override
+		public boolean hasListeners(Class<? extends Event> eventClass) {
+			//Every event is queued
+			return true;
+		}
 	}
 
 	public static void main(String[] args) throws Exception {
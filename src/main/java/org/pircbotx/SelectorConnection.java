@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A single non-blocking connection to an IRC server driven by a
+ * {@link SelectorEngine}. Created by
+ * {@link Configuration.BotFactory#createSelectorConnection(org.pircbotx.PircBotX, java.nio.channels.SocketChannel)
+ * }.
+ * <p>
+ * Buffers are only touched while holding this connection's lock. Framed lines
+ * are queued and parsed in order on the engine's worker pool.
+ */
+@Slf4j
+public class SelectorConnection {
+	protected static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+	protected final Object lock = new Object[0];
+	protected final PircBotX bot;
+	@Getter
+	protected final SocketChannel channel;
+	protected final SelectorEngine engine;
+	protected final Charset encoding;
+	protected SelectorEngine.SelectorLoop selectorLoop;
+	protected SelectionKey key;
+	protected int interestOps = 0;
+	protected boolean readRequested = false;
+	protected volatile boolean readPaused = false;
+	//TLS, all null for plain connections
+	protected SSLEngine sslEngine;
+	protected ByteBuffer netIn;
+	protected ByteBuffer netOut;
+	/**
+	 * Frames decrypted (or plain) bytes into lines
+	 */
+	protected final LineFramer framer;
+	/**
+	 * Plain bytes waiting to be written (or encrypted)
+	 */
+	protected ByteBuffer pendingOut = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	protected volatile long lastReadTime = System.currentTimeMillis();
+	//Line lane
+	protected final Queue<String> lineQueue = new ConcurrentLinkedQueue<>();
+	protected final AtomicInteger queuedLines = new AtomicInteger();
+	protected final AtomicBoolean laneScheduled = new AtomicBoolean();
+	protected final Runnable laneRunnable = new LaneRunnable();
+	//Closing
+	protected final AtomicBoolean closed = new AtomicBoolean();
+	protected final AtomicBoolean closeDispatched = new AtomicBoolean();
+	protected volatile Exception closeException;
+
+	public SelectorConnection(@NonNull PircBotX bot, @NonNull SocketChannel channel, SSLEngine sslEngine) throws IOException {
+		this.bot = bot;
+		this.channel = channel;
+		this.engine = bot.getConfiguration().getSelectorEngine();
+		this.encoding = bot.getConfiguration().getEncoding();
+		this.framer = new LineFramer(encoding);
+		channel.configureBlocking(false);
+		if (sslEngine != null)
+			initTls(sslEngine);
+	}
+
+	/**
+	 * Writer used by {@link PircBotX#sendRawLineToServer(java.lang.String) }.
+	 * Bytes are sent as soon as the socket accepts them, the rest is sent by
+	 * the selector thread
+	 */
+	public Writer createWriter() {
+		return new Writer() {
+			@Override
+			public void write(String str) throws IOException {
+				enqueueOutput(str.getBytes(encoding));
+			}
+
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				write(new String(cbuf, off, len));
+			}
+
+			@Override
+			public void flush() throws IOException {
+				//Writer has its own lock field
+				synchronized (SelectorConnection.this.lock) {
+					flushOutbound();
+				}
+			}
+
+			@Override
+			public void close() {
+				SelectorConnection.this.close(null, true);
+			}
+		};
+	}
+
+	/**
+	 * Upgrade this plain connection to TLS, eg after a STARTTLS reply. Any
+	 * following output is only sent once the handshake is finished.
+	 */
+	public void startTls(@NonNull SSLEngine sslEngine) throws IOException {
+		synchronized (lock) {
+			if (this.sslEngine != null)
+				throw new IllegalStateException("Connection is already using TLS");
+			initTls(sslEngine);
+			flushOutbound();
+		}
+	}
+
+	protected void initTls(SSLEngine sslEngine) throws IOException {
+		sslEngine.setUseClientMode(true);
+		int packetSize = sslEngine.getSession().getPacketBufferSize();
+		this.netIn = ByteBuffer.allocate(packetSize);
+		this.netOut = ByteBuffer.allocate(packetSize);
+		framer.ensureRemaining(sslEngine.getSession().getApplicationBufferSize());
+		sslEngine.beginHandshake();
+		this.sslEngine = sslEngine;
+	}
+
+	/**
+	 * Called by the selector thread once the channel is assigned to it
+	 */
+	protected void registerWith(Selector selector) {
+		synchronized (lock) {
+			try {
+				key = channel.register(selector, interestOps, this);
+				flushOutbound();
+			} catch (ClosedChannelException e) {
+				close(null, false);
+			} catch (IOException e) {
+				close(e, false);
+			}
+		}
+	}
+
+	/**
+	 * Start reading lines from the server
+	 */
+	public void startReading() {
+		synchronized (lock) {
+			readRequested = true;
+			updateInterest();
+		}
+	}
+
+	/**
+	 * Apply a change of {@link PircBotX#isReadingPaused() }
+	 */
+	protected void readPauseChanged() {
+		synchronized (lock) {
+			updateInterest();
+		}
+	}
+
+	/**
+	 * Called by the selector thread when the channel is ready
+	 */
+	protected void handleSelect(SelectionKey selectedKey) {
+		try {
+			if (!selectedKey.isValid())
+				return;
+			synchronized (lock) {
+				if (selectedKey.isReadable())
+					readInbound();
+				if (!closed.get())
+					flushOutbound();
+			}
+		} catch (IOException e) {
+			close(e, false);
+		} catch (Exception e) {
+			log.error("Exception encountered when handling connection", e);
+			close(e, false);
+		}
+	}
+
+	protected void readInbound() throws IOException {
+		int read;
+		if (sslEngine == null) {
+			read = channel.read(framer.getBuffer());
+		} else
+			read = channel.read(netIn);
+		if (read == -1) {
+			//Server closed the connection, finish parsing what we have
+			if (sslEngine != null)
+				unwrapInbound();
+			frameLines();
+			String lastLine = framer.finish();
+			if (lastLine != null)
+				queueLine(lastLine);
+			close(null, false);
+			return;
+		}
+		lastReadTime = System.currentTimeMillis();
+		if (sslEngine != null)
+			unwrapInbound();
+		frameLines();
+	}
+
+	protected void unwrapInbound() throws IOException {
+		netIn.flip();
+		try {
+			while (netIn.hasRemaining()) {
+				SSLEngineResult result = sslEngine.unwrap(netIn, framer.getBuffer());
+				switch (result.getStatus()) {
+					case BUFFER_UNDERFLOW:
+						//Need more bytes from the network for a full record
+						int packetSize = sslEngine.getSession().getPacketBufferSize();
+						if (netIn.capacity() < packetSize) {
+							netIn.compact();
+							netIn = enlarge(netIn, packetSize);
+							netIn.flip();
+						}
+						return;
+					case BUFFER_OVERFLOW:
+						frameLines();
+						framer.ensureRemaining(sslEngine.getSession().getApplicationBufferSize());
+						continue;
+					case CLOSED:
+						close(null, false);
+						return;
+					default:
+						break;
+				}
+				runDelegatedTasks();
+				if (result.getHandshakeStatus() == HandshakeStatus.NEED_WRAP)
+					flushOutbound();
+				if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+						&& sslEngine.getHandshakeStatus() != HandshakeStatus.NEED_UNWRAP)
+					return;
+			}
+		} finally {
+			netIn.compact();
+		}
+	}
+
+	/**
+	 * Queue all complete lines received so far for parsing
+	 */
+	protected void frameLines() {
+		String line;
+		while ((line = framer.nextLine()) != null)
+			queueLine(line);
+	}
+
+	protected void queueLine(String line) {
+		lineQueue.add(line);
+		if (queuedLines.incrementAndGet() >= engine.getMaxQueuedLines() && !readPaused) {
+			//Parsing can't keep up, let TCP push back on the server
+			readPaused = true;
+			updateInterest();
+		}
+		scheduleLane();
+	}
+
+	protected void scheduleLane() {
+		if (laneScheduled.compareAndSet(false, true))
+			engine.getWorkerPool().execute(laneRunnable);
+	}
+
+	protected void flushOutbound() throws IOException {
+		if (closed.get())
+			return;
+		ByteBuffer out = pendingOut;
+		if (sslEngine != null) {
+			while (wrapOutbound()) {
+				//Keep going until nothing more can be wrapped
+			}
+			out = netOut;
+		}
+		out.flip();
+		try {
+			while (out.hasRemaining() && channel.write(out) > 0) {
+				//Write as much as the socket will take
+			}
+		} finally {
+			boolean remaining = out.hasRemaining();
+			out.compact();
+			setWriteInterest(remaining);
+		}
+	}
+
+	/**
+	 * Wrap pending output or handshake data into {@link #netOut}
+	 *
+	 * @return true if progress was made
+	 */
+	protected boolean wrapOutbound() throws IOException {
+		HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+		if (handshakeStatus == HandshakeStatus.NEED_TASK) {
+			runDelegatedTasks();
+			return true;
+		}
+		boolean handshaking = handshakeStatus != HandshakeStatus.NOT_HANDSHAKING
+				&& handshakeStatus != HandshakeStatus.FINISHED;
+		if (handshakeStatus == HandshakeStatus.NEED_UNWRAP || (!handshaking && pendingOut.position() == 0))
+			return false;
+
+		SSLEngineResult result;
+		pendingOut.flip();
+		try {
+			result = sslEngine.wrap(pendingOut, netOut);
+		} finally {
+			pendingOut.compact();
+		}
+		switch (result.getStatus()) {
+			case BUFFER_OVERFLOW:
+				//Make room by writing what's already been wrapped
+				netOut.flip();
+				int written = channel.write(netOut);
+				netOut.compact();
+				if (written == 0 && netOut.position() == 0)
+					netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+				return written > 0 || netOut.position() == 0;
+			case CLOSED:
+				return false;
+			default:
+				return result.bytesProduced() > 0 || result.bytesConsumed() > 0;
+		}
+	}
+
+	protected void runDelegatedTasks() {
+		Runnable task;
+		while ((task = sslEngine.getDelegatedTask()) != null)
+			task.run();
+	}
+
+	protected void enqueueOutput(byte[] bytes) throws IOException {
+		synchronized (lock) {
+			if (closed.get())
+				throw new ClosedChannelException();
+			pendingOut = ensureRemaining(pendingOut, bytes.length);
+			pendingOut.put(bytes);
+		}
+	}
+
+	protected void setWriteInterest(boolean write) {
+		boolean current = (interestOps & SelectionKey.OP_WRITE) != 0;
+		if (current != write)
+			updateInterest();
+	}
+
+	/**
+	 * Recalculate and apply the interest set in the selector thread
+	 */
+	protected void updateInterest() {
+		int newOps = 0;
+		if (readRequested && !readPaused && !bot.isReadingPaused())
+			newOps |= SelectionKey.OP_READ;
+		boolean wantWrite = (sslEngine != null ? netOut.position() : pendingOut.position()) > 0;
+		if (wantWrite)
+			newOps |= SelectionKey.OP_WRITE;
+		if (newOps == interestOps)
+			return;
+		interestOps = newOps;
+		if (selectorLoop == null)
+			//Not registered yet, the interest set is applied when it is
+			return;
+		selectorLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (lock) {
+					if (key != null && key.isValid())
+						key.interestOps(interestOps);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Called periodically by the selector thread. Mirrors the socket timeout
+	 * of blocking connections by sending a PING when nothing was read
+	 */
+	protected void checkIdle(long now) {
+		if (!channel.isOpen()) {
+			//Socket was closed directly instead of through close()
+			close(null, true);
+			return;
+		}
+		if (now - lastReadTime < bot.getConfiguration().getSocketTimeout())
+			return;
+		lastReadTime = now;
+		engine.getWorkerPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				if (bot.isConnected())
+					bot.sendRaw().rawLine("PING " + (System.currentTimeMillis() / 1000));
+			}
+		});
+	}
+
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	/**
+	 * Close the connection. The bot is notified once all queued lines are
+	 * parsed
+	 *
+	 * @param exception Exception that caused the close, or null
+	 * @param discardQueued true to drop lines that haven't been parsed yet
+	 */
+	public void close(Exception exception, boolean discardQueued) {
+		if (!closed.compareAndSet(false, true))
+			return;
+		closeException = exception;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.error("Cannot close channel", e);
+		}
+		if (discardQueued) {
+			lineQueue.clear();
+			queuedLines.set(0);
+		}
+		scheduleLane();
+	}
+
+	protected static ByteBuffer ensureRemaining(ByteBuffer buffer, int needed) {
+		if (buffer.remaining() >= needed)
+			return buffer;
+		return enlarge(buffer, buffer.position() + needed);
+	}
+
+	protected static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+		ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+		buffer.flip();
+		newBuffer.put(buffer);
+		return newBuffer;
+	}
+
+	/**
+	 * Parses queued lines in order, then notifies the bot if the connection
+	 * has closed
+	 */
+	protected class LaneRunnable implements Runnable {
+		@Override
+		public void run() {
+			Utils.addBotToMDC(bot);
+			String line;
+			while ((line = lineQueue.poll()) != null) {
+				if (queuedLines.decrementAndGet() <= engine.getMaxQueuedLines() / 2 && readPaused)
+					synchronized (lock) {
+						readPaused = false;
+						updateInterest();
+					}
+				bot.processLine(line);
+			}
+
+			if (closed.get() && closeDispatched.compareAndSet(false, true)) {
+				bot.onSelectorConnectionClosed(SelectorConnection.this, closeException);
+				return;
+			}
+
+			laneScheduled.set(false);
+			//Lines might of been queued after the last poll
+			if ((!lineQueue.isEmpty() || (closed.get() && !closeDispatched.get())))
+				scheduleLane();
+		}
+	}
+}
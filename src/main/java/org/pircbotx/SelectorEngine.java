@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Non-blocking transport that multiplexes many {@link PircBotX} connections
+ * over a small, fixed group of selector threads instead of dedicating a
+ * blocking thread to every bot.
+ * <p>
+ * Selector threads only read, write, and frame lines. Each line is handed to
+ * {@link InputParser#handleLine(java.lang.String) } in a per-bot lane on the
+ * shared worker pool, so lines from one server are always parsed in order but
+ * no thread is parked while a connection is idle. Output still goes through
+ * {@link org.pircbotx.output.OutputRaw}. Bots started with
+ * {@link PircBotX#startBotAsync() } also connect without waiting on a
+ * thread, only resolving server hostnames blocks a worker thread.
+ * <p>
+ * Enable by sharing one engine between configurations with
+ * {@link Configuration.Builder#setSelectorEngine(org.pircbotx.SelectorEngine)
+ * }. TLS is done with an {@link javax.net.ssl.SSLEngine} created from
+ * {@link Configuration#getSslContext() }. Bots on an engine are best started
+ * with {@link PircBotX#startBotAsync() } or a {@link MultiBotManager}.
+ */
+@Slf4j
+public class SelectorEngine implements Closeable {
+	protected static final AtomicInteger ENGINE_COUNT = new AtomicInteger();
+	protected final int engineNumber;
+	protected final SelectorLoop[] selectorLoops;
+	protected final AtomicInteger nextSelectorLoop = new AtomicInteger();
+	/**
+	 * Pool that runs the InputParser for each connection, one line at a time
+	 * per connection
+	 */
+	@Getter
+	protected final ExecutorService workerPool;
+	/**
+	 * Used for reconnect delays
+	 */
+	protected final ScheduledExecutorService scheduler;
+	/**
+	 * Maximum number of framed lines waiting to be parsed for a single
+	 * connection before reading from its socket is paused, default 4096
+	 */
+	@Getter
+	@Setter
+	protected volatile int maxQueuedLines = 4096;
+	protected volatile boolean running = true;
+
+	/**
+	 * Create an engine with one selector thread per two processors and a
+	 * cached worker pool.
+	 */
+	public SelectorEngine() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	}
+
+	/**
+	 * Create an engine with the given number of selector threads and a cached
+	 * worker pool.
+	 *
+	 * @param selectorThreads Number of selector threads, must be positive
+	 */
+	public SelectorEngine(int selectorThreads) {
+		this(selectorThreads, null);
+	}
+
+	/**
+	 * Create an engine with the given number of selector threads and worker
+	 * pool.
+	 *
+	 * @param selectorThreads Number of selector threads, must be positive
+	 * @param workerPool Pool to parse lines in, or null for a cached pool
+	 */
+	public SelectorEngine(int selectorThreads, ExecutorService workerPool) {
+		checkArgument(selectorThreads > 0, "Must have at least one selector thread");
+		engineNumber = ENGINE_COUNT.getAndIncrement();
+		if (workerPool == null)
+			workerPool = VirtualThreads.newCachedThreadPool("selectorEngine" + engineNumber + "-worker%d", true);
+		this.workerPool = workerPool;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(BasicThreadFactory.builder()
+				.namingPattern("selectorEngine" + engineNumber + "-scheduler")
+				.daemon(true)
+				.build());
+
+		selectorLoops = new SelectorLoop[selectorThreads];
+		try {
+			for (int i = 0; i < selectorThreads; i++) {
+				selectorLoops[i] = new SelectorLoop(Selector.open());
+				Thread thread = new Thread(selectorLoops[i], "selectorEngine" + engineNumber + "-selector" + i);
+				thread.setDaemon(true);
+				selectorLoops[i].thread = thread;
+				thread.start();
+			}
+		} catch (IOException e) {
+			close();
+			throw new RuntimeException("Cannot open selector", e);
+		}
+	}
+
+	/**
+	 * Assign the connection to a selector thread. Reading does not start until
+	 * {@link SelectorConnection#startReading() } is called
+	 */
+	protected void register(final SelectorConnection connection) {
+		checkNotNull(connection, "Connection cannot be null");
+		SelectorLoop loop = null;
+		for (SelectorLoop curLoop : selectorLoops)
+			//Reuse the key of a channel connected by connect()
+			if (connection.getChannel().keyFor(curLoop.selector) != null)
+				loop = curLoop;
+		register(connection, loop != null ? loop : nextSelectorLoop());
+	}
+
+	protected void register(final SelectorConnection connection, final SelectorLoop loop) {
+		if (!running)
+			throw new IllegalStateException("SelectorEngine has been closed");
+		connection.selectorLoop = loop;
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				connection.registerWith(loop.selector);
+			}
+		});
+	}
+
+	protected SelectorLoop nextSelectorLoop() {
+		return selectorLoops[Math.abs(nextSelectorLoop.getAndIncrement() % selectorLoops.length)];
+	}
+
+	/**
+	 * Connect the channel on a selector thread without blocking any thread
+	 * while waiting for the server. On failure or timeout the channel is
+	 * closed.
+	 *
+	 * @param timeout Milliseconds to wait for the connection, 0 to wait
+	 * forever
+	 * @return Future completed on the worker pool once connected
+	 */
+	protected ListenableFuture<Void> connect(SocketChannel channel, InetSocketAddress address, int timeout) {
+		checkNotNull(channel, "Channel cannot be null");
+		checkNotNull(address, "Address cannot be null");
+		if (!running)
+			throw new IllegalStateException("SelectorEngine has been closed");
+		final PendingConnect pendingConnect = new PendingConnect(channel, address);
+		if (timeout > 0)
+			pendingConnect.timeoutFuture = scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					pendingConnect.complete(new SocketTimeoutException("Connect timed out after " + timeout + "ms"));
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		final SelectorLoop loop = nextSelectorLoop();
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				pendingConnect.start(loop.selector);
+			}
+		});
+		return pendingConnect.future;
+	}
+
+	/**
+	 * Run the task after the specified delay on the worker pool
+	 */
+	protected void schedule(final Runnable task, long delay, TimeUnit unit) {
+		if (delay <= 0) {
+			workerPool.execute(task);
+			return;
+		}
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				workerPool.execute(task);
+			}
+		}, delay, unit);
+	}
+
+	/**
+	 * Stop all selector threads and pools. Connections that are still open are
+	 * closed.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		for (SelectorLoop curLoop : selectorLoops)
+			if (curLoop != null)
+				curLoop.selector.wakeup();
+		scheduler.shutdown();
+		workerPool.shutdown();
+	}
+
+	protected class SelectorLoop implements Runnable {
+		protected final Selector selector;
+		protected final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+		protected Thread thread;
+
+		public SelectorLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		/**
+		 * Run the task in the selector thread, which is the only thread allowed
+		 * to register channels or change their interest set
+		 */
+		public void execute(Runnable task) {
+			if (Thread.currentThread() == thread) {
+				task.run();
+				return;
+			}
+			pendingTasks.add(task);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			long lastIdleCheck = System.currentTimeMillis();
+			while (running) {
+				try {
+					Runnable task;
+					while ((task = pendingTasks.poll()) != null)
+						task.run();
+
+					selector.select(1000);
+					Iterator<SelectionKey> keyItr = selector.selectedKeys().iterator();
+					while (keyItr.hasNext()) {
+						SelectionKey curKey = keyItr.next();
+						keyItr.remove();
+						if (curKey.attachment() instanceof PendingConnect)
+							((PendingConnect) curKey.attachment()).finish(curKey);
+						else
+							((SelectorConnection) curKey.attachment()).handleSelect(curKey);
+					}
+
+					long now = System.currentTimeMillis();
+					if (now - lastIdleCheck >= 1000) {
+						lastIdleCheck = now;
+						for (SelectionKey curKey : selector.keys())
+							if (curKey.attachment() instanceof SelectorConnection)
+								((SelectorConnection) curKey.attachment()).checkIdle(now);
+					}
+				} catch (ClosedSelectorException e) {
+					break;
+				} catch (Exception e) {
+					log.error("Unexpected exception in selector loop", e);
+				}
+			}
+
+			//Engine closed, close any remaining connections
+			try {
+				for (SelectionKey curKey : selector.keys())
+					if (curKey.attachment() instanceof PendingConnect)
+						((PendingConnect) curKey.attachment()).complete(new IOException("SelectorEngine has been closed"));
+					else
+						((SelectorConnection) curKey.attachment()).close(null, true);
+				selector.close();
+			} catch (Exception e) {
+				log.error("Cannot close selector", e);
+			}
+		}
+	}
+
+	/**
+	 * Channel waiting for OP_CONNECT. Once connected the key is left with no
+	 * interest for the {@link SelectorConnection} to take over.
+	 */
+	protected class PendingConnect {
+		protected final SocketChannel channel;
+		protected final InetSocketAddress address;
+		protected final SettableFuture<Void> future = SettableFuture.create();
+		protected final AtomicBoolean done = new AtomicBoolean();
+		protected volatile ScheduledFuture<?> timeoutFuture;
+
+		public PendingConnect(SocketChannel channel, InetSocketAddress address) {
+			this.channel = channel;
+			this.address = address;
+		}
+
+		/**
+		 * Called by the selector thread
+		 */
+		protected void start(Selector selector) {
+			try {
+				channel.configureBlocking(false);
+				if (channel.connect(address))
+					complete(null);
+				else if (!done.get())
+					channel.register(selector, SelectionKey.OP_CONNECT, this);
+			} catch (Exception e) {
+				complete(e);
+			}
+		}
+
+		/**
+		 * Called by the selector thread once the channel is connectable
+		 */
+		protected void finish(SelectionKey key) {
+			try {
+				if (channel.finishConnect()) {
+					key.interestOps(0);
+					complete(null);
+				}
+			} catch (Exception e) {
+				complete(e);
+			}
+		}
+
+		protected void complete(final Exception exception) {
+			if (!done.compareAndSet(false, true))
+				return;
+			ScheduledFuture<?> curTimeoutFuture = timeoutFuture;
+			if (curTimeoutFuture != null)
+				curTimeoutFuture.cancel(false);
+			if (exception != null)
+				try {
+					channel.close();
+				} catch (IOException e) {
+					log.debug("Cannot close channel that failed to connect", e);
+				}
+			Runnable completion = new Runnable() {
+				@Override
+				public void run() {
+					if (exception == null)
+						future.set(null);
+					else
+						future.setException(exception);
+				}
+			};
+			try {
+				workerPool.execute(completion);
+			} catch (Exception e) {
+				//Engine closed
+				completion.run();
+			}
+		}
+	}
+}
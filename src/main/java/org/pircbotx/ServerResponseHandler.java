@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import lombok.Data;
+
+/**
+ * Handles a numeric server response, eg 353 RPL_NAMREPLY. Add to
+ * {@link Configuration.Builder#addServerResponseHandler(org.pircbotx.ServerResponseHandler) }
+ * to handle a numeric PircBotX doesn't support or to replace a built-in
+ * handler. A {@link org.pircbotx.hooks.events.ServerResponseEvent} is
+ * dispatched for every numeric after its handler runs
+ */
+@Data
+public abstract class ServerResponseHandler {
+	/**
+	 * The numeric, between 0 and 999
+	 */
+	protected final int code;
+
+	/**
+	 * @param parser The parser of the bot that received the line
+	 * @param message The line
+	 */
+	public abstract void handleResponse(InputParser parser, PircBotX bot, IrcMessage message);
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.NonNull;
+
+/**
+ * Bounded queue between exactly one producer thread and one consumer thread,
+ * used to connect the stages of an {@link InputPipeline}. Elements are stored
+ * in a preallocated ring without locks or per element nodes. Each side caches
+ * the other side's index so it only reads it when the ring looks full or
+ * empty.
+ * <p>
+ * A waiting side parks until the other side makes progress. The producer
+ * {@link #close() closes} the queue to tell the consumer no more elements are
+ * coming.
+ */
+final class SpscQueue<E> {
+	private final Object[] buffer;
+	private final int mask;
+	/**
+	 * Index of the next element to take, only written by the consumer
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * Index of the next element to add, only written by the producer
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * Producer's copy of {@link #head}
+	 */
+	private long cachedHead;
+	/**
+	 * Consumer's copy of {@link #tail}
+	 */
+	private long cachedTail;
+	private volatile Thread waitingProducer;
+	private volatile Thread waitingConsumer;
+	private volatile boolean closed;
+
+	/**
+	 * @param capacity Maximum elements in the queue, rounded up to a power of
+	 * 2
+	 */
+	SpscQueue(int capacity) {
+		checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity must be between 1 and 2^30, given %s", capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.buffer = new Object[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Add an element if there is room. Producer only
+	 *
+	 * @return False if the queue is full
+	 */
+	boolean offer(@NonNull E element) {
+		long t = tail.get();
+		if (t - cachedHead == buffer.length) {
+			cachedHead = head.get();
+			if (t - cachedHead == buffer.length)
+				return false;
+		}
+		buffer[(int) t & mask] = element;
+		tail.set(t + 1);
+		Thread consumer = waitingConsumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+		return true;
+	}
+
+	/**
+	 * Add an element, waiting for room if the queue is full. Producer only
+	 */
+	void put(@NonNull E element) throws InterruptedException {
+		while (!offer(element)) {
+			waitingProducer = Thread.currentThread();
+			//Recheck after publishing the waiting thread so a take can't be missed
+			if (tail.get() - head.get() == buffer.length)
+				LockSupport.park(this);
+			waitingProducer = null;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Remove the next element. Consumer only
+	 *
+	 * @return The element or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	E poll() {
+		long h = head.get();
+		if (h == cachedTail) {
+			cachedTail = tail.get();
+			if (h == cachedTail)
+				return null;
+		}
+		int index = (int) h & mask;
+		E element = (E) buffer[index];
+		buffer[index] = null;
+		head.set(h + 1);
+		Thread producer = waitingProducer;
+		if (producer != null)
+			LockSupport.unpark(producer);
+		return element;
+	}
+
+	/**
+	 * Remove the next element, waiting for one if the queue is empty.
+	 * Consumer only
+	 *
+	 * @return The element or null if the queue is closed and empty
+	 */
+	E take() throws InterruptedException {
+		E element;
+		while ((element = poll()) == null) {
+			if (closed) {
+				//Elements added before closing are visible after reading closed
+				return poll();
+			}
+			waitingConsumer = Thread.currentThread();
+			if (head.get() == tail.get() && !closed)
+				LockSupport.park(this);
+			waitingConsumer = null;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+		}
+		return element;
+	}
+
+	/**
+	 * Signal the consumer that no more elements will be added. Producer only
+	 */
+	void close() {
+		closed = true;
+		Thread consumer = waitingConsumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return Approximate number of elements in the queue
+	 */
+	int size() {
+		long h = head.get();
+		return (int) (tail.get() - h);
+	}
+
+	int capacity() {
+		return buffer.length;
+	}
+}
@@ -19,12 +19,12 @@ package org.pircbotx;
 
 import org.pircbotx.snapshot.UserSnapshot;
 import com.google.common.collect.ImmutableSortedSet;
-import java.util.UUID;
-import lombok.AccessLevel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.ToString;
-import org.pircbotx.hooks.WaitForQueue;
 import org.pircbotx.hooks.events.WhoisEvent;
 
 /**
@@ -34,9 +34,12 @@ import org.pircbotx.hooks.events.WhoisEvent;
  */
 @Getter
 @ToString(callSuper = true)
-@Setter(AccessLevel.PROTECTED)
 public class User extends UserHostmask {
-	private final UUID userId;
+	private static final AtomicInteger USER_ID_COUNTER = new AtomicInteger();
+	/**
+	 * Unique id for this user <i>instance</i>, ids are assigned in order
+	 */
+	private final int userId;
 	/**
 	 * Realname/fullname of the user. Never changes
 	 */
@@ -62,7 +65,7 @@ public class User extends UserHostmask {
 
 	protected User(UserHostmask hostmask) {
 		super(hostmask);
-		userId = UUID.randomUUID();
+		userId = USER_ID_COUNTER.getAndIncrement();
 	}
 	
 	/**
@@ -78,28 +81,66 @@ public class User extends UserHostmask {
 		return bot.getUserChannelDao();
 	}
 
+	/**
+	 * Called before changing the user so snapshots created before can still
+	 * get the current values
+	 */
+	protected void preserve() {
+		getDao().preserveUser(this);
+	}
+
+	@Override
+	protected void setNick(String nick) {
+		preserve();
+		super.setNick(nick);
+	}
+
+	@Override
+	protected void updateHostmask(UserHostmask userHostmask) {
+		preserve();
+		super.updateHostmask(userHostmask);
+	}
+
+	protected void setRealName(String realName) {
+		preserve();
+		this.realName = realName;
+	}
+
+	protected void setAwayMessage(String awayMessage) {
+		preserve();
+		this.awayMessage = awayMessage;
+	}
+
+	protected void setIrcop(boolean ircop) {
+		preserve();
+		this.ircop = ircop;
+	}
+
+	protected void setServer(String server) {
+		preserve();
+		this.server = server;
+	}
+
+	protected void setHops(int hops) {
+		preserve();
+		this.hops = hops;
+	}
+
 	/**
 	 * Query the user with WHOIS to determine if they are verified *EXPENSIVE*.
 	 * This is intended to be a quick utility method, if you need more specific
-	 * info from the Whois then its recommended to listen for or use
-	 * {@link WaitForQueue }
+	 * info from the Whois then its recommended to use
+	 * {@link org.pircbotx.output.OutputUser#whoisAsync() }. The result is
+	 * shared with other lookups of the user, see {@link QueryCache}
 	 *
 	 * @return True if the user is verified
 	 */
 	public boolean isVerified() {
+		CompletableFuture<WhoisEvent> whois = send().whoisAsync();
 		try {
-			send().whoisDetail();
-			WaitForQueue waitForQueue = new WaitForQueue(getBot());
-			while (true) {
-				WhoisEvent event = waitForQueue.waitFor(WhoisEvent.class);
-				if (!event.getNick().equals(getNick()))
-					continue;
-
-				//Got our event
-				waitForQueue.close();
-				return event.getRegisteredAs() != null;
-			}
-		} catch (InterruptedException ex) {
+			return whois.get().getRegisteredAs() != null;
+		} catch (InterruptedException | ExecutionException ex) {
+			whois.cancel(false);
 			throw new RuntimeException("Couldn't finish querying user for verified status", ex);
 		}
 	}
@@ -127,6 +168,26 @@ public class User extends UserHostmask {
 		return getDao().getChannels(this);
 	}
 
+	/**
+	 * Get the number of channels this user is a part of without creating a
+	 * set
+	 *
+	 * @return Number of channels this user is a part of
+	 */
+	public int getChannelCount() {
+		return getDao().getChannelCount(this);
+	}
+
+	/**
+	 * Run the action for each channel this user is a part of, in no particular
+	 * order, without creating a set
+	 *
+	 * @param action Action to run for each channel
+	 */
+	public void forEachChannel(Consumer<? super Channel> action) {
+		getDao().forEachChannel(this, action);
+	}
+
 	/**
 	 * Get all channels user has Operator status in. Be careful when storing the
 	 * result from this method as it may be out of date by the time you use it
@@ -195,10 +256,10 @@ public class User extends UserHostmask {
 	}
 
 	/**
-	 * Hash code generated from UUID
+	 * Hash code generated from the user id
 	 */
 	@Override
 	public int hashCode() {
-		return userId.hashCode();
+		return userId;
 	}
 }
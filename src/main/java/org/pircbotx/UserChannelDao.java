@@ -20,72 +20,88 @@ package org.pircbotx;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.Closeable;
-import java.util.EnumMap;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.pircbotx.exception.DaoException;
 import org.pircbotx.hooks.events.UserListEvent;
 import org.pircbotx.snapshot.ChannelSnapshot;
+import org.pircbotx.snapshot.SnapshotScope;
 import org.pircbotx.snapshot.UserChannelDaoSnapshot;
-import org.pircbotx.snapshot.UserChannelMapSnapshot;
 import org.pircbotx.snapshot.UserSnapshot;
-import org.pircbotx.tools.ConcurrentEnumMap;
+import org.pircbotx.tools.PersistentHashMap;
 
-import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Maps;
 
-import lombok.AccessLevel;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
  * Model that creates and tracks Users and Channel and maintains relationships.
  * This includes channel users, channel op/voice/etc users, private messages,
  * etc
  * <p>
+ * All users, channels and relationships are kept in an immutable
+ * {@link State} made of persistent maps. Changes build a new state sharing
+ * everything that didn't change with the old one, then replace it. Reads don't
+ * lock and each sees a single consistent state, and
+ * {@link #createSnapshot() } keeps the current state instead of copying it.
+ * Users and channels are copied when a snapshot first looks them up, using the
+ * values they had when the snapshot was created (see {@link Generation}).
+ * <p>
  * All methods will throw a {@link NullPointerException} when any argument is
  * null
  *
  * @see User
  * @see Channel
  */
-@RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 public class UserChannelDao<U extends User, C extends Channel> implements Closeable {
 	protected final PircBotX bot;
 	protected final Configuration.BotFactory botFactory;
 	protected final Locale locale;
+	/**
+	 * Held while changing {@link #state}
+	 */
 	protected final Object accessLock = new Object();
-	protected final UserChannelMap<U, C> mainMap;
-	protected final Map<UserLevel, UserChannelMap<U, C>> levelsMap;
-	protected final Map<String, U> userNickMap;
-	protected final Map<String, C> channelNameMap;
-
-	
-    private final ReentrantReadWriteLock reentlock = new ReentrantReadWriteLock();
-    private final Lock rL = reentlock.readLock();
-    private final Lock wL = reentlock.writeLock();
+	/**
+	 * Current state, replaced on every change
+	 */
+	protected volatile State state;
+	/**
+	 * Newest generation, cleared once no snapshot can use it
+	 */
+	protected volatile WeakReference<Generation> generation;
+	/**
+	 * Sets of each channel's users, see {@link View}
+	 */
+	protected final ConcurrentHashMap<Integer, View<U>> channelViews = new ConcurrentHashMap<Integer, View<U>>();
+	/**
+	 * Sets of each user's channels, see {@link View}
+	 */
+	protected final ConcurrentHashMap<Integer, View<C>> userViews = new ConcurrentHashMap<Integer, View<C>>();
+	protected volatile View<U> allUsersView;
+	protected volatile View<C> allChannelsView;
+	/**
+	 * Incremented on every rename since sets are sorted by nick
+	 */
+	protected volatile int renameCount;
 
 	protected UserChannelDao(PircBotX bot, Configuration.BotFactory botFactory) {
+		this(bot, botFactory, bot.getConfiguration().getLocale(), State.EMPTY);
+	}
+
+	protected UserChannelDao(PircBotX bot, Configuration.BotFactory botFactory, Locale locale, State state) {
 		this.bot = bot;
 		this.botFactory = botFactory;
-		this.locale = bot.getConfiguration().getLocale();
-		this.mainMap = new UserChannelMap<U, C>();
-		
-		userNickMap = new HashMap<>();
-		channelNameMap = new HashMap<>();		
-
-		//Initialize levels map with a UserChannelMap for each level		
-		this.levelsMap = new ConcurrentEnumMap<>(UserLevel.class);
-		for (UserLevel level : UserLevel.values())
-			levelsMap.put(level, new UserChannelMap<U, C>());
+		this.locale = locale;
+		this.state = state;
 	}
 
 	/**
@@ -99,20 +115,13 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */	
 	public U getUser(@NonNull String nick) throws DaoException {
 		checkArgument(StringUtils.isNotBlank(nick), "Cannot get a blank user");
-		
-		String nickLowercase = nick.toLowerCase(locale);
-		
-		rL.lock();
-		try {			
-			U user = userNickMap.get(nickLowercase);
-			if (user != null)
-				return user;
-	
-			//Does not exist
-			throw new DaoException(DaoException.Reason.UNKNOWN_USER, nick);
-		} finally {
-			rL.unlock();
-		}
+
+		User user = state.userNickMap.get(nick.toLowerCase(locale));
+		if (user != null)
+			return toUser(user);
+
+		//Does not exist
+		throw new DaoException(DaoException.Reason.UNKNOWN_USER, nick);
 	}
 
 	/**
@@ -125,7 +134,6 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 * hostmask, and wrapped exception with nick
 	 */
 	public U getUser(@NonNull UserHostmask userHostmask) {
-		rL.lock();
 		try {
 			//Rarely we don't get the full hostmask
 			//eg, the server setting your usermode when you connect to the server
@@ -135,8 +143,6 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 		} catch (Exception e) {
 			//Does not exist, wrap with detail about hostmask
 			throw new DaoException(DaoException.Reason.UNKNOWN_USER_HOSTMASK, userHostmask.toString(), e);
-		} finally {
-			rL.unlock();
 		}
 	}
 
@@ -150,17 +156,15 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	@SuppressWarnings("unchecked")
 	public U createUser(@NonNull UserHostmask userHostmask) {
 		String nickLowercase = userHostmask.getNick().toLowerCase(locale);
-		
-		wL.lock();
-		try {
+
+		synchronized (accessLock) {
 			if (containsUser(userHostmask))
 				throw new RuntimeException("Cannot create a user from hostmask that already exists: " + userHostmask);
 			U user = (U) botFactory.createUser(userHostmask);
-			userNickMap.put(nickLowercase, user);
+			State curState = state;
+			state = curState.withUserNickMap(curState.userNickMap.plus(nickLowercase, user));
 			return user;
-		} finally {
-			wL.unlock();
-		}			
+		}
 	}
 
 
@@ -171,15 +175,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 * @return True if user exists
 	 */
 	public boolean containsUser(@NonNull String nick) {
-		String nickLowercase = nick.toLowerCase(locale);
-		
-		rL.lock();
-		try {					
-			return userNickMap.containsKey(nickLowercase);
-		} finally {
-			rL.unlock();
-		}			
-			
+		return state.userNickMap.containsKey(nick.toLowerCase(locale));
 	}
 
 	/**
@@ -189,12 +185,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 * @return True if user exists
 	 */
 	public boolean containsUser(@NonNull UserHostmask hostmask) {
-		rL.lock();
-		try {				
-			return containsUser(hostmask.getNick());
-		} finally {
-			rL.unlock();
-		}				
+		return containsUser(hostmask.getNick());
 	}
 
 	/**
@@ -205,48 +196,57 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 * @see UserListEvent
 	 */
 	public ImmutableSortedSet<U> getAllUsers() {
-		rL.lock();
-		try {		
-			return ImmutableSortedSet.copyOf(userNickMap.values());
-		} finally {
-			rL.unlock();
-		}			
+		PersistentHashMap<String, User> userNickMap = state.userNickMap;
+		View<U> view = allUsersView;
+		if (view == null || !view.isCurrent(userNickMap, 0))
+			allUsersView = view = new View<U>(userNickMap, 0);
+		ImmutableSortedSet<U> users = view.sets.get(View.ALL);
+		if (users == null) {
+			users = toUsers(userNickMap.values());
+			view.sets.set(View.ALL, users);
+		}
+		return users;
 	}
 
 	
 	protected void addUserToChannel(@NonNull U user, @NonNull C channel) {
-		wL.lock();
-		try {
-			if (!containsUser(user)) {
-				String nickLowercase = user.getNick().toLowerCase(locale);
-				userNickMap.put(nickLowercase, user);
-			}
-			
-			mainMap.addUserToChannel(user, channel);
-		} finally {
-			wL.unlock();
-		}			
+		synchronized (accessLock) {
+			State curState = state;
+			PersistentHashMap<String, User> userNickMap = curState.userNickMap;
+			String nickLowercase = user.getNick().toLowerCase(locale);
+			if (!userNickMap.containsKey(nickLowercase))
+				userNickMap = userNickMap.plus(nickLowercase, user);
+
+			state = curState.withUserNickMap(userNickMap)
+					.withMainMap(curState.mainMap.plus(user, channel));
+		}
 	}
 
 
 	
+	/**
+	 * Give the user a level in the channel, adding them to the channel if
+	 * needed
+	 */
 	protected void addUserToLevel(@NonNull UserLevel level, @NonNull U user, @NonNull C channel) {
-		wL.lock();
-		try {		
-			levelsMap.get(level).addUserToChannel(user, channel);
-		} finally {
-			wL.unlock();
-		}				
+		synchronized (accessLock) {
+			State curState = state;
+			PersistentHashMap<String, User> userNickMap = curState.userNickMap;
+			String nickLowercase = user.getNick().toLowerCase(locale);
+			if (!userNickMap.containsKey(nickLowercase))
+				userNickMap = userNickMap.plus(nickLowercase, user);
+
+			state = curState.withUserNickMap(userNickMap)
+					.withMainMap(curState.mainMap.withLevel(user, channel, level, true));
+		}
 	}
 
 	
 	protected void removeUserFromLevel(@NonNull UserLevel level, @NonNull U user, @NonNull C channel) {
-		wL.lock();
-		try {		
-			levelsMap.get(level).removeUserFromChannel(user, channel);
-		} finally {
-			wL.unlock();
-		}							
+		synchronized (accessLock) {
+			State curState = state;
+			state = curState.withMainMap(curState.mainMap.withLevel(user, channel, level, false));
+		}
 	}
 
 	/**
@@ -259,15 +259,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<U> getNormalUsers(@NonNull C channel) {
-		rL.lock();
-		try {				
-			Set<U> remainingUsers = new HashSet<U>(mainMap.getUsers(channel));
-			for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-				remainingUsers.removeAll(curLevelMap.getUsers(channel));
-			return ImmutableSortedSet.copyOf(remainingUsers);
-		} finally {
-			rL.unlock();
-		}			
+		return getUsers(liveChannel(channel), View.NORMAL);
 	}
 
 	/**
@@ -281,12 +273,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<U> getUsers(@NonNull C channel, @NonNull UserLevel level) {
-		rL.lock();
-		try {						
-			return levelsMap.get(level).getUsers(channel);
-		} finally {
-			rL.unlock();
-		}				
+		return getUsers(liveChannel(channel), View.level(level));
 	}
 
 	/**
@@ -300,17 +287,14 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<UserLevel> getLevels(@NonNull C channel, @NonNull U user) {
-		rL.lock();
-		try {						
-			ImmutableSortedSet.Builder<UserLevel> builder = ImmutableSortedSet.naturalOrder();
-			for (Map.Entry<UserLevel, UserChannelMap<U, C>> curEntry : levelsMap.entrySet())
-				if (curEntry.getValue().containsEntry(user, channel))
-					builder.add(curEntry.getKey());
-			return builder.build();
-		} finally {
-			rL.unlock();
-		}				
-			
+		int levels = state.mainMap.getLevels(liveUser(user), liveChannel(channel));
+		if (levels <= 0)
+			return ImmutableSortedSet.of();
+		ImmutableSortedSet.Builder<UserLevel> builder = ImmutableSortedSet.naturalOrder();
+		for (UserLevel curLevel : UserLevel.values())
+			if ((levels & (1 << curLevel.ordinal())) != 0)
+				builder.add(curLevel);
+		return builder.build();
 	}
 
 	/**
@@ -323,15 +307,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<C> getNormalUserChannels(@NonNull U user) {
-		rL.lock();
-		try {						
-			Set<C> remainingChannels = new HashSet<C>(mainMap.getChannels(user));
-			for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-				remainingChannels.removeAll(curLevelMap.getChannels(user));
-			return ImmutableSortedSet.copyOf(remainingChannels);
-		} finally {
-			rL.unlock();
-		}			
+		return getChannels(liveUser(user), View.NORMAL);
 	}
 
 	/**
@@ -344,57 +320,49 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<C> getChannels(@NonNull U user, @NonNull UserLevel level) {
-		rL.lock();
-		try {				
-			return levelsMap.get(level).getChannels(user);
-		} finally {
-			rL.unlock();
-		}				
+		return getChannels(liveUser(user), View.level(level));
 	}
 
 	
 	protected void removeUserFromChannel(@NonNull U user, @NonNull C channel) {
 		String nickLowercase = user.getNick().toLowerCase(locale);
-		
-		wL.lock();
-		try {						
-			mainMap.removeUserFromChannel(user, channel);
-			for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-				curLevelMap.removeUserFromChannel(user, channel);
-	
-			if (!mainMap.containsUser(user))
+
+		synchronized (accessLock) {
+			State curState = state;
+			State newState = curState.withMainMap(curState.mainMap.minus(user, channel));
+
+			if (!newState.mainMap.containsUser(user)) {
 				//Completely remove user
-				userNickMap.remove(nickLowercase);
-		} finally {
-			wL.unlock();
-		}						
+				newState = newState.withUserNickMap(newState.userNickMap.minus(nickLowercase));
+				userViews.remove(user.getUserId());
+			}
+			state = newState;
+		}
 	}
 
 	
 	protected void removeUser(@NonNull U user) {
 		String nickLowercase = user.getNick().toLowerCase(locale);
-		
-		wL.lock();
-		try {							
-			mainMap.removeUser(user);
-			for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-				curLevelMap.removeUser(user);
-	
+
+		synchronized (accessLock) {
+			State curState = state;
+			State newState = curState.withMainMap(curState.mainMap.minusUser(user));
+
 			//Remove remaining locations
-			userNickMap.remove(nickLowercase);
-		} finally {
-			wL.unlock();
-		}			
+			state = newState.withUserNickMap(newState.userNickMap.minus(nickLowercase));
+			userViews.remove(user.getUserId());
+		}
 	}
 
 	
-	protected boolean levelContainsUser(@NonNull UserLevel level, @NonNull C channel, @NonNull U user) {
-		rL.lock();
-		try {		
-			return levelsMap.get(level).containsEntry(user, channel);
-		} finally {
-			rL.unlock();
-		}						
+	/**
+	 * Check if the user holds the level in the channel without creating any
+	 * sets
+	 *
+	 * @return True if the user holds the level
+	 */
+	public boolean levelContainsUser(@NonNull UserLevel level, @NonNull C channel, @NonNull U user) {
+		return state.mainMap.hasLevel(liveUser(user), liveChannel(channel), level);
 	}
 
 	
@@ -402,16 +370,15 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 		String oldNick = user.getNick();
 		String oldNickLowercase = oldNick.toLowerCase(locale);
 		String newNickLowercase = newNick.toLowerCase(locale);
-		
-		wL.lock();
-		try {		
-				
+
+		synchronized (accessLock) {
 			user.setNick(newNick);
-			userNickMap.remove(oldNickLowercase);
-			userNickMap.put(newNickLowercase, user);
-		} finally {
-			wL.unlock();
-		}			
+			renameCount++;
+			State curState = state;
+			state = curState.withUserNickMap(curState.userNickMap
+					.minus(oldNickLowercase)
+					.plus(newNickLowercase, user));
+		}
 	}
 
 	/**
@@ -422,32 +389,39 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	public C getChannel(@NonNull String name) throws DaoException {
 		checkArgument(StringUtils.isNotBlank(name), "Cannot get a blank channel");
-	
+
+		Channel chan = findChannel(state, name);
+		if (chan != null)
+			return toChannel(chan);
+
+		//Channel does not exist
+		throw new DaoException(DaoException.Reason.UNKNOWN_CHANNEL, name);
+	}
+
+	/**
+	 * Find the channel, stripping off user level prefixes if the name might be
+	 * from a mode message
+	 *
+	 * @return The channel or null
+	 */
+	protected Channel findChannel(State curState, String name) {
 		String nameLowercase = name.toLowerCase(locale);
-		rL.lock();
-		try {					
-			C chan = channelNameMap.get(nameLowercase);
-			if (chan != null)
-				return chan;
-	
-			//This could potentially be a mode message, strip off prefixes till we get a channel
-			String modePrefixes = bot.getConfiguration().getUserLevelPrefixes();
-			if (modePrefixes.contains(Character.toString(name.charAt(0)))) {
-				String nameTrimmed = nameLowercase;
-				do {
-					nameTrimmed = nameTrimmed.substring(1);
-					chan = channelNameMap.get(nameTrimmed);
-					if (chan != null)
-						return chan;
-				} while (modePrefixes.contains(Character.toString(nameTrimmed.charAt(0))));
-			}
-	
-			//Channel does not exist
-			throw new DaoException(DaoException.Reason.UNKNOWN_CHANNEL, name);
-		} finally {
-			rL.unlock();
-		}			
-			
+		Channel chan = curState.channelNameMap.get(nameLowercase);
+		if (chan != null)
+			return chan;
+
+		//This could potentially be a mode message, strip off prefixes till we get a channel
+		String modePrefixes = bot.getConfiguration().getUserLevelPrefixes();
+		if (modePrefixes.contains(Character.toString(name.charAt(0)))) {
+			String nameTrimmed = nameLowercase;
+			do {
+				nameTrimmed = nameTrimmed.substring(1);
+				chan = curState.channelNameMap.get(nameTrimmed);
+				if (chan != null)
+					return chan;
+			} while (modePrefixes.contains(Character.toString(nameTrimmed.charAt(0))));
+		}
+		return null;
 	}
 
 	/**
@@ -457,17 +431,14 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	@SuppressWarnings("unchecked")
 	public C createChannel(@NonNull String name) {
-		
 		String nameLowercase = name.toLowerCase(locale);
-		
-		wL.lock();
-		try {		
+
+		synchronized (accessLock) {
 			C chan = (C) botFactory.createChannel(bot, name);
-			channelNameMap.put(nameLowercase, chan);
+			State curState = state;
+			state = curState.withChannelNameMap(curState.channelNameMap.plus(nameLowercase, chan));
 			return chan;
-		} finally {
-			wL.unlock();
-		}				
+		}
 	}
 
 
@@ -478,31 +449,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 * @return True if we are still connected to the channel
 	 */
 	public boolean containsChannel(@NonNull String name) {
-		
-		String nameLowercase = name.toLowerCase(locale);
-		
-		rL.lock();
-		try {		
-			if (channelNameMap.containsKey(nameLowercase))
-				return true;
-	
-			//This could potentially be a mode message, strip off prefixes till we get a channel
-			String modePrefixes = bot.getConfiguration().getUserLevelPrefixes();
-			if (modePrefixes.contains(Character.toString(name.charAt(0)))) {
-				String nameTrimmed = nameLowercase;
-				do {
-					nameTrimmed = nameTrimmed.substring(1);
-					if (channelNameMap.containsKey(nameTrimmed))
-						return true;
-				} while (modePrefixes.contains(Character.toString(nameTrimmed.charAt(0))));
-			}
-	
-			//Nope, doesn't exist
-			return false;
-		} finally {
-			rL.unlock();
-		}				
-			
+		return findChannel(state, name) != null;
 	}
 
 	/**
@@ -513,12 +460,34 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<U> getUsers(@NonNull C channel) {
-		rL.lock();
-		try {		
-			return mainMap.getUsers(channel);
-		} finally {
-			rL.unlock();
-		}				
+		return getUsers(liveChannel(channel), View.ALL);
+	}
+
+	/**
+	 * Get the number of currently known users in a channel without creating
+	 * any sets
+	 *
+	 * @param channel Known channel
+	 * @return Number of users
+	 */
+	public int getUserCount(@NonNull C channel) {
+		return state.mainMap.getMembers(liveChannel(channel)).size();
+	}
+
+	/**
+	 * Run the action for every currently known user in a channel without
+	 * creating any sets. Users are in no particular order.
+	 *
+	 * @param channel Known channel
+	 * @param action Action to run for each user
+	 */
+	public void forEachUser(@NonNull C channel, @NonNull final Consumer<? super U> action) {
+		state.mainMap.getMembers(liveChannel(channel)).forEach(new BiConsumer<User, Integer>() {
+			@Override
+			public void accept(User curUser, Integer levels) {
+				action.accept(toUser(curUser));
+			}
+		});
 	}
 
 	/**
@@ -527,12 +496,16 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 * @return An immutable set of channels
 	 */
 	public ImmutableSortedSet<C> getAllChannels() {
-		rL.lock();
-		try {		
-			return ImmutableSortedSet.copyOf(channelNameMap.values());
-		} finally {
-			rL.unlock();
-		}				
+		PersistentHashMap<String, Channel> channelNameMap = state.channelNameMap;
+		View<C> view = allChannelsView;
+		if (view == null || !view.isCurrent(channelNameMap, 0))
+			allChannelsView = view = new View<C>(channelNameMap, 0);
+		ImmutableSortedSet<C> channels = view.sets.get(View.ALL);
+		if (channels == null) {
+			channels = toChannels(channelNameMap.values());
+			view.sets.set(View.ALL, channels);
+		}
+		return channels;
 	}
 
 	/**
@@ -543,26 +516,111 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public ImmutableSortedSet<C> getChannels(@NonNull U user) {
-		rL.lock();
-		try {		
-			return mainMap.getChannels(user);
-		} finally {
-			rL.unlock();
+		return getChannels(liveUser(user), View.ALL);
+	}
+
+	/**
+	 * Get the number of <i>channels we're joined to</i> that the user is
+	 * joined to as well without creating any sets
+	 *
+	 * @param user A known user
+	 * @return Number of channels
+	 */
+	public int getChannelCount(@NonNull U user) {
+		return state.mainMap.getMemberships(liveUser(user)).size();
+	}
+
+	/**
+	 * Run the action for every <i>channel we're joined to</i> that the user is
+	 * joined to as well without creating any sets. Channels are in no
+	 * particular order.
+	 *
+	 * @param user A known user
+	 * @param action Action to run for each channel
+	 */
+	public void forEachChannel(@NonNull U user, @NonNull final Consumer<? super C> action) {
+		state.mainMap.getMemberships(liveUser(user)).forEach(new BiConsumer<Channel, Integer>() {
+			@Override
+			public void accept(Channel curChannel, Integer levels) {
+				action.accept(toChannel(curChannel));
+			}
+		});
+	}
+
+	/**
+	 * Get the users in the channel from the channel's {@link View}, creating
+	 * the set if needed
+	 *
+	 * @param index Which set, see {@link View}
+	 */
+	protected ImmutableSortedSet<U> getUsers(Channel liveChannel, int index) {
+		Map<User, Integer> members = state.mainMap.getMembers(liveChannel);
+		int curRenameCount = renameCount;
+		View<U> view = channelViews.get(liveChannel.getChannelId());
+		if (view == null || !view.isCurrent(members, curRenameCount)) {
+			view = new View<U>(members, curRenameCount);
+			//Don't keep views of unknown channels
+			if (!members.isEmpty())
+				channelViews.put(liveChannel.getChannelId(), view);
+		}
+
+		ImmutableSortedSet<U> users = view.sets.get(index);
+		if (users == null) {
+			ImmutableSortedSet.Builder<U> builder = ImmutableSortedSet.naturalOrder();
+			for (Map.Entry<User, Integer> curEntry : members.entrySet())
+				if (View.matches(index, curEntry.getValue()))
+					builder.add(toUser(curEntry.getKey()));
+			users = builder.build();
+			view.sets.set(index, users);
 		}
+		return users;
+	}
+
+	/**
+	 * Get the channels of the user from the user's {@link View}, creating the
+	 * set if needed
+	 *
+	 * @param index Which set, see {@link View}
+	 */
+	protected ImmutableSortedSet<C> getChannels(User liveUser, int index) {
+		Map<Channel, Integer> memberships = state.mainMap.getMemberships(liveUser);
+		View<C> view = userViews.get(liveUser.getUserId());
+		if (view == null || !view.isCurrent(memberships, 0)) {
+			view = new View<C>(memberships, 0);
+			//Don't keep views of unknown users
+			if (!memberships.isEmpty())
+				userViews.put(liveUser.getUserId(), view);
+		}
+
+		ImmutableSortedSet<C> channels = view.sets.get(index);
+		if (channels == null) {
+			ImmutableSortedSet.Builder<C> builder = ImmutableSortedSet.naturalOrder();
+			for (Map.Entry<Channel, Integer> curEntry : memberships.entrySet())
+				if (View.matches(index, curEntry.getValue()))
+					builder.add(toChannel(curEntry.getKey()));
+			channels = builder.build();
+			view.sets.set(index, channels);
+		}
+		return channels;
 	}
 
 	
+	/**
+	 * Start staging the members of a NAMES or WHO reply line, see
+	 * {@link MemberBatch}
+	 */
+	public MemberBatch<U, C> createMemberBatch() {
+		return new MemberBatch<U, C>(this);
+	}
+
 	protected void removeChannel(@NonNull C channel) {
-		wL.lock();
-		try {		
-			mainMap.removeChannel(channel);
-			for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-				curLevelMap.removeChannel(channel);
-	
+		synchronized (accessLock) {
+			State curState = state;
+			State newState = curState.withMainMap(curState.mainMap.minusChannel(channel));
+
 			//Remove remaining locations
-			channelNameMap.remove(channel.getName());
-		} finally {
-			wL.unlock();
+			state = newState.withChannelNameMap(newState.channelNameMap.minus(channel.getName().toLowerCase(locale)));
+			channelViews.remove(channel.getChannelId());
 		}
 	}
 
@@ -580,69 +638,437 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	
 	public void close() {
-		wL.lock();
-		try {		
-			mainMap.clear();
-			for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-				curLevelMap.clear();
-			channelNameMap.clear();
-			userNickMap.clear();
-		} finally {
-			wL.unlock();
+		synchronized (accessLock) {
+			state = State.EMPTY;
+			channelViews.clear();
+			userViews.clear();
 		}
 	}
 
 	/**
-	 * Create an immutable snapshot (copy) of all of contained Users, Channels,
-	 * and mappings, VERY EXPENSIVE.
+	 * Create an immutable snapshot of all of contained Users, Channels, and
+	 * mappings. The relationships are shared with the current {@link State}
+	 * instead of copied. A {@link UserSnapshot} or {@link ChannelSnapshot} is
+	 * only created when the user or channel is looked up in the snapshot.
 	 *
-	 * @return Copy of entire model
+	 * @return Snapshot of entire model
 	 */
 	
 	public UserChannelDaoSnapshot createSnapshot() {
-		rL.lock();
-		try {		
-			//Create snapshots of all users and channels
-			Map<U, UserSnapshot> userSnapshotMap = Maps.newHashMapWithExpectedSize(userNickMap.size());
-			for (U curUser : userNickMap.values())
-				userSnapshotMap.put(curUser, curUser.createSnapshot());
-			Map<C, ChannelSnapshot> channelSnapshotMap = Maps.newHashMapWithExpectedSize(channelNameMap.size());
-			for (C curChannel : channelNameMap.values())
-				channelSnapshotMap.put(curChannel, curChannel.createSnapshot());
-	
-			//Make snapshots of the relationship maps using the above user and channel snapshots
-			UserChannelMapSnapshot mainMapSnapshot = mainMap.createSnapshot(userSnapshotMap, channelSnapshotMap);
-			EnumMap<UserLevel, UserChannelMap<UserSnapshot, ChannelSnapshot>> levelsMapSnapshot = new EnumMap<>(UserLevel.class);
-			for (Map.Entry<UserLevel, UserChannelMap<U, C>> curLevel : levelsMap.entrySet())
-				levelsMapSnapshot.put(curLevel.getKey(), curLevel.getValue().createSnapshot(userSnapshotMap, channelSnapshotMap));
-			ImmutableBiMap.Builder<String, UserSnapshot> userNickMapSnapshotBuilder = ImmutableBiMap.builder();
-			for (Map.Entry<String, U> curNickEntry : userNickMap.entrySet())
-				userNickMapSnapshotBuilder.put(curNickEntry.getKey(), userSnapshotMap.get(curNickEntry.getValue()));
-			ImmutableBiMap.Builder<String, ChannelSnapshot> channelNameMapSnapshotBuilder = ImmutableBiMap.builder();
-			for (Map.Entry<String, C> curName : channelNameMap.entrySet())
-				channelNameMapSnapshotBuilder.put(curName.getKey(), channelSnapshotMap.get(curName.getValue()));
+		synchronized (accessLock) {
+			Generation latest = getGeneration();
+			//Nothing changed since the newest snapshot, it has the same values
+			if (latest == null || !latest.isUnchanged()) {
+				Generation newGeneration = new Generation(accessLock);
+				if (latest != null)
+					latest.next = newGeneration;
+				generation = new WeakReference<Generation>(newGeneration);
+				latest = newGeneration;
+			}
+			return new UserChannelDaoSnapshot(bot, locale, state, latest);
+		}
+	}
 
-	
-			//Finally can create the snapshot object
-			UserChannelDaoSnapshot daoSnapshot = new UserChannelDaoSnapshot(bot,
-					locale,
-					mainMapSnapshot,
-					levelsMapSnapshot,
-					userNickMapSnapshotBuilder.build(),
-					channelNameMapSnapshotBuilder.build()
-					);
-	
-			//Tell UserSnapshots and ChannelSnapshots what the new backing dao is
-			for (UserSnapshot curUserSnapshot : userSnapshotMap.values())
-				curUserSnapshot.setDao(daoSnapshot);
-			for (ChannelSnapshot curChannelSnapshot : channelSnapshotMap.values())
-				curChannelSnapshot.setDao(daoSnapshot);
-	
-			//Finally
-			return daoSnapshot;
-		} finally {
-			rL.unlock();
+	/**
+	 * Create a snapshot for an event with the given scope
+	 *
+	 * @param scope What the snapshot contains
+	 * @param user The user the event is about, or null
+	 * @param channel The channel the event is about, or null for all of the
+	 * user's channels
+	 * @return {@link #createSnapshot() } or a snapshot of only the affected
+	 * user and channels
+	 * @see SnapshotScope
+	 */
+	public UserChannelDaoSnapshot createSnapshot(@NonNull SnapshotScope scope, U user, C channel) {
+		if (scope == SnapshotScope.ALL)
+			return createSnapshot();
+
+		synchronized (accessLock) {
+			State curState = state;
+			State scopedState = State.EMPTY;
+			Iterable<Channel> channels;
+			if (channel != null)
+				channels = Collections.<Channel>singleton(channel);
+			else if (user != null)
+				channels = curState.mainMap.getChannels(user);
+			else
+				channels = Collections.emptySet();
+
+			if (user != null) {
+				String nickLowercase = user.getNick().toLowerCase(locale);
+				if (curState.userNickMap.get(nickLowercase) == user)
+					scopedState = scopedState.withUserNickMap(scopedState.userNickMap.plus(nickLowercase, user));
+			}
+			for (Channel curChannel : channels) {
+				String nameLowercase = curChannel.getName().toLowerCase(locale);
+				if (curState.channelNameMap.get(nameLowercase) != curChannel)
+					continue;
+				scopedState = scopedState.withChannelNameMap(scopedState.channelNameMap.plus(nameLowercase, curChannel));
+				int levels = (user == null) ? -1 : curState.mainMap.getLevels(user, curChannel);
+				if (levels != -1)
+					scopedState = scopedState.withMainMap(scopedState.mainMap.withLevels(user, curChannel, levels));
+			}
+
+			//Copy the few users and channels now instead of keeping their old values
+			UserChannelDao<UserSnapshot, ChannelSnapshot> daoSnapshot = new UserChannelDaoSnapshot(bot, locale, scopedState, null);
+			for (User curUser : scopedState.userNickMap.values())
+				daoSnapshot.toUser(curUser);
+			for (Channel curChannel : scopedState.channelNameMap.values())
+				daoSnapshot.toChannel(curChannel);
+			return (UserChannelDaoSnapshot) daoSnapshot;
+		}
+	}
+
+	/**
+	 * Keep a copy of the user if it's about to change for the first time since
+	 * the newest snapshot was created. Called by the user.
+	 */
+	protected void preserveUser(@NonNull User user) {
+		Generation curGeneration = getGeneration();
+		if (curGeneration == null || curGeneration.users.containsKey(user.getUserId()))
+			return;
+		synchronized (accessLock) {
+			curGeneration = getGeneration();
+			if (curGeneration != null && !curGeneration.users.containsKey(user.getUserId()))
+				curGeneration.users.put(user.getUserId(), user.createSnapshot());
+		}
+	}
+
+	/**
+	 * Keep a copy of the channel if it's about to change for the first time
+	 * since the newest snapshot was created. Called by the channel.
+	 */
+	protected void preserveChannel(@NonNull Channel channel) {
+		Generation curGeneration = getGeneration();
+		if (curGeneration == null || curGeneration.channels.containsKey(channel.getChannelId()))
+			return;
+		synchronized (accessLock) {
+			curGeneration = getGeneration();
+			if (curGeneration != null && !curGeneration.channels.containsKey(channel.getChannelId()))
+				curGeneration.channels.put(channel.getChannelId(), channel.createSnapshot());
+		}
+	}
+
+	/**
+	 * @return The newest generation or null if no snapshot can use it
+	 */
+	protected Generation getGeneration() {
+		WeakReference<Generation> curGeneration = generation;
+		return (curGeneration == null) ? null : curGeneration.get();
+	}
+
+	/**
+	 * Copy the user with the values it had when the generation was created
+	 *
+	 * @param generation The generation of the snapshot or null for the current
+	 * values
+	 */
+	protected static UserSnapshot snapshotUser(Generation generation, User user) {
+		if (generation == null)
+			return user.createSnapshot();
+		synchronized (generation.lock) {
+			for (Generation curGeneration = generation; curGeneration != null; curGeneration = curGeneration.next) {
+				UserSnapshot preserved = curGeneration.users.get(user.getUserId());
+				if (preserved != null)
+					return new UserSnapshot(preserved);
+			}
+			//Unchanged since
+			return user.createSnapshot();
+		}
+	}
+
+	/**
+	 * Copy the channel with the values it had when the generation was created
+	 *
+	 * @param generation The generation of the snapshot or null for the current
+	 * values
+	 */
+	protected static ChannelSnapshot snapshotChannel(Generation generation, Channel channel) {
+		if (generation == null)
+			return channel.createSnapshot();
+		synchronized (generation.lock) {
+			for (Generation curGeneration = generation; curGeneration != null; curGeneration = curGeneration.next) {
+				ChannelSnapshot preserved = curGeneration.channels.get(channel.getChannelId());
+				if (preserved != null)
+					return new ChannelSnapshot(preserved, preserved.getMode());
+			}
+			//Unchanged since
+			return channel.createSnapshot();
+		}
+	}
+
+	/**
+	 * Convert a user from the {@link State} to the type returned by this dao
+	 */
+	@SuppressWarnings("unchecked")
+	protected U toUser(User user) {
+		return (U) user;
+	}
+
+	/**
+	 * Convert a channel from the {@link State} to the type returned by this
+	 * dao
+	 */
+	@SuppressWarnings("unchecked")
+	protected C toChannel(Channel channel) {
+		return (C) channel;
+	}
+
+	/**
+	 * @return The user as stored in the {@link State}, resolving snapshots to
+	 * the user they were created from
+	 */
+	protected static User liveUser(User user) {
+		return (user instanceof UserSnapshot) ? ((UserSnapshot) user).getGeneratedFrom() : user;
+	}
+
+	/**
+	 * @return The channel as stored in the {@link State}, resolving snapshots
+	 * to the channel they were created from
+	 */
+	protected static Channel liveChannel(Channel channel) {
+		return (channel instanceof ChannelSnapshot) ? ((ChannelSnapshot) channel).getGeneratedFrom() : channel;
+	}
+
+	protected ImmutableSortedSet<U> toUsers(Iterable<User> users) {
+		ImmutableSortedSet.Builder<U> builder = ImmutableSortedSet.naturalOrder();
+		for (User curUser : users)
+			builder.add(toUser(curUser));
+		return builder.build();
+	}
+
+	protected ImmutableSortedSet<C> toChannels(Iterable<Channel> channels) {
+		ImmutableSortedSet.Builder<C> builder = ImmutableSortedSet.naturalOrder();
+		for (Channel curChannel : channels)
+			builder.add(toChannel(curChannel));
+		return builder.build();
+	}
+
+	/**
+	 * Immutable users, channels and relationships of a dao at one point in
+	 * time. Each change creates a new state sharing the unchanged parts.
+	 */
+	protected static final class State {
+		protected static final State EMPTY = new State(PersistentHashMap.<String, User>empty(),
+				PersistentHashMap.<String, Channel>empty(),
+				UserChannelMap.Links.<User, Channel>empty());
+		protected final PersistentHashMap<String, User> userNickMap;
+		protected final PersistentHashMap<String, Channel> channelNameMap;
+		/**
+		 * Users in each channel along with their levels
+		 */
+		protected final UserChannelMap.Links<User, Channel> mainMap;
+
+		protected State(PersistentHashMap<String, User> userNickMap,
+				PersistentHashMap<String, Channel> channelNameMap,
+				UserChannelMap.Links<User, Channel> mainMap) {
+			this.userNickMap = userNickMap;
+			this.channelNameMap = channelNameMap;
+			this.mainMap = mainMap;
+		}
+
+		protected State withUserNickMap(PersistentHashMap<String, User> newUserNickMap) {
+			if (newUserNickMap == userNickMap)
+				return this;
+			return new State(newUserNickMap, channelNameMap, mainMap);
+		}
+
+		protected State withChannelNameMap(PersistentHashMap<String, Channel> newChannelNameMap) {
+			if (newChannelNameMap == channelNameMap)
+				return this;
+			return new State(userNickMap, newChannelNameMap, mainMap);
+		}
+
+		protected State withMainMap(UserChannelMap.Links<User, Channel> newMainMap) {
+			if (newMainMap == mainMap)
+				return this;
+			return new State(userNickMap, channelNameMap, newMainMap);
+		}
+	}
+
+	/**
+	 * Sets created from one version of a channel's users, a user's channels,
+	 * or all users or channels. The version is the immutable map the sets are
+	 * created from, which is replaced whenever it changes, so a view is reused
+	 * until then. Each set is only created when first asked for.
+	 */
+	protected static final class View<T> {
+		protected static final int ALL = 0;
+		protected static final int NORMAL = 1;
+		/**
+		 * The map the sets are created from
+		 */
+		protected final Object version;
+		protected final int renameCount;
+		/**
+		 * {@link #ALL}, {@link #NORMAL}, then one per {@link UserLevel}
+		 */
+		protected final AtomicReferenceArray<ImmutableSortedSet<T>> sets = new AtomicReferenceArray<ImmutableSortedSet<T>>(2 + UserLevel.values().length);
+
+		protected View(Object version, int renameCount) {
+			this.version = version;
+			this.renameCount = renameCount;
+		}
+
+		protected boolean isCurrent(Object curVersion, int curRenameCount) {
+			return version == curVersion && renameCount == curRenameCount;
+		}
+
+		protected static int level(UserLevel level) {
+			return 2 + level.ordinal();
+		}
+
+		/**
+		 * @param levels Bitmask of levels held in the channel
+		 * @return True if the set at the index contains the membership
+		 */
+		protected static boolean matches(int index, int levels) {
+			if (index == ALL)
+				return true;
+			if (index == NORMAL)
+				return levels == 0;
+			return (levels & (1 << (index - 2))) != 0;
+		}
+	}
+
+	/**
+	 * Channel members of a NAMES or WHO reply line, added by {@link #commit() }
+	 * in one write instead of taking the dao's lock for every user and level.
+	 * Staged users and memberships aren't visible in the dao until then, so
+	 * commit before handling the next line. Not thread safe, only used by the
+	 * bot's thread.
+	 */
+	public static class MemberBatch<U extends User, C extends Channel> {
+		protected final UserChannelDao<U, C> dao;
+		/**
+		 * Users not yet in the dao by lowercase nick
+		 */
+		protected final Map<String, U> newUsers = new HashMap<String, U>();
+		/**
+		 * Bitmask of levels of each user by channel
+		 */
+		protected final Map<Channel, Map<User, Integer>> members = new HashMap<Channel, Map<User, Integer>>();
+
+		protected MemberBatch(UserChannelDao<U, C> dao) {
+			this.dao = dao;
+		}
+
+		/**
+		 * Lookup a staged or known user by nick
+		 *
+		 * @return The user or null if neither staged nor known
+		 */
+		public U getUser(@NonNull String nick) {
+			String nickLowercase = nick.toLowerCase(dao.locale);
+			U user = newUsers.get(nickLowercase);
+			if (user != null)
+				return user;
+			User knownUser = dao.state.userNickMap.get(nickLowercase);
+			return (knownUser == null) ? null : dao.toUser(knownUser);
+		}
+
+		/**
+		 * Stage the user joining the channel, the user is added to the dao
+		 * if needed
+		 */
+		public void addUserToChannel(@NonNull U user, @NonNull C channel) {
+			stage(user, channel, 0);
+		}
+
+		/**
+		 * Stage the user holding the level in the channel, the user is added
+		 * to the channel if needed
+		 */
+		public void addUserToLevel(@NonNull UserLevel level, @NonNull U user, @NonNull C channel) {
+			stage(user, channel, 1 << level.ordinal());
+		}
+
+		protected void stage(U user, C channel, int levels) {
+			String nickLowercase = user.getNick().toLowerCase(dao.locale);
+			if (!newUsers.containsKey(nickLowercase) && !dao.state.userNickMap.containsKey(nickLowercase))
+				newUsers.put(nickLowercase, user);
+
+			Channel liveChannel = liveChannel(channel);
+			Map<User, Integer> channelMembers = members.get(liveChannel);
+			if (channelMembers == null)
+				members.put(liveChannel, channelMembers = new HashMap<User, Integer>());
+			User liveUser = liveUser(user);
+			Integer curLevels = channelMembers.get(liveUser);
+			channelMembers.put(liveUser, (curLevels == null) ? levels : curLevels | levels);
+		}
+
+		public boolean isEmpty() {
+			return members.isEmpty();
+		}
+
+		/**
+		 * Add everything staged to the dao with one write, changing each
+		 * channel's members once. Levels are added to the levels users
+		 * already hold. A user created in the dao meanwhile with the same
+		 * nick is used instead of the staged one.
+		 */
+		public void commit() {
+			if (members.isEmpty())
+				return;
+			synchronized (dao.accessLock) {
+				State curState = dao.state;
+				PersistentHashMap<String, User> userNickMap = curState.userNickMap;
+				Map<String, User> addedUsers = new HashMap<String, User>();
+				Map<User, User> replacedUsers = new HashMap<User, User>();
+				for (Map.Entry<String, U> curEntry : newUsers.entrySet()) {
+					User knownUser = userNickMap.get(curEntry.getKey());
+					if (knownUser == null)
+						addedUsers.put(curEntry.getKey(), curEntry.getValue());
+					else
+						replacedUsers.put(curEntry.getValue(), knownUser);
+				}
+
+				UserChannelMap.Links<User, Channel> mainMap = curState.mainMap;
+				for (Map.Entry<Channel, Map<User, Integer>> curEntry : members.entrySet()) {
+					Map<User, Integer> channelMembers = curEntry.getValue();
+					if (!replacedUsers.isEmpty()) {
+						channelMembers = new HashMap<User, Integer>();
+						for (Map.Entry<User, Integer> curMember : curEntry.getValue().entrySet()) {
+							User user = replacedUsers.containsKey(curMember.getKey()) ? replacedUsers.get(curMember.getKey()) : curMember.getKey();
+							Integer curLevels = channelMembers.get(user);
+							channelMembers.put(user, (curLevels == null) ? curMember.getValue() : curLevels | curMember.getValue());
+						}
+					}
+					mainMap = mainMap.plusMembers(curEntry.getKey(), channelMembers);
+				}
+				dao.state = curState.withUserNickMap(userNickMap.plusAll(addedUsers)).withMainMap(mainMap);
+			}
+			newUsers.clear();
+			members.clear();
+		}
+	}
+
+	/**
+	 * Values of users and channels changed after a snapshot was created. The
+	 * first change to a user or channel after a generation is created copies
+	 * it into that generation. A snapshot finds the values it was created with
+	 * in the first of its own or later generations that has a copy, or in the
+	 * live user or channel if none do.
+	 * <p>
+	 * Each generation only keeps the ones after it, so old generations are
+	 * freed along with their snapshots.
+	 */
+	protected static final class Generation {
+		/**
+		 * The dao's {@link UserChannelDao#accessLock}, held while copying
+		 */
+		protected final Object lock;
+		protected final ConcurrentHashMap<Integer, UserSnapshot> users = new ConcurrentHashMap<Integer, UserSnapshot>();
+		protected final ConcurrentHashMap<Integer, ChannelSnapshot> channels = new ConcurrentHashMap<Integer, ChannelSnapshot>();
+		protected Generation next;
+
+		protected Generation(Object lock) {
+			this.lock = lock;
+		}
+
+		protected boolean isUnchanged() {
+			return users.isEmpty() && channels.isEmpty();
 		}
-			
 	}
 }
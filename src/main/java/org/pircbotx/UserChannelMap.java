@@ -17,174 +17,279 @@
  */
 package org.pircbotx;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.ImmutableMultimap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Multimap;
 
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.NonNull;
 
-import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.pircbotx.snapshot.ChannelSnapshot;
-import org.pircbotx.snapshot.UserChannelMapSnapshot;
-import org.pircbotx.snapshot.UserSnapshot;
+import org.pircbotx.tools.PersistentHashMap;
 
 /**
- * A many to many map of users to channels.
+ * A many to many map of users to channels and the levels users hold in them.
+ * Every change replaces an immutable {@link Links} so reads never lock and
+ * always see a consistent version.
  */
-@RequiredArgsConstructor(access = AccessLevel.PROTECTED)
-@Slf4j
 public class UserChannelMap<U extends User, C extends Channel> {
-	protected final Multimap<U, C> userToChannelMap;
-	protected final Multimap<C, U> channelToUserMap;
-	
-    private final ReentrantReadWriteLock reentlock = new ReentrantReadWriteLock();
-    private final Lock rL = reentlock.readLock();
-    private final Lock wL = reentlock.writeLock();
+	protected final Object writeLock = new Object();
+	protected volatile Links<U, C> links;
 
-	/**
-	 * Create with HashMultimaps.
-	 */
 	public UserChannelMap() {
-		channelToUserMap = HashMultimap.create();
-		userToChannelMap = HashMultimap.create();		
+		this.links = Links.empty();
+	}
+
+	protected UserChannelMap(@NonNull Links<U, C> links) {
+		this.links = links;
 	}
 
 	public void addUserToChannel(U user, C channel) {
-		wL.lock();
-		try {
-			userToChannelMap.put(user, channel);
-			channelToUserMap.put(channel, user);
-		} finally {
-			wL.unlock();
+		synchronized (writeLock) {
+			links = links.plus(user, channel);
 		}
 	}
 
 	public void removeUserFromChannel(U user, C channel) {
-		wL.lock();
-		try {		
-			userToChannelMap.remove(user, channel);
-			channelToUserMap.remove(channel, user);
-		} finally {
-			wL.unlock();
-		}			
+		synchronized (writeLock) {
+			links = links.minus(user, channel);
+		}
+	}
+
+	public void addUserToLevel(UserLevel level, U user, C channel) {
+		synchronized (writeLock) {
+			links = links.withLevel(user, channel, level, true);
+		}
+	}
+
+	public void removeUserFromLevel(UserLevel level, U user, C channel) {
+		synchronized (writeLock) {
+			links = links.withLevel(user, channel, level, false);
+		}
 	}
 
 	public void removeUser(U user) {
-		wL.lock();
-		try {		
-			//Remove the user from each channel
-			for (Channel curChannel : userToChannelMap.removeAll(user))
-				channelToUserMap.remove(curChannel, user);
-		} finally {
-			wL.unlock();
-		}			
+		synchronized (writeLock) {
+			links = links.minusUser(user);
+		}
 	}
 
 	public void removeChannel(C channel) {
-		wL.lock();
-		try {		
-			//Remove the channel from each user
-			for (User curUser : channelToUserMap.removeAll(channel))
-				//This will automatically remove the user if they have no more channels
-				userToChannelMap.remove(curUser, channel);
-		} finally {
-			wL.unlock();
-		}			
+		synchronized (writeLock) {
+			links = links.minusChannel(channel);
+		}
 	}
 
 	public ImmutableSortedSet<U> getUsers(C channel) {
-		rL.lock();
-		try {		
-			return ImmutableSortedSet.copyOf(channelToUserMap.get(channel));
-		} finally {
-			rL.unlock();
-		}				
+		return ImmutableSortedSet.copyOf(links.getUsers(channel));
 	}
 
 	public ImmutableSortedSet<C> getChannels(U user) {
-		rL.lock();
-		try {				
-			return ImmutableSortedSet.copyOf(userToChannelMap.get(user));
-		} finally {
-			rL.unlock();
-		}							
+		return ImmutableSortedSet.copyOf(links.getChannels(user));
 	}
 
 	public boolean containsEntry(U user, C channel) {
-		rL.lock();
-		try {					
-			boolean channelToUserContains = channelToUserMap.containsEntry(channel, user);
-			boolean userToChannelContains = userToChannelMap.containsEntry(user, channel);
-			if (channelToUserContains != userToChannelContains)
-				throw new RuntimeException("Map inconsistent! User: " + user + " | Channel: " + channel + " | channelToUserMap: " + channelToUserContains + " | userToChannelMap: " + userToChannelContains);
-			return channelToUserContains;
-		} finally {
-			rL.unlock();
-		}			
+		return links.containsEntry(user, channel);
 	}
 
 	public boolean containsUser(User user) {
-		rL.lock();
-		try {		
-			boolean channelToUserContains = channelToUserMap.containsValue(user);
-			boolean userToChannelContains = userToChannelMap.containsKey(user);
-			if (channelToUserContains != userToChannelContains)
-				throw new RuntimeException("Map inconsistent! User: " + user + " | channelToUserMap: " + channelToUserContains + " | userToChannelMap: " + userToChannelContains);
-			return channelToUserContains;
-		} finally {
-			rL.unlock();
-		}			
+		return links.containsUser(user);
 	}
 
 	public void clear() {
-		wL.lock();
-		try {				
-			userToChannelMap.clear();
-			channelToUserMap.clear();
-		} finally {
-			wL.unlock();
-		}				
+		synchronized (writeLock) {
+			links = Links.empty();
+		}
+	}
+
+	/**
+	 * @return The current immutable version of the map
+	 */
+	public Links<U, C> getLinks() {
+		return links;
 	}
 
-	public UserChannelMapSnapshot createSnapshot(Map<U, UserSnapshot> userSnapshots, Map<C, ChannelSnapshot> channelSnapshots) {
-		rL.lock();
-		try {		
-			//Create new multimaps replacing each user and channel with their respective snapshots
-			ImmutableMultimap.Builder<UserSnapshot, ChannelSnapshot> userToChannelSnapshotBuilder = ImmutableMultimap.builder();
-			for (Map.Entry<U, C> curEntry : userToChannelMap.entries()) {
-				//Issue #274: Track down NPE
-				UserSnapshot key = userSnapshots.get(curEntry.getKey());
-				if (key == null) {
-					throw new NullPointerException("Issue #274: No user snapshot for " + curEntry.getKey());
-				}
-				ChannelSnapshot value = channelSnapshots.get(curEntry.getValue());
-				if (value == null) {
-					throw new NullPointerException("Issue #274: No channel snapshot for " + curEntry.getValue());
-				}
-				userToChannelSnapshotBuilder.put(key, value);
+	/**
+	 * Immutable version of the map. Changes return a new version sharing
+	 * everything but the changed users and channels with this one.
+	 * <p>
+	 * Each user and channel pair also stores the {@link UserLevel}s the user
+	 * holds in the channel as a bitmask of <code>1 &lt;&lt; ordinal()</code>,
+	 * 0 for normal users, so finding a user's levels is a single lookup.
+	 */
+	public static final class Links<U, C> {
+		@SuppressWarnings("rawtypes")
+		private static final Links EMPTY = new Links<Object, Object>(PersistentHashMap.<Object, PersistentHashMap<Object, Integer>>empty(),
+				PersistentHashMap.<Object, PersistentHashMap<Object, Integer>>empty());
+		private final PersistentHashMap<U, PersistentHashMap<C, Integer>> userToChannelMap;
+		private final PersistentHashMap<C, PersistentHashMap<U, Integer>> channelToUserMap;
+
+		private Links(PersistentHashMap<U, PersistentHashMap<C, Integer>> userToChannelMap, PersistentHashMap<C, PersistentHashMap<U, Integer>> channelToUserMap) {
+			this.userToChannelMap = userToChannelMap;
+			this.channelToUserMap = channelToUserMap;
+		}
+
+		@SuppressWarnings("unchecked")
+		public static <U, C> Links<U, C> empty() {
+			return EMPTY;
+		}
+
+		/**
+		 * @return Links with the user in the channel, keeping their levels
+		 */
+		public Links<U, C> plus(@NonNull U user, @NonNull C channel) {
+			if (containsEntry(user, channel))
+				return this;
+			return withLevels(user, channel, 0);
+		}
+
+		/**
+		 * @param levels Bitmask of levels
+		 * @return Links with the user in the channel holding exactly the given
+		 * levels
+		 */
+		public Links<U, C> withLevels(@NonNull U user, @NonNull C channel, int levels) {
+			if (getLevels(user, channel) == levels)
+				return this;
+			Integer levelsBoxed = levels;
+			return new Links<U, C>(put(userToChannelMap, user, channel, levelsBoxed), put(channelToUserMap, channel, user, levelsBoxed));
+		}
+
+		/**
+		 * @param holds If the user should hold the level
+		 * @return Links with the level added to or removed from the user, who is
+		 * added to the channel if needed when adding a level
+		 */
+		public Links<U, C> withLevel(@NonNull U user, @NonNull C channel, @NonNull UserLevel level, boolean holds) {
+			int levels = getLevels(user, channel);
+			if (levels == -1) {
+				if (!holds)
+					return this;
+				levels = 0;
 			}
-			ImmutableMultimap.Builder<ChannelSnapshot, UserSnapshot> channelToUserSnapshotBuilder = ImmutableMultimap.builder();
-			for (Map.Entry<C, U> curEntry : channelToUserMap.entries()) {
-				ChannelSnapshot key = channelSnapshots.get(curEntry.getKey());
-				if (key == null) {
-					throw new NullPointerException("Issue #274: No channel snapshot for " + curEntry.getKey());
-				}
-				UserSnapshot value = userSnapshots.get(curEntry.getValue());
-				if (value == null) {
-					throw new NullPointerException("Issue #274: No user snapshot for " + curEntry.getValue());
-				}
-				channelToUserSnapshotBuilder.put(key, value);
+			int bit = 1 << level.ordinal();
+			return withLevels(user, channel, holds ? levels | bit : levels & ~bit);
+		}
+
+		/**
+		 * Add many users to a channel at once, changing each map once
+		 *
+		 * @param members Users and the bitmask of levels to add to the levels
+		 * they already hold
+		 * @return Links with every user in the channel
+		 */
+		public Links<U, C> plusMembers(@NonNull C channel, @NonNull Map<U, Integer> members) {
+			PersistentHashMap<U, Integer> users = channelToUserMap.get(channel);
+			if (users == null)
+				users = PersistentHashMap.empty();
+			Map<U, Integer> newUsers = new HashMap<U, Integer>();
+			Map<U, PersistentHashMap<C, Integer>> newUserChannels = new HashMap<U, PersistentHashMap<C, Integer>>();
+			for (Map.Entry<U, Integer> curEntry : members.entrySet()) {
+				Integer curLevels = users.get(curEntry.getKey());
+				Integer levels = (curLevels == null) ? curEntry.getValue() : Integer.valueOf(curLevels | curEntry.getValue());
+				if (levels.equals(curLevels))
+					continue;
+				newUsers.put(curEntry.getKey(), levels);
+				PersistentHashMap<C, Integer> channels = userToChannelMap.get(curEntry.getKey());
+				if (channels == null)
+					channels = PersistentHashMap.empty();
+				newUserChannels.put(curEntry.getKey(), channels.plus(channel, levels));
 			}
-	
-			//Return a snapshot of the map
-			return new UserChannelMapSnapshot(userToChannelSnapshotBuilder.build(), channelToUserSnapshotBuilder.build());
-		} finally {
-			rL.unlock();
-		}			
+			if (newUsers.isEmpty())
+				return this;
+			return new Links<U, C>(userToChannelMap.plusAll(newUserChannels), channelToUserMap.plus(channel, users.plusAll(newUsers)));
+		}
+
+		public Links<U, C> minus(@NonNull U user, @NonNull C channel) {
+			if (!containsEntry(user, channel))
+				return this;
+			return new Links<U, C>(remove(userToChannelMap, user, channel), remove(channelToUserMap, channel, user));
+		}
+
+		public Links<U, C> minusUser(@NonNull U user) {
+			PersistentHashMap<C, Integer> channels = userToChannelMap.get(user);
+			if (channels == null)
+				return this;
+			PersistentHashMap<C, PersistentHashMap<U, Integer>> newChannelToUserMap = channelToUserMap;
+			for (C curChannel : channels.keySet())
+				newChannelToUserMap = remove(newChannelToUserMap, curChannel, user);
+			return new Links<U, C>(userToChannelMap.minus(user), newChannelToUserMap);
+		}
+
+		public Links<U, C> minusChannel(@NonNull C channel) {
+			PersistentHashMap<U, Integer> users = channelToUserMap.get(channel);
+			if (users == null)
+				return this;
+			PersistentHashMap<U, PersistentHashMap<C, Integer>> newUserToChannelMap = userToChannelMap;
+			for (U curUser : users.keySet())
+				newUserToChannelMap = remove(newUserToChannelMap, curUser, channel);
+			return new Links<U, C>(newUserToChannelMap, channelToUserMap.minus(channel));
+		}
+
+		public Set<U> getUsers(Object channel) {
+			return getMembers(channel).keySet();
+		}
+
+		public Set<C> getChannels(Object user) {
+			return getMemberships(user).keySet();
+		}
+
+		/**
+		 * @return Users in the channel and the bitmask of their levels
+		 */
+		public Map<U, Integer> getMembers(Object channel) {
+			PersistentHashMap<U, Integer> users = channelToUserMap.get(channel);
+			return users == null ? Collections.<U, Integer>emptyMap() : users;
+		}
+
+		/**
+		 * @return Channels the user is in and the bitmask of their levels
+		 */
+		public Map<C, Integer> getMemberships(Object user) {
+			PersistentHashMap<C, Integer> channels = userToChannelMap.get(user);
+			return channels == null ? Collections.<C, Integer>emptyMap() : channels;
+		}
+
+		/**
+		 * @return Bitmask of the levels the user holds in the channel, -1 if
+		 * the user isn't in the channel
+		 */
+		public int getLevels(Object user, Object channel) {
+			PersistentHashMap<C, Integer> channels = userToChannelMap.get(user);
+			if (channels == null)
+				return -1;
+			Integer levels = channels.get(channel);
+			return levels == null ? -1 : levels;
+		}
+
+		public boolean hasLevel(Object user, Object channel, @NonNull UserLevel level) {
+			int levels = getLevels(user, channel);
+			return levels != -1 && (levels & (1 << level.ordinal())) != 0;
+		}
+
+		public boolean containsEntry(Object user, Object channel) {
+			return getLevels(user, channel) != -1;
+		}
+
+		public boolean containsUser(Object user) {
+			return userToChannelMap.containsKey(user);
+		}
+
+		private static <K, E> PersistentHashMap<K, PersistentHashMap<E, Integer>> put(PersistentHashMap<K, PersistentHashMap<E, Integer>> map, K key, E element, Integer levels) {
+			PersistentHashMap<E, Integer> elements = map.get(key);
+			if (elements == null)
+				elements = PersistentHashMap.empty();
+			return map.plus(key, elements.plus(element, levels));
+		}
+
+		private static <K, E> PersistentHashMap<K, PersistentHashMap<E, Integer>> remove(PersistentHashMap<K, PersistentHashMap<E, Integer>> map, K key, E element) {
+			PersistentHashMap<E, Integer> elements = map.get(key);
+			if (elements == null)
+				return map;
+			elements = elements.minus(element);
+			//Drop keys without elements like a Multimap
+			return elements.isEmpty() ? map.minus(key) : map.plus(key, elements);
+		}
 	}
 }
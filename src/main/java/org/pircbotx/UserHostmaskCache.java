@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.NonNull;
+
+/**
+ * Bounded per-bot cache of parsed {@link UserHostmask}'s keyed on the raw
+ * hostmask, eg the source of a line. Active users send many lines with the
+ * same source, so the hostmask is parsed once and the same instance is shared
+ * between events.
+ * <p>
+ * Only plain hostmasks created by
+ * {@link Configuration.BotFactory#createUserHostmask(org.pircbotx.PircBotX, java.lang.String) }
+ * are cached, these are never modified. The least recently used entries are
+ * evicted once {@link Configuration#getUserHostmaskCacheSize() } is reached.
+ */
+public class UserHostmaskCache {
+	protected final PircBotX bot;
+	/**
+	 * Null if the cache size is 0
+	 */
+	protected final Cache<String, UserHostmask> cache;
+
+	public UserHostmaskCache(@NonNull PircBotX bot, int maximumSize) {
+		this.bot = bot;
+		this.cache = maximumSize > 0
+				? CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().<String, UserHostmask>build()
+				: null;
+	}
+
+	/**
+	 * Get the parsed hostmask, creating it with the bot factory if it isn't
+	 * cached
+	 */
+	public UserHostmask get(@NonNull String rawHostmask) {
+		if (cache == null)
+			return bot.getConfiguration().getBotFactory().createUserHostmask(bot, rawHostmask);
+		UserHostmask hostmask = cache.getIfPresent(rawHostmask);
+		if (hostmask == null) {
+			hostmask = bot.getConfiguration().getBotFactory().createUserHostmask(bot, rawHostmask);
+			cache.put(rawHostmask, hostmask);
+		}
+		return hostmask;
+	}
+
+	/**
+	 * Remove a hostmask that won't be seen again, eg the old hostmask of a user
+	 * that changed their nick or host
+	 */
+	public void invalidate(@NonNull String rawHostmask) {
+		if (cache != null)
+			cache.invalidate(rawHostmask);
+	}
+
+	public void invalidateAll() {
+		if (cache != null)
+			cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache != null ? cache.size() : 0;
+	}
+
+	public long getHitCount() {
+		return getStats().hitCount();
+	}
+
+	public long getMissCount() {
+		return getStats().missCount();
+	}
+
+	/**
+	 * Hit, miss and eviction counts since the bot was created
+	 */
+	public CacheStats getStats() {
+		return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+	}
+}
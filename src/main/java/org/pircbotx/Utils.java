@@ -17,7 +17,6 @@
  */
 package org.pircbotx;
 
-import com.google.common.base.CharMatcher;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.pircbotx.hooks.Event;
@@ -28,11 +27,11 @@ import org.slf4j.helpers.MessageFormatter;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 /**
  * Useful utilities for internal PircBotX use. Users should not use this class
@@ -44,7 +43,41 @@ public final class Utils {
 	}
 
 	public static void dispatchEvent(PircBotX bot, Event event) {
-		bot.getConfiguration().getListenerManager().onEvent(event);
+		InputPipeline pipeline = bot.inputPipeline;
+		if (pipeline == null || !pipeline.dispatch(event))
+			bot.getConfiguration().getListenerManager().onEvent(event);
+	}
+
+	/**
+	 * Check if any listener would receive an event of the specified class, so
+	 * the event and anything only it needs doesn't have to be created
+	 *
+	 * @see org.pircbotx.hooks.managers.ListenerManager#hasListeners(java.lang.Class)
+	 */
+	public static boolean hasListeners(PircBotX bot, Class<? extends Event> eventClass) {
+		return bot.getConfiguration().getListenerManager().hasListeners(eventClass);
+	}
+
+	/**
+	 * Run the task on the timeout thread shared by every bot, which only runs
+	 * cheap tasks that hand off anything slow
+	 */
+	public static ScheduledFuture<?> scheduleTimeout(Runnable task, long delay, TimeUnit unit) {
+		return TimeoutScheduler.INSTANCE.schedule(task, delay, unit);
+	}
+
+	/**
+	 * Single daemon thread, only created once a timeout is used
+	 */
+	private static class TimeoutScheduler {
+		static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, BasicThreadFactory.builder()
+				.namingPattern("pircbotx-timeout")
+				.daemon(true)
+				.build());
+
+		static {
+			INSTANCE.setRemoveOnCancelPolicy(true);
+		}
 	}
 
 	/**
@@ -155,6 +188,7 @@ public final class Utils {
 	 * 'message' fields intact.
 	 *
 	 * @param input A string in the format [:]item [item] ... [:item [item] ...]
+	 * without surrounding whitespace, eg a line framed by {@link LineFramer}
 	 * @return List of strings.
 	 */
 	public static List<String> tokenizeLine(String input) {
@@ -165,43 +199,20 @@ public final class Utils {
 		//Heavily optimized string split by space with all characters after :
 		//added as a single entry. Under benchmarks, this is faster than 
 		//StringTokenizer, String.split, toCharArray, and charAt
-		String trimmedInput = CharMatcher.whitespace().trimFrom(input);
 		int pos = 0, end;
-		while ((end = trimmedInput.indexOf(' ', pos)) >= 0) {
-			stringParts.add(trimmedInput.substring(pos, end));
+		while ((end = input.indexOf(' ', pos)) >= 0) {
+			stringParts.add(input.substring(pos, end));
 			pos = end + 1;
-			if (trimmedInput.charAt(pos) == ':') {
-				stringParts.add(trimmedInput.substring(pos + 1));
+			if (pos < input.length() && input.charAt(pos) == ':') {
+				stringParts.add(input.substring(pos + 1));
 				return stringParts;
 			}
 		}
 		//No more spaces, add last part of line
-		stringParts.add(trimmedInput.substring(pos));
+		stringParts.add(input.substring(pos));
 		return stringParts;
 	}
 
-	private static final Map<String, String> V3_TAGS_UNESCAPE_MAPPING = createV3TagsUnescapeMapping();
-
-	private static Map<String, String> createV3TagsUnescapeMapping() {
-		Map<String, String> mapping = new HashMap<String, String>();
-		mapping.put("\\:", ";");
-		mapping.put("\\s", " ");
-		mapping.put("\\\\", "\\");
-		mapping.put("\\r", "\r");
-		mapping.put("\\n", "\n");
-		return mapping;
-	}
-
-	private static final Pattern V3_TAGS_UNESCAPE_PATTERN = createV3TagsUnescapePattern();
-
-	private static Pattern createV3TagsUnescapePattern() {
-		List<String> regexGroups = new ArrayList<String>();
-		for (String mappingKey : V3_TAGS_UNESCAPE_MAPPING.keySet()) {
-			regexGroups.add(mappingKey.replace("\\", "\\\\"));
-		}
-		return Pattern.compile("(" + StringUtils.join(regexGroups, "|") + ")");
-	}
-
 	/**
 	 * Unescape IRCv3 message tag values which have been escaped before
 	 * (e.g. if received from the server).
@@ -211,13 +222,55 @@ public final class Utils {
 	 * @see <a href="http://ircv3.net/specs/core/message-tags-3.2.html">http://ircv3.net/specs/core/message-tags-3.2.html</a>
 	 */
 	public static String unescapeV3TagValue(String v3TagValue) {
-		Matcher matcher = V3_TAGS_UNESCAPE_PATTERN.matcher(v3TagValue);
-		StringBuffer stringBuffer = new StringBuffer();
-		while (matcher.find()) {
-			String replacement = V3_TAGS_UNESCAPE_MAPPING.get(matcher.group(1)).replace("\\", "\\\\");
-			matcher.appendReplacement(stringBuffer, replacement);
+		return unescapeV3TagValue(v3TagValue, 0, v3TagValue.length());
+	}
+
+	/**
+	 * Unescape the IRCv3 message tag value between start and end in a single
+	 * pass. Values without a backslash are returned as a substring. Following
+	 * the spec, a backslash before an unknown character or at the end of the
+	 * value is dropped.
+	 *
+	 * @param source String containing the escaped value
+	 * @param start Start of the value, inclusive
+	 * @param end End of the value, exclusive
+	 * @return Unescaped IRCv3 message tag value
+	 */
+	public static String unescapeV3TagValue(String source, int start, int end) {
+		int escape = start;
+		while (escape < end && source.charAt(escape) != '\\')
+			escape++;
+		if (escape == end)
+			return source.substring(start, end);
+
+		StringBuilder unescaped = new StringBuilder(end - start);
+		unescaped.append(source, start, escape);
+		for (int i = escape; i < end; i++) {
+			char curChar = source.charAt(i);
+			if (curChar != '\\') {
+				unescaped.append(curChar);
+				continue;
+			}
+			if (++i == end)
+				break;
+			char escaped = source.charAt(i);
+			switch (escaped) {
+				case ':':
+					unescaped.append(';');
+					break;
+				case 's':
+					unescaped.append(' ');
+					break;
+				case 'r':
+					unescaped.append('\r');
+					break;
+				case 'n':
+					unescaped.append('\n');
+					break;
+				default:
+					unescaped.append(escaped);
+			}
 		}
-		matcher.appendTail(stringBuffer);
-		return stringBuffer.toString();
+		return unescaped.toString();
 	}
 }
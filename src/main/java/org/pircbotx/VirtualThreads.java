@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Creates the threads used by bots, listener managers, DCC and the ident
+ * server. When running on a JVM with virtual threads (Java 21+) and the
+ * {@value #PROPERTY} system property is set to true, every thread is a
+ * virtual thread and pools create one thread per task. Otherwise the same
+ * platform threads as before are used.
+ * <p>
+ * Virtual threads are always daemon threads. With virtual threads enabled make
+ * sure something else keeps the JVM running, eg by calling
+ * {@link PircBotX#startBot() } from the main thread or waiting for
+ * {@link MultiBotManager#stopAndWait() }
+ */
+@Slf4j
+public final class VirtualThreads {
+	/**
+	 * System property that enables virtual threads, read once when this class
+	 * is loaded
+	 */
+	public static final String PROPERTY = "pircbotx.virtualThreads";
+	/**
+	 * Thread.ofVirtual(), null if virtual threads are not available
+	 */
+	private static final MethodHandle OF_VIRTUAL;
+	/**
+	 * Thread.Builder.OfVirtual.name(String, long)
+	 */
+	private static final MethodHandle NAME_COUNTER;
+	/**
+	 * Thread.Builder.OfVirtual.name(String)
+	 */
+	private static final MethodHandle NAME;
+	/**
+	 * Thread.Builder.factory()
+	 */
+	private static final MethodHandle FACTORY;
+	/**
+	 * Executors.newThreadPerTaskExecutor(ThreadFactory)
+	 */
+	private static final MethodHandle PER_TASK_EXECUTOR;
+	private static final boolean ENABLED;
+
+	static {
+		MethodHandle ofVirtual = null;
+		MethodHandle nameCounter = null;
+		MethodHandle name = null;
+		MethodHandle factory = null;
+		MethodHandle perTaskExecutor = null;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass))
+					.asType(MethodType.methodType(Object.class));
+			nameCounter = lookup.findVirtual(ofVirtualClass, "name", MethodType.methodType(ofVirtualClass, String.class, long.class))
+					.asType(MethodType.methodType(Object.class, Object.class, String.class, long.class));
+			name = lookup.findVirtual(ofVirtualClass, "name", MethodType.methodType(ofVirtualClass, String.class))
+					.asType(MethodType.methodType(Object.class, Object.class, String.class));
+			factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class))
+					.asType(MethodType.methodType(ThreadFactory.class, Object.class));
+			perTaskExecutor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+					MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+			//Preview builds have the API but throw unless preview is enabled. The
+			//result is unused, but invokeExact needs the Object return type of
+			//the assignment to match the handle's type
+			Object probe = ofVirtual.invokeExact();
+		} catch (Throwable e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME_COUNTER = nameCounter;
+		NAME = name;
+		FACTORY = factory;
+		PER_TASK_EXECUTOR = perTaskExecutor;
+		ENABLED = OF_VIRTUAL != null && Boolean.getBoolean(PROPERTY);
+		if (Boolean.getBoolean(PROPERTY) && OF_VIRTUAL == null)
+			log.warn("Virtual threads are not available in Java " + System.getProperty("java.version") + ", using platform threads");
+	}
+
+	//Do not create instances of this
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return True if the JVM supports virtual threads
+	 */
+	public static boolean isAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return True if threads created by this class are virtual threads
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Create a thread factory
+	 *
+	 * @param namingPattern Thread name, with %d replaced by a counter
+	 * @param daemon If platform threads should be daemon threads
+	 */
+	public static ThreadFactory newThreadFactory(@NonNull String namingPattern, boolean daemon) {
+		if (!ENABLED)
+			return BasicThreadFactory.builder()
+					.namingPattern(namingPattern)
+					.daemon(daemon)
+					.build();
+		try {
+			Object builder = OF_VIRTUAL.invokeExact();
+			int counter = namingPattern.indexOf("%d");
+			if (counter == -1)
+				builder = NAME.invokeExact(builder, namingPattern);
+			else if (counter + 2 == namingPattern.length())
+				builder = NAME_COUNTER.invokeExact(builder, namingPattern.substring(0, counter), 1L);
+			else
+				//Counter in the middle of the name
+				return BasicThreadFactory.builder()
+						.wrappedFactory((ThreadFactory) FACTORY.invokeExact(builder))
+						.namingPattern(namingPattern)
+						.build();
+			return (ThreadFactory) FACTORY.invokeExact(builder);
+		} catch (Throwable e) {
+			throw new RuntimeException("Cannot create virtual thread factory", e);
+		}
+	}
+
+	/**
+	 * Create an unbounded pool. With virtual threads each task gets a new
+	 * thread, otherwise this is a cached thread pool whose idle threads time
+	 * out
+	 *
+	 * @see #newThreadFactory(java.lang.String, boolean)
+	 */
+	public static ExecutorService newCachedThreadPool(@NonNull String namingPattern, boolean daemon) {
+		ThreadFactory factory = newThreadFactory(namingPattern, daemon);
+		if (ENABLED)
+			try {
+				return (ExecutorService) PER_TASK_EXECUTOR.invokeExact(factory);
+			} catch (Throwable e) {
+				throw new RuntimeException("Cannot create virtual thread executor", e);
+			}
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newCachedThreadPool(factory);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Create and start a single thread
+	 *
+	 * @param runnable Code to run, can be an unstarted {@link Thread} whose
+	 * run method will be called in the new thread
+	 * @param name Thread name
+	 * @param daemon If a platform thread should be a daemon thread
+	 * @return The started thread
+	 */
+	public static Thread start(@NonNull Runnable runnable, @NonNull String name, boolean daemon) {
+		Thread thread;
+		if (!ENABLED && runnable instanceof Thread) {
+			thread = (Thread) runnable;
+			thread.setName(name);
+			thread.setDaemon(daemon);
+		} else
+			thread = newThreadFactory(name, daemon).newThread(runnable);
+		thread.start();
+		return thread;
+	}
+}
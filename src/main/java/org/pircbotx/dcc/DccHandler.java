@@ -38,7 +38,6 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import lombok.Builder;
@@ -50,6 +49,7 @@ import org.pircbotx.Configuration;
 import org.pircbotx.PircBotX;
 import org.pircbotx.User;
 import org.pircbotx.Utils;
+import org.pircbotx.VirtualThreads;
 import org.pircbotx.exception.DccException;
 import org.pircbotx.hooks.events.FileTransferCompleteEvent;
 import org.pircbotx.hooks.events.IncomingChatRequestEvent;
@@ -75,8 +75,8 @@ public class DccHandler implements Closeable {
 	protected final List<PendingSendFileTransfer> pendingSendTransfers = new ArrayList<PendingSendFileTransfer>();
 	protected final Map<PendingSendFileTransferPassive, CountDownLatch> pendingSendPassiveTransfers = new HashMap<PendingSendFileTransferPassive, CountDownLatch>();
 	protected final Map<PendingSendChatPassive, CountDownLatch> pendingSendPassiveChat = new HashMap<PendingSendChatPassive, CountDownLatch>();
-	protected final ExecutorService activeReceiveTransfers = Executors.newCachedThreadPool();
-	protected final ExecutorService activeSendTransfers = Executors.newCachedThreadPool();
+	protected final ExecutorService activeReceiveTransfers = VirtualThreads.newCachedThreadPool("dccReceive-transfer%d", false);
+	protected final ExecutorService activeSendTransfers = VirtualThreads.newCachedThreadPool("dccSend-transfer%d", false);
 
 	protected boolean shuttingDown = false;
 
@@ -24,6 +24,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 
 import org.pircbotx.PircBotX;
+import org.pircbotx.VirtualThreads;
 import org.pircbotx.dcc.DccHandler.PendingFileTransfer;
 import org.pircbotx.exception.DccException;
 import org.pircbotx.exception.DccException.Reason;
@@ -55,7 +56,7 @@ public class ReceiveFileTransfer extends FileTransfer {
 				FileChannel outChannel = outputStream.getChannel();) {
 
 			acknowledge = new SendFileTransferAcknowlegement(inChannel, outChannel);
-			fileTransferStatus.start();
+			Thread statusThread = VirtualThreads.start(fileTransferStatus, "dccReceive-status", false);
 
 			outChannel.position(fileTransferStatus.startPosition);
 			while (outChannel.position() < fileTransferStatus.fileSize) {
@@ -77,7 +78,7 @@ public class ReceiveFileTransfer extends FileTransfer {
 			log.info("Receive file transfer of file {} entered {} state for server to close the socket", file.getName(),
 					fileTransferStatus.dccState);
 			try {
-				fileTransferStatus.join();
+				statusThread.join();
 
 				fileTransferStatus.dccState = DccState.DONE;
 
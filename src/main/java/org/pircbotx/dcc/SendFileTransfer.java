@@ -24,6 +24,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 
 import org.pircbotx.PircBotX;
+import org.pircbotx.VirtualThreads;
 import org.pircbotx.dcc.DccHandler.PendingFileTransfer;
 import org.pircbotx.exception.DccException;
 import org.pircbotx.exception.DccException.Reason;
@@ -56,8 +57,8 @@ public class SendFileTransfer extends FileTransfer {
 				FileChannel inChannel = inputStream.getChannel();) {
 
 			acknowledgement = new ReceiveFileTransferAcknowlegement(user, this, outChannel, inChannel);
-			acknowledgement.start();
-			fileTransferStatus.start();
+			Thread acknowledgementThread = VirtualThreads.start(acknowledgement, "dccSend-acknowledgement", false);
+			Thread statusThread = VirtualThreads.start(fileTransferStatus, "dccSend-status", false);
 
 			inChannel.position(fileTransferStatus.startPosition);
 			while (inChannel.position() < fileTransferStatus.fileSize) {
@@ -85,8 +86,8 @@ public class SendFileTransfer extends FileTransfer {
 					fileTransferStatus.dccState);
 
 			try {
-				acknowledgement.join();
-				fileTransferStatus.join();
+				acknowledgementThread.join();
+				statusThread.join();
 
 				fileTransferStatus.dccState = DccState.DONE;
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Listener that starts non-blocking work, eg a database write or HTTP call,
+ * and returns a stage that completes when it's done instead of holding a
+ * listener thread while it waits.
+ * <p>
+ * Listener managers extending
+ * {@link org.pircbotx.hooks.managers.AbstractListenerManager} count the stage
+ * as in flight until it completes, so
+ * {@link org.pircbotx.hooks.managers.ListenerManager#shutdown(org.pircbotx.PircBotX) }
+ * waits for it, apply
+ * {@link org.pircbotx.hooks.managers.AbstractListenerManager#setAsyncListenerTimeout(long) },
+ * and dispatch a failed or timed out stage as a
+ * {@link org.pircbotx.hooks.events.ListenerExceptionEvent}. Other managers call
+ * {@link #onEvent(org.pircbotx.hooks.Event) } which blocks until the stage
+ * completes.
+ */
+public interface AsyncListener extends Listener {
+	/**
+	 * Start handling the event
+	 *
+	 * @return A stage that completes when the event is handled, or null if
+	 * nothing was started
+	 * @throws Exception If the listener failed before starting anything
+	 */
+	public CompletionStage<?> onEventAsync(Event event) throws Exception;
+
+	/**
+	 * Start handling the event and wait for the stage to complete
+	 */
+	@Override
+	public default void onEvent(Event event) throws Exception {
+		CompletionStage<?> stage = onEventAsync(event);
+		if (stage == null)
+			return;
+		try {
+			stage.toCompletableFuture().get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+}
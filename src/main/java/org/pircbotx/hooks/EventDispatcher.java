@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.util.Set;
+
+/**
+ * Calls the {@link Subscribe} methods of a class. Implementations are generated
+ * by {@link SubscribeProcessor} as
+ * <code>[class binary name]_SubscribeDispatcher</code> and must have a public
+ * no-arg constructor
+ *
+ * @see SubscriberListener
+ */
+public interface EventDispatcher {
+	/**
+	 * Parameter types of all {@link Subscribe} methods
+	 */
+	public Set<Class<?>> getEventTypes();
+
+	/**
+	 * Call every {@link Subscribe} method that handles the event
+	 *
+	 * @param listener Instance of the class this dispatcher is for
+	 * @param event The event to dispatch
+	 */
+	public void dispatch(Object listener, Event event) throws Exception;
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.managers.ListenerManager;
+
+/**
+ * Publishes events of a ListenerManager to subscribers that request them, with
+ * the same contract as Reactive Streams and {@code java.util.concurrent.Flow}
+ * (use {@link #toFlowPublisher() } on Java 9+). Events are filtered by class
+ * and optionally bot before reaching any subscriber.
+ * <p>
+ * Every subscriber gets the same event instances, each with its own buffer of
+ * up to bufferSize events it hasn't requested yet. What happens when a buffer
+ * is full depends on the {@link Overflow}.
+ * <p>
+ * The publisher is added to the ListenerManager while it has subscribers.
+ * Subscribers are signaled from the listener thread that received the event
+ * or the thread that called {@link Subscription#request(long) }, never
+ * concurrently.
+ *
+ * @param <E> Event class to publish
+ */
+@Slf4j
+public class EventPublisher<E extends Event> implements TypedListener, RoutedListener {
+	@Getter
+	protected final ListenerManager listenerManager;
+	@Getter
+	protected final Class<E> eventClass;
+	protected final PircBotX bot;
+	@Getter
+	protected final int bufferSize;
+	@Getter
+	protected final Overflow overflow;
+	protected final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<EventSubscription>();
+	protected final AtomicLong droppedCount = new AtomicLong();
+	protected boolean closed;
+
+	/**
+	 * Publish events of every bot
+	 *
+	 * @see #EventPublisher(org.pircbotx.hooks.managers.ListenerManager,
+	 * java.lang.Class, org.pircbotx.PircBotX, int,
+	 * org.pircbotx.hooks.EventPublisher.Overflow)
+	 */
+	public EventPublisher(ListenerManager listenerManager, Class<E> eventClass, int bufferSize, Overflow overflow) {
+		this(listenerManager, eventClass, null, bufferSize, overflow);
+	}
+
+	/**
+	 * @param listenerManager Manager to receive events from, usually shared by
+	 * all bots
+	 * @param eventClass Event class or Generic*Event interface to publish,
+	 * subclasses and implementations included
+	 * @param bot Only publish events of this bot, or null for all bots
+	 * @param bufferSize Maximum events buffered for each subscriber
+	 * @param overflow What to do when a subscriber's buffer is full
+	 */
+	public EventPublisher(@NonNull ListenerManager listenerManager, @NonNull Class<E> eventClass, PircBotX bot,
+			int bufferSize, @NonNull Overflow overflow) {
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("Buffer size must be positive");
+		this.listenerManager = listenerManager;
+		this.eventClass = eventClass;
+		this.bot = bot;
+		this.bufferSize = bufferSize;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * Start publishing to the subscriber. Nothing is sent until it requests
+	 * events
+	 */
+	public void subscribe(@NonNull Subscriber<? super E> subscriber) {
+		EventSubscription subscription = new EventSubscription(subscriber);
+		//Signal onSubscribe before anything can complete or feed the subscription
+		subscriber.onSubscribe(subscription);
+		boolean wasClosed;
+		synchronized (this) {
+			wasClosed = closed;
+			if (!wasClosed && !subscription.cancelled && !subscription.terminated) {
+				if (subscriptions.isEmpty())
+					listenerManager.addListener(this);
+				subscriptions.add(subscription);
+			}
+		}
+		if (wasClosed)
+			subscription.complete();
+	}
+
+	/**
+	 * Complete every subscriber after it receives its buffered events and
+	 * stop receiving events. Later subscribers complete immediately
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			if (!subscriptions.isEmpty())
+				listenerManager.removeListener(this);
+		}
+		for (EventSubscription curSubscription : subscriptions)
+			curSubscription.complete();
+	}
+
+	protected void remove(EventSubscription subscription) {
+		synchronized (this) {
+			if (subscriptions.remove(subscription) && subscriptions.isEmpty() && !closed)
+				listenerManager.removeListener(this);
+		}
+	}
+
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Number of events dropped by {@link Overflow#DROP_OLDEST}, counting each
+	 * subscriber
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends PircBotX> T getBot() {
+		return (T) bot;
+	}
+
+	@Override
+	public Set<Class<?>> getEventTypes() {
+		return ImmutableSet.<Class<?>>of(eventClass);
+	}
+
+	/**
+	 * @return A route to the bot, or null if publishing events of all bots
+	 */
+	@Override
+	public ListenerRoute getRoute() {
+		return bot == null ? null : ListenerRoute.bot(bot);
+	}
+
+	@Override
+	public void onEvent(Event event) {
+		if (!eventClass.isInstance(event) || (bot != null && event.getBot() != bot))
+			return;
+		E published = eventClass.cast(event);
+		for (EventSubscription curSubscription : subscriptions)
+			curSubscription.offer(published);
+	}
+
+	/**
+	 * Adapt this to a {@code java.util.concurrent.Flow.Publisher}
+	 *
+	 * @return A {@code Flow.Publisher<E>}
+	 * @throws UnsupportedOperationException If running on Java 8
+	 */
+	public Object toFlowPublisher() {
+		return FlowBridge.publisher(this);
+	}
+
+	/**
+	 * What to do with an event when a subscriber's buffer is full
+	 */
+	public static enum Overflow {
+		/**
+		 * Cancel the subscription and signal onError with an
+		 * IllegalStateException
+		 */
+		ERROR,
+		/**
+		 * Drop the oldest buffered event
+		 */
+		DROP_OLDEST,
+		/**
+		 * Pause reading from the event's bot with
+		 * {@link PircBotX#pauseReading() } until the subscriber requests
+		 * enough to make space. Events already read from the server, and
+		 * events without a bot, are buffered over the limit
+		 */
+		BLOCK
+	}
+
+	/**
+	 * Same methods as {@code Flow.Subscriber}
+	 */
+	public static interface Subscriber<T> {
+		public void onSubscribe(Subscription subscription);
+
+		public void onNext(T item);
+
+		public void onError(Throwable throwable);
+
+		public void onComplete();
+	}
+
+	/**
+	 * Same methods as {@code Flow.Subscription}
+	 */
+	public static interface Subscription {
+		public void request(long n);
+
+		public void cancel();
+	}
+
+	protected class EventSubscription implements Subscription {
+		protected final Subscriber<? super E> subscriber;
+		/**
+		 * Guarded by this
+		 */
+		protected final ArrayDeque<E> buffer = new ArrayDeque<E>();
+		protected final AtomicLong requested = new AtomicLong();
+		protected final AtomicInteger wip = new AtomicInteger();
+		/**
+		 * Bots this subscription paused reading from, guarded by this
+		 */
+		protected final Set<PircBotX> pausedBots = Sets.newIdentityHashSet();
+		protected volatile boolean cancelled;
+		protected volatile boolean completed;
+		protected volatile Throwable error;
+		protected boolean terminated;
+
+		protected EventSubscription(Subscriber<? super E> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		protected void offer(E event) {
+			synchronized (this) {
+				if (cancelled || completed || error != null)
+					return;
+				if (buffer.size() >= bufferSize)
+					switch (overflow) {
+						case DROP_OLDEST:
+							buffer.poll();
+							droppedCount.incrementAndGet();
+							break;
+						case ERROR:
+							error = new IllegalStateException("More than " + bufferSize + " " + eventClass.getSimpleName()
+									+ " events buffered, subscriber isn't requesting fast enough");
+							buffer.clear();
+							break;
+						case BLOCK:
+							PircBotX eventBot = event.getBot();
+							if (eventBot != null && pausedBots.add(eventBot))
+								eventBot.pauseReading();
+							break;
+					}
+				if (error == null)
+					buffer.add(event);
+				else
+					resumeReading();
+			}
+			drain();
+		}
+
+		/**
+		 * Resume every bot this paused, caller must hold this
+		 */
+		protected void resumeReading() {
+			for (PircBotX curBot : pausedBots)
+				curBot.resumeReading();
+			pausedBots.clear();
+		}
+
+		protected void complete() {
+			completed = true;
+			//Nothing more is buffered
+			synchronized (this) {
+				resumeReading();
+			}
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Must request a positive number of events, not " + n);
+				synchronized (this) {
+					buffer.clear();
+					resumeReading();
+				}
+			} else
+				//Add capped at Long.MAX_VALUE which means unbounded
+				for (;;) {
+					long current = requested.get();
+					long next = current + n;
+					if (next < 0)
+						next = Long.MAX_VALUE;
+					if (current == Long.MAX_VALUE || requested.compareAndSet(current, next))
+						break;
+				}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			synchronized (this) {
+				buffer.clear();
+				resumeReading();
+			}
+			remove(this);
+		}
+
+		/**
+		 * Deliver buffered events up to the requested amount, then any
+		 * terminal signal. Only one thread drains at a time, others just make
+		 * it loop again
+		 */
+		protected void drain() {
+			if (wip.getAndIncrement() != 0)
+				return;
+			int missed = 1;
+			for (;;) {
+				long wanted = requested.get();
+				long delivered = 0;
+				while (delivered != wanted && !cancelled && !terminated) {
+					E next;
+					synchronized (this) {
+						next = buffer.poll();
+						if (next != null && buffer.size() < bufferSize && !pausedBots.isEmpty())
+							resumeReading();
+					}
+					if (next == null)
+						break;
+					try {
+						subscriber.onNext(next);
+					} catch (RuntimeException e) {
+						log.error("Subscriber {} threw from onNext, cancelling", subscriber, e);
+						cancel();
+					}
+					delivered++;
+				}
+				if (delivered != 0 && wanted != Long.MAX_VALUE)
+					requested.addAndGet(-delivered);
+				if (!cancelled && !terminated) {
+					Throwable curError = error;
+					boolean empty;
+					synchronized (this) {
+						empty = buffer.isEmpty();
+					}
+					if (curError != null || (completed && empty)) {
+						terminated = true;
+						remove(this);
+						if (curError != null)
+							subscriber.onError(curError);
+						else
+							subscriber.onComplete();
+					}
+				}
+				missed = wip.addAndGet(-missed);
+				if (missed == 0)
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Bridges to {@code java.util.concurrent.Flow} with reflection as this is
+	 * built for Java 8
+	 */
+	protected static class FlowBridge {
+		protected static final Class<?> PUBLISHER = findClass("java.util.concurrent.Flow$Publisher");
+		protected static final Class<?> SUBSCRIBER = findClass("java.util.concurrent.Flow$Subscriber");
+		protected static final Class<?> SUBSCRIPTION = findClass("java.util.concurrent.Flow$Subscription");
+		protected static final Method ON_SUBSCRIBE = findMethod("onSubscribe", SUBSCRIPTION);
+		protected static final Method ON_NEXT = findMethod("onNext", Object.class);
+		protected static final Method ON_ERROR = findMethod("onError", Throwable.class);
+		protected static final Method ON_COMPLETE = findMethod("onComplete");
+
+		protected static Class<?> findClass(String name) {
+			try {
+				return Class.forName(name);
+			} catch (ClassNotFoundException e) {
+				return null;
+			}
+		}
+
+		protected static Method findMethod(String name, Class<?>... parameterTypes) {
+			if (SUBSCRIBER == null)
+				return null;
+			try {
+				return SUBSCRIBER.getMethod(name, parameterTypes);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException("Flow.Subscriber has no " + name, e);
+			}
+		}
+
+		protected static Object publisher(final EventPublisher<?> publisher) {
+			if (PUBLISHER == null)
+				throw new UnsupportedOperationException("java.util.concurrent.Flow requires Java 9+");
+			return proxy(PUBLISHER, publisher, new InvocationHandler() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if (args[0] == null)
+						throw new NullPointerException("subscriber");
+					((EventPublisher<Event>) publisher).subscribe(new FlowSubscriber(args[0]));
+					return null;
+				}
+			});
+		}
+
+		/**
+		 * Proxy for a single method interface, Object methods use the target
+		 */
+		protected static Object proxy(Class<?> iface, final Object target, final InvocationHandler handler) {
+			return Proxy.newProxyInstance(iface.getClassLoader() == null ? FlowBridge.class.getClassLoader() : iface.getClassLoader(),
+					new Class<?>[]{iface}, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if (method.getDeclaringClass() == Object.class) {
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						return "Flow adapter of " + target;
+					}
+					return handler.invoke(proxy, method, args);
+				}
+			});
+		}
+
+		protected static void invoke(Method method, Object target, Object... args) {
+			try {
+				method.invoke(target, args);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Cannot call " + method, e);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw new IllegalStateException("Failed to call " + method, e.getCause());
+			}
+		}
+
+		protected static class FlowSubscriber implements Subscriber<Event> {
+			protected final Object flowSubscriber;
+
+			protected FlowSubscriber(Object flowSubscriber) {
+				this.flowSubscriber = flowSubscriber;
+			}
+
+			@Override
+			public void onSubscribe(final Subscription subscription) {
+				Object flowSubscription = proxy(SUBSCRIPTION, subscription, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("request"))
+							subscription.request((Long) args[0]);
+						else
+							subscription.cancel();
+						return null;
+					}
+				});
+				invoke(ON_SUBSCRIBE, flowSubscriber, flowSubscription);
+			}
+
+			@Override
+			public void onNext(Event item) {
+				invoke(ON_NEXT, flowSubscriber, item);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				invoke(ON_ERROR, flowSubscriber, throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				invoke(ON_COMPLETE, flowSubscriber);
+			}
+
+			@Override
+			public String toString() {
+				return flowSubscriber.toString();
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.reflect.TypeToken;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.Utils;
+import org.pircbotx.hooks.managers.ListenerTypeIndex;
+import org.pircbotx.hooks.types.GenericEvent;
+
+/**
+ * Waiters for events of a single bot, indexed by the event type they wait for
+ * so each event only reaches waiters that want it and nothing is buffered.
+ * Added to the bot's ListenerManager while there is at least one waiter,
+ * routed to the bot so a shared manager doesn't offer it other bots' events.
+ * <p>
+ * Futures are completed in the listener thread that received the event, use
+ * the async methods of CompletableFuture for slow work.
+ *
+ * @see PircBotX#awaitEvent(java.lang.Class, java.util.function.Predicate,
+ * long, java.util.concurrent.TimeUnit)
+ */
+@Slf4j
+public class EventWaiters implements TypedListener, RoutedListener {
+	private static final ClassValue<ImmutableList<Class<?>>> EVENT_TYPES = new ClassValue<ImmutableList<Class<?>>>() {
+		@Override
+		protected ImmutableList<Class<?>> computeValue(Class<?> eventClass) {
+			ImmutableList.Builder<Class<?>> builder = ImmutableList.builder();
+			for (Class<?> curType : TypeToken.of(eventClass).getTypes().rawTypes())
+				if (curType != Object.class)
+					builder.add(curType);
+			return builder.build();
+		}
+	};
+	protected final PircBotX bot;
+	protected final ConcurrentHashMap<Class<?>, List<Waiter>> waiters = new ConcurrentHashMap<>();
+	protected int waiterCount;
+
+	public EventWaiters(@NonNull PircBotX bot) {
+		this.bot = bot;
+	}
+
+	/**
+	 * Wait for the next event of the bot that matches
+	 *
+	 * @param eventClass Event class or interface to wait for
+	 * @param filter Only complete with events that pass
+	 * @param timeout Time to wait, Long.MAX_VALUE to wait forever
+	 * @param unit Unit of timeout
+	 * @return A future completed with the event, completed exceptionally with a
+	 * {@link TimeoutException} or whatever the filter threw. Cancel it to stop
+	 * waiting
+	 */
+	public <E extends GenericEvent> CompletableFuture<E> await(@NonNull Class<E> eventClass, @NonNull Predicate<? super E> filter,
+			long timeout, @NonNull TimeUnit unit) {
+		final FutureWaiter<E> waiter = new FutureWaiter<E>(filter);
+		add(eventClass, waiter);
+		if (timeout != Long.MAX_VALUE) {
+			final ScheduledFuture<?> timeoutTask = Utils.scheduleTimeout(new Runnable() {
+				@Override
+				public void run() {
+					waiter.future.completeExceptionally(new TimeoutException("No " + eventClass.getSimpleName() + " received"));
+				}
+			}, timeout, unit);
+			waiter.future.whenComplete(new BiConsumer<E, Throwable>() {
+				@Override
+				public void accept(E event, Throwable error) {
+					timeoutTask.cancel(false);
+				}
+			});
+		}
+		waiter.future.whenComplete(new BiConsumer<E, Throwable>() {
+			@Override
+			public void accept(E event, Throwable error) {
+				remove(eventClass, waiter);
+			}
+		});
+		return waiter.future;
+	}
+
+	/**
+	 * Start sending events of the type to the waiter until it's done or
+	 * removed. A waiter added for several types gets each event once
+	 */
+	protected synchronized void add(@NonNull Class<?> eventClass, @NonNull Waiter waiter) {
+		List<Waiter> typeWaiters = waiters.get(eventClass);
+		if (typeWaiters == null)
+			waiters.put(eventClass, typeWaiters = new CopyOnWriteArrayList<Waiter>());
+		typeWaiters.add(waiter);
+		if (waiterCount++ == 0)
+			bot.getConfiguration().getListenerManager().addListener(this);
+	}
+
+	/**
+	 * @return True if the waiter was removed, false if it was already done
+	 */
+	protected synchronized boolean remove(@NonNull Class<?> eventClass, @NonNull Waiter waiter) {
+		List<Waiter> typeWaiters = waiters.get(eventClass);
+		if (typeWaiters == null || !typeWaiters.remove(waiter))
+			return false;
+		if (typeWaiters.isEmpty())
+			waiters.remove(eventClass);
+		if (--waiterCount == 0)
+			bot.getConfiguration().getListenerManager().removeListener(this);
+		return true;
+	}
+
+	/**
+	 * Number of active waiters
+	 */
+	public synchronized int getWaiterCount() {
+		return waiterCount;
+	}
+
+	@Override
+	public Set<Class<?>> getEventTypes() {
+		return ListenerTypeIndex.ALL_EVENTS;
+	}
+
+	@Override
+	public ListenerRoute getRoute() {
+		return ListenerRoute.bot(bot);
+	}
+
+	@Override
+	public void onEvent(Event event) {
+		if (event.getBot() != bot)
+			return;
+		Set<Waiter> offered = null;
+		for (Class<?> curType : EVENT_TYPES.get(event.getClass())) {
+			List<Waiter> typeWaiters = waiters.get(curType);
+			if (typeWaiters == null)
+				continue;
+			if (offered == null)
+				offered = Sets.newIdentityHashSet();
+			for (Waiter curWaiter : typeWaiters) {
+				if (!offered.add(curWaiter))
+					continue;
+				try {
+					if (curWaiter.offer(event))
+						remove(curType, curWaiter);
+				} catch (Exception e) {
+					log.error("Waiter for " + curType + " failed on " + event, e);
+					remove(curType, curWaiter);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receives events of the types it was added for
+	 */
+	protected abstract static class Waiter {
+		/**
+		 * @return True once the waiter doesn't need any more events
+		 */
+		protected abstract boolean offer(Event event) throws Exception;
+	}
+
+	protected static class FutureWaiter<E> extends Waiter {
+		protected final Predicate<? super E> filter;
+		protected final CompletableFuture<E> future = new CompletableFuture<E>();
+
+		protected FutureWaiter(Predicate<? super E> filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected boolean offer(Event event) {
+			E typedEvent = (E) event;
+			try {
+				if (!filter.test(typedEvent))
+					return false;
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+				return true;
+			}
+			future.complete(typedEvent);
+			return true;
+		}
+	}
+}
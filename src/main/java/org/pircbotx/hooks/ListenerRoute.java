@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.Set;
+import lombok.NonNull;
+import org.pircbotx.Channel;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.hooks.managers.ListenerTypeIndex;
+import org.pircbotx.hooks.types.GenericChannelEvent;
+import org.pircbotx.hooks.types.GenericUserEvent;
+import org.pircbotx.snapshot.UserSnapshot;
+
+/**
+ * Which events of a shared ListenerManager a {@link RoutedListener} receives:
+ * all events of a single bot, events of some of its channels, or events of
+ * some of its users. Listener managers that index listeners keep routed
+ * listeners in hash indexes keyed by bot, channel and user so an event is only
+ * matched against listeners routed to it instead of every listener.
+ * <p>
+ * Channels are matched by name, case insensitive with the bot's configured
+ * locale, so the route survives the bot parting and rejoining. Users are
+ * matched by {@link User} instance, which follows nick changes. Events with a
+ * {@link UserSnapshot} match the user the snapshot was taken from.
+ *
+ * @see ListenerTypeIndex
+ */
+public final class ListenerRoute {
+	private final PircBotX bot;
+	private final ImmutableSet<String> channels;
+	private final Set<User> users;
+
+	private ListenerRoute(PircBotX bot, ImmutableSet<String> channels, Set<User> users) {
+		this.bot = bot;
+		this.channels = channels;
+		this.users = users;
+	}
+
+	/**
+	 * Route all events of the bot
+	 */
+	public static ListenerRoute bot(@NonNull PircBotX bot) {
+		return new ListenerRoute(bot, ImmutableSet.<String>of(), Collections.<User>emptySet());
+	}
+
+	/**
+	 * Route events of the bot with any of the channels
+	 *
+	 * @param channels Channel names, case insensitive
+	 */
+	public static ListenerRoute channels(@NonNull PircBotX bot, @NonNull String... channels) {
+		checkArgument(channels.length != 0, "Must specify at least one channel");
+		ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+		for (String curChannel : channels)
+			builder.add(lowercase(bot, curChannel));
+		return new ListenerRoute(bot, builder.build(), Collections.<User>emptySet());
+	}
+
+	/**
+	 * Route events of the channels' bot with any of the channels
+	 */
+	public static ListenerRoute channels(@NonNull Channel... channels) {
+		checkArgument(channels.length != 0, "Must specify at least one channel");
+		PircBotX bot = channels[0].getBot();
+		String[] names = new String[channels.length];
+		for (int i = 0; i < channels.length; i++) {
+			checkArgument(channels[i].getBot() == bot, "Channels must belong to the same bot");
+			names[i] = channels[i].getName();
+		}
+		return channels(bot, names);
+	}
+
+	/**
+	 * Route events of the bot with any of the users
+	 */
+	public static ListenerRoute users(@NonNull PircBotX bot, @NonNull User... users) {
+		checkArgument(users.length != 0, "Must specify at least one user");
+		Set<User> userSet = Sets.newIdentityHashSet();
+		for (User curUser : users) {
+			checkArgument(curUser.getBot() == bot, "User %s doesn't belong to the bot", curUser.getNick());
+			userSet.add(curUser);
+		}
+		return new ListenerRoute(bot, ImmutableSet.<String>of(), Collections.unmodifiableSet(userSet));
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends PircBotX> T getBot() {
+		return (T) bot;
+	}
+
+	/**
+	 * Lowercase channel names, empty unless this routes channels
+	 */
+	public ImmutableSet<String> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Users compared by identity, empty unless this routes users
+	 */
+	public Set<User> getUsers() {
+		return users;
+	}
+
+	/**
+	 * Check if the event is routed to listeners with this route
+	 */
+	public boolean matches(@NonNull Event event) {
+		if (event.getBot() != bot)
+			return false;
+		if (!channels.isEmpty()) {
+			Channel channel = event instanceof GenericChannelEvent ? ((GenericChannelEvent) event).getChannel() : null;
+			return channel != null && channels.contains(lowercase(bot, channel.getName()));
+		}
+		if (!users.isEmpty()) {
+			User user = getEventUser(event);
+			return user != null && users.contains(user);
+		}
+		return true;
+	}
+
+	/**
+	 * Keys this route is indexed under, events are looked up with
+	 * {@link #getEventKeys(org.pircbotx.hooks.Event) }
+	 */
+	public ImmutableList<Object> getKeys() {
+		ImmutableList.Builder<Object> builder = ImmutableList.builder();
+		if (!channels.isEmpty())
+			for (String curChannel : channels)
+				builder.add(new Key(bot, curChannel));
+		else if (!users.isEmpty())
+			for (User curUser : users)
+				builder.add(new Key(bot, curUser));
+		else
+			builder.add(new Key(bot, null));
+		return builder.build();
+	}
+
+	/**
+	 * Keys of every route the event could match: its bot, its channel and its
+	 * user
+	 */
+	public static ImmutableList<Object> getEventKeys(@NonNull Event event) {
+		PircBotX bot = event.getBot();
+		if (bot == null)
+			return ImmutableList.of();
+		ImmutableList.Builder<Object> builder = ImmutableList.builder();
+		builder.add(new Key(bot, null));
+		if (event instanceof GenericChannelEvent) {
+			Channel channel = ((GenericChannelEvent) event).getChannel();
+			if (channel != null)
+				builder.add(new Key(bot, lowercase(bot, channel.getName())));
+		}
+		User user = getEventUser(event);
+		if (user != null)
+			builder.add(new Key(bot, user));
+		return builder.build();
+	}
+
+	/**
+	 * The live user of the event, snapshots of Part, Quit, etc events are
+	 * resolved to the user they were taken from
+	 */
+	private static User getEventUser(Event event) {
+		if (!(event instanceof GenericUserEvent))
+			return null;
+		User user = ((GenericUserEvent) event).getUser();
+		if (user instanceof UserSnapshot)
+			return ((UserSnapshot) user).getGeneratedFrom();
+		return user;
+	}
+
+	/**
+	 * Wrap a listener so it only receives events matching this route. Equal
+	 * wrappers are created for the same listener and route so the listener
+	 * can be removed with another call to this method
+	 */
+	public RoutedListener wrap(@NonNull Listener listener) {
+		return new Wrapper(this, listener);
+	}
+
+	private static String lowercase(PircBotX bot, String channel) {
+		return channel.toLowerCase(bot.getConfiguration().getLocale());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ListenerRoute))
+			return false;
+		ListenerRoute other = (ListenerRoute) obj;
+		return other.bot == bot && other.channels.equals(channels)
+				&& other.users.size() == users.size() && users.containsAll(other.users);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = System.identityHashCode(bot) * 31 + channels.hashCode();
+		for (User curUser : users)
+			hash += System.identityHashCode(curUser);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		if (!channels.isEmpty())
+			return "ListenerRoute(channels=" + channels + ")";
+		if (!users.isEmpty())
+			return "ListenerRoute(users=" + users.size() + ")";
+		return "ListenerRoute(bot=" + bot.getBotId() + ")";
+	}
+
+	/**
+	 * Index key of a bot and a lowercase channel name, a User instance, or
+	 * null for the bot itself
+	 */
+	private static final class Key {
+		private final PircBotX bot;
+		private final Object target;
+
+		Key(PircBotX bot, Object target) {
+			this.bot = bot;
+			this.target = target;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			if (other.bot != bot)
+				return false;
+			if (target instanceof String)
+				return target.equals(other.target);
+			return target == other.target;
+		}
+
+		@Override
+		public int hashCode() {
+			int targetHash = target instanceof String ? target.hashCode() : System.identityHashCode(target);
+			return System.identityHashCode(bot) * 31 + targetHash;
+		}
+	}
+
+	private static final class Wrapper implements RoutedListener, TypedListener {
+		private final ListenerRoute route;
+		private final Listener listener;
+
+		Wrapper(ListenerRoute route, Listener listener) {
+			this.route = route;
+			this.listener = listener;
+		}
+
+		@Override
+		public ListenerRoute getRoute() {
+			return route;
+		}
+
+		@Override
+		public Set<Class<?>> getEventTypes() {
+			return ListenerTypeIndex.getEventTypes(listener);
+		}
+
+		@Override
+		public void onEvent(Event event) throws Exception {
+			//Managers without an index dispatch everything
+			if (route.matches(event))
+				listener.onEvent(event);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Wrapper && ((Wrapper) obj).listener == listener && ((Wrapper) obj).route.equals(route);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(listener) * 31 + route.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return listener + " routed by " + route;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+/**
+ * Listener that only receives events of a bot, channel or user. Listener
+ * managers that index listeners only dispatch events matching the route to
+ * it, other managers dispatch every event so implementations must still check
+ * {@link ListenerRoute#matches(org.pircbotx.hooks.Event) }.
+ * <p>
+ * Use {@link ListenerRoute#wrap(org.pircbotx.hooks.Listener) } to route an
+ * existing listener
+ *
+ * @see org.pircbotx.hooks.managers.ListenerTypeIndex
+ */
+public interface RoutedListener extends Listener {
+	/**
+	 * Events to receive. Read whenever listeners are added or removed
+	 *
+	 * @return The route or null to receive every event
+	 */
+	public ListenerRoute getRoute();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as receiving events. The method must not be private or static
+ * and have a single parameter of an {@link Event} class or a Generic*Event
+ * interface. Any return value is ignored, eg
+ * <pre>
+ * public class MyBot {
+ *	&#64;Subscribe
+ *	public void onMessage(MessageEvent event) {
+ *		event.respond("Hello");
+ *	}
+ * }
+ *
+ * configBuilder.addSubscriber(new MyBot());
+ * </pre>
+ * <p>
+ * Every method whose parameter matches the event is called, in no particular
+ * order. Methods are found in the class and its superclasses, overriding
+ * methods are called instead of the annotated method.
+ * <p>
+ * {@link SubscribeProcessor} generates a dispatcher for each class when
+ * compiling with PircBotX on the classpath, otherwise methods are called with
+ * reflection
+ *
+ * @see SubscriberListener
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Subscribe {
+}
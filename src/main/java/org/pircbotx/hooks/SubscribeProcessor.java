@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import org.pircbotx.hooks.types.GenericEvent;
+
+/**
+ * Annotation processor that generates an {@link EventDispatcher} for each
+ * class with {@link Subscribe} methods, calling them directly instead of with
+ * reflection. Registered as a service so it runs when compiling with PircBotX
+ * on the classpath.
+ * <p>
+ * Invalid methods are compile errors. Classes the generated dispatcher cannot
+ * access (private or local classes, non-public methods in another package) are
+ * skipped with a note and use the reflection fallback of
+ * {@link SubscriberListener}
+ */
+@SupportedAnnotationTypes("org.pircbotx.hooks.Subscribe")
+public class SubscribeProcessor extends AbstractProcessor {
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> listenerTypes = new LinkedHashSet<TypeElement>();
+		for (Element curElement : roundEnv.getElementsAnnotatedWith(Subscribe.class))
+			if (curElement.getKind() == ElementKind.METHOD && validate((ExecutableElement) curElement))
+				listenerTypes.add((TypeElement) curElement.getEnclosingElement());
+		for (TypeElement curType : listenerTypes)
+			generate(curType);
+		return true;
+	}
+
+	protected boolean validate(ExecutableElement method) {
+		TypeMirror genericEvent = processingEnv.getElementUtils().getTypeElement(GenericEvent.class.getCanonicalName()).asType();
+		TypeMirror exception = processingEnv.getElementUtils().getTypeElement("java.lang.Exception").asType();
+		TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType();
+		if (method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.PRIVATE)) {
+			error(method, "@Subscribe method must not be static or private");
+			return false;
+		}
+		if (method.getParameters().size() != 1
+				|| !processingEnv.getTypeUtils().isAssignable(method.getParameters().get(0).asType(), genericEvent)) {
+			error(method, "@Subscribe method must have a single Event or Generic*Event parameter");
+			return false;
+		}
+		for (TypeMirror curThrown : method.getThrownTypes())
+			if (!processingEnv.getTypeUtils().isAssignable(curThrown, exception)
+					&& !processingEnv.getTypeUtils().isAssignable(curThrown, error)) {
+				error(method, "@Subscribe method can only throw Exceptions");
+				return false;
+			}
+		return true;
+	}
+
+	protected void generate(TypeElement type) {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = packageElement.getQualifiedName().toString();
+		if (!isAccessible(type)) {
+			note(type, "Cannot generate @Subscribe dispatcher for inaccessible class, using reflection");
+			return;
+		}
+
+		//Methods in this class and its superclasses, skipping overridden ones
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		Set<String> signatures = new HashSet<String>();
+		for (TypeElement curType = type; curType != null; curType = superclass(curType))
+			for (Element curElement : curType.getEnclosedElements()) {
+				if (curElement.getKind() != ElementKind.METHOD || curElement.getAnnotation(Subscribe.class) == null)
+					continue;
+				ExecutableElement curMethod = (ExecutableElement) curElement;
+				if (!signatures.add(curMethod.getSimpleName() + "(" + erasure(curMethod.getParameters().get(0).asType()) + ")"))
+					continue;
+				if (!curMethod.getModifiers().contains(Modifier.PUBLIC)
+						&& !processingEnv.getElementUtils().getPackageOf(curType).equals(packageElement)) {
+					note(type, "Cannot generate @Subscribe dispatcher, " + curMethod + " in " + curType + " is not public");
+					return;
+				}
+				methods.add(curMethod);
+			}
+
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String dispatcherName = binaryName + SubscriberListener.DISPATCHER_SUFFIX;
+		String simpleName = packageName.isEmpty() ? dispatcherName : dispatcherName.substring(packageName.length() + 1);
+		String typeName = type.getQualifiedName().toString();
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty())
+			source.append("package ").append(packageName).append(";\n\n");
+		source.append("/**\n * Generated dispatcher for the @Subscribe methods of {@link ").append(typeName).append("}\n */\n")
+				.append("public final class ").append(simpleName).append(" implements org.pircbotx.hooks.EventDispatcher {\n")
+				.append("\tprivate static final java.util.Set<Class<?>> EVENT_TYPES = com.google.common.collect.ImmutableSet.<Class<?>>of(");
+		for (int i = 0; i < methods.size(); i++)
+			source.append(i == 0 ? "" : ", ").append(erasure(methods.get(i).getParameters().get(0).asType())).append(".class");
+		source.append(");\n\n")
+				.append("\t@Override\n")
+				.append("\tpublic java.util.Set<Class<?>> getEventTypes() {\n")
+				.append("\t\treturn EVENT_TYPES;\n")
+				.append("\t}\n\n")
+				.append("\t@Override\n");
+		if (!type.getTypeParameters().isEmpty())
+			source.append("\t@SuppressWarnings(\"rawtypes\")\n");
+		source.append("\tpublic void dispatch(Object listener, org.pircbotx.hooks.Event event) throws Exception {\n")
+				.append("\t\t").append(typeName).append(" typedListener = (").append(typeName).append(") listener;\n");
+		for (ExecutableElement curMethod : methods) {
+			String eventType = erasure(curMethod.getParameters().get(0).asType());
+			source.append("\t\tif (event instanceof ").append(eventType).append(")\n")
+					.append("\t\t\ttypedListener.").append(curMethod.getSimpleName()).append("((").append(eventType).append(") event);\n");
+		}
+		source.append("\t}\n}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(dispatcherName, type).openWriter()) {
+			writer.write(source.toString());
+		} catch (IOException e) {
+			error(type, "Cannot write @Subscribe dispatcher " + dispatcherName + ": " + e);
+		}
+	}
+
+	/**
+	 * Check if a class in the same package can reference the type
+	 */
+	protected static boolean isAccessible(TypeElement type) {
+		for (Element curElement = type; curElement instanceof TypeElement; curElement = curElement.getEnclosingElement()) {
+			TypeElement curType = (TypeElement) curElement;
+			if (curType.getModifiers().contains(Modifier.PRIVATE))
+				return false;
+			if (curType.getNestingKind() != NestingKind.TOP_LEVEL && curType.getNestingKind() != NestingKind.MEMBER)
+				return false;
+		}
+		return true;
+	}
+
+	protected static TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED)
+			return null;
+		TypeElement superElement = (TypeElement) ((DeclaredType) superclass).asElement();
+		return superElement.getQualifiedName().contentEquals("java.lang.Object") ? null : superElement;
+	}
+
+	protected String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	protected void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	protected void note(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.Getter;
+import lombok.NonNull;
+import org.pircbotx.hooks.types.GenericEvent;
+
+/**
+ * Listener that calls the {@link Subscribe} methods of an object, allowing it
+ * to be added to any ListenerManager. Two SubscriberListeners are equal if they
+ * wrap the same object, so either can be used to remove it.
+ * <p>
+ * The {@link EventDispatcher} of each class is found once and cached. It is
+ * the generated dispatcher of the class, or of the closest superclass when the
+ * class doesn't add any methods. Classes that weren't processed by
+ * {@link SubscribeProcessor} fall back to {@link MethodHandle}s.
+ */
+public class SubscriberListener implements TypedListener {
+	/**
+	 * Suffix of the class name of generated dispatchers
+	 */
+	public static final String DISPATCHER_SUFFIX = "_SubscribeDispatcher";
+	private static final MethodType DISPATCH_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final ClassValue<EventDispatcher> DISPATCHERS = new ClassValue<EventDispatcher>() {
+		@Override
+		protected EventDispatcher computeValue(Class<?> listenerClass) {
+			return createDispatcher(listenerClass);
+		}
+	};
+	@Getter
+	protected final Object subscriber;
+	@Getter
+	protected final EventDispatcher dispatcher;
+
+	/**
+	 * @param subscriber Object with at least one {@link Subscribe} method
+	 * @throws IllegalArgumentException If there are no or invalid
+	 * {@link Subscribe} methods
+	 */
+	public SubscriberListener(@NonNull Object subscriber) {
+		this.subscriber = subscriber;
+		this.dispatcher = getDispatcher(subscriber.getClass());
+		if (dispatcher.getEventTypes().isEmpty())
+			throw new IllegalArgumentException("No @Subscribe methods in " + subscriber.getClass());
+	}
+
+	@Override
+	public Set<Class<?>> getEventTypes() {
+		return dispatcher.getEventTypes();
+	}
+
+	@Override
+	public void onEvent(Event event) throws Exception {
+		dispatcher.dispatch(subscriber, event);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof SubscriberListener && ((SubscriberListener) obj).subscriber == subscriber;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(subscriber);
+	}
+
+	@Override
+	public String toString() {
+		return "SubscriberListener(" + subscriber + ")";
+	}
+
+	/**
+	 * Get the cached dispatcher of a class
+	 */
+	public static EventDispatcher getDispatcher(@NonNull Class<?> listenerClass) {
+		return DISPATCHERS.get(listenerClass);
+	}
+
+	protected static EventDispatcher createDispatcher(Class<?> listenerClass) {
+		EventDispatcher generated = loadGeneratedDispatcher(listenerClass);
+		if (generated != null)
+			return generated;
+		Class<?> superclass = listenerClass.getSuperclass();
+		if (superclass != null && superclass != Object.class && findSubscribeMethods(listenerClass, false).isEmpty())
+			//No methods of its own so calls the same methods as the superclass
+			return getDispatcher(superclass);
+		return createReflectiveDispatcher(listenerClass);
+	}
+
+	/**
+	 * Create the generated dispatcher of exactly this class
+	 *
+	 * @return The dispatcher or null if the class wasn't processed
+	 */
+	protected static EventDispatcher loadGeneratedDispatcher(Class<?> listenerClass) {
+		Class<?> dispatcherClass;
+		try {
+			dispatcherClass = Class.forName(listenerClass.getName() + DISPATCHER_SUFFIX, true, listenerClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		try {
+			return (EventDispatcher) dispatcherClass.getConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("Cannot create generated dispatcher " + dispatcherClass, e);
+		}
+	}
+
+	/**
+	 * Create a dispatcher that calls the {@link Subscribe} methods of the class
+	 * and its superclasses with {@link MethodHandle}s
+	 *
+	 * @throws IllegalArgumentException If a method is static or doesn't have a
+	 * single event parameter
+	 */
+	public static EventDispatcher createReflectiveDispatcher(@NonNull Class<?> listenerClass) {
+		ImmutableList<Method> methods = findSubscribeMethods(listenerClass, true);
+		Class<?>[] eventTypes = new Class<?>[methods.size()];
+		MethodHandle[] handles = new MethodHandle[methods.size()];
+		for (int i = 0; i < methods.size(); i++) {
+			Method curMethod = methods.get(i);
+			if (Modifier.isStatic(curMethod.getModifiers()) || curMethod.getParameterTypes().length != 1
+					|| !GenericEvent.class.isAssignableFrom(curMethod.getParameterTypes()[0]))
+				throw new IllegalArgumentException("@Subscribe method must not be static and have a single event parameter: " + curMethod);
+			eventTypes[i] = curMethod.getParameterTypes()[0];
+			try {
+				curMethod.setAccessible(true);
+				handles[i] = MethodHandles.lookup().unreflect(curMethod).asType(DISPATCH_TYPE);
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Cannot access @Subscribe method " + curMethod, e);
+			}
+		}
+		return new ReflectiveDispatcher(eventTypes, handles);
+	}
+
+	/**
+	 * @param superclasses Also search superclasses, skipping overridden methods
+	 */
+	protected static ImmutableList<Method> findSubscribeMethods(Class<?> listenerClass, boolean superclasses) {
+		ImmutableList.Builder<Method> methods = ImmutableList.builder();
+		Set<String> signatures = new HashSet<String>();
+		for (Class<?> curClass = listenerClass; curClass != null && curClass != Object.class; curClass = superclasses ? curClass.getSuperclass() : null)
+			for (Method curMethod : curClass.getDeclaredMethods())
+				if (curMethod.isAnnotationPresent(Subscribe.class)
+						&& signatures.add(curMethod.getName() + MethodType.methodType(void.class, curMethod.getParameterTypes())))
+					methods.add(curMethod);
+		return methods.build();
+	}
+
+	protected static class ReflectiveDispatcher implements EventDispatcher {
+		protected final Class<?>[] eventTypes;
+		protected final MethodHandle[] handles;
+		protected final ImmutableSet<Class<?>> eventTypesSet;
+
+		protected ReflectiveDispatcher(Class<?>[] eventTypes, MethodHandle[] handles) {
+			this.eventTypes = eventTypes;
+			this.handles = handles;
+			this.eventTypesSet = ImmutableSet.copyOf(eventTypes);
+		}
+
+		@Override
+		public Set<Class<?>> getEventTypes() {
+			return eventTypesSet;
+		}
+
+		@Override
+		public void dispatch(Object listener, Event event) throws Exception {
+			for (int i = 0; i < handles.length; i++)
+				if (eventTypes[i].isInstance(event))
+					try {
+						handles[i].invokeExact(listener, (Object) event);
+					} catch (Exception | Error e) {
+						throw e;
+					} catch (Throwable e) {
+						throw new RuntimeException("Exception in @Subscribe method", e);
+					}
+		}
+	}
+}
@@ -23,12 +23,15 @@ import org.pircbotx.hooks.managers.ListenerManager;
 
 /**
  * Listener for short one-off tasks. Listener methods will only be called if the
- * event matches the specified bot. Listener can easily be removed with {@link #done()
+ * event matches the specified bot, or a narrower {@link ListenerRoute}. Listener
+ * managers that index listeners won't consider it for other bots' events at
+ * all. Listener can easily be removed with {@link #done()
  * }.
  * <p>
  */
-public class TemporaryListener extends ListenerAdapter {
+public class TemporaryListener extends ListenerAdapter implements RoutedListener {
 	protected final PircBotX bot;
+	protected final ListenerRoute route;
 
 	/**
 	 * Create a TemporaryListener for the specified bot
@@ -36,12 +39,27 @@ public class TemporaryListener extends ListenerAdapter {
 	 * @param bot The bot that your interested in
 	 */
 	public TemporaryListener(@NonNull PircBotX bot) {
-		this.bot = bot;
+		this(ListenerRoute.bot(bot));
+	}
+
+	/**
+	 * Create a TemporaryListener for some channels or users of a bot
+	 *
+	 * @param route The events that your interested in
+	 */
+	public TemporaryListener(@NonNull ListenerRoute route) {
+		this.bot = route.getBot();
+		this.route = route;
+	}
+
+	@Override
+	public ListenerRoute getRoute() {
+		return route;
 	}
 
 	@Override
 	public void onEvent(Event event) throws Exception {
-		if (event.getBot() == bot)
+		if (route.matches(event))
 			super.onEvent(event);
 	}
 
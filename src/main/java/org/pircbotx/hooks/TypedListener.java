@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.util.Set;
+
+/**
+ * Listener that declares which events it handles. Listener managers that index
+ * listeners by event type will only dispatch matching events to it.
+ * <p>
+ * {@link ListenerAdapter} subclasses do not need this, their types are found
+ * from the overridden methods
+ *
+ * @see org.pircbotx.hooks.managers.ListenerTypeIndex
+ */
+public interface TypedListener extends Listener {
+	/**
+	 * Event classes or Generic*Event interfaces to receive, subclasses and
+	 * implementations included. Read whenever listeners are added or removed
+	 */
+	public Set<Class<?>> getEventTypes();
+}
@@ -20,7 +20,9 @@ package org.pircbotx.hooks;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import lombok.NonNull;
@@ -29,8 +31,13 @@ import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.types.GenericEvent;
 
 /**
- * Stores all events in a queue for processing. This is useful for sequential
- * processing of many similar events.
+ * Stores events of the bot in a queue for processing. This is useful for
+ * sequential processing of many similar events. Every event is queued unless
+ * event types are given to the constructor, then only events of those types or
+ * types already waited for are queued, see {@link EventWaiters}. To wait for a
+ * single event use
+ * {@link PircBotX#awaitEvent(java.lang.Class, java.util.function.Predicate) }
+ * instead
  * <p>
  * Example:
  * <pre>
@@ -46,17 +53,23 @@ import org.pircbotx.hooks.types.GenericEvent;
 public class WaitForQueue implements Closeable {
 	protected final PircBotX bot;
 	protected LinkedBlockingQueue<Event> eventQueue = new LinkedBlockingQueue<Event>();
-	protected WaitForQueueListener listener;
+	protected final QueueWaiter waiter = new QueueWaiter();
+	protected final Set<Class<?>> eventClasses = new HashSet<Class<?>>();
 
 	/**
-	 * Create and store a queue listener in the specified bot's ListenerManager.
-	 * It will be removed when {@link #close() } is called
+	 * Create a queue for events of the specified bot. Listening stops when
+	 * {@link #close() } is called
 	 *
 	 * @param bot
+	 * @param eventClasses Events to start queuing now, other types are queued
+	 * from the first waitFor call with them. None to queue every event
 	 */
-	public WaitForQueue(@NonNull PircBotX bot) {
+	public WaitForQueue(@NonNull PircBotX bot, @NonNull Class<?>... eventClasses) {
 		this.bot = bot;
-		bot.getConfiguration().getListenerManager().addListener(listener = new WaitForQueueListener());
+		if (eventClasses.length == 0)
+			listen(Event.class);
+		for (Class<?> curEventClass : eventClasses)
+			listen(curEventClass);
 	}
 
 	/**
@@ -113,9 +126,9 @@ public class WaitForQueue implements Closeable {
 
 	/**
 	 * Wait for events of the specified event class to appear in the queue. If
-	 * the event was dispatched before this is called, it will return
-	 * immediately. Events that do not match the specified event class are
-	 * discarded
+	 * the event was dispatched after a previous call or the constructor asked
+	 * for it, it will return immediately. Events that do not match the
+	 * specified event class are discarded
 	 *
 	 * @param eventClasses Events to wait for
 	 * @param timeout Timeout value
@@ -124,6 +137,8 @@ public class WaitForQueue implements Closeable {
 	 * @throws InterruptedException
 	 */
 	public <E extends GenericEvent> Event waitFor(@NonNull List<Class<? extends E>> eventClasses, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+		for (Class<? extends GenericEvent> curEventClass : eventClasses)
+			listen(curEventClass);
 		while (true) {
 			Event curEvent = eventQueue.poll(timeout, unit);
 			//When poll times out it returns null. Repeat that behavior here
@@ -135,20 +150,32 @@ public class WaitForQueue implements Closeable {
 		}
 	}
 
+	/**
+	 * Start queuing events of the class if not already
+	 */
+	protected synchronized void listen(Class<?> eventClass) {
+		if (bot != null && eventClasses.add(eventClass))
+			bot.getEventWaiters().add(eventClass, waiter);
+	}
+
 	/**
 	 * Shuts down the queue; VERY important to call when finished. Since this
-	 * class stores every dispatched event, failure to close will eventually
-	 * cause you to run out of memory
+	 * class stores every dispatched event of the waited for types, failure to
+	 * close will eventually cause you to run out of memory
 	 */
 	@Override
-	public void close() {
-		bot.getConfiguration().getListenerManager().removeListener(listener);
+	public synchronized void close() {
+		for (Class<?> curEventClass : eventClasses)
+			bot.getEventWaiters().remove(curEventClass, waiter);
+		eventClasses.clear();
 		eventQueue.clear();
 	}
 
-	protected class WaitForQueueListener implements Listener {
-		public void onEvent(Event event) throws Exception {
+	protected class QueueWaiter extends EventWaiters.Waiter {
+		@Override
+		protected boolean offer(Event event) {
 			eventQueue.add(event);
+			return false;
 		}
 	}
 }
@@ -19,11 +19,11 @@ package org.pircbotx.hooks.events;
 
 import javax.annotation.Nullable;
 
-import com.google.common.collect.ImmutableMap;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
 import org.pircbotx.User;
@@ -72,9 +72,9 @@ public class ActionEvent extends Event implements GenericMessageEvent, GenericCh
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
-	public ActionEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user, Channel channel, @NonNull String channelSource, @NonNull String action, ImmutableMap<String, String> tags) {
+	public ActionEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user, Channel channel, @NonNull String channelSource, @NonNull String action, MessageTags tags) {
 		super(bot);
 		this.userHostmask = userHostmask;
 		this.user = user;
@@ -143,7 +143,7 @@ public class ActionEvent extends Event implements GenericMessageEvent, GenericCh
 	/**
 	 * Alias of {@link #getTags() }
 	 */
-	public ImmutableMap<String, String> getV3Tags() {
+	public MessageTags getV3Tags() {
 		return tags;
 	}
 }
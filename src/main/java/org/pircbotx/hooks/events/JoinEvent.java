@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.User;
 import lombok.Data;
@@ -59,9 +59,9 @@ public class JoinEvent extends Event implements GenericChannelUserEvent {
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
-	public JoinEvent(PircBotX bot, @NonNull Channel channel, @NonNull UserHostmask userHostmask, User user, ImmutableMap<String, String> tags) {
+	public JoinEvent(PircBotX bot, @NonNull Channel channel, @NonNull UserHostmask userHostmask, User user, MessageTags tags) {
 		super(bot);
 		this.channel = channel;
 		this.user = user;
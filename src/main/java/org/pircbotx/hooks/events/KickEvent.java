@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.User;
 import lombok.Data;
@@ -76,11 +76,11 @@ public class KickEvent extends Event implements GenericChannelModeRecipientEvent
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
 	public KickEvent(PircBotX bot, @NonNull Channel channel, @NonNull UserHostmask userHostmask, User user,
 			@NonNull UserHostmask recipientHostmask, User recipient, @NonNull String reason,
-      ImmutableMap<String, String> tags) {
+      MessageTags tags) {
 		super(bot);
 		this.channel = channel;
 		this.userHostmask = userHostmask;
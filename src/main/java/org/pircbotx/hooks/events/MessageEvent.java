@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.User;
 import lombok.Data;
@@ -70,9 +70,9 @@ public class MessageEvent extends Event implements GenericMessageEvent, GenericC
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
-	public MessageEvent(PircBotX bot, @NonNull Channel channel, @NonNull String channelSource, @NonNull UserHostmask userHostmask, User user, @NonNull String message, ImmutableMap<String, String> tags) {
+	public MessageEvent(PircBotX bot, @NonNull Channel channel, @NonNull String channelSource, @NonNull UserHostmask userHostmask, User user, @NonNull String message, MessageTags tags) {
 		super(bot);
 		this.channel = channel;
 		this.channelSource = channelSource;
@@ -122,7 +122,7 @@ public class MessageEvent extends Event implements GenericMessageEvent, GenericC
 	/**
 	 * Alias of {@link #getTags() }
 	 */
-	public ImmutableMap<String, String> getV3Tags() {
+	public MessageTags getV3Tags() {
 		return tags;
 	}
 }
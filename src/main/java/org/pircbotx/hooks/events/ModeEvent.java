@@ -17,9 +17,9 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableList;
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.User;
 import lombok.Data;
@@ -71,11 +71,11 @@ public class ModeEvent extends Event implements GenericChannelUserEvent {
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
 	public ModeEvent(PircBotX bot, @NonNull Channel channel, UserHostmask userHostmask,
 			User user, @NonNull String mode, @NonNull ImmutableList<String> modeParsed,
-      ImmutableMap<String, String> tags) {
+      MessageTags tags) {
 		super(bot);
 		this.channel = channel;
 		this.userHostmask = userHostmask;
@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.User;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -60,10 +60,10 @@ public class NickChangeEvent extends Event implements GenericUserEvent {
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
 	public NickChangeEvent(PircBotX bot, @NonNull String oldNick, @NonNull String newNick,
-			@NonNull UserHostmask userHostmask, User user, ImmutableMap<String, String> tags) {
+			@NonNull UserHostmask userHostmask, User user, MessageTags tags) {
 		super(bot);
 		this.oldNick = oldNick;
 		this.newNick = newNick;
@@ -19,11 +19,11 @@ package org.pircbotx.hooks.events;
 
 import javax.annotation.Nullable;
 
-import com.google.common.collect.ImmutableMap;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.User;
 import org.pircbotx.hooks.Event;
@@ -70,9 +70,9 @@ public class NoticeEvent extends Event implements GenericMessageEvent, GenericCh
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
-	public NoticeEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user, Channel channel, @NonNull String channelSource, @NonNull String notice, ImmutableMap<String, String> tags) {
+	public NoticeEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user, Channel channel, @NonNull String channelSource, @NonNull String notice, MessageTags tags) {
 		super(bot);
 		this.user = user;
 		this.userHostmask = userHostmask;
@@ -134,7 +134,7 @@ public class NoticeEvent extends Event implements GenericMessageEvent, GenericCh
 	/**
 	 * Alias of {@link #getTags() }
 	 */
-	public ImmutableMap<String, String> getV3Tags() {
+	public MessageTags getV3Tags() {
 		return tags;
 	}
 }
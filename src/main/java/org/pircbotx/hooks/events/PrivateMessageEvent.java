@@ -19,7 +19,7 @@ package org.pircbotx.hooks.events;
 
 import javax.annotation.Nullable;
 
-import com.google.common.collect.ImmutableMap;
+import org.pircbotx.MessageTags;
 import org.pircbotx.User;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -58,9 +58,9 @@ public class PrivateMessageEvent extends Event implements GenericMessageEvent {
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
-	public PrivateMessageEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user, @NonNull String message, ImmutableMap<String, String> tags) {
+	public PrivateMessageEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user, @NonNull String message, MessageTags tags) {
 		super(bot);
 		this.userHostmask = userHostmask;
 		this.user = user;
@@ -91,7 +91,7 @@ public class PrivateMessageEvent extends Event implements GenericMessageEvent {
 	/**
 	 * Alias of {@link #getTags() }
 	 */
-	public ImmutableMap<String, String> getV3Tags() {
+	public MessageTags getV3Tags() {
 		return tags;
 	}
 }
@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 
+import org.pircbotx.MessageTags;
 import org.pircbotx.PircBotX;
 import org.pircbotx.UserHostmask;
 import org.pircbotx.hooks.Event;
@@ -59,11 +59,11 @@ public class QuitEvent extends Event implements GenericUserEvent, GenericSnapsho
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
 	public QuitEvent(PircBotX bot, UserChannelDaoSnapshot userChannelDaoSnapshot,
 			@NonNull UserHostmask userHostmask, UserSnapshot user, @NonNull String reason,
-      ImmutableMap<String, String> tags) {
+      MessageTags tags) {
 		super(bot);
 		this.userChannelDaoSnapshot = userChannelDaoSnapshot;
 		this.userHostmask = userHostmask;
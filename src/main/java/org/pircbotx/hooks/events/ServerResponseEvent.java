@@ -17,6 +17,7 @@
  */
 package org.pircbotx.hooks.events;
 
+import org.pircbotx.IrcMessage;
 import org.pircbotx.PircBotX;
 import org.pircbotx.ReplyConstants;
 import org.pircbotx.hooks.Event;
@@ -51,24 +52,35 @@ import lombok.NonNull;
 @Data
 @EqualsAndHashCode(callSuper = true)
 public class ServerResponseEvent extends Event {
+	/**
+	 * The parsed line, Strings are only created for the parts that are used
+	 */
+	protected final IrcMessage message;
+
+	public ServerResponseEvent(PircBotX bot, @NonNull IrcMessage message) {
+		super(bot);
+		this.message = message;
+	}
+
 	/**
 	 * The three-digit numerical code for the response.
 	 */
-	protected final int code;
+	public int getCode() {
+		return message.getNumeric();
+	}
+
 	/**
 	 * The raw line of the response
 	 */
-	protected final String rawLine;
+	public String getRawLine() {
+		return message.getBody();
+	}
+
 	/**
 	 * Parsed raw line.
 	 */
-	protected final ImmutableList<String> parsedResponse;
-
-	public ServerResponseEvent(PircBotX bot, int code, @NonNull String rawLine, @NonNull ImmutableList<String> parsedResponse) {
-		super(bot);
-		this.code = code;
-		this.rawLine = rawLine;
-		this.parsedResponse = parsedResponse;
+	public ImmutableList<String> getParsedResponse() {
+		return message.getParams();
 	}
 
 	/**
@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 
+import org.pircbotx.MessageTags;
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
 import org.pircbotx.UserHostmask;
@@ -67,10 +67,10 @@ public class TopicEvent extends Event implements GenericChannelEvent {
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
 	public TopicEvent(PircBotX bot, @NonNull Channel channel, String oldTopic, @NonNull String topic, @NonNull UserHostmask user, long date, boolean changed,
-      ImmutableMap<String, String> tags) {
+      MessageTags tags) {
 		super(bot);
 		this.channel = channel;
 		this.oldTopic = oldTopic;
@@ -19,10 +19,11 @@ package org.pircbotx.hooks.events;
 
 import java.util.List;
 
+import org.pircbotx.MessageTags;
+import org.pircbotx.IrcMessage;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.Event;
 
-import com.google.common.collect.ImmutableMap;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -52,30 +53,37 @@ public class UnknownEvent extends Event {
 	@Getter
 	protected final String command;
 	/**
-	 * The raw line that was received from the server.
-	 */
-	@Getter
-	protected final String line;
-	/**
-	 * The parsed line
+	 * The IRCv3 tags (if any)
 	 */
 	@Getter
-	protected final List<String> parsedLine;
+	protected final MessageTags tags;
 	/**
-	 * The IRCv3 tags (if any)
+	 * The parsed line, Strings are only created for the parts that are used
 	 */
 	@Getter
-	protected final ImmutableMap<String, String> tags;
+	protected final IrcMessage message;
 
-
-	public UnknownEvent(PircBotX bot, String target, String nick, String command, @NonNull String line, List<String> parsedLine, ImmutableMap<String, String> tags) {
+	public UnknownEvent(PircBotX bot, String target, String nick, String command, @NonNull IrcMessage message, MessageTags tags) {
 		super(bot);
 		this.target = target;
 		this.nick = nick;
 		this.command = command;
-		this.line = line;
-		this.parsedLine = parsedLine;
 		this.tags = tags;
+		this.message = message;
+	}
+
+	/**
+	 * The raw line that was received from the server.
+	 */
+	public String getLine() {
+		return message.getBody();
+	}
+
+	/**
+	 * The parsed line
+	 */
+	public List<String> getParsedLine() {
+		return message.getParams();
 	}
 
 	/**
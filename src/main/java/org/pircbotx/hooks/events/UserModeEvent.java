@@ -17,8 +17,8 @@
  */
 package org.pircbotx.hooks.events;
 
-import com.google.common.collect.ImmutableMap;
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.User;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -66,11 +66,11 @@ public class UserModeEvent extends Event implements GenericUserModeEvent {
 	/**
 	 * The IrcV3 tags
 	 */
-	protected final ImmutableMap<String, String> tags;
+	protected final MessageTags tags;
 
 	public UserModeEvent(PircBotX bot, @NonNull UserHostmask userHostmask, User user,
 			@NonNull UserHostmask recipientHostmask, User recipient, @NonNull String mode,
-      ImmutableMap<String, String> tags) {
+      MessageTags tags) {
 		super(bot);
 		this.userHostmask = user;
 		this.user = user;
@@ -22,8 +22,27 @@
  */
 package org.pircbotx.hooks.managers;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.pircbotx.PircBotX;
 import org.pircbotx.Utils;
+import org.pircbotx.hooks.AsyncListener;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.hooks.Listener;
 import org.pircbotx.hooks.events.ExceptionEvent;
@@ -40,22 +59,175 @@ public abstract class AbstractListenerManager implements ListenerManager {
 	 * Aid in log submission
 	 */
 	private final Logger sublog = LoggerFactory.getLogger(getClass());
+	/**
+	 * Listener tasks and {@link AsyncListener} stages of each bot that are
+	 * queued, running or incomplete
+	 */
+	protected final ConcurrentHashMap<PircBotX, InFlightCounter> inFlight = new ConcurrentHashMap<>();
+	/**
+	 * Milliseconds an {@link AsyncListener} stage may take before a
+	 * {@link ListenerExceptionEvent} with a TimeoutException is dispatched and
+	 * it stops counting as in flight, 0 for no timeout
+	 */
+	@Getter
+	@Setter
+	protected volatile long asyncListenerTimeout = TimeUnit.MINUTES.toMillis(1);
 	
 	protected void executeListener(Listener listener, Event event) {
 		executeListener(listener, event, "Failed in " + getClass().getName());
 	}
 	
 	protected void executeListener(Listener listener, Event event, String debug) {
+		if (listener instanceof AsyncListener) {
+			executeAsyncListener((AsyncListener) listener, event, debug);
+			return;
+		}
 		try {
 			listener.onEvent(event);
 		} catch (Exception listenerException) {
-			if (event instanceof ExceptionEvent) {
-				log.error("Encountered exception while processing {}, NOT dispatching another ExceptionEvent to stop potential StackOverflow",
-						event.getClass(),
-						listenerException);
-			} else {
-				onEvent(new ListenerExceptionEvent(event.getBot(), listenerException, debug, listener, event));
+			handleListenerException(listener, event, listenerException, debug);
+		}
+	}
+
+	/**
+	 * Start the listener and return without waiting for its stage. The stage
+	 * counts as in flight for the event's bot until it completes or times out,
+	 * failures are dispatched as a {@link ListenerExceptionEvent}
+	 */
+	protected void executeAsyncListener(final AsyncListener listener, final Event event, final String debug) {
+		CompletionStage<?> stage;
+		try {
+			stage = listener.onEventAsync(event);
+		} catch (Exception listenerException) {
+			handleListenerException(listener, event, listenerException, debug);
+			return;
+		}
+		if (stage == null)
+			return;
+		final CompletableFuture<?> future = stage.toCompletableFuture();
+		final InFlightCounter counter = event.getBot() != null ? getInFlightCounter(event.getBot()) : null;
+		if (counter != null)
+			counter.increment();
+		//Whichever of completion and timeout happens first reports and decrements
+		final AtomicBoolean finished = new AtomicBoolean();
+		final long timeout = asyncListenerTimeout;
+		final ScheduledFuture<?> timeoutTask = timeout <= 0 ? null : Utils.scheduleTimeout(new Runnable() {
+			@Override
+			public void run() {
+				if (!finished.compareAndSet(false, true))
+					return;
+				future.cancel(false);
+				//Listeners of the exception event must not hold up the shared timeout thread
+				executeTimeoutReport(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							handleListenerException(listener, event, new TimeoutException("Listener didn't complete within " + timeout + "ms"), debug);
+						} finally {
+							if (counter != null)
+								counter.decrement();
+						}
+					}
+				});
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+		future.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable error) {
+				if (timeoutTask != null)
+					timeoutTask.cancel(false);
+				if (!finished.compareAndSet(false, true))
+					return;
+				try {
+					if (error != null)
+						handleListenerException(listener, event, unwrapAsyncError(error), debug);
+				} finally {
+					if (counter != null)
+						counter.decrement();
+				}
 			}
+		});
+	}
+
+	/**
+	 * Executor that reports {@link AsyncListener} timeouts, by default the
+	 * common ForkJoinPool. Managers with their own pool return it
+	 */
+	protected Executor getTimeoutExecutor() {
+		return ForkJoinPool.commonPool();
+	}
+
+	protected void executeTimeoutReport(Runnable report) {
+		try {
+			getTimeoutExecutor().execute(report);
+		} catch (RejectedExecutionException e) {
+			log.debug("Timeout executor rejected report, running on timeout thread", e);
+			report.run();
+		}
+	}
+
+	protected static Exception unwrapAsyncError(Throwable error) {
+		if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null)
+			error = error.getCause();
+		return error instanceof Exception ? (Exception) error : new ExecutionException(error);
+	}
+
+	protected void handleListenerException(Listener listener, Event event, Exception listenerException, String debug) {
+		if (event instanceof ExceptionEvent) {
+			log.error("Encountered exception while processing {}, NOT dispatching another ExceptionEvent to stop potential StackOverflow",
+					event.getClass(),
+					listenerException);
+		} else {
+			onEvent(new ListenerExceptionEvent(event.getBot(), listenerException, debug, listener, event));
+		}
+	}
+
+	/**
+	 * Number of listener tasks and {@link AsyncListener} stages of the bot
+	 * that are queued, running or incomplete
+	 */
+	public long getInFlightCount(PircBotX bot) {
+		InFlightCounter counter = inFlight.get(bot);
+		return counter == null ? 0 : counter.getCount();
+	}
+
+	protected InFlightCounter getInFlightCounter(PircBotX bot) {
+		//get first as computeIfAbsent locks even when the key exists
+		InFlightCounter counter = inFlight.get(bot);
+		if (counter == null) {
+			InFlightCounter newCounter = new InFlightCounter();
+			counter = inFlight.putIfAbsent(bot, newCounter);
+			if (counter == null)
+				counter = newCounter;
+		}
+		return counter;
+	}
+
+	/**
+	 * Wait for what the bot had in flight when this was called. The bot's
+	 * counter is removed first so tasks queued while waiting are counted
+	 * separately and not waited for, and shut down bots don't stay in the map
+	 *
+	 * @param bot The bot or null for every bot
+	 */
+	protected void awaitInFlight(PircBotX bot) {
+		try {
+			if (bot == null)
+				for (PircBotX curBot : inFlight.keySet()) {
+					InFlightCounter curCounter = inFlight.remove(curBot);
+					if (curCounter != null)
+						curCounter.await();
+				}
+			else {
+				InFlightCounter counter = inFlight.remove(bot);
+				if (counter == null)
+					return;
+				log.debug("Waiting for {} listener tasks to finish", counter.getCount());
+				counter.await();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for listeners to finish", e);
 		}
 	}
 
@@ -76,4 +248,44 @@ public abstract class AbstractListenerManager implements ListenerManager {
 			listenerManager.executeListener(listener, event);
 		}
 	}
+
+	/**
+	 * Count of tasks that only locks when something is waiting for it to reach
+	 * 0. Not a LongAdder since summing its cells while tasks finish could see a
+	 * decrement without its increment and return 0 too early
+	 */
+	protected static class InFlightCounter {
+		protected final AtomicLong count = new AtomicLong();
+		protected final AtomicInteger waiters = new AtomicInteger();
+
+		public void increment() {
+			count.incrementAndGet();
+		}
+
+		public void decrement() {
+			if (count.decrementAndGet() == 0 && waiters.get() != 0)
+				synchronized (this) {
+					notifyAll();
+				}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Wait until there are no tasks
+		 */
+		public void await() throws InterruptedException {
+			waiters.incrementAndGet();
+			try {
+				synchronized (this) {
+					while (count.get() > 0)
+						wait();
+				}
+			} finally {
+				waiters.decrementAndGet();
+			}
+		}
+	}
 }
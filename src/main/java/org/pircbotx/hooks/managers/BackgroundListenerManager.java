@@ -23,8 +23,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.pircbotx.VirtualThreads;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.hooks.Listener;
 
@@ -48,10 +49,8 @@ public class BackgroundListenerManager extends ThreadedListenerManager {
 		if (!isBackground)
 			super.addListener(listener);
 		else {
-			BasicThreadFactory factory = new BasicThreadFactory.Builder()
-					.namingPattern("backgroundPool" + managerNumber + "-backgroundThread" + backgroundCount.getAndIncrement() + "-%d")
-					.daemon(true)
-					.build();
+			ThreadFactory factory = VirtualThreads.newThreadFactory("backgroundPool" + managerNumber
+					+ "-backgroundThread" + backgroundCount.getAndIncrement() + "-%d", true);
 			backgroundListeners.put(listener, Executors.newSingleThreadExecutor(factory));
 		}
 	}
@@ -61,7 +60,18 @@ public class BackgroundListenerManager extends ThreadedListenerManager {
 		//Dispatch to both standard listeners and background listeners
 		super.onEvent(event);
 		for (Map.Entry<Listener, ExecutorService> curEntry : backgroundListeners.entrySet())
-			submitEvent(curEntry.getValue(), curEntry.getKey(), event);
+			if (ListenerTypeIndex.handles(curEntry.getKey(), event.getClass()))
+				submitEvent(curEntry.getValue(), curEntry.getKey(), event);
+	}
+
+	@Override
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		if (super.hasListeners(eventClass))
+			return true;
+		for (Listener curListener : backgroundListeners.keySet())
+			if (ListenerTypeIndex.handles(curListener, eventClass))
+				return true;
+		return false;
 	}
 
 	@Override
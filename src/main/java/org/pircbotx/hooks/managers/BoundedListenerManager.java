@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * ThreadedListenerManager with a fixed number of threads and a limit on how
+ * many listener tasks can be queued or running at once. What happens when the
+ * limit is reached depends on the {@link OverflowPolicy}.
+ * <p>
+ * Events are dispatched in the thread that reads from the server, so blocking
+ * stops the bot from reading more lines until listeners catch up. The server
+ * then sees TCP backpressure instead of the bot buffering every line in memory.
+ * Note the server will disconnect the bot if it can't respond to PINGs for too
+ * long.
+ * <p>
+ * Events dispatched from listener threads of this manager (eg OutputEvent from
+ * sending a message) never block or get dropped since the thread could be
+ * holding the capacity it is waiting for
+ */
+@Slf4j
+public class BoundedListenerManager extends ThreadedListenerManager {
+	/**
+	 * Priority of listeners added with {@link #addListener(org.pircbotx.hooks.Listener)
+	 * }
+	 */
+	public static final int DEFAULT_PRIORITY = 0;
+	@Getter
+	protected final int capacity;
+	@Getter
+	protected final OverflowPolicy overflowPolicy;
+	protected final Semaphore permits;
+	protected final ThreadLocal<Boolean> inListenerThread = new ThreadLocal<Boolean>();
+	protected final Set<Class<?>> droppableEventTypes = ConcurrentHashMap.newKeySet();
+	protected final Map<Listener, Integer> priorities = new ConcurrentHashMap<>();
+	protected volatile int maxPriority = Integer.MIN_VALUE;
+	protected final AtomicLong droppedCount = new AtomicLong();
+	protected final Map<Class<?>, AtomicLong> droppedByEventType = new ConcurrentHashMap<>();
+	protected final AtomicLong blockedCount = new AtomicLong();
+
+	/**
+	 * Create with a fixed size daemon thread pool
+	 *
+	 * @param threads Number of threads to run listeners in
+	 * @param capacity Maximum listener tasks that are queued or running
+	 * @param overflowPolicy What to do when capacity is reached
+	 */
+	public BoundedListenerManager(int threads, int capacity, @NonNull OverflowPolicy overflowPolicy) {
+		this(createPool(threads), capacity, overflowPolicy);
+	}
+
+	/**
+	 * @param pool Thread pool to run listeners in, its queue can be unbounded
+	 * @param capacity Maximum listener tasks that are queued or running
+	 * @param overflowPolicy What to do when capacity is reached
+	 */
+	public BoundedListenerManager(ExecutorService pool, int capacity, @NonNull OverflowPolicy overflowPolicy) {
+		super(pool);
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.permits = new Semaphore(capacity);
+	}
+
+	protected static ExecutorService createPool(int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("Threads must be positive");
+		BasicThreadFactory factory = BasicThreadFactory.builder()
+				.namingPattern("boundedListenerPool" + MANAGER_COUNT.get() + "-thread%d")
+				.daemon(true)
+				.build();
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+	}
+
+	/**
+	 * Add a listener with {@link #DEFAULT_PRIORITY}
+	 */
+	@Override
+	public void addListener(Listener listener) {
+		addListener(listener, DEFAULT_PRIORITY);
+	}
+
+	/**
+	 * Add a listener with a priority used by {@link OverflowPolicy#SHED}
+	 *
+	 * @param priority Higher values are dropped last
+	 */
+	public void addListener(Listener listener, int priority) {
+		synchronized (listenerIndex) {
+			priorities.put(listener, priority);
+			super.addListener(listener);
+			updateMaxPriority();
+		}
+	}
+
+	@Override
+	public boolean removeListener(Listener listener) {
+		synchronized (listenerIndex) {
+			priorities.remove(listener);
+			boolean result = super.removeListener(listener);
+			updateMaxPriority();
+			return result;
+		}
+	}
+
+	protected void updateMaxPriority() {
+		int newMax = Integer.MIN_VALUE;
+		for (int curPriority : priorities.values())
+			newMax = Math.max(newMax, curPriority);
+		maxPriority = newMax;
+	}
+
+	/**
+	 * Allow {@link OverflowPolicy#DROP} to drop events of this class,
+	 * including subclasses and implementations. If none are added every event
+	 * can be dropped
+	 */
+	public BoundedListenerManager addDroppableEventType(@NonNull Class<?> eventType) {
+		droppableEventTypes.add(eventType);
+		return this;
+	}
+
+	@Override
+	protected void submitEvent(ExecutorService pool, Listener listener, Event event) {
+		boolean holdsPermit;
+		if (permits.tryAcquire())
+			holdsPermit = true;
+		else if (inListenerThread.get() != null)
+			//Go over capacity instead of waiting on capacity this thread might hold
+			holdsPermit = false;
+		else if (isDroppable(listener, event)) {
+			droppedCount.incrementAndGet();
+			AtomicLong eventTypeCount = droppedByEventType.get(event.getClass());
+			if (eventTypeCount == null) {
+				droppedByEventType.putIfAbsent(event.getClass(), new AtomicLong());
+				eventTypeCount = droppedByEventType.get(event.getClass());
+			}
+			eventTypeCount.incrementAndGet();
+			log.debug("Dropped event {} for listener {}, {} listener tasks pending", event, listener, getPendingTasks());
+			return;
+		} else {
+			blockedCount.incrementAndGet();
+			permits.acquireUninterruptibly();
+			holdsPermit = true;
+		}
+
+		try {
+			pool.execute(new BoundedFutureTask(listener, event, holdsPermit));
+		} catch (RejectedExecutionException e) {
+			if (holdsPermit)
+				permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Check if the overflow policy allows dropping the event instead of
+	 * blocking
+	 */
+	protected boolean isDroppable(Listener listener, Event event) {
+		switch (overflowPolicy) {
+			case DROP:
+				if (droppableEventTypes.isEmpty())
+					return true;
+				for (Class<?> curType : droppableEventTypes)
+					if (curType.isInstance(event))
+						return true;
+				return false;
+			case SHED:
+				return getPriority(listener) < maxPriority;
+			default:
+				return false;
+		}
+	}
+
+	public int getPriority(Listener listener) {
+		Integer priority = priorities.get(listener);
+		return priority == null ? DEFAULT_PRIORITY : priority;
+	}
+
+	/**
+	 * Listener tasks that are queued or running
+	 */
+	public int getPendingTasks() {
+		return capacity - permits.availablePermits();
+	}
+
+	/**
+	 * Number of listener tasks dropped because the manager was at capacity
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Number of dropped listener tasks by event class
+	 */
+	public ImmutableMap<Class<?>, Long> getDroppedCountByEventType() {
+		ImmutableMap.Builder<Class<?>, Long> builder = ImmutableMap.builder();
+		for (Map.Entry<Class<?>, AtomicLong> curEntry : droppedByEventType.entrySet())
+			builder.put(curEntry.getKey(), curEntry.getValue().get());
+		return builder.build();
+	}
+
+	/**
+	 * Number of times dispatching blocked because the manager was at capacity
+	 */
+	public long getBlockedCount() {
+		return blockedCount.get();
+	}
+
+	protected class BoundedFutureTask extends ManagedFutureTask {
+		protected final boolean holdsPermit;
+
+		public BoundedFutureTask(final Listener listener, final Event event, boolean holdsPermit) {
+			super(listener, event, new Runnable() {
+				@Override
+				public void run() {
+					inListenerThread.set(Boolean.TRUE);
+					try {
+						executeListener(listener, event);
+					} finally {
+						inListenerThread.remove();
+					}
+				}
+			});
+			this.holdsPermit = holdsPermit;
+		}
+
+		@Override
+		protected void done() {
+			super.done();
+			if (holdsPermit)
+				permits.release();
+		}
+	}
+
+	public static enum OverflowPolicy {
+		/**
+		 * Wait for capacity, stopping the bot from reading from the server
+		 */
+		BLOCK,
+		/**
+		 * Drop events added with {@link #addDroppableEventType(java.lang.Class)
+		 * } (or any event if none were added), block on the rest
+		 */
+		DROP,
+		/**
+		 * Drop events for listeners with a lower priority than the highest
+		 * priority listener, block on the rest
+		 */
+		SHED
+	}
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * ThreadedListenerManager shared by several bots that gives each bot its own
+ * queue of listener tasks and takes turns between them, so a bot on a flooding
+ * network can't take over the pool and delay the events of other bots.
+ * <p>
+ * Each bot has a {@link BotQuota}:
+ * <ul>
+ * <li>weight - tasks the bot may start per turn, higher weights get a larger
+ * share of the threads when several bots are busy</li>
+ * <li>maxConcurrent - listener tasks of the bot running at once, leaving
+ * threads free for other bots</li>
+ * <li>maxQueued - tasks waiting for a thread. When full the thread
+ * dispatching the event waits, stopping the bot from reading from the server
+ * like {@link BoundedListenerManager.OverflowPolicy#BLOCK}, or the task is
+ * dropped if {@link BotQuota#isDropWhenFull() }. Events dispatched from
+ * listener threads of this manager never wait</li>
+ * </ul>
+ * Only as many tasks as there are threads are handed to the pool at once,
+ * the rest wait in their bot's queue until it's the bot's turn. How long they
+ * wait is recorded in the bot's {@link BotStats}.
+ *
+ * @see org.pircbotx.MultiBotManager#addNetwork(org.pircbotx.PircBotX,
+ * org.pircbotx.hooks.managers.FairListenerManager.BotQuota)
+ */
+@Slf4j
+public class FairListenerManager extends ThreadedListenerManager {
+	@Getter
+	protected final int threads;
+	@Getter
+	protected volatile BotQuota defaultQuota;
+	protected final Map<PircBotX, BotQueue> queues = new ConcurrentHashMap<>();
+	/**
+	 * Queue of events without a bot
+	 */
+	protected final BotQueue noBotQueue;
+	/**
+	 * Guards the queues, {@link #active}, {@link #running} and
+	 * {@link #credits}
+	 */
+	protected final Object schedulerLock = new Object[0];
+	/**
+	 * Bots with queued tasks in turn order, the first one is taking its turn
+	 */
+	protected final ArrayDeque<BotQueue> active = new ArrayDeque<>();
+	/**
+	 * Tasks handed to the pool
+	 */
+	protected int running;
+	/**
+	 * Tasks the first active bot may still start this turn
+	 */
+	protected int credits;
+	protected int blockedDispatchers;
+	protected final ThreadLocal<Boolean> inListenerThread = new ThreadLocal<Boolean>();
+
+	/**
+	 * Create with a fixed size daemon thread pool and default quota
+	 *
+	 * @param threads Number of threads shared by all bots
+	 */
+	public FairListenerManager(int threads) {
+		this(threads, BotQuota.builder().build());
+	}
+
+	/**
+	 * Create with a fixed size daemon thread pool
+	 *
+	 * @param threads Number of threads shared by all bots
+	 * @param defaultQuota Quota of bots without one set
+	 */
+	public FairListenerManager(int threads, @NonNull BotQuota defaultQuota) {
+		this(createPool(threads), threads, defaultQuota);
+	}
+
+	/**
+	 * @param pool Thread pool to run listeners in, at most threads tasks are
+	 * given to it at once
+	 * @param threads Number of tasks to run at once
+	 * @param defaultQuota Quota of bots without one set
+	 */
+	public FairListenerManager(ExecutorService pool, int threads, @NonNull BotQuota defaultQuota) {
+		super(pool);
+		if (threads <= 0)
+			throw new IllegalArgumentException("Threads must be positive");
+		this.threads = threads;
+		this.defaultQuota = defaultQuota;
+		this.noBotQueue = new BotQueue(null, null);
+	}
+
+	protected static ExecutorService createPool(int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("Threads must be positive");
+		BasicThreadFactory factory = BasicThreadFactory.builder()
+				.namingPattern("fairListenerPool" + MANAGER_COUNT.get() + "-thread%d")
+				.daemon(true)
+				.build();
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+	}
+
+	/**
+	 * Quota used by bots without one set, doesn't change bots that already
+	 * have queued events
+	 */
+	public void setDefaultQuota(@NonNull BotQuota defaultQuota) {
+		this.defaultQuota = defaultQuota;
+	}
+
+	/**
+	 * Set the quota of a bot, applies to tasks started after this
+	 */
+	public void setQuota(@NonNull PircBotX bot, @NonNull BotQuota quota) {
+		synchronized (schedulerLock) {
+			getQueue(bot).quota = quota;
+			if (blockedDispatchers != 0)
+				schedulerLock.notifyAll();
+			dispatch();
+		}
+	}
+
+	public BotQuota getQuota(@NonNull PircBotX bot) {
+		BotQueue queue = queues.get(bot);
+		return queue == null ? defaultQuota : queue.getQuota();
+	}
+
+	/**
+	 * Forget the quota and stats of a bot. Queued tasks still run
+	 */
+	public void removeBot(@NonNull PircBotX bot) {
+		queues.remove(bot);
+	}
+
+	/**
+	 * Snapshot of the bot's queue and counters
+	 */
+	public BotStats getStats(@NonNull PircBotX bot) {
+		BotQueue queue = queues.get(bot);
+		if (queue == null)
+			return new BotStats(0, 0, 0, 0, 0, 0, 0);
+		synchronized (schedulerLock) {
+			return new BotStats(queue.tasks.size(), queue.running, queue.completed.get(), queue.dropped.get(),
+					queue.blocked.get(), queue.totalWaitNanos.get(), queue.maxWaitNanos.get());
+		}
+	}
+
+	protected BotQueue getQueue(PircBotX bot) {
+		if (bot == null)
+			return noBotQueue;
+		BotQueue queue = queues.get(bot);
+		if (queue == null) {
+			BotQueue newQueue = new BotQueue(bot, null);
+			queue = queues.putIfAbsent(bot, newQueue);
+			if (queue == null)
+				queue = newQueue;
+		}
+		return queue;
+	}
+
+	@Override
+	protected void submitEvent(ExecutorService pool, Listener listener, Event event) {
+		BotQueue queue = getQueue(event.getBot());
+		FairFutureTask task = new FairFutureTask(queue, listener, event);
+		synchronized (schedulerLock) {
+			while (queue.tasks.size() >= queue.getQuota().getMaxQueued()) {
+				if (queue.getQuota().isDropWhenFull()) {
+					queue.dropped.incrementAndGet();
+					log.debug("Dropping {} for {}, bot queue is full", event.getClass().getSimpleName(), listener);
+					//Cancelling still counts it as done for shutdown(bot)
+					task.cancel(false);
+					return;
+				}
+				if (inListenerThread.get() != null)
+					//Could be waiting for itself
+					break;
+				queue.blocked.incrementAndGet();
+				blockedDispatchers++;
+				try {
+					schedulerLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					task.cancel(false);
+					throw new RuntimeException("Interrupted waiting for space in the queue of bot " + queue, e);
+				} finally {
+					blockedDispatchers--;
+				}
+			}
+			task.queuedNanos = System.nanoTime();
+			queue.tasks.add(task);
+			if (!queue.active) {
+				queue.active = true;
+				active.add(queue);
+			}
+			dispatch();
+		}
+	}
+
+	/**
+	 * Hand tasks to the pool while there are free threads, taking turns
+	 * between bots. Must hold {@link #schedulerLock}
+	 */
+	protected void dispatch() {
+		while (running < threads) {
+			BotQueue next = nextTurn();
+			if (next == null)
+				return;
+			FairFutureTask task = next.tasks.poll();
+			if (next.tasks.isEmpty()) {
+				if (active.peekFirst() == next)
+					credits = 0;
+				active.remove(next);
+				next.active = false;
+			}
+			if (blockedDispatchers != 0)
+				schedulerLock.notifyAll();
+			next.running++;
+			running++;
+			task.dispatched = true;
+			try {
+				pool.execute(task);
+			} catch (RejectedExecutionException e) {
+				log.warn("Listener pool rejected task, dropping", e);
+				task.dispatched = false;
+				next.running--;
+				running--;
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Bot that starts the next task, using credits from its weight before the
+	 * turn passes to the next bot. Bots at their concurrency limit are skipped
+	 *
+	 * @return The bot or null if every queued bot is at its limit
+	 */
+	protected BotQueue nextTurn() {
+		for (int i = 0; i < active.size(); i++) {
+			BotQueue head = active.peekFirst();
+			BotQuota quota = head.getQuota();
+			if (head.running < quota.getMaxConcurrent()) {
+				if (credits <= 0)
+					credits = quota.getWeight();
+				if (--credits == 0)
+					active.addLast(active.pollFirst());
+				return head;
+			}
+			credits = 0;
+			active.addLast(active.pollFirst());
+		}
+		return null;
+	}
+
+	protected class BotQueue {
+		protected final PircBotX bot;
+		/**
+		 * Null for the default quota
+		 */
+		protected BotQuota quota;
+		protected final ArrayDeque<FairFutureTask> tasks = new ArrayDeque<>();
+		protected boolean active;
+		protected int running;
+		protected final AtomicLong completed = new AtomicLong();
+		protected final AtomicLong dropped = new AtomicLong();
+		protected final AtomicLong blocked = new AtomicLong();
+		protected final AtomicLong totalWaitNanos = new AtomicLong();
+		protected final AtomicLong maxWaitNanos = new AtomicLong();
+
+		protected BotQueue(PircBotX bot, BotQuota quota) {
+			this.bot = bot;
+			this.quota = quota;
+		}
+
+		protected BotQuota getQuota() {
+			return quota == null ? defaultQuota : quota;
+		}
+
+		protected void recordWait(long waitNanos) {
+			totalWaitNanos.addAndGet(waitNanos);
+			long curMax;
+			while (waitNanos > (curMax = maxWaitNanos.get()))
+				if (maxWaitNanos.compareAndSet(curMax, waitNanos))
+					break;
+		}
+
+		@Override
+		public String toString() {
+			return bot == null ? "none" : String.valueOf(bot.getBotId());
+		}
+	}
+
+	protected class FairFutureTask extends ManagedFutureTask {
+		protected final BotQueue queue;
+		protected long queuedNanos;
+		/**
+		 * Handed to the pool, guarded by {@link #schedulerLock}
+		 */
+		protected boolean dispatched;
+
+		public FairFutureTask(BotQueue queue, Listener listener, Event event) {
+			super(listener, event, new ExecuteListenerRunnable(FairListenerManager.this, listener, event));
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			queue.recordWait(System.nanoTime() - queuedNanos);
+			inListenerThread.set(Boolean.TRUE);
+			try {
+				super.run();
+			} finally {
+				inListenerThread.remove();
+			}
+		}
+
+		@Override
+		protected void done() {
+			synchronized (schedulerLock) {
+				if (dispatched) {
+					queue.running--;
+					running--;
+					queue.completed.incrementAndGet();
+					dispatch();
+				}
+			}
+			super.done();
+		}
+	}
+
+	/**
+	 * Limits of a single bot. Defaults to a weight of 1 and no limits
+	 */
+	@Getter
+	@ToString
+	public static class BotQuota {
+		/**
+		 * Tasks started per turn
+		 */
+		protected final int weight;
+		/**
+		 * Maximum listener tasks running at once
+		 */
+		protected final int maxConcurrent;
+		/**
+		 * Maximum tasks waiting for a thread
+		 */
+		protected final int maxQueued;
+		/**
+		 * Drop tasks when the queue is full instead of waiting
+		 */
+		protected final boolean dropWhenFull;
+
+		@Builder
+		public BotQuota(int weight, int maxConcurrent, int maxQueued, boolean dropWhenFull) {
+			if (weight <= 0)
+				throw new IllegalArgumentException("Weight must be positive");
+			if (maxConcurrent <= 0)
+				throw new IllegalArgumentException("Max concurrent must be positive");
+			if (maxQueued <= 0)
+				throw new IllegalArgumentException("Max queued must be positive");
+			this.weight = weight;
+			this.maxConcurrent = maxConcurrent;
+			this.maxQueued = maxQueued;
+			this.dropWhenFull = dropWhenFull;
+		}
+
+		//Defaults for magic lombok builder
+		public static class BotQuotaBuilder {
+			public BotQuotaBuilder() {
+				weight = 1;
+				maxConcurrent = Integer.MAX_VALUE;
+				maxQueued = Integer.MAX_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * Queue and counters of a bot at one point in time
+	 */
+	@Getter
+	@ToString
+	@AllArgsConstructor
+	public static class BotStats {
+		/**
+		 * Tasks waiting for a thread
+		 */
+		protected final int queued;
+		/**
+		 * Tasks handed to the pool
+		 */
+		protected final int running;
+		protected final long completed;
+		/**
+		 * Tasks dropped because the queue was full
+		 */
+		protected final long dropped;
+		/**
+		 * Times an event dispatch waited for space in the queue
+		 */
+		protected final long blocked;
+		/**
+		 * Total time tasks waited in the queue before running
+		 */
+		protected final long totalQueueWaitNanos;
+		protected final long maxQueueWaitNanos;
+
+		/**
+		 * Average time a task waited before running
+		 */
+		public long getAverageQueueWaitNanos() {
+			return completed == 0 ? 0 : totalQueueWaitNanos / completed;
+		}
+	}
+}
@@ -50,6 +50,7 @@ import org.pircbotx.hooks.WaitForQueue;
 public class GenericListenerManager extends AbstractListenerManager {
 	protected Set<Listener> listeners = new HashSet<Listener>();
 	protected ImmutableSet<Listener> listenersImmutable = ImmutableSet.copyOf(listeners);
+	protected final ListenerTypeIndex listenerIndex = new ListenerTypeIndex();
 
 	public void addListener(Listener listener) {
 		listeners.add(listener);
@@ -69,20 +70,28 @@ public class GenericListenerManager extends AbstractListenerManager {
 	@Override
 	public void onEvent(Event event) {
 		super.onEvent(event);
-		for (Listener curListener : listenersImmutable) {
+		for (Listener curListener : listenerIndex.getListeners(event)) {
 			executeListener(curListener, event);
 		}
 	}
 
+	@Override
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		return listenerIndex.hasListeners(eventClass);
+	}
+
 	public boolean listenerExists(Listener listener) {
 		return listenersImmutable.contains(listener);
 	}
 
 	public void shutdown(PircBotX bot) {
-		//Do nothing since dispatching an event executes all listeners immediately
+		//Dispatching an event executes all listeners immediately, only async
+		//listeners can still be running
+		awaitInFlight(bot);
 	}
 
 	protected void rebuildListeners() {
 		listenersImmutable = ImmutableSet.copyOf(listeners);
+		listenerIndex.setListeners(listenersImmutable);
 	}
 }
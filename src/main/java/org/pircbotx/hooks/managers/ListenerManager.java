@@ -64,5 +64,17 @@ public interface ListenerManager {
 	 */
 	public ImmutableSet<Listener> getListeners();
 
+	/**
+	 * Check if any listener would receive an event of the specified class.
+	 * Used to skip creating events nobody handles. Defaults to true
+	 *
+	 * @param eventClass The class of the event that would be dispatched
+	 * @return False only if dispatching the event would not run any listener
+	 * @see ListenerTypeIndex
+	 */
+	public default boolean hasListeners(Class<? extends Event> eventClass) {
+		return true;
+	}
+
 	public void shutdown(PircBotX bot);
 }
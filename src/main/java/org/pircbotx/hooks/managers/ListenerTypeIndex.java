@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.ListenerRoute;
+import org.pircbotx.hooks.RoutedListener;
+import org.pircbotx.hooks.TypedListener;
+
+/**
+ * Index of which listeners handle each event class, so a ListenerManager only
+ * runs listeners that handle the event and can tell when nobody does.
+ * <p>
+ * The event types of a listener are
+ * <ul>
+ * <li>{@link TypedListener#getEventTypes() } if implemented</li>
+ * <li>The event types of the overridden onX methods in a
+ * {@link ListenerAdapter} subclass. Overriding onEvent means all events</li>
+ * <li>All events for any other listener</li>
+ * </ul>
+ * <p>
+ * {@link RoutedListener}s are also indexed by the keys of their
+ * {@link ListenerRoute}, so {@link #getListeners(org.pircbotx.hooks.Event) }
+ * only looks up the listeners routed to the event's bot, channel and user.
+ * Routed listeners come after unrouted ones.
+ * <p>
+ * The listeners of each event class are cached with a {@link ClassValue} and
+ * recalculated the first time the event is dispatched after
+ * {@link #setListeners(java.lang.Iterable) } is called. Safe to use from
+ * multiple threads.
+ */
+public class ListenerTypeIndex {
+	/**
+	 * Event types of a listener that handles every event
+	 */
+	public static final ImmutableSet<Class<?>> ALL_EVENTS = ImmutableSet.<Class<?>>of(Event.class);
+	private static final ClassValue<ImmutableSet<Class<?>>> ADAPTER_EVENT_TYPES = new ClassValue<ImmutableSet<Class<?>>>() {
+		@Override
+		protected ImmutableSet<Class<?>> computeValue(Class<?> listenerClass) {
+			return findAdapterEventTypes(listenerClass);
+		}
+	};
+	protected volatile Registered registered = new Registered(ImmutableList.<Listener>of());
+	private final ClassValue<AtomicReference<Subscribers>> subscribers = new ClassValue<AtomicReference<Subscribers>>() {
+		@Override
+		protected AtomicReference<Subscribers> computeValue(Class<?> eventClass) {
+			return new AtomicReference<Subscribers>();
+		}
+	};
+
+	/**
+	 * Replace the indexed listeners, keeping their iteration order
+	 */
+	public void setListeners(@NonNull Iterable<? extends Listener> listeners) {
+		registered = new Registered(ImmutableList.copyOf(listeners));
+	}
+
+	/**
+	 * All indexed listeners
+	 */
+	public ImmutableList<Listener> getListeners() {
+		return registered.listeners;
+	}
+
+	/**
+	 * Cached listeners of the event class, recalculated if the listeners
+	 * changed
+	 */
+	protected Subscribers getSubscribers(Class<?> eventClass) {
+		Registered curRegistered = registered;
+		AtomicReference<Subscribers> cache = subscribers.get(eventClass);
+		Subscribers cached = cache.get();
+		if (cached == null || cached.registered != curRegistered) {
+			ImmutableList.Builder<Listener> builder = ImmutableList.builder();
+			ImmutableList.Builder<Listener> unrouted = ImmutableList.builder();
+			ImmutableListMultimap.Builder<Object, Listener> routed = ImmutableListMultimap.builder();
+			for (int i = 0; i < curRegistered.listeners.size(); i++)
+				if (handles(curRegistered.eventTypes.get(i), eventClass)) {
+					Listener curListener = curRegistered.listeners.get(i);
+					builder.add(curListener);
+					ListenerRoute route = curRegistered.routes.get(i);
+					if (route == null)
+						unrouted.add(curListener);
+					else
+						for (Object curKey : route.getKeys())
+							routed.put(curKey, curListener);
+				}
+			cached = new Subscribers(curRegistered, builder.build(), unrouted.build(), routed.build());
+			cache.set(cached);
+		}
+		return cached;
+	}
+
+	/**
+	 * Listeners that handle the event class
+	 *
+	 * @param eventClass The class of a dispatched event
+	 * @return Matching listeners in iteration order, possibly empty. Includes
+	 * routed listeners regardless of their route
+	 */
+	public ImmutableList<Listener> getListeners(@NonNull Class<?> eventClass) {
+		return getSubscribers(eventClass).listeners;
+	}
+
+	/**
+	 * Listeners that handle the event's class and, if routed, are routed to
+	 * the event
+	 *
+	 * @param event A dispatched event
+	 * @return Matching unrouted listeners in iteration order followed by
+	 * matching routed listeners, possibly empty
+	 */
+	public ImmutableList<Listener> getListeners(@NonNull Event event) {
+		Subscribers cached = getSubscribers(event.getClass());
+		if (cached.routed.isEmpty())
+			return cached.unrouted;
+		ImmutableList.Builder<Listener> builder = null;
+		for (Object curKey : ListenerRoute.getEventKeys(event)) {
+			ImmutableList<Listener> curRouted = cached.routed.get(curKey);
+			if (curRouted.isEmpty())
+				continue;
+			if (builder == null)
+				builder = ImmutableList.<Listener>builder().addAll(cached.unrouted);
+			builder.addAll(curRouted);
+		}
+		return builder == null ? cached.unrouted : builder.build();
+	}
+
+	/**
+	 * Check if any listener handles the event class
+	 */
+	public boolean hasListeners(@NonNull Class<?> eventClass) {
+		return !getListeners(eventClass).isEmpty();
+	}
+
+	/**
+	 * Get the event types a listener handles
+	 *
+	 * @see ListenerTypeIndex
+	 */
+	public static ImmutableSet<Class<?>> getEventTypes(@NonNull Listener listener) {
+		if (listener instanceof TypedListener)
+			return ImmutableSet.copyOf(((TypedListener) listener).getEventTypes());
+		return ADAPTER_EVENT_TYPES.get(listener.getClass());
+	}
+
+	/**
+	 * Check if a single listener handles the event class without an index
+	 */
+	public static boolean handles(@NonNull Listener listener, @NonNull Class<?> eventClass) {
+		return handles(getEventTypes(listener), eventClass);
+	}
+
+	protected static boolean handles(ImmutableSet<Class<?>> eventTypes, Class<?> eventClass) {
+		for (Class<?> curType : eventTypes)
+			if (curType.isAssignableFrom(eventClass))
+				return true;
+		return false;
+	}
+
+	protected static ImmutableSet<Class<?>> findAdapterEventTypes(Class<?> listenerClass) {
+		if (!ListenerAdapter.class.isAssignableFrom(listenerClass))
+			return ALL_EVENTS;
+		ImmutableSet.Builder<Class<?>> eventTypes = ImmutableSet.builder();
+		for (Class<?> curClass = listenerClass; curClass != ListenerAdapter.class; curClass = curClass.getSuperclass())
+			for (Method curMethod : curClass.getDeclaredMethods()) {
+				if (Modifier.isStatic(curMethod.getModifiers()) || curMethod.isSynthetic()
+						|| curMethod.getParameterTypes().length != 1 || !curMethod.getName().startsWith("on"))
+					continue;
+				Class<?> paramType = curMethod.getParameterTypes()[0];
+				try {
+					ListenerAdapter.class.getMethod(curMethod.getName(), paramType);
+				} catch (NoSuchMethodException e) {
+					//Not a listener method
+					continue;
+				}
+				if (curMethod.getName().equals("onEvent"))
+					//Dispatches to the other methods itself
+					return ALL_EVENTS;
+				eventTypes.add(paramType);
+			}
+		return eventTypes.build();
+	}
+
+	protected static class Registered {
+		protected final ImmutableList<Listener> listeners;
+		protected final ImmutableList<ImmutableSet<Class<?>>> eventTypes;
+		/**
+		 * Route of each listener, null if not routed
+		 */
+		protected final List<ListenerRoute> routes;
+
+		protected Registered(ImmutableList<Listener> listeners) {
+			this.listeners = listeners;
+			ImmutableList.Builder<ImmutableSet<Class<?>>> builder = ImmutableList.builder();
+			List<ListenerRoute> routeList = new ArrayList<ListenerRoute>(listeners.size());
+			for (Listener curListener : listeners) {
+				builder.add(getEventTypes(curListener));
+				routeList.add(curListener instanceof RoutedListener ? ((RoutedListener) curListener).getRoute() : null);
+			}
+			this.eventTypes = builder.build();
+			this.routes = Collections.unmodifiableList(routeList);
+		}
+	}
+
+	protected static class Subscribers {
+		protected final Registered registered;
+		protected final ImmutableList<Listener> listeners;
+		protected final ImmutableList<Listener> unrouted;
+		/**
+		 * Routed listeners by {@link ListenerRoute#getKeys() }
+		 */
+		protected final ImmutableListMultimap<Object, Listener> routed;
+
+		protected Subscribers(Registered registered, ImmutableList<Listener> listeners,
+				ImmutableList<Listener> unrouted, ImmutableListMultimap<Object, Listener> routed) {
+			this.registered = registered;
+			this.listeners = listeners;
+			this.unrouted = unrouted;
+			this.routed = routed;
+		}
+	}
+}
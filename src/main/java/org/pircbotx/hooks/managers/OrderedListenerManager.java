@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.pircbotx.Channel;
+import org.pircbotx.User;
+import org.pircbotx.UserHostmask;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.types.GenericChannelEvent;
+import org.pircbotx.hooks.types.GenericUserEvent;
+
+/**
+ * ListenerManager that keeps events about the same channel or user in order
+ * while running unrelated events in parallel.
+ * <p>
+ * Each event is assigned a lane from its key:
+ * <ul>
+ * <li>The channel of a {@link GenericChannelEvent}</li>
+ * <li>Otherwise the user of a {@link GenericUserEvent} (eg private messages),
+ * which stays the same across nick changes</li>
+ * <li>Otherwise the bot</li>
+ * </ul>
+ * Listeners of an event run one after another in its lane, and events in the
+ * same lane run in the order they were dispatched. Lanes run in parallel on a
+ * shared work stealing pool with one thread per core by default. There is no
+ * ordering between lanes, eg a channel event and a bot event.
+ * <p>
+ * A listener that blocks (eg with WaitForQueue) stalls its lane. Waiting for
+ * an event that goes to the same lane will deadlock.
+ */
+public class OrderedListenerManager extends ThreadedListenerManager {
+	/**
+	 * Events a lane runs before giving other lanes its thread
+	 */
+	protected static final int LANE_BATCH_SIZE = 64;
+	protected final Lane[] lanes;
+
+	/**
+	 * Create with 64 lanes on a ForkJoinPool with a thread per core
+	 */
+	public OrderedListenerManager() {
+		this(64, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param lanes Number of lanes events are hashed to, more reduces the
+	 * chance of unrelated channels sharing a lane
+	 * @param threads Number of threads in the ForkJoinPool lanes run in
+	 */
+	public OrderedListenerManager(int lanes, int threads) {
+		this(lanes, createPool(threads));
+	}
+
+	/**
+	 * @param lanes Number of lanes events are hashed to
+	 * @param pool Pool that lanes run in
+	 */
+	public OrderedListenerManager(int lanes, ExecutorService pool) {
+		super(pool);
+		if (lanes <= 0)
+			throw new IllegalArgumentException("Lanes must be positive");
+		this.lanes = new Lane[lanes];
+		for (int i = 0; i < lanes; i++)
+			this.lanes[i] = new Lane();
+	}
+
+	protected static ExecutorService createPool(int threads) {
+		final int managerNumber = MANAGER_COUNT.get();
+		return new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("orderedListenerPool" + managerNumber + "-thread" + thread.getPoolIndex());
+				return thread;
+			}
+		}, null, true);
+	}
+
+	@Override
+	protected void submitEvent(ExecutorService pool, Listener listener, Event event) {
+		//Counted as in flight so shutdown(bot) still waits for it
+		lanes[getLane(event)].execute(new ManagedFutureTask(listener, event, new ExecuteListenerRunnable(this, listener, event)));
+	}
+
+	/**
+	 * Get the lane of the event from its channel, user, or bot
+	 *
+	 * @return Index of the lane
+	 */
+	public int getLane(Event event) {
+		int hash = System.identityHashCode(event.getBot());
+		Channel channel = event instanceof GenericChannelEvent ? ((GenericChannelEvent) event).getChannel() : null;
+		if (channel != null)
+			hash = 31 * hash + hashIgnoreCase(channel.getName());
+		else if (event instanceof GenericUserEvent) {
+			User user = ((GenericUserEvent) event).getUser();
+			UserHostmask hostmask = ((GenericUserEvent) event).getUserHostmask();
+			if (user != null)
+				hash = 31 * hash + user.hashCode();
+			else if (hostmask != null && hostmask.getNick() != null)
+				hash = 31 * hash + hashIgnoreCase(hostmask.getNick());
+		}
+		//Spread the bits before taking the modulo
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % lanes.length;
+	}
+
+	protected static int hashIgnoreCase(String value) {
+		int hash = 0;
+		for (int i = 0; i < value.length(); i++)
+			hash = 31 * hash + Character.toLowerCase(value.charAt(i));
+		return hash;
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Runs its tasks one at a time in the pool
+	 */
+	protected class Lane implements Runnable {
+		protected final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		protected final AtomicBoolean scheduled = new AtomicBoolean();
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+			schedule();
+		}
+
+		protected void schedule() {
+			if (scheduled.compareAndSet(false, true))
+				try {
+					pool.execute(this);
+				} catch (RejectedExecutionException e) {
+					scheduled.set(false);
+					throw e;
+				}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Runnable task;
+				for (int i = 0; i < LANE_BATCH_SIZE && (task = tasks.poll()) != null; i++)
+					//ManagedFutureTask handles exceptions
+					task.run();
+			} finally {
+				scheduled.set(false);
+			}
+			//Tasks added after the last poll but before scheduled was cleared
+			if (!tasks.isEmpty())
+				schedule();
+		}
+	}
+}
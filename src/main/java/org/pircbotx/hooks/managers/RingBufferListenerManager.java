@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.AsyncListener;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * Low latency ListenerManager that hands events to listeners through a
+ * preallocated ring buffer instead of creating a task per listener.
+ * <p>
+ * Each listener gets its own consumer thread with its own sequence in the
+ * ring, so a listener sees its events in dispatch order and listeners run in
+ * parallel. Consumers process every published event they have not seen in a
+ * batch before updating their sequence. Dispatching only waits when the ring
+ * is full, until the slowest consumer catches up.
+ * <p>
+ * Threads wait according to the {@link WaitStrategy}: busy spinning has the
+ * lowest latency but uses a core per listener while idle.
+ * <p>
+ * Events dispatched from a consumer thread (eg OutputEvent from sending a
+ * message) while the ring is full are spilled into each listener's overflow
+ * queue instead of waiting on itself. Every consumer runs them in its own
+ * thread right after the last event claimed before the spill, so order is
+ * kept. Overflow queues are unbounded.
+ * <p>
+ * Slots keep their event until overwritten, so up to the ring size of old
+ * events stay in memory
+ */
+@Slf4j
+public class RingBufferListenerManager extends AbstractListenerManager {
+	protected static final AtomicInteger MANAGER_COUNT = new AtomicInteger();
+	/**
+	 * Most events a consumer processes before updating its sequence
+	 */
+	protected static final int MAX_BATCH_SIZE = 256;
+	protected final int managerNumber = MANAGER_COUNT.getAndIncrement();
+	protected final AtomicInteger consumerCount = new AtomicInteger();
+	@Getter
+	protected final WaitStrategy waitStrategy;
+	protected final int mask;
+	protected final Event[] entries;
+	/**
+	 * Sequence last written to each slot, read before the entry
+	 */
+	protected final AtomicLongArray published;
+	/**
+	 * Last claimed sequence
+	 */
+	protected final AtomicLong cursor = new AtomicLong(-1);
+	protected final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+	protected final ListenerTypeIndex listenerIndex = new ListenerTypeIndex();
+	protected final ThreadLocal<Consumer> currentConsumer = new ThreadLocal<Consumer>();
+
+	/**
+	 * Create with 1024 slots and {@link WaitStrategy#PARK}
+	 */
+	public RingBufferListenerManager() {
+		this(1024, WaitStrategy.PARK);
+	}
+
+	/**
+	 * @param size Number of slots in the ring, must be a power of 2
+	 * @param waitStrategy How consumers wait for events and dispatchers wait
+	 * for a full ring
+	 */
+	public RingBufferListenerManager(int size, @NonNull WaitStrategy waitStrategy) {
+		if (size <= 0 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("Size must be a power of 2");
+		this.waitStrategy = waitStrategy;
+		this.mask = size - 1;
+		this.entries = new Event[size];
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			published.set(i, -1);
+	}
+
+	@Override
+	public void onEvent(Event event) {
+		super.onEvent(event);
+		if (!listenerIndex.hasListeners(event.getClass()))
+			return;
+
+		Consumer producingConsumer = currentConsumer.get();
+		long sequence;
+		int idle = 0;
+		while (true) {
+			long current = cursor.get();
+			sequence = current + 1;
+			if (sequence - entries.length > getMinimumSequence()) {
+				//Ring is full
+				if (producingConsumer != null) {
+					log.debug("Ring full, spilling {} into overflow queues", event);
+					SpilledEvent spilled = new SpilledEvent(current, event);
+					for (Consumer curConsumer : consumers)
+						if (ListenerTypeIndex.handles(curConsumer.eventTypes, event.getClass())) {
+							curConsumer.overflow.add(spilled);
+							if (waitStrategy == WaitStrategy.PARK)
+								LockSupport.unpark(curConsumer.thread);
+						}
+					return;
+				}
+				waitStrategy.idle(idle++);
+				continue;
+			}
+			if (cursor.compareAndSet(current, sequence))
+				break;
+		}
+		int index = (int) sequence & mask;
+		entries[index] = event;
+		published.set(index, sequence);
+		if (waitStrategy == WaitStrategy.PARK)
+			for (Consumer curConsumer : consumers)
+				LockSupport.unpark(curConsumer.thread);
+	}
+
+	/**
+	 * @return Sequence of the slowest consumer, or the cursor if there are none
+	 */
+	protected long getMinimumSequence() {
+		long minimum = cursor.get();
+		for (Consumer curConsumer : consumers)
+			minimum = Math.min(minimum, curConsumer.sequence.get());
+		return minimum;
+	}
+
+	@Override
+	public void addListener(Listener listener) {
+		synchronized (listenerIndex) {
+			for (Consumer curConsumer : consumers)
+				if (curConsumer.listener == listener)
+					return;
+			Consumer consumer = new Consumer(listener, cursor.get());
+			consumers.add(consumer);
+			listenerIndex.setListeners(getListeners());
+			consumer.thread.start();
+		}
+	}
+
+	@Override
+	public boolean removeListener(Listener listener) {
+		synchronized (listenerIndex) {
+			for (Consumer curConsumer : consumers)
+				if (curConsumer.listener == listener) {
+					consumers.remove(curConsumer);
+					listenerIndex.setListeners(getListeners());
+					curConsumer.running = false;
+					LockSupport.unpark(curConsumer.thread);
+					return true;
+				}
+			return false;
+		}
+	}
+
+	@Override
+	public boolean listenerExists(Listener listener) {
+		return getListeners().contains(listener);
+	}
+
+	@Override
+	public ImmutableSet<Listener> getListeners() {
+		ImmutableSet.Builder<Listener> builder = ImmutableSet.builder();
+		for (Consumer curConsumer : consumers)
+			builder.add(curConsumer.listener);
+		return builder.build();
+	}
+
+	@Override
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		return listenerIndex.hasListeners(eventClass);
+	}
+
+	/**
+	 * Wait for every listener to process the events dispatched before this was
+	 * called, then for the bot's incomplete {@link AsyncListener} stages
+	 */
+	@Override
+	public void shutdown(PircBotX bot) {
+		long target = cursor.get();
+		Consumer self = currentConsumer.get();
+		for (Consumer curConsumer : consumers)
+			if (curConsumer != self)
+				while (curConsumer.running && (curConsumer.sequence.get() < target || curConsumer.hasOverflow(target)))
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		awaitInFlight(bot);
+	}
+
+	/**
+	 * Stop all consumer threads after they process the events already
+	 * dispatched
+	 */
+	public void shutdown() {
+		shutdown(null);
+		for (Consumer curConsumer : consumers)
+			removeListener(curConsumer.listener);
+	}
+
+	protected class Consumer implements Runnable {
+		protected final Listener listener;
+		protected final ImmutableSet<Class<?>> eventTypes;
+		protected final Thread thread;
+		/**
+		 * Last processed sequence
+		 */
+		protected final AtomicLong sequence;
+		/**
+		 * Events dispatched by consumers while the ring was full
+		 */
+		protected final Queue<SpilledEvent> overflow = new ConcurrentLinkedQueue<SpilledEvent>();
+		protected volatile boolean running = true;
+
+		public Consumer(Listener listener, long startSequence) {
+			this.listener = listener;
+			this.eventTypes = ListenerTypeIndex.getEventTypes(listener);
+			this.sequence = new AtomicLong(startSequence);
+			this.thread = new Thread(this, "ringListener" + managerNumber + "-consumer" + consumerCount.getAndIncrement());
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			currentConsumer.set(this);
+			int idle = 0;
+			while (running) {
+				long next = sequence.get() + 1;
+				if (runOverflow(next - 1))
+					idle = 0;
+				long last = next - 1;
+				while (last - next + 1 < MAX_BATCH_SIZE && published.get((int) (last + 1) & mask) == last + 1)
+					last++;
+				if (last < next) {
+					waitStrategy.idle(idle++);
+					continue;
+				}
+				idle = 0;
+				for (long curSequence = next; curSequence <= last; curSequence++) {
+					Event event = entries[(int) curSequence & mask];
+					if (ListenerTypeIndex.handles(eventTypes, event.getClass()))
+						executeListener(listener, event);
+					runOverflow(curSequence);
+				}
+				sequence.set(last);
+			}
+			currentConsumer.remove();
+		}
+
+		/**
+		 * @return True if spilled events up to the given sequence haven't run
+		 */
+		protected boolean hasOverflow(long targetSequence) {
+			SpilledEvent spilled = overflow.peek();
+			return spilled != null && spilled.afterSequence <= targetSequence;
+		}
+
+		/**
+		 * Run the spilled events that come after the given sequence
+		 *
+		 * @return True if any were run
+		 */
+		protected boolean runOverflow(long processedSequence) {
+			boolean ran = false;
+			SpilledEvent spilled;
+			while ((spilled = overflow.peek()) != null && spilled.afterSequence <= processedSequence) {
+				overflow.poll();
+				executeListener(listener, spilled.event);
+				ran = true;
+			}
+			return ran;
+		}
+	}
+
+	protected static class SpilledEvent {
+		/**
+		 * Last sequence claimed before the event was spilled
+		 */
+		protected final long afterSequence;
+		protected final Event event;
+
+		public SpilledEvent(long afterSequence, Event event) {
+			this.afterSequence = afterSequence;
+			this.event = event;
+		}
+	}
+
+	public static enum WaitStrategy {
+		/**
+		 * Never give up the core, lowest latency
+		 */
+		BUSY_SPIN {
+			@Override
+			protected void idle(int iteration) {
+			}
+		},
+		/**
+		 * Spin briefly then yield to other threads
+		 */
+		YIELD {
+			@Override
+			protected void idle(int iteration) {
+				if (iteration > 100)
+					Thread.yield();
+			}
+		},
+		/**
+		 * Spin briefly then park until new events are dispatched, lowest CPU
+		 * use
+		 */
+		PARK {
+			@Override
+			protected void idle(int iteration) {
+				if (iteration > 100)
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				else if (iteration > 50)
+					Thread.yield();
+			}
+		};
+
+		/**
+		 * Wait before checking again
+		 *
+		 * @param iteration Number of times idle was called in a row
+		 */
+		protected abstract void idle(int iteration);
+	}
+}
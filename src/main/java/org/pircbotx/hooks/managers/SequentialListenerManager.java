@@ -253,11 +253,17 @@ public class SequentialListenerManager extends AbstractListenerManager {
 
 	@Override
 	public void shutdown(PircBotX bot) {
-		//TODO: Active listener tracking
+		//TODO: Active listener tracking, only async listeners are tracked
+		awaitInFlight(bot);
 		if (executorPool instanceof ExecutorService)
 			((ExecutorService) executorPool).shutdown();
 	}
 
+	@Override
+	protected Executor getTimeoutExecutor() {
+		return executorPool;
+	}
+
 	/**
 	 * Create with 	 <code>
 	 * executorPool = Executors.newCachedThreadPool();
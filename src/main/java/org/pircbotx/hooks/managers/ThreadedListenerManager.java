@@ -18,47 +18,39 @@
 package org.pircbotx.hooks.managers;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.pircbotx.PircBotX;
+import org.pircbotx.VirtualThreads;
+import org.pircbotx.hooks.AsyncListener;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.hooks.Listener;
 
 /**
  * ListenerManager that runs individual listeners in their own thread per event.
  */
-@Slf4j
 public class ThreadedListenerManager extends AbstractListenerManager {
 	protected static final AtomicInteger MANAGER_COUNT = new AtomicInteger();
 	protected final int managerNumber;
 	protected ExecutorService pool;
 	protected Set<Listener> listeners = ConcurrentHashMap.newKeySet();
-	protected final Multimap<PircBotX, ManagedFutureTask> runningListeners = LinkedListMultimap.create();
+	/**
+	 * Listeners of each event class
+	 */
+	protected final ListenerTypeIndex listenerIndex = new ListenerTypeIndex();
 
 	/**
-	 * Configures with default cached thread thread pool.
+	 * Configures with default cached thread thread pool, or a virtual thread
+	 * per task if {@link VirtualThreads#isEnabled() }.
 	 */
 	public ThreadedListenerManager() {
 		managerNumber = MANAGER_COUNT.getAndIncrement();
-		BasicThreadFactory factory = new BasicThreadFactory.Builder()
-				.namingPattern("listenerPool" + managerNumber + "-thread%d")
-				.daemon(true)
-				.build();
-		ThreadPoolExecutor defaultPool = (ThreadPoolExecutor) Executors.newCachedThreadPool(factory);
-		defaultPool.allowCoreThreadTimeOut(true);
-		this.pool = defaultPool;
+		this.pool = VirtualThreads.newCachedThreadPool("listenerPool" + managerNumber + "-thread%d", true);
 	}
 
 	/**
@@ -73,12 +65,19 @@ public class ThreadedListenerManager extends AbstractListenerManager {
 
 	@Override
 	public void addListener(Listener listener) {
-		getListenersReal().add(listener);
+		synchronized (listenerIndex) {
+			getListenersReal().add(listener);
+			listenerIndex.setListeners(getListenersReal());
+		}
 	}
 
 	@Override
 	public boolean removeListener(Listener listener) {
-		return getListenersReal().remove(listener);
+		synchronized (listenerIndex) {
+			boolean result = getListenersReal().remove(listener);
+			listenerIndex.setListeners(getListenersReal());
+			return result;
+		}
 	}
 
 	@Override
@@ -98,15 +97,25 @@ public class ThreadedListenerManager extends AbstractListenerManager {
 	@Override
 	public void onEvent(Event event) {
 		super.onEvent(event);
-		//For each Listener, add a new Runnable
-		for (Listener curListener : getListenersReal())
+		//For each Listener that handles the event, add a new Runnable
+		for (Listener curListener : listenerIndex.getListeners(event))
 			submitEvent(pool, curListener, event);
 	}
 
+	@Override
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		return listenerIndex.hasListeners(eventClass);
+	}
+
 	protected void submitEvent(ExecutorService pool, final Listener listener, final Event event) {
 		pool.execute(new ManagedFutureTask(listener, event, new ExecuteListenerRunnable(this, listener, event)));
 	}
 
+	@Override
+	protected Executor getTimeoutExecutor() {
+		return pool;
+	}
+
 	/**
 	 * Shuts down the internal thread pool. If you need to do more a advanced
 	 * shutdown, the pool is returned.
@@ -118,44 +127,33 @@ public class ThreadedListenerManager extends AbstractListenerManager {
 		return pool;
 	}
 
+	/**
+	 * Wait for all queued and running listener tasks of the bot, including any
+	 * they dispatch and incomplete {@link AsyncListener} stages
+	 */
 	public void shutdown(PircBotX bot) {
-		//Make local copy to avoid deadlocking ManagedFutureTask when it removes itself
-		List<ManagedFutureTask> remainingTasks;
-		synchronized (runningListeners) {
-			remainingTasks = Lists.newArrayList(runningListeners.get(bot));
-		}
-
-		//Wait for all remaining tasks to return
-		for (ManagedFutureTask curFuture : remainingTasks)
-			try {
-				log.debug("Waiting for listener " + curFuture.getListener() + " to execute event " + curFuture.getEvent());
-				curFuture.get();
-			} catch (Exception e) {
-				throw new RuntimeException("Cannot shutdown listener " + curFuture.getListener() + " executing event " + curFuture.getEvent(), e);
-			}
+		awaitInFlight(bot);
 	}
 
 	@Getter
 	public class ManagedFutureTask extends FutureTask<Void> {
 		protected final Listener listener;
 		protected final Event event;
+		protected final InFlightCounter counter;
 
 		public ManagedFutureTask(Listener listener, Event event, Runnable run) {
 			super(run, null);
 			this.listener = listener;
 			this.event = event;
-			if (event.getBot() != null)
-				synchronized (runningListeners) {
-					runningListeners.put(event.getBot(), this);
-				}
+			this.counter = event.getBot() != null ? getInFlightCounter(event.getBot()) : null;
+			if (counter != null)
+				counter.increment();
 		}
 
 		@Override
 		protected void done() {
-			if (event.getBot() != null)
-				synchronized (runningListeners) {
-					runningListeners.remove(event.getBot(), this);
-				}
+			if (counter != null)
+				counter.decrement();
 		}
 	}
 }
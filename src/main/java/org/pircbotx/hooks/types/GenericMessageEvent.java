@@ -17,7 +17,7 @@
  */
 package org.pircbotx.hooks.types;
 
-import com.google.common.collect.ImmutableMap;
+import org.pircbotx.MessageTags;
 import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
 
@@ -50,5 +50,5 @@ public interface GenericMessageEvent extends GenericUserEvent {
 	/**
 	 * Accessor for the IRCv3 Message tags
 	 */
-	public ImmutableMap<String, String> getV3Tags();
+	public MessageTags getV3Tags();
 }
@@ -28,6 +28,7 @@ public interface GenericSnapshotEvent {
 	 * Snapshot of the UserChannelDao data before the event.
 	 *
 	 * @see org.pircbotx.Configuration.Builder#setSnapshotsEnabled(boolean)
+	 * @see org.pircbotx.Configuration.Builder#setSnapshotScope(org.pircbotx.snapshot.SnapshotScope)
 	 */
 	@Nullable
 	public UserChannelDaoSnapshot getUserChannelDaoSnapshot();
@@ -17,14 +17,18 @@
  */
 package org.pircbotx.output;
 
+import java.util.concurrent.CompletableFuture;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
 import org.pircbotx.UserHostmask;
-import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.ListenerRoute;
+import org.pircbotx.hooks.TemporaryListener;
 import org.pircbotx.hooks.events.PartEvent;
+import org.pircbotx.hooks.events.UserListEvent;
+import org.pircbotx.hooks.events.WhoEvent;
 
 /**
  * Send lines to a channel.
@@ -152,14 +156,14 @@ public class OutputChannel implements GenericChannelUserOutput {
 		final String channelName = channel.getName();
 		//As we might not immediatly part and you can't join a channel that your
 		//already joined to, wait for the PART event before rejoining
-		bot.getConfiguration().getListenerManager().addListener(new ListenerAdapter() {
+		//Routed to this bot and channel so only our own PART reaches it
+		bot.getConfiguration().getListenerManager().addListener(new TemporaryListener(ListenerRoute.channels(bot, channelName)) {
 			@Override
 			public void onPart(PartEvent event) throws Exception {
-				//Make sure this bot is us to prevent nasty errors in multi bot sitations
-				if (event.getBot() == bot) {
+				if (event.getUserHostmask().getNick().equalsIgnoreCase(bot.getNick())) {
 					bot.sendIRC().joinChannel(channelName, key);
 					//Self destrust, this listener has no more porpose
-					bot.getConfiguration().getListenerManager().removeListener(this);
+					done();
 				}
 			}
 		});
@@ -170,6 +174,24 @@ public class OutputChannel implements GenericChannelUserOutput {
 		bot.sendRaw().rawLine("WHO " + channel.getName());
 	}
 
+	/**
+	 * Send "WHO channel" unless the result is already requested or cached
+	 *
+	 * @see OutputIRC#whoAsync(java.lang.String)
+	 */
+	public CompletableFuture<WhoEvent> whoAsync() {
+		return bot.sendIRC().whoAsync(channel.getName());
+	}
+
+	/**
+	 * Send "NAMES channel" unless the result is already requested or cached
+	 *
+	 * @see OutputIRC#namesAsync(java.lang.String)
+	 */
+	public CompletableFuture<UserListEvent> namesAsync() {
+		return bot.sendIRC().namesAsync(channel.getName());
+	}
+
 	public void getMode() {
 		bot.sendRaw().rawLine("MODE " + channel.getName());
 	}
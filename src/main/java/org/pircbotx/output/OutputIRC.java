@@ -17,12 +17,17 @@
  */
 package org.pircbotx.output;
 
+import java.util.concurrent.CompletableFuture;
 import lombok.RequiredArgsConstructor;
 import org.pircbotx.Colors;
 import org.pircbotx.PircBotX;
+import org.pircbotx.QueryCache;
 import org.pircbotx.hooks.CoreHooks;
 import org.pircbotx.hooks.events.ChannelInfoEvent;
 import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.UserListEvent;
+import org.pircbotx.hooks.events.WhoEvent;
+import org.pircbotx.hooks.events.WhoisEvent;
 import static com.google.common.base.Preconditions.*;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
@@ -279,6 +284,33 @@ public class OutputIRC {
 	public void whoisDetail(String target) {
 		bot.sendRaw().rawLine("WHOIS " + target + " " + target);
 	}
+
+	/**
+	 * Send "WHOIS nick nick" unless the result is already requested or cached
+	 *
+	 * @see QueryCache#whois(java.lang.String)
+	 */
+	public CompletableFuture<WhoisEvent> whoisAsync(String nick) {
+		return bot.getQueryCache().whois(nick);
+	}
+
+	/**
+	 * Send "WHO target" unless the result is already requested or cached
+	 *
+	 * @see QueryCache#who(java.lang.String)
+	 */
+	public CompletableFuture<WhoEvent> whoAsync(String target) {
+		return bot.getQueryCache().who(target);
+	}
+
+	/**
+	 * Send "NAMES channel" unless the result is already requested or cached
+	 *
+	 * @see QueryCache#names(java.lang.String)
+	 */
+	public CompletableFuture<UserListEvent> namesAsync(String channel) {
+		return bot.getQueryCache().names(channel);
+	}
 	
 	/**
 	 * Send "OPER username password" to oper up
@@ -19,6 +19,7 @@ package org.pircbotx.output;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.pircbotx.Channel;
@@ -27,6 +28,7 @@ import org.pircbotx.UserHostmask;
 import org.pircbotx.dcc.SendChat;
 import org.pircbotx.dcc.SendFileTransfer;
 import org.pircbotx.exception.DccException;
+import org.pircbotx.hooks.events.WhoisEvent;
 
 /**
  * Send lines to a serverUser.
@@ -143,4 +145,13 @@ public class OutputUser implements GenericChannelUserOutput {
 	public void whoisDetail() {
 		bot.sendIRC().whoisDetail(serverUser.getNick());
 	}
+
+	/**
+	 * Send "WHOIS nick nick" unless the result is already requested or cached
+	 *
+	 * @see OutputIRC#whoisAsync(java.lang.String)
+	 */
+	public CompletableFuture<WhoisEvent> whoisAsync() {
+		return bot.sendIRC().whoisAsync(serverUser.getNick());
+	}
 }
@@ -39,9 +39,13 @@ public class ChannelSnapshot extends Channel {
 			@Override))
 	protected final String mode;
 
+	/**
+	 * @param channel The channel to copy, or a snapshot to copy for another
+	 * dao
+	 */
 	public ChannelSnapshot(Channel channel, String mode) {
 		super(channel);
-		this.generatedFrom = channel;
+		this.generatedFrom = (channel instanceof ChannelSnapshot) ? ((ChannelSnapshot) channel).getGeneratedFrom() : channel;
 		this.mode = mode;
 
 		//Clone
@@ -71,6 +75,11 @@ public class ChannelSnapshot extends Channel {
 		SnapshotUtils.fail();
 	}
 
+	@Override
+	protected void preserve() {
+		//Never changes
+	}
+
 	@Override
 	public ChannelSnapshot createSnapshot() {
 		throw new UnsupportedOperationException("Attempting to generate channel snapshot from a snapshot");
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.snapshot;
+
+/**
+ * What the {@link UserChannelDaoSnapshot} of a
+ * {@link org.pircbotx.hooks.types.GenericSnapshotEvent} contains
+ *
+ * @see org.pircbotx.Configuration#getSnapshotScope()
+ */
+public enum SnapshotScope {
+	/**
+	 * Every user, channel and relationship the bot knew about. Users and
+	 * channels are only copied when a listener looks them up, but the
+	 * snapshot keeps the old values of everything changed while it's in use.
+	 */
+	ALL,
+	/**
+	 * Only the user and channel the event is about. For events about a user
+	 * and no channel (eg QuitEvent), the channels the user was in without
+	 * their other users. Nothing else is kept while the snapshot is in use.
+	 */
+	AFFECTED
+}
@@ -17,31 +17,82 @@
  */
 package org.pircbotx.snapshot;
 
-import com.google.common.collect.ImmutableMap;
-import java.util.EnumMap;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
+import org.pircbotx.User;
 import org.pircbotx.UserChannelDao;
-import org.pircbotx.UserChannelMap;
 import org.pircbotx.UserHostmask;
 import org.pircbotx.UserLevel;
 
 /**
- *
+ * Read only dao over the state the live dao had when the snapshot was created.
+ * The state is shared, each live user or channel in it is copied the first
+ * time it's looked up, with the values it had when the snapshot was created.
  */
 public class UserChannelDaoSnapshot extends UserChannelDao<UserSnapshot, ChannelSnapshot> {
 	protected final String botNick;
+	/**
+	 * Where to find the old values of users and channels, null to copy the
+	 * current values
+	 */
+	protected final Generation generation;
+	protected final ConcurrentHashMap<Integer, UserSnapshot> userSnapshots = new ConcurrentHashMap<Integer, UserSnapshot>();
+	protected final ConcurrentHashMap<Integer, ChannelSnapshot> channelSnapshots = new ConcurrentHashMap<Integer, ChannelSnapshot>();
 
-	public UserChannelDaoSnapshot(PircBotX bot, Locale locale, UserChannelMapSnapshot mainMap, EnumMap<UserLevel, UserChannelMap<UserSnapshot, ChannelSnapshot>> levelsMap, ImmutableMap<String, UserSnapshot> userNickMap, ImmutableMap<String, ChannelSnapshot> channelNameMap) {
-		super(bot, null, locale, mainMap, levelsMap, userNickMap, channelNameMap);
+	public UserChannelDaoSnapshot(PircBotX bot, Locale locale, State state, Generation generation) {
+		super(bot, null, locale, state);
+		this.generation = generation;
 		botNick = bot.getNick();
 	}
 
+	@Override
+	protected UserSnapshot toUser(User user) {
+		UserSnapshot snapshot = userSnapshots.get(user.getUserId());
+		if (snapshot == null) {
+			snapshot = snapshotUser(generation, user);
+			snapshot.setDao(this);
+			UserSnapshot existing = userSnapshots.putIfAbsent(user.getUserId(), snapshot);
+			if (existing != null)
+				return existing;
+		}
+		return snapshot;
+	}
+
+	@Override
+	protected ChannelSnapshot toChannel(Channel channel) {
+		ChannelSnapshot snapshot = channelSnapshots.get(channel.getChannelId());
+		if (snapshot == null) {
+			snapshot = snapshotChannel(generation, channel);
+			snapshot.setDao(this);
+			ChannelSnapshot existing = channelSnapshots.putIfAbsent(channel.getChannelId(), snapshot);
+			if (existing != null)
+				return existing;
+		}
+		return snapshot;
+	}
+
 	@Override
 	public UserChannelDaoSnapshot createSnapshot() {
 		throw new UnsupportedOperationException("Attempting to generate UserChannelDao snapshot from a snapshot");
 	}
 
+	@Override
+	public UserChannelDaoSnapshot createSnapshot(SnapshotScope scope, UserSnapshot user, ChannelSnapshot channel) {
+		throw new UnsupportedOperationException("Attempting to generate UserChannelDao snapshot from a snapshot");
+	}
+
+	@Override
+	protected void preserveUser(User user) {
+		//Nothing changes
+	}
+
+	@Override
+	protected void preserveChannel(Channel channel) {
+		//Nothing changes
+	}
+
 	@Override
 	public ChannelSnapshot createChannel(String name) {
 		return SnapshotUtils.fail();
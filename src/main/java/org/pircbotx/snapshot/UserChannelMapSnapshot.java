@@ -18,14 +18,35 @@
 package org.pircbotx.snapshot;
 
 import com.google.common.collect.Multimap;
+import java.util.Map;
 import org.pircbotx.UserChannelMap;
+import org.pircbotx.UserLevel;
 
 /**
+ * Read only {@link UserChannelMap} of snapshots.
  *
+ * @deprecated Snapshot daos now share the live {@link UserChannelMap.Links}
+ * and no longer create this. Use {@link UserChannelMap.Links} directly. Will
+ * be removed in a future release.
  */
+@Deprecated
 public class UserChannelMapSnapshot extends UserChannelMap<UserSnapshot, ChannelSnapshot> {
 	public UserChannelMapSnapshot(Multimap<UserSnapshot, ChannelSnapshot> userToChannelSnapshot, Multimap<ChannelSnapshot, UserSnapshot> channelToUserSnapshot) {
-		super(userToChannelSnapshot, channelToUserSnapshot);
+		super(toLinks(userToChannelSnapshot, channelToUserSnapshot));
+	}
+
+	private static UserChannelMap.Links<UserSnapshot, ChannelSnapshot> toLinks(Multimap<UserSnapshot, ChannelSnapshot> userToChannelSnapshot, Multimap<ChannelSnapshot, UserSnapshot> channelToUserSnapshot) {
+		UserChannelMap.Links<UserSnapshot, ChannelSnapshot> links = UserChannelMap.Links.empty();
+		for (Map.Entry<UserSnapshot, ChannelSnapshot> curEntry : userToChannelSnapshot.entries())
+			links = links.plus(curEntry.getKey(), curEntry.getValue());
+		for (Map.Entry<ChannelSnapshot, UserSnapshot> curEntry : channelToUserSnapshot.entries())
+			links = links.plus(curEntry.getValue(), curEntry.getKey());
+		return links;
+	}
+
+	@Override
+	public void addUserToChannel(UserSnapshot user, ChannelSnapshot channel) {
+		SnapshotUtils.fail();
 	}
 
 	@Override
@@ -33,6 +54,16 @@ public class UserChannelMapSnapshot extends UserChannelMap<UserSnapshot, Channel
 		SnapshotUtils.fail();
 	}
 
+	@Override
+	public void addUserToLevel(UserLevel level, UserSnapshot user, ChannelSnapshot channel) {
+		SnapshotUtils.fail();
+	}
+
+	@Override
+	public void removeUserFromLevel(UserLevel level, UserSnapshot user, ChannelSnapshot channel) {
+		SnapshotUtils.fail();
+	}
+
 	@Override
 	public void removeUser(UserSnapshot user) {
 		SnapshotUtils.fail();
@@ -39,9 +39,12 @@ public class UserSnapshot extends User {
 	@Setter
 	protected UserChannelDaoSnapshot dao;
 
+	/**
+	 * @param user The user to copy, or a snapshot to copy for another dao
+	 */
 	public UserSnapshot(User user) {
 		super(user, true);
-		generatedFrom = user;
+		generatedFrom = (user instanceof UserSnapshot) ? ((UserSnapshot) user).getGeneratedFrom() : user;
 
 		//Clone fields
 		super.setAwayMessage(user.getAwayMessage());
@@ -58,6 +61,11 @@ public class UserSnapshot extends User {
 		return (UserChannelDao<User, Channel>) (Object) dao;
 	}
 
+	@Override
+	protected void preserve() {
+		//Never changes
+	}
+
 	@Override
 	public UserSnapshot createSnapshot() {
 		throw new UnsupportedOperationException("Attempting to generate user snapshot from a snapshot");
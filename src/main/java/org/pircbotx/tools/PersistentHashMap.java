@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.tools;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import lombok.NonNull;
+
+/**
+ * Immutable hash map where {@link #plus(java.lang.Object, java.lang.Object) }
+ * and {@link #minus(java.lang.Object) } return a new map sharing all but the
+ * changed path with the original (a hash array mapped trie). Changing a map
+ * of n entries copies O(log32 n) small arrays instead of the whole map, so
+ * keeping old versions around is cheap.
+ * <p>
+ * Keys and values cannot be null. The {@link Map} methods that modify the map
+ * throw {@link UnsupportedOperationException}. Instances are safe to share
+ * between threads.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+	private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<Object, Object>(BitmapNode.EMPTY, 0);
+	private final Node root;
+	private final int size;
+	private Set<Map.Entry<K, V>> entrySet;
+
+	private PersistentHashMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentHashMap<K, V> empty() {
+		return (PersistentHashMap<K, V>) EMPTY;
+	}
+
+	/**
+	 * @return A map with the key set to the value, this map if it already was
+	 */
+	public PersistentHashMap<K, V> plus(@NonNull K key, @NonNull V value) {
+		boolean[] added = new boolean[1];
+		Node newRoot = root.plus(0, hash(key), key, value, added);
+		if (newRoot == root)
+			return this;
+		return new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 * @return A map without the key, this map if it didn't contain it
+	 */
+	public PersistentHashMap<K, V> minus(@NonNull Object key) {
+		Node newRoot = root.minus(0, hash(key), key);
+		if (newRoot == root)
+			return this;
+		if (newRoot == null)
+			return empty();
+		return new PersistentHashMap<K, V>(newRoot, size - 1);
+	}
+
+	/**
+	 * Add many entries at once. When adding at least a quarter as many entries
+	 * as the map has, the trie is rebuilt in one pass instead of copying a
+	 * path for each entry.
+	 *
+	 * @return A map with the entries added, replacing existing values
+	 */
+	public PersistentHashMap<K, V> plusAll(@NonNull Map<? extends K, ? extends V> entries) {
+		if (entries.isEmpty())
+			return this;
+		if (entries.size() < size / 4) {
+			PersistentHashMap<K, V> result = this;
+			for (Map.Entry<? extends K, ? extends V> curEntry : entries.entrySet())
+				result = result.plus(curEntry.getKey(), curEntry.getValue());
+			return result;
+		}
+
+		final HashMap<Object, Object> merged = new HashMap<Object, Object>((size + entries.size()) * 4 / 3 + 1);
+		forEach(new BiConsumer<K, V>() {
+			@Override
+			public void accept(K key, V value) {
+				merged.put(key, value);
+			}
+		});
+		for (Map.Entry<? extends K, ? extends V> curEntry : entries.entrySet())
+			merged.put(curEntry.getKey(), curEntry.getValue());
+		return build(merged);
+	}
+
+	/**
+	 * Build the trie by sorting the entries so each node's entries are next to
+	 * each other, ordered by the 5 bit chunks of their hashes from the root
+	 * down
+	 */
+	private static <K, V> PersistentHashMap<K, V> build(HashMap<Object, Object> entries) {
+		int count = entries.size();
+		Object[] keys = new Object[count];
+		Object[] values = new Object[count];
+		int[] hashes = new int[count];
+		long[] order = new long[count];
+		int i = 0;
+		for (Map.Entry<Object, Object> curEntry : entries.entrySet()) {
+			if (curEntry.getKey() == null || curEntry.getValue() == null)
+				throw new NullPointerException("Keys and values cannot be null");
+			keys[i] = curEntry.getKey();
+			values[i] = curEntry.getValue();
+			hashes[i] = hash(keys[i]);
+			order[i] = ((chunkOrder(hashes[i]) & 0xFFFFFFFFL) << 31) | i;
+			i++;
+		}
+		Arrays.sort(order);
+
+		Object[] sortedKeys = new Object[count];
+		Object[] sortedValues = new Object[count];
+		int[] sortedHashes = new int[count];
+		for (i = 0; i < count; i++) {
+			int index = (int) (order[i] & Integer.MAX_VALUE);
+			sortedKeys[i] = keys[index];
+			sortedValues[i] = values[index];
+			sortedHashes[i] = hashes[index];
+		}
+		return new PersistentHashMap<K, V>(buildNode(0, sortedHashes, sortedKeys, sortedValues, 0, count), count);
+	}
+
+	/**
+	 * @return The hash with its 5 bit chunks reversed, the root's chunk first
+	 */
+	private static int chunkOrder(int hash) {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 5) {
+			int bits = Math.min(5, 32 - shift);
+			result = (result << bits) | ((hash >>> shift) & ((1 << bits) - 1));
+		}
+		return result;
+	}
+
+	private static Node buildNode(int shift, int[] hashes, Object[] keys, Object[] values, int from, int to) {
+		int bitmap = 0;
+		for (int i = from; i < to; i++)
+			bitmap |= 1 << ((hashes[i] >>> shift) & 31);
+		Object[] array = new Object[Integer.bitCount(bitmap) * 2];
+		int index = 0;
+		int groupStart = from;
+		while (groupStart < to) {
+			int slot = (hashes[groupStart] >>> shift) & 31;
+			int groupEnd = groupStart + 1;
+			boolean sameHash = true;
+			while (groupEnd < to && ((hashes[groupEnd] >>> shift) & 31) == slot) {
+				sameHash &= hashes[groupEnd] == hashes[groupStart];
+				groupEnd++;
+			}
+
+			if (groupEnd - groupStart == 1) {
+				array[index] = keys[groupStart];
+				array[index + 1] = values[groupStart];
+			} else if (sameHash) {
+				Object[] collisions = new Object[(groupEnd - groupStart) * 2];
+				for (int i = groupStart; i < groupEnd; i++) {
+					collisions[(i - groupStart) * 2] = keys[i];
+					collisions[(i - groupStart) * 2 + 1] = values[i];
+				}
+				array[index + 1] = new CollisionNode(hashes[groupStart], collisions);
+			} else
+				array[index + 1] = buildNode(shift + 5, hashes, keys, values, groupStart, groupEnd);
+			index += 2;
+			groupStart = groupEnd;
+		}
+		return new BitmapNode(bitmap, array);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		if (key == null)
+			return null;
+		return (V) root.get(0, hash(key), key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> result = entrySet;
+		if (result == null)
+			entrySet = result = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new EntryIterator<K, V>(root);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		return result;
+	}
+
+	/**
+	 * Walks the trie directly, unlike iterating over {@link #entrySet() }
+	 * which creates an entry for each mapping
+	 */
+	@Override
+	public void forEach(@NonNull BiConsumer<? super K, ? super V> action) {
+		forEach(root, action);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K, V> void forEach(Node node, BiConsumer<? super K, ? super V> action) {
+		Object[] array = node.array();
+		for (int i = 0; i < array.length; i += 2)
+			if (array[i] == null)
+				forEach((Node) array[i + 1], action);
+			else
+				action.accept((K) array[i], (V) array[i + 1]);
+	}
+
+	/**
+	 * Spread the higher bits like {@link java.util.HashMap} so keys with
+	 * similar hash codes don't share long paths
+	 */
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static abstract class Node {
+		/**
+		 * @return The value or null
+		 */
+		abstract Object get(int shift, int hash, Object key);
+
+		abstract Node plus(int shift, int hash, Object key, Object value, boolean[] added);
+
+		/**
+		 * @return This node if the key wasn't found, null if the node is now
+		 * empty
+		 */
+		abstract Node minus(int shift, int hash, Object key);
+
+		/**
+		 * Key and value (or null key and child node) pairs
+		 */
+		abstract Object[] array();
+	}
+
+	/**
+	 * Node with up to 32 slots selected by 5 bits of the hash, only storing
+	 * the used slots
+	 */
+	private static final class BitmapNode extends Node {
+		static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+		final int bitmap;
+		final Object[] array;
+
+		BitmapNode(int bitmap, Object[] array) {
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		Object get(int shift, int hash, Object key) {
+			int bit = 1 << ((hash >>> shift) & 31);
+			if ((bitmap & bit) == 0)
+				return null;
+			int index = index(bit) * 2;
+			Object curKey = array[index];
+			if (curKey == null)
+				return ((Node) array[index + 1]).get(shift + 5, hash, key);
+			return key.equals(curKey) ? array[index + 1] : null;
+		}
+
+		@Override
+		Node plus(int shift, int hash, Object key, Object value, boolean[] added) {
+			int bit = 1 << ((hash >>> shift) & 31);
+			int index = index(bit) * 2;
+			if ((bitmap & bit) == 0) {
+				Object[] newArray = new Object[array.length + 2];
+				System.arraycopy(array, 0, newArray, 0, index);
+				newArray[index] = key;
+				newArray[index + 1] = value;
+				System.arraycopy(array, index, newArray, index + 2, array.length - index);
+				added[0] = true;
+				return new BitmapNode(bitmap | bit, newArray);
+			}
+
+			Object curKey = array[index];
+			Object curValue = array[index + 1];
+			if (curKey == null) {
+				Node child = ((Node) curValue).plus(shift + 5, hash, key, value, added);
+				return child == curValue ? this : with(index + 1, child);
+			}
+			if (key.equals(curKey))
+				return curValue == value ? this : with(index + 1, value);
+
+			//Different key in the slot, push both down a level
+			added[0] = true;
+			Node child = createNode(shift + 5, curKey, curValue, hash, key, value);
+			Object[] newArray = array.clone();
+			newArray[index] = null;
+			newArray[index + 1] = child;
+			return new BitmapNode(bitmap, newArray);
+		}
+
+		@Override
+		Node minus(int shift, int hash, Object key) {
+			int bit = 1 << ((hash >>> shift) & 31);
+			if ((bitmap & bit) == 0)
+				return this;
+			int index = index(bit) * 2;
+			Object curKey = array[index];
+			if (curKey == null) {
+				Node child = (Node) array[index + 1];
+				Node newChild = child.minus(shift + 5, hash, key);
+				if (newChild == child)
+					return this;
+				if (newChild != null)
+					return with(index + 1, newChild);
+			} else if (!key.equals(curKey))
+				return this;
+
+			//Remove the slot
+			if (bitmap == bit)
+				return null;
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+			return new BitmapNode(bitmap ^ bit, newArray);
+		}
+
+		@Override
+		Object[] array() {
+			return array;
+		}
+
+		BitmapNode with(int index, Object value) {
+			Object[] newArray = array.clone();
+			newArray[index] = value;
+			return new BitmapNode(bitmap, newArray);
+		}
+	}
+
+	/**
+	 * Keys with the same full hash
+	 */
+	private static final class CollisionNode extends Node {
+		final int hash;
+		final Object[] array;
+
+		CollisionNode(int hash, Object[] array) {
+			this.hash = hash;
+			this.array = array;
+		}
+
+		int find(Object key) {
+			for (int i = 0; i < array.length; i += 2)
+				if (key.equals(array[i]))
+					return i;
+			return -1;
+		}
+
+		@Override
+		Object get(int shift, int hash, Object key) {
+			if (hash != this.hash)
+				return null;
+			int index = find(key);
+			return index == -1 ? null : array[index + 1];
+		}
+
+		@Override
+		Node plus(int shift, int hash, Object key, Object value, boolean[] added) {
+			if (hash != this.hash) {
+				//Nest under a bitmap node which can tell the hashes apart
+				Node parent = new BitmapNode(1 << ((this.hash >>> shift) & 31), new Object[]{null, this});
+				return parent.plus(shift, hash, key, value, added);
+			}
+			int index = find(key);
+			if (index != -1) {
+				if (array[index + 1] == value)
+					return this;
+				Object[] newArray = array.clone();
+				newArray[index + 1] = value;
+				return new CollisionNode(hash, newArray);
+			}
+			Object[] newArray = Arrays.copyOf(array, array.length + 2);
+			newArray[array.length] = key;
+			newArray[array.length + 1] = value;
+			added[0] = true;
+			return new CollisionNode(hash, newArray);
+		}
+
+		@Override
+		Node minus(int shift, int hash, Object key) {
+			if (hash != this.hash)
+				return this;
+			int index = find(key);
+			if (index == -1)
+				return this;
+			if (array.length == 2)
+				return null;
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+			return new CollisionNode(hash, newArray);
+		}
+
+		@Override
+		Object[] array() {
+			return array;
+		}
+	}
+
+	private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+		int hash1 = hash(key1);
+		if (hash1 == hash2)
+			return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+		boolean[] added = new boolean[1];
+		return BitmapNode.EMPTY
+				.plus(shift, hash1, key1, value1, added)
+				.plus(shift, hash2, key2, value2, added);
+	}
+
+	/**
+	 * Depth first walk of the trie, at most 7 levels deep for 32 bit hashes
+	 * plus a collision node
+	 */
+	private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+		private final Object[][] arrays = new Object[8][];
+		private final int[] indexes = new int[8];
+		private int depth = 0;
+		private Map.Entry<K, V> next;
+
+		EntryIterator(Node root) {
+			arrays[0] = root.array();
+			advance();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			while (depth >= 0) {
+				Object[] array = arrays[depth];
+				int index = indexes[depth];
+				if (index == array.length) {
+					depth--;
+					continue;
+				}
+				indexes[depth] = index + 2;
+				if (array[index] == null) {
+					depth++;
+					arrays[depth] = ((Node) array[index + 1]).array();
+					indexes[depth] = 0;
+					continue;
+				}
+				next = new AbstractMap.SimpleImmutableEntry<K, V>((K) array[index], (V) array[index + 1]);
+				return;
+			}
+			next = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			Map.Entry<K, V> result = next;
+			if (result == null)
+				throw new NoSuchElementException();
+			advance();
+			return result;
+		}
+	}
+}
@@ -23,6 +23,7 @@ import static org.testng.Assert.assertTrue;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -111,4 +112,11 @@ public class ConfigurationTest {
 		assertTrue(fieldsDiff.entriesOnlyOnRight().isEmpty(), "Builder has some fields that Configuration doesn't: "
 				+ fieldsDiff.entriesOnlyOnRight());
 	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void asciiIncompatibleEncodingTest() {
+		TestUtils.generateConfigurationBuilder()
+				.setEncoding(StandardCharsets.UTF_16)
+				.buildConfiguration();
+	}
 }
@@ -24,6 +24,7 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -70,6 +71,7 @@ import org.pircbotx.hooks.events.SetTopicProtectionEvent;
 import org.pircbotx.hooks.events.SuperOpEvent;
 import org.pircbotx.hooks.events.TimeEvent;
 import org.pircbotx.hooks.events.TopicEvent;
+import org.pircbotx.hooks.events.UnknownEvent;
 import org.pircbotx.hooks.events.UserListEvent;
 import org.pircbotx.hooks.events.UserModeEvent;
 import org.pircbotx.hooks.events.VersionEvent;
@@ -447,6 +449,17 @@ public class InputParserTest {
 		assertEquals(aChannel.getMode(), "+ipmd");
 	}
 
+	@Test(description = "Verify MODE and creation time of a channel the bot isn't in")
+	public void unjoinedChannelModeTest() throws IOException, IrcException, NotReadyException {
+		inputParser.handleLine(":irc.someserver.net 324 PircBotXUser #otherChannel +nt");
+		ModeEvent mevent = bot.getTestEvent(ModeEvent.class, "ModeEvent not dispatched for mode response");
+		assertEquals(mevent.getChannel().getName(), "#otherChannel");
+		assertEquals(mevent.getChannel().getMode(), "+nt");
+
+		inputParser.handleLine(":irc.someserver.net 329 PircBotXUser #otherChannel 1328490732");
+		assertFalse(dao.containsChannel("#otherChannel"), "Unjoined channel was added");
+	}
+
 	@Test
 	public void containsModeTest() throws IOException, IrcException, NotReadyException {
 		Channel aChannel = dao.createChannel("#aChannel");
@@ -1491,6 +1504,98 @@ public class InputParserTest {
 		assertNull(user.getHostname(), "Unexpected hostmask for aUser2");
 	}
 
+	@Test
+	public void namesBatchTest() throws IOException, IrcException {
+		Channel aChannel = dao.createChannel("#aChannel");
+		User knownUser = TestUtils.generateTestUserSource(bot);
+		dao.addUserToChannel(knownUser, aChannel);
+		dao.addUserToLevel(UserLevel.VOICE, knownUser, aChannel);
+
+		inputParser.handleLine(":irc.someserver.net 353 PircBotXUser = #aChannel :@" + knownUser.getNick() + " @+aUser1");
+		//Each line is added as a whole
+		assertTrue(dao.containsUser("aUser1"));
+		assertEquals(aChannel.getUserCount(), 2);
+		inputParser.handleLine(":irc.someserver.net 353 PircBotXUser = #aChannel :aUser2");
+		assertEquals(aChannel.getUserCount(), 3);
+
+		inputParser.handleLine(":irc.someserver.net 366 PircBotXUser #aChannel :End of /NAMES list.");
+		assertEquals(aChannel.getUserCount(), 3);
+		assertEquals(dao.getLevels(aChannel, knownUser), ImmutableSortedSet.of(UserLevel.OP, UserLevel.VOICE), "Existing levels lost");
+		assertEquals(dao.getLevels(aChannel, dao.getUser("aUser1")), ImmutableSortedSet.of(UserLevel.OP, UserLevel.VOICE));
+		assertTrue(dao.getLevels(aChannel, dao.getUser("aUser2")).isEmpty());
+	}
+
+	@Test(description = "Verify users of a NAMES reply can leave or change nick before it ends")
+	public void namesInterleavedTest() throws IOException, IrcException {
+		Channel aChannel = dao.createChannel("#aChannel");
+		inputParser.handleLine(":irc.someserver.net 353 PircBotXUser = #aChannel :alice bob carol");
+		inputParser.handleLine(":alice!~alice@host.test PART #aChannel");
+		inputParser.handleLine(":bob!~bob@host.test QUIT :Bye");
+		inputParser.handleLine(":carol!~carol@host.test NICK carol2");
+		inputParser.handleLine(":irc.someserver.net 366 PircBotXUser #aChannel :End of /NAMES list.");
+
+		assertEquals(aChannel.getUserCount(), 1);
+		assertFalse(dao.containsUser("alice"), "Parted user still known");
+		assertFalse(dao.containsUser("bob"), "Quit user still known");
+		assertFalse(dao.containsUser("carol"), "Old nick still known");
+		assertTrue(dao.getUsers(aChannel).contains(dao.getUser("carol2")));
+	}
+
+	@Test(description = "Verify users of a WHO reply can leave before it ends")
+	public void whoInterleavedTest() throws IOException, IrcException {
+		Channel aChannel = dao.createChannel("#aChannel");
+		inputParser.handleLine(":irc.someserver.net 352 PircBotXUser #aChannel ~alice host.test irc.someserver.net alice H@ :0 Alice");
+		inputParser.handleLine(":irc.someserver.net 352 PircBotXUser #aChannel ~bob host.test irc.someserver.net bob H :0 Bob");
+		assertEquals(aChannel.getUserCount(), 2);
+		inputParser.handleLine(":alice!~alice@host.test PART #aChannel");
+		inputParser.handleLine(":irc.someserver.net 315 PircBotXUser #aChannel :End of /WHO list.");
+
+		assertEquals(aChannel.getUserCount(), 1);
+		assertFalse(dao.containsUser("alice"), "Parted user still known");
+		assertTrue(dao.getUsers(aChannel).contains(dao.getUser("bob")));
+	}
+
+	@Test
+	public void chghostTest() throws IOException, IrcException {
+		User aUser = TestUtils.generateTestUserSource(bot);
+		inputParser.handleLine(":" + aUser.getHostmask() + " CHGHOST ~newLogin new.host.test");
+		assertEquals(aUser.getLogin(), "~newLogin");
+		assertEquals(aUser.getHostname(), "new.host.test");
+		assertEquals(aUser.getNick(), "SourceUser");
+	}
+
+	@Test
+	public void unhandledCommandTest() throws IOException, IrcException {
+		inputParser.handleLine(":SourceUser!~SomeTest@host.test SOMECOMMAND #aChannel :" + aString);
+		UnknownEvent event = bot.getTestEvent(UnknownEvent.class, "No UnknownEvent dispatched");
+		assertEquals(event.getCommand(), "SOMECOMMAND");
+		assertEquals(event.getTarget(), "#aChannel");
+		assertFalse(dao.containsUser("SourceUser"), "Unhandled command created a user");
+	}
+
+	@Test
+	public void customHandlersTest() throws IOException, IrcException {
+		final List<String> handled = new ArrayList<String>();
+		bot = new TestPircBotX(TestUtils.generateConfigurationBuilder()
+				.addCommandHandler(new CommandHandler("ACCOUNT") {
+					@Override
+					public void handleCommand(InputParser parser, PircBotX bot, String target, UserHostmask source, User sourceUser, Channel channel, IrcMessage ircMessage, MessageTags tags) {
+						handled.add(source.getNick() + " " + target);
+					}
+				})
+				.addServerResponseHandler(new ServerResponseHandler(ReplyConstants.RPL_YOUREOPER) {
+					@Override
+					public void handleResponse(InputParser parser, PircBotX bot, IrcMessage message) {
+						handled.add(message.getCommand());
+					}
+				}));
+		bot.getInputParser().handleLine(":SourceUser!~SomeTest@host.test ACCOUNT accountName");
+		bot.getInputParser().handleLine(":irc.someserver.net 381 PircBotXUser :You are now an IRCOp");
+		assertEquals(handled, ImmutableList.of("SourceUser accountName", "381"));
+		//ServerResponseEvent is still dispatched after a replaced handler
+		assertNotNull(bot.getTestEvent(ServerResponseEvent.class, "No ServerResponseEvent dispatched"));
+	}
+
 	@DataProvider
 	protected static Object[][] nickDifferentTestProvider() {
 		return new Object[][]{
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.net.SocketFactory;
+
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class InputPipelineTest {
+	@Test
+	public void queueTest() {
+		SpscQueue<Integer> queue = new SpscQueue<Integer>(3);
+		assertEquals(queue.capacity(), 4);
+		assertNull(queue.poll());
+		for (int i = 0; i < 4; i++)
+			assertTrue(queue.offer(i));
+		assertFalse(queue.offer(4), "Offered past capacity");
+		assertEquals(queue.size(), 4);
+		assertEquals(queue.poll(), (Integer) 0);
+		assertTrue(queue.offer(4));
+		for (int i = 1; i <= 4; i++)
+			assertEquals(queue.poll(), (Integer) i);
+		assertNull(queue.poll());
+	}
+
+	@Test(timeOut = 20000)
+	public void queueThreadsTest() throws Exception {
+		final SpscQueue<Integer> queue = new SpscQueue<Integer>(8);
+		final int count = 100000;
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < count; i++)
+						queue.put(i);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				queue.close();
+			}
+		};
+		producer.start();
+		int expected = 0;
+		Integer element;
+		while ((element = queue.take()) != null)
+			assertEquals(element.intValue(), expected++);
+		assertEquals(expected, count);
+		assertTrue(queue.isClosed());
+		producer.join();
+	}
+
+	@Test(timeOut = 20000)
+	public void pipelineTest() throws Exception {
+		final int joins = 500;
+		StringBuilder input = new StringBuilder();
+		input.append(":irc.test 001 TestBot :Welcome\r\n");
+		input.append(":TestBot!~bot@host.test JOIN #chan\r\n");
+		for (int i = 0; i < joins; i++)
+			input.append(":user").append(i).append("!~user@host.test JOIN #chan\r\n");
+		input.append("@msgid=abc;time=2022-01-01T00:00:00.000Z :user0!~user@host.test PRIVMSG #chan :hello\r\n");
+
+		Socket socket = mock(Socket.class);
+		when(socket.isConnected()).thenReturn(true);
+		when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)));
+		when(socket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+		SocketFactory socketFactory = mock(SocketFactory.class);
+		when(socketFactory.createSocket()).thenReturn(socket);
+
+		final List<String> joined = Collections.synchronizedList(new ArrayList<String>());
+		final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+		final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+		final PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setSocketFactory(socketFactory)
+				.setInputPipelineCapacity(4)
+				.setOnJoinWhoEnabled(false)
+				.setOnJoinModeEnabled(false)
+				.addListener(new Listener() {
+					@Override
+					public void onEvent(Event event) throws Exception {
+						if (event instanceof JoinEvent) {
+							joined.add(((JoinEvent) event).getUser().getNick());
+							threads.add(Thread.currentThread().getName());
+						} else if (event instanceof MessageEvent || event instanceof DisconnectEvent)
+							events.add(event);
+					}
+				})
+				.buildConfiguration());
+		bot.startBot();
+
+		assertEquals(joined.size(), joins + 1);
+		assertEquals(joined.get(0), "TestBot");
+		for (int i = 0; i < joins; i++)
+			assertEquals(joined.get(i + 1), "user" + i, "Joins out of order");
+		assertEquals(new HashSet<String>(threads), Collections.singleton("bot" + bot.getBotId() + "-input-dispatch"));
+
+		assertEquals(events.size(), 2);
+		MessageEvent message = (MessageEvent) events.get(0);
+		assertEquals(message.getMessage(), "hello");
+		assertEquals(message.getTags().get("msgid"), "abc");
+		assertTrue(events.get(1) instanceof DisconnectEvent, "Disconnect dispatched before other events");
+		assertNull(bot.inputPipeline);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void selectorEngineTest() {
+		SelectorEngine engine = new SelectorEngine(1);
+		try {
+			TestUtils.generateConfigurationBuilder()
+					.setSelectorEngine(engine)
+					.setInputPipelineCapacity(16)
+					.buildConfiguration();
+		} finally {
+			engine.close();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class IrcMessageTest {
+	@DataProvider
+	public Object[][] lineDataProvider() {
+		return new Object[][]{
+			{":AUser!~ALogin@some.host PRIVMSG #aChannel :Hi there: how are you?"},
+			{":irc.someserver.net 004 PircBotX irc.someserver.net ircd-1.0 DOQRSZ CFILMP"},
+			{":irc.someserver.net 353 PircBotX = #aChannel :@op +voice user"},
+			{":AUser!~ALogin@some.host MODE #aChannel +o  AUser"},
+			{":AUser!~ALogin@some.host QUIT :"},
+			{":AUser!~ALogin@some.host NICK :NewNick"},
+			{":AUser!~ALogin@some.host AWAY"},
+			{"PING :irc.someserver.net"},
+			{"NOTICE AUTH :*** Looking up your hostname"}
+		};
+	}
+
+	@Test(dataProvider = "lineDataProvider")
+	public void matchesTokenizeLineTest(String line) {
+		List<String> expected = Utils.tokenizeLine(line);
+		IrcMessage message = IrcMessage.parse(line);
+		if (expected.get(0).startsWith(":")) {
+			assertTrue(message.hasSource());
+			assertEquals(message.getSource(), expected.remove(0).substring(1));
+		} else
+			assertFalse(message.hasSource());
+		assertEquals(message.getCommand(), expected.remove(0));
+		assertEquals(message.getParams(), expected);
+		assertEquals(message.getParamCount(), expected.size());
+		assertEquals(message.getBody(), line);
+		assertFalse(message.hasTags());
+	}
+
+	@Test
+	public void tagsTest() {
+		IrcMessage message = IrcMessage.parse("@aaa=bbb;ccc;example.com/ddd=eee :nick!ident@host.com PRIVMSG me :Hello");
+		assertTrue(message.hasTags());
+		assertEquals(message.getRawTags(), "aaa=bbb;ccc;example.com/ddd=eee");
+		assertEquals(message.getBody(), ":nick!ident@host.com PRIVMSG me :Hello");
+		assertEquals(message.getSource(), "nick!ident@host.com");
+		assertEquals(message.getCommand(), "PRIVMSG");
+		assertEquals(message.getParams(), ImmutableList.of("me", "Hello"));
+	}
+
+	@Test
+	public void numericTest() {
+		assertEquals(IrcMessage.parse(":irc.someserver.net 001 PircBotX :Welcome").getNumeric(), 1);
+		assertEquals(IrcMessage.parse(":irc.someserver.net 433 * PircBotX :Nick in use").getNumeric(), 433);
+		assertEquals(IrcMessage.parse(":nick!ident@host PRIVMSG #chan :100").getNumeric(), -1);
+		assertEquals(IrcMessage.parse(":irc.someserver.net 1234 PircBotX").getNumeric(), -1);
+		assertEquals(IrcMessage.parse(":irc.someserver.net 12a PircBotX").getNumeric(), -1);
+	}
+
+	@Test
+	public void missingPartsTest() {
+		IrcMessage message = IrcMessage.parse(":irc.someserver.net");
+		assertEquals(message.getSource(), "irc.someserver.net");
+		assertEquals(message.getCommand(), "");
+		assertEquals(message.getNumeric(), -1);
+		assertEquals(message.getParamCount(), 0);
+		assertEquals(message.getParam(0, "default"), "default");
+
+		message = IrcMessage.parse("@only=tags");
+		assertTrue(message.hasTags());
+		assertFalse(message.hasSource());
+		assertEquals(message.getBody(), "");
+		assertEquals(message.getCommand(), "");
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void paramOutOfBoundsTest() {
+		IrcMessage.parse(":AUser!~ALogin@some.host AWAY").getParam(0);
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void paramsUnmodifiableTest() {
+		IrcMessage.parse("PING :irc.someserver.net").getParams().remove(0);
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class LineFramerTest {
+	protected static List<String> frame(LineFramer framer, byte[]... chunks) {
+		List<String> lines = new ArrayList<String>();
+		for (byte[] curChunk : chunks) {
+			framer.getBuffer().put(curChunk);
+			String line;
+			while ((line = framer.nextLine()) != null)
+				lines.add(line);
+		}
+		return lines;
+	}
+
+	protected static byte[] bytes(String input) {
+		return input.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void lineEndingsTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		List<String> lines = frame(framer, bytes("PING one\r\nPING two\nPING three\r\n"));
+		assertEquals(lines.toString(), "[PING one, PING two, PING three]");
+	}
+
+	@Test
+	public void carriageReturnTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		//A line feed after a carriage return at the end of a read is skipped
+		List<String> lines = frame(framer, bytes("PING one\rPING two\r\nPING three\r"), bytes("\nPING four\r"), bytes("PING five\n"));
+		assertEquals(lines.toString(), "[PING one, PING two, PING three, PING four, PING five]");
+	}
+
+	@Test
+	public void partialReadsTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		byte[] data = bytes(":nick!user@host PRIVMSG #chan :Hello éè 世界\r\nPING end\r\n");
+		List<String> lines = new ArrayList<String>();
+		//One byte at a time splits multi-byte characters and the CRLF
+		for (byte curByte : data)
+			lines.addAll(frame(framer, new byte[]{curByte}));
+		assertEquals(lines.size(), 2);
+		assertEquals(lines.get(0), ":nick!user@host PRIVMSG #chan :Hello éè 世界");
+		assertEquals(lines.get(1), "PING end");
+	}
+
+	@Test
+	public void trimAndBlankTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		List<String> lines = frame(framer, bytes("  PING one \t\r\n\r\n   \r\n\nPING two\r\n"));
+		assertEquals(lines.toString(), "[PING one, PING two]");
+	}
+
+	@Test
+	public void unicodeWhitespaceTrimmedTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		List<String> lines = frame(framer, bytes("\u3000PING one\u00A0\r\n\u2003\r\n"));
+		assertEquals(lines.toString(), "[PING one]");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void asciiIncompatibleRejectedTest() {
+		new LineFramer(StandardCharsets.UTF_16);
+	}
+
+	@Test
+	public void nonUtf8Test() {
+		LineFramer framer = new LineFramer(StandardCharsets.ISO_8859_1);
+		framer.getBuffer().put(new byte[]{'h', 'i', ' ', (byte) 0xE9, '\r', '\n'});
+		assertEquals(framer.nextLine(), "hi é");
+	}
+
+	@Test
+	public void malformedReplacedTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		framer.getBuffer().put(new byte[]{'h', 'i', ' ', (byte) 0xFF, '\r', '\n'});
+		assertEquals(framer.nextLine(), "hi �");
+	}
+
+	@Test
+	public void tooLongTruncatedTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8, 512);
+		String longLine = "PRIVMSG #chan :" + StringUtils.repeat('a', 9000);
+		List<String> lines = frame(framer, bytes("PING one\r\n" + longLine + "\r\nPING two\r\n"));
+		assertEquals(lines.size(), 3);
+		assertEquals(lines.get(1), longLine.substring(0, LineFramer.MAX_TAGS_LENGTH + 512));
+		assertEquals(lines.get(2), "PING two");
+	}
+
+	@Test
+	public void tooLongTruncatedCharacterTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8, 512);
+		//The limit falls inside the last é, which is dropped instead of replaced
+		String longLine = StringUtils.repeat('a', LineFramer.MAX_TAGS_LENGTH + 511) + StringUtils.repeat("\u00E9", 10);
+		List<String> lines = frame(framer, bytes(longLine + "\r\nPING end\r\n"));
+		assertEquals(lines.get(0), StringUtils.repeat('a', LineFramer.MAX_TAGS_LENGTH + 511));
+		assertEquals(lines.get(1), "PING end");
+	}
+
+	@Test
+	public void tooLongUnterminatedTruncatedTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8, 512);
+		//Never buffer more than the limit while waiting for a line ending
+		byte[] chunk = bytes(StringUtils.repeat('a', 4000));
+		List<String> lines = frame(framer, chunk, chunk, chunk, chunk, chunk, bytes("aaa\r\nPING end\r\n"));
+		assertEquals(lines.size(), 2);
+		assertEquals(lines.get(0), StringUtils.repeat('a', LineFramer.MAX_TAGS_LENGTH + 512));
+		assertEquals(lines.get(1), "PING end");
+		assertTrue(framer.getBuffer().capacity() <= 16 * 1024, "Buffer grew to " + framer.getBuffer().capacity());
+	}
+
+	@Test
+	public void tagsTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		String tagLine = "@key=" + StringUtils.repeat('v', 8000) + " :nick!user@host PRIVMSG #chan :hi";
+		List<String> lines = frame(framer, bytes(tagLine + "\r\nPING end\r\n"));
+		assertEquals(lines.size(), 2);
+		assertEquals(lines.get(0), tagLine);
+		assertEquals(lines.get(1), "PING end");
+	}
+
+	@Test
+	public void outputLineLengthIgnoredTest() {
+		//Lowering the output line length doesn't affect input
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		String longLine = "PRIVMSG #chan :" + StringUtils.repeat('a', 2000);
+		assertEquals(frame(framer, bytes(longLine + "\r\n")).toString(), "[" + longLine + "]");
+	}
+
+	@Test
+	public void maxLineLengthTest() {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8, 1024);
+		String longLine = "PRIVMSG #chan :" + StringUtils.repeat('a', 600);
+		assertEquals(frame(framer, bytes(longLine + "\r\n")).toString(), "[" + longLine + "]");
+	}
+
+	@Test
+	public void readLineTest() throws IOException {
+		LineFramer framer = new LineFramer(Charset.forName("UTF-8"));
+		ByteArrayInputStream in = new ByteArrayInputStream(bytes("PING one\r\nPING two\r\nPING unterminated"));
+		assertEquals(framer.readLine(in), "PING one");
+		assertEquals(framer.readLine(in), "PING two");
+		assertEquals(framer.readLine(in), "PING unterminated");
+		assertNull(framer.readLine(in));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class MessageTagsTest {
+	@Test
+	public void getTest() {
+		MessageTags tags = MessageTags.parse("aaa=bbb;ccc;example.com/ddd=eee;empty=");
+		assertEquals(tags.get("aaa"), "bbb");
+		assertEquals(tags.get("ccc"), "");
+		assertEquals(tags.get("example.com/ddd"), "eee");
+		assertEquals(tags.get("empty"), "");
+		assertNull(tags.get("aa"));
+		assertNull(tags.get("missing"));
+		assertTrue(tags.containsKey("ccc"));
+		assertFalse(tags.containsKey("bbb"));
+		assertEquals(tags.size(), 4);
+	}
+
+	@Test
+	public void unescapeTest() {
+		MessageTags tags = MessageTags.parse("a=semi\\:space\\sslash\\\\cr\\rlf\\n;b=unknown\\bend\\;c=value=with=equals");
+		assertEquals(tags.get("a"), "semi;space slash\\cr\rlf\n");
+		assertEquals(tags.get("b"), "unknownbend");
+		assertEquals(tags.get("c"), "value=with=equals");
+		assertEquals(Utils.unescapeV3TagValue("no escapes"), "no escapes");
+		assertEquals(Utils.unescapeV3TagValue("\\\\s"), "\\s");
+	}
+
+	@Test
+	public void duplicateAndEmptyTest() {
+		MessageTags tags = MessageTags.parse(";key=first;;key=second;");
+		assertEquals(tags.get("key"), "second");
+		assertEquals(tags.asMap(), ImmutableMap.of("key", "second"));
+		assertEquals(tags.size(), 1);
+	}
+
+	@Test
+	public void mapEqualityTest() {
+		MessageTags tags = MessageTags.parse("aaa=b\\sb;ccc");
+		ImmutableMap<String, String> expected = ImmutableMap.of("aaa", "b b", "ccc", "");
+		assertEquals(tags, expected);
+		assertEquals(tags.hashCode(), expected.hashCode());
+		assertEquals(MessageTags.copyOf(expected), expected);
+		assertEquals(MessageTags.copyOf(ImmutableMap.of("k", "; \\\r\n")).get("k"), "; \\\r\n");
+	}
+
+	@Test
+	public void emptyTest() {
+		assertTrue(MessageTags.EMPTY.isEmpty());
+		assertNull(MessageTags.EMPTY.get("key"));
+		assertTrue(MessageTags.parse(";;").isEmpty());
+		assertTrue(IrcMessage.parse("PING :server").getTags().isEmpty());
+	}
+
+	@Test
+	public void fromMessageTest() {
+		IrcMessage message = IrcMessage.parse("@time=2022-01-01T00:00:00.000Z;account=nick :nick!ident@host PRIVMSG #chan :hi");
+		assertEquals(message.getTags().get("account"), "nick");
+		assertEquals(message.getTags().getRawTags(), "time=2022-01-01T00:00:00.000Z;account=nick");
+		assertSame(message.getTags(), message.getTags());
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void unmodifiableTest() {
+		MessageTags.parse("aaa=bbb").put("ccc", "ddd");
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.exception.IrcException;
+import org.pircbotx.hooks.events.UserListEvent;
+import org.pircbotx.hooks.events.WhoEvent;
+import org.pircbotx.hooks.events.WhoisEvent;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class QueryCacheTest {
+	protected TestPircBotX bot;
+
+	@BeforeMethod
+	public void setUp() {
+		bot = new TestPircBotX(TestUtils.generateConfigurationBuilder());
+		bot.nick = "TestBot";
+	}
+
+	@Test
+	public void whoisCoalescedTest() throws Exception {
+		CompletableFuture<WhoisEvent> first = bot.sendIRC().whoisAsync("SomeUser");
+		CompletableFuture<WhoisEvent> second = bot.sendIRC().whoisAsync("someuser");
+		assertEquals(bot.outputQueue.size(), 1);
+		assertEquals(bot.outputQueue.poll(), "WHOIS SomeUser SomeUser");
+
+		whoisReply("SomeUser", "someAccount");
+		assertEquals(first.get(0, TimeUnit.SECONDS).getRegisteredAs(), "someAccount");
+		assertSame(second.get(0, TimeUnit.SECONDS), first.get());
+
+		//Cached
+		assertSame(bot.sendIRC().whoisAsync("SomeUser").get(0, TimeUnit.SECONDS), first.get());
+		assertTrue(bot.outputQueue.isEmpty());
+	}
+
+	@Test
+	public void cancelTest() throws Exception {
+		CompletableFuture<WhoisEvent> first = bot.sendIRC().whoisAsync("SomeUser");
+		CompletableFuture<WhoisEvent> second = bot.sendIRC().whoisAsync("SomeUser");
+		first.cancel(false);
+		whoisReply("SomeUser", "someAccount");
+		assertEquals(second.get(0, TimeUnit.SECONDS).getNick(), "SomeUser");
+	}
+
+	@Test
+	public void invalidateTest() throws Exception {
+		bot.getInputParser().handleLine(":TestBot!~login@host JOIN #aChannel");
+		bot.getInputParser().handleLine(":SomeUser!~login@host JOIN #aChannel");
+		bot.sendIRC().whoisAsync("SomeUser");
+		whoisReply("SomeUser", "someAccount");
+		bot.outputQueue.clear();
+
+		bot.getInputParser().handleLine(":SomeUser!~login@host ACCOUNT otherAccount");
+		CompletableFuture<WhoisEvent> afterAccount = bot.sendIRC().whoisAsync("SomeUser");
+		assertEquals(bot.outputQueue.poll(), "WHOIS SomeUser SomeUser");
+		whoisReply("SomeUser", "otherAccount");
+		assertEquals(afterAccount.get(0, TimeUnit.SECONDS).getRegisteredAs(), "otherAccount");
+
+		bot.getInputParser().handleLine(":SomeUser!~login@host QUIT :Bye");
+		bot.sendIRC().whoisAsync("SomeUser");
+		assertEquals(bot.outputQueue.poll(), "WHOIS SomeUser SomeUser");
+	}
+
+	@Test
+	public void ttlTest() throws Exception {
+		bot = new TestPircBotX(TestUtils.generateConfigurationBuilder().setQueryCacheTtl(0));
+		bot.sendIRC().whoisAsync("SomeUser");
+		bot.sendIRC().whoisAsync("SomeUser");
+		assertEquals(bot.outputQueue.size(), 1);
+		whoisReply("SomeUser", "someAccount");
+
+		bot.sendIRC().whoisAsync("SomeUser");
+		assertEquals(bot.outputQueue.size(), 2);
+	}
+
+	@Test
+	public void whoAndNamesTest() throws Exception {
+		bot.getInputParser().handleLine(":TestBot!~login@host JOIN #aChannel");
+		bot.outputQueue.clear();
+
+		CompletableFuture<WhoEvent> who = bot.sendIRC().whoAsync("#aChannel");
+		bot.sendIRC().whoAsync("#achannel");
+		CompletableFuture<UserListEvent> names = bot.getUserChannelDao().getChannel("#aChannel").send().namesAsync();
+		assertEquals(bot.outputQueue.poll(), "WHO #aChannel");
+		assertEquals(bot.outputQueue.poll(), "NAMES #aChannel");
+		assertTrue(bot.outputQueue.isEmpty());
+
+		bot.getInputParser().handleLine(":irc.someserver.net 353 TestBot = #aChannel :@TestBot OtherUser");
+		bot.getInputParser().handleLine(":irc.someserver.net 366 TestBot #aChannel :End of /NAMES list.");
+		assertEquals(names.get(0, TimeUnit.SECONDS).getUsers().size(), 2);
+		bot.getInputParser().handleLine(":irc.someserver.net 315 TestBot #aChannel :End of /WHO list");
+		assertEquals(who.get(0, TimeUnit.SECONDS).getQuery(), "#aChannel");
+
+		//Someone joining changes both
+		bot.getInputParser().handleLine(":NewUser!~login@host JOIN #aChannel");
+		bot.sendIRC().whoAsync("#aChannel");
+		bot.sendIRC().namesAsync("#aChannel");
+		assertEquals(bot.outputQueue.size(), 2);
+	}
+
+	protected void whoisReply(String nick, String account) throws IOException, IrcException {
+		bot.getInputParser().handleLine(":irc.someserver.net 311 TestBot " + nick + " ~login some.host * :Real Name");
+		bot.getInputParser().handleLine(":irc.someserver.net 330 TestBot " + nick + " " + account + " :is logged in as");
+		bot.getInputParser().handleLine(":irc.someserver.net 318 TestBot " + nick + " :End of /WHOIS list.");
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static org.testng.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Connect bots through a {@link SelectorEngine} to a local server socket
+ */
+@Test(singleThreaded = true)
+public class SelectorEngineTest {
+	protected SelectorEngine engine;
+	protected ServerSocket serverSocket;
+	protected List<Event> events;
+	protected List<String> serverReceived;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		engine = new SelectorEngine(1);
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		events = new CopyOnWriteArrayList<>();
+		serverReceived = new CopyOnWriteArrayList<>();
+	}
+
+	@AfterMethod
+	public void cleanUp() throws Exception {
+		serverSocket.close();
+		engine.close();
+	}
+
+	protected Configuration.Builder configurationBuilder() {
+		Configuration.Builder builder = TestUtils.generateConfigurationBuilder()
+				.addListener(new Listener() {
+					@Override
+					public void onEvent(Event event) throws Exception {
+						events.add(event);
+					}
+				})
+				.setSelectorEngine(engine);
+		builder.getServers().clear();
+		builder.addServer("127.0.0.1", serverSocket.getLocalPort());
+		return builder;
+	}
+
+	/**
+	 * Accept one connection, wait for registration, send the lines, then close
+	 */
+	protected Thread startServer(final String... lines) {
+		Thread serverThread = new Thread() {
+			@Override
+			public void run() {
+				try (Socket client = serverSocket.accept()) {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+					String line;
+					while ((line = reader.readLine()) != null) {
+						serverReceived.add(line);
+						if (line.startsWith("USER "))
+							break;
+					}
+					OutputStream out = client.getOutputStream();
+					for (String curLine : lines)
+						out.write((curLine + "\r\n").getBytes(StandardCharsets.UTF_8));
+					out.flush();
+				} catch (Exception e) {
+					throw new RuntimeException("Test server failed", e);
+				}
+			}
+		};
+		serverThread.start();
+		return serverThread;
+	}
+
+	@Test(timeOut = 10000)
+	public void connectAndReceiveTest() throws Exception {
+		Thread serverThread = startServer(":ircd.test 004 TestBot ircd.test jmeter-ircd-basic-0.1 ov b",
+				":SourceUser!~SomeTest@host.test PRIVMSG TestBot :Hello é");
+		PircBotX bot = new PircBotX(configurationBuilder()
+				.setEncoding(StandardCharsets.UTF_8)
+				.buildConfiguration());
+
+		//Blocks until the server closes the connection
+		bot.startBot();
+		serverThread.join();
+
+		assertEquals(serverReceived.get(0), "NICK TestBot");
+		assertTrue(serverReceived.get(1).startsWith("USER "), "Unexpected line " + serverReceived.get(1));
+
+		assertEquals(events.get(0).getClass().getSimpleName(), "SocketConnectEvent");
+		PrivateMessageEvent messageEvent = null;
+		boolean connected = false;
+		for (Event curEvent : events) {
+			if (curEvent instanceof ConnectEvent)
+				connected = true;
+			else if (curEvent instanceof PrivateMessageEvent)
+				messageEvent = (PrivateMessageEvent) curEvent;
+		}
+		assertTrue(connected, "No ConnectEvent dispatched");
+		assertNotNull(messageEvent, "No PrivateMessageEvent dispatched");
+		assertEquals(messageEvent.getMessage(), "Hello é");
+		assertEquals(messageEvent.getUser().getNick(), "SourceUser");
+		assertTrue(events.get(events.size() - 1) instanceof DisconnectEvent, "Last event isn't DisconnectEvent");
+		assertEquals(bot.getState(), PircBotX.State.DISCONNECTED);
+	}
+
+	@Test(timeOut = 10000)
+	public void startBotAsyncTest() throws Exception {
+		Thread serverThread = startServer(":ircd.test 004 TestBot ircd.test jmeter-ircd-basic-0.1 ov b");
+		PircBotX bot = new PircBotX(configurationBuilder().buildConfiguration());
+
+		ListenableFuture<Void> future = bot.startBotAsync();
+		serverThread.join();
+		future.get(5, TimeUnit.SECONDS);
+
+		assertTrue(events.get(events.size() - 1) instanceof DisconnectEvent, "Last event isn't DisconnectEvent");
+	}
+
+	@Test(timeOut = 10000)
+	public void reconnectTest() throws Exception {
+		Thread serverThread = startServer();
+		PircBotX bot = new PircBotX(configurationBuilder()
+				.setAutoReconnect(true)
+				.setAutoReconnectAttempts(2)
+				.buildConfiguration());
+
+		ListenableFuture<Void> future = bot.startBotAsync();
+		serverThread.join();
+		//Connection closed before logging in so the attempt counts as failed
+		serverThread = startServer();
+		serverThread.join();
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Bot should fail after 2 attempts");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException, "Unexpected exception " + e.getCause());
+		}
+
+		int disconnects = 0;
+		for (Event curEvent : events)
+			if (curEvent instanceof DisconnectEvent)
+				disconnects++;
+		assertEquals(disconnects, 2);
+	}
+
+	@Test(timeOut = 10000)
+	public void connectNextAddressTest() throws Exception {
+		//Nothing listens on a just closed port
+		ServerSocket closedSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		int closedPort = closedSocket.getLocalPort();
+		closedSocket.close();
+
+		Thread serverThread = startServer(":ircd.test 004 TestBot ircd.test jmeter-ircd-basic-0.1 ov b");
+		Configuration.Builder builder = configurationBuilder();
+		builder.getServers().add(0, new Configuration.ServerEntry("127.0.0.1", closedPort));
+		PircBotX bot = new PircBotX(builder.buildConfiguration());
+
+		//The refused connection is logged
+		TestUtils.exAppender.failOnException = false;
+		try {
+			ListenableFuture<Void> future = bot.startBotAsync();
+			serverThread.join();
+			future.get(5, TimeUnit.SECONDS);
+		} finally {
+			TestUtils.exAppender.failOnException = true;
+		}
+
+		assertEquals(serverReceived.get(0), "NICK TestBot");
+		assertEquals(bot.getServerPort(), serverSocket.getLocalPort());
+		boolean connected = false;
+		for (Event curEvent : events)
+			if (curEvent instanceof ConnectEvent)
+				connected = true;
+		assertTrue(connected, "No ConnectEvent dispatched");
+	}
+
+	@Test(timeOut = 10000)
+	public void pauseReadingTest() throws Exception {
+		final CountDownLatch paused = new CountDownLatch(1);
+		final CountDownLatch serverDone = new CountDownLatch(1);
+		Thread serverThread = new Thread() {
+			@Override
+			public void run() {
+				try (Socket client = serverSocket.accept()) {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+					String line;
+					while ((line = reader.readLine()) != null)
+						if (line.startsWith("USER "))
+							break;
+					OutputStream out = client.getOutputStream();
+					out.write(":ircd.test 004 TestBot ircd.test jmeter-ircd-basic-0.1 ov b\r\n".getBytes(StandardCharsets.UTF_8));
+					out.flush();
+					paused.await();
+					Thread.sleep(100);
+					out.write(":SourceUser!~SomeTest@host.test PRIVMSG TestBot :Hello\r\n".getBytes(StandardCharsets.UTF_8));
+					out.flush();
+					serverDone.await();
+				} catch (Exception e) {
+					throw new RuntimeException("Test server failed", e);
+				}
+			}
+		};
+		serverThread.start();
+		PircBotX bot = new PircBotX(configurationBuilder()
+				.addListener(new Listener() {
+					@Override
+					public void onEvent(Event event) throws Exception {
+						if (event instanceof ConnectEvent) {
+							event.getBot().pauseReading();
+							paused.countDown();
+						}
+					}
+				})
+				.buildConfiguration());
+
+		ListenableFuture<Void> future = bot.startBotAsync();
+		paused.await();
+		Thread.sleep(300);
+		for (Event curEvent : events)
+			assertFalse(curEvent instanceof PrivateMessageEvent, "Read while paused");
+
+		bot.resumeReading();
+		boolean received = false;
+		while (!received) {
+			Thread.sleep(10);
+			for (Event curEvent : events)
+				if (curEvent instanceof PrivateMessageEvent)
+					received = true;
+		}
+		serverDone.countDown();
+		serverThread.join();
+		future.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void sslSocketFactoryRejectedTest() {
+		configurationBuilder()
+				.setSocketFactory(new UtilSSLSocketFactory())
+				.buildConfiguration();
+	}
+}
@@ -17,7 +17,15 @@
  */
 package org.pircbotx;
 
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
 import org.pircbotx.exception.DaoException;
+import org.pircbotx.snapshot.ChannelSnapshot;
+import org.pircbotx.snapshot.SnapshotScope;
+import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+import org.pircbotx.snapshot.UserSnapshot;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
@@ -107,4 +115,190 @@ public class UserChannelDaoTest {
 		//The following was removed since Users need to rely on uuid's to keep the DAO in sync
 		//assertEquals(user1.hashCode(), user2.hashCode());
 	}
+
+	@Test
+	public void snapshotUnchangedTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		Channel channel = dao.createChannel("#aChannel");
+		dao.addUserToChannel(user, channel);
+		dao.addUserToChannel(otherUser, channel);
+		dao.addUserToLevel(UserLevel.OP, user, channel);
+		UserChannelDaoSnapshot snapshot = dao.createSnapshot();
+
+		dao.renameUser(otherUser, "RenamedUser");
+		dao.removeUserFromLevel(UserLevel.OP, user, channel);
+		dao.removeUser(user);
+		dao.removeChannel(channel);
+		assertFalse(dao.containsChannel("#aChannel"));
+		assertTrue(dao.containsUser("RenamedUser"));
+		assertFalse(dao.containsUser("SourceUser"));
+
+		assertTrue(snapshot.containsUser("SourceUser"));
+		assertTrue(snapshot.containsUser("OtherUser"));
+		assertFalse(snapshot.containsUser("RenamedUser"));
+		ChannelSnapshot channelSnapshot = snapshot.getChannel("#aChannel");
+		UserSnapshot userSnapshot = snapshot.getUser("SourceUser");
+		assertEquals(snapshot.getUsers(channelSnapshot).size(), 2);
+		assertEquals(snapshot.getUsers(channelSnapshot, UserLevel.OP), ImmutableSortedSet.of(userSnapshot));
+		assertEquals(snapshot.getLevels(channelSnapshot, userSnapshot), ImmutableSortedSet.of(UserLevel.OP));
+		assertEquals(snapshot.getChannels(userSnapshot), ImmutableSortedSet.of(channelSnapshot));
+		//Snapshots look up relationships in the snapshot dao
+		assertEquals(userSnapshot.getChannels(), ImmutableSortedSet.of(channelSnapshot));
+		assertEquals(channelSnapshot.getOps(), ImmutableSortedSet.of(userSnapshot));
+	}
+
+	@Test
+	public void snapshotValuesTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		Channel channel = dao.createChannel("#aChannel");
+		dao.addUserToChannel(user, channel);
+		dao.addUserToChannel(otherUser, channel);
+		channel.setTopic("first");
+		UserChannelDaoSnapshot firstSnapshot = dao.createSnapshot();
+		channel.setTopic("second");
+		user.setAwayMessage("away");
+		UserChannelDaoSnapshot secondSnapshot = dao.createSnapshot();
+		channel.setTopic("third");
+		dao.renameUser(user, "RenamedUser");
+
+		assertEquals(firstSnapshot.getChannel("#aChannel").getTopic(), "first");
+		assertEquals(secondSnapshot.getChannel("#aChannel").getTopic(), "second");
+		assertEquals(channel.getTopic(), "third");
+		assertFalse(firstSnapshot.getUser("SourceUser").isAway());
+		assertEquals(secondSnapshot.getUser("SourceUser").getAwayMessage(), "away");
+		assertEquals(secondSnapshot.getUser("SourceUser").getNick(), "SourceUser");
+		//Never changed, copied from the live user
+		assertEquals(firstSnapshot.getUser("OtherUser").getGeneratedFrom(), otherUser);
+		assertSame(firstSnapshot.getUser("OtherUser"), firstSnapshot.getUser("OtherUser"));
+	}
+
+	@Test
+	public void snapshotScopeTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		Channel channel = dao.createChannel("#aChannel");
+		Channel otherChannel = dao.createChannel("#otherChannel");
+		dao.addUserToChannel(user, channel);
+		dao.addUserToChannel(user, otherChannel);
+		dao.addUserToChannel(otherUser, channel);
+		dao.addUserToLevel(UserLevel.VOICE, user, channel);
+
+		UserChannelDaoSnapshot partSnapshot = dao.createSnapshot(SnapshotScope.AFFECTED, user, channel);
+		assertEquals(partSnapshot.getAllUsers().size(), 1);
+		assertEquals(partSnapshot.getAllChannels().size(), 1);
+		UserSnapshot userSnapshot = partSnapshot.getUser("SourceUser");
+		ChannelSnapshot channelSnapshot = partSnapshot.getChannel("#aChannel");
+		assertEquals(channelSnapshot.getUsers(), ImmutableSortedSet.of(userSnapshot));
+		assertEquals(userSnapshot.getUserLevels(channelSnapshot), ImmutableSortedSet.of(UserLevel.VOICE));
+		assertFalse(partSnapshot.containsUser("OtherUser"));
+
+		UserChannelDaoSnapshot quitSnapshot = dao.createSnapshot(SnapshotScope.AFFECTED, user, null);
+		assertEquals(quitSnapshot.getChannels(quitSnapshot.getUser("SourceUser")).size(), 2);
+		assertFalse(quitSnapshot.containsUser("OtherUser"));
+		//Copied when created
+		channel.setTopic("changed");
+		assertEquals(quitSnapshot.getChannel("#aChannel").getTopic(), "");
+	}
+
+	@Test
+	public void levelsTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		Channel channel = dao.createChannel("#aChannel");
+		dao.addUserToChannel(user, channel);
+		dao.addUserToChannel(otherUser, channel);
+		dao.addUserToLevel(UserLevel.OP, user, channel);
+		dao.addUserToLevel(UserLevel.VOICE, user, channel);
+		assertEquals(dao.getLevels(channel, user), ImmutableSortedSet.of(UserLevel.OP, UserLevel.VOICE));
+		assertEquals(dao.getNormalUsers(channel), ImmutableSortedSet.of(otherUser));
+		assertEquals(dao.getUsers(channel, UserLevel.VOICE), ImmutableSortedSet.of(user));
+		assertEquals(dao.getChannels(user, UserLevel.OP), ImmutableSortedSet.of(channel));
+		assertTrue(dao.getNormalUserChannels(user).isEmpty());
+
+		//Removing levels keeps the user in the channel
+		dao.removeUserFromLevel(UserLevel.OP, user, channel);
+		dao.removeUserFromLevel(UserLevel.VOICE, user, channel);
+		assertTrue(dao.getLevels(channel, user).isEmpty());
+		assertEquals(dao.getNormalUsers(channel).size(), 2);
+		assertFalse(dao.levelContainsUser(UserLevel.OP, channel, user));
+
+		//Parting drops the levels
+		dao.addUserToLevel(UserLevel.OP, user, channel);
+		dao.removeUserFromChannel(user, channel);
+		dao.addUserToChannel(user, channel);
+		assertTrue(dao.getLevels(channel, user).isEmpty());
+	}
+
+	@Test
+	public void idTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		assertTrue(otherUser.getUserId() > user.getUserId());
+		assertEquals(user.hashCode(), user.getUserId());
+		Channel channel = dao.createChannel("#aChannel");
+		assertTrue(dao.createChannel("#otherChannel").getChannelId() > channel.getChannelId());
+	}
+
+	@Test
+	public void viewsTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		Channel channel = dao.createChannel("#aChannel");
+		dao.addUserToChannel(user, channel);
+
+		//Sets are reused until the channel changes
+		ImmutableSortedSet<User> users = channel.getUsers();
+		assertSame(channel.getUsers(), users);
+		assertSame(user.getChannels(), user.getChannels());
+		assertSame(dao.getAllUsers(), dao.getAllUsers());
+		dao.addUserToChannel(otherUser, channel);
+		assertEquals(channel.getUsers(), ImmutableSortedSet.of(user, otherUser));
+
+		ImmutableSortedSet<User> ops = channel.getOps();
+		assertTrue(ops.isEmpty());
+		dao.addUserToLevel(UserLevel.OP, user, channel);
+		assertEquals(channel.getOps(), ImmutableSortedSet.of(user));
+		assertEquals(channel.getNormalUsers(), ImmutableSortedSet.of(otherUser));
+
+		//Renames can change the order
+		users = channel.getUsers();
+		dao.renameUser(otherUser, "AAAUser");
+		assertNotSame(channel.getUsers(), users);
+		assertEquals(channel.getUsers().first(), otherUser);
+
+		dao.removeUserFromChannel(otherUser, channel);
+		assertEquals(channel.getUsers(), ImmutableSortedSet.of(user));
+		assertTrue(otherUser.getChannels().isEmpty());
+	}
+
+	@Test
+	public void countTest() {
+		User user = dao.createUser(TestUtils.generateTestUserSourceHostmask(smallBot));
+		User otherUser = dao.createUser(TestUtils.generateTestUserOtherHostmask(smallBot));
+		Channel channel = dao.createChannel("#aChannel");
+		assertEquals(channel.getUserCount(), 0);
+		dao.addUserToChannel(user, channel);
+		dao.addUserToChannel(otherUser, channel);
+		assertEquals(channel.getUserCount(), 2);
+		assertEquals(user.getChannelCount(), 1);
+
+		final Set<User> users = new HashSet<User>();
+		channel.forEachUser(new Consumer<User>() {
+			@Override
+			public void accept(User curUser) {
+				users.add(curUser);
+			}
+		});
+		assertEquals(users, channel.getUsers());
+		final Set<Channel> channels = new HashSet<Channel>();
+		user.forEachChannel(new Consumer<Channel>() {
+			@Override
+			public void accept(Channel curChannel) {
+				channels.add(curChannel);
+			}
+		});
+		assertEquals(channels, ImmutableSortedSet.of(channel));
+	}
 }
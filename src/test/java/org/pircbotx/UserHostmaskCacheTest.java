@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.IOException;
+import org.pircbotx.exception.IrcException;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class UserHostmaskCacheTest {
+	protected static TestPircBotX joinedBot() throws IOException, IrcException {
+		TestPircBotX bot = new TestPircBotX(TestUtils.generateConfigurationBuilder());
+		bot.getInputParser().handleLine(":" + bot.getNick() + "!~login@bot.host JOIN :#aChannel");
+		bot.getInputParser().handleLine(":SourceUser!~SomeTest@host.test JOIN :#aChannel");
+		return bot;
+	}
+
+	@Test
+	public void hitMissTest() {
+		TestPircBotX bot = new TestPircBotX(TestUtils.generateConfigurationBuilder());
+		UserHostmaskCache cache = bot.getUserHostmaskCache();
+		UserHostmask first = cache.get("aNick!~aLogin@some.host");
+		assertEquals(first.getNick(), "aNick");
+		assertEquals(first.getLogin(), "~aLogin");
+		assertEquals(first.getHostname(), "some.host");
+		assertSame(cache.get("aNick!~aLogin@some.host"), first);
+		assertNotSame(cache.get("otherNick!~aLogin@some.host"), first);
+		assertEquals(cache.getHitCount(), 1);
+		assertEquals(cache.getMissCount(), 2);
+	}
+
+	@Test
+	public void boundedTest() {
+		TestPircBotX bot = new TestPircBotX(TestUtils.generateConfigurationBuilder()
+				.setUserHostmaskCacheSize(10));
+		for (int i = 0; i < 100; i++)
+			bot.getUserHostmaskCache().get("nick" + i + "!~login@some.host");
+		assertTrue(bot.getUserHostmaskCache().size() <= 10, "Cache grew to " + bot.getUserHostmaskCache().size());
+	}
+
+	@Test
+	public void disabledTest() {
+		TestPircBotX bot = new TestPircBotX(TestUtils.generateConfigurationBuilder()
+				.setUserHostmaskCacheSize(0));
+		UserHostmaskCache cache = bot.getUserHostmaskCache();
+		assertNotSame(cache.get("aNick!~aLogin@some.host"), cache.get("aNick!~aLogin@some.host"));
+		assertEquals(cache.size(), 0);
+	}
+
+	@Test
+	public void sharedBetweenLinesTest() throws IOException, IrcException {
+		TestPircBotX bot = joinedBot();
+		bot.getInputParser().handleLine(":SourceUser!~SomeTest@host.test PRIVMSG #aChannel :hi");
+		MessageEvent event = bot.getTestEvent(MessageEvent.class);
+		assertSame(event.getUserHostmask(), bot.getUserHostmaskCache().get("SourceUser!~SomeTest@host.test"));
+	}
+
+	@Test
+	public void nickInvalidatesTest() throws IOException, IrcException {
+		TestPircBotX bot = joinedBot();
+		long size = bot.getUserHostmaskCache().size();
+		bot.getInputParser().handleLine(":SourceUser!~SomeTest@host.test NICK :NewNick");
+		assertEquals(bot.getUserHostmaskCache().size(), size - 1);
+		assertEquals(bot.getUserChannelDao().getUser("NewNick").getLogin(), "~SomeTest");
+	}
+
+	@Test
+	public void chghostInvalidatesTest() throws IOException, IrcException {
+		TestPircBotX bot = joinedBot();
+		long size = bot.getUserHostmaskCache().size();
+		bot.getInputParser().handleLine(":SourceUser!~SomeTest@host.test CHGHOST ~newLogin new.host");
+		assertEquals(bot.getUserHostmaskCache().size(), size - 1);
+		User user = bot.getUserChannelDao().getUser("SourceUser");
+		assertEquals(user.getHostmask(), "SourceUser!~newLogin@new.host");
+	}
+}
@@ -17,6 +17,7 @@
  */
 package org.pircbotx;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
@@ -35,7 +36,7 @@ public class UtilsTest {
 
 	@Test(dataProvider = "suffixDataProvider")
 	public void tokenizeChannelMessageTest(String suffix) {
-		List<String> tokens = Utils.tokenizeLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :" + testString + suffix);
+		List<String> tokens = Utils.tokenizeLine(frame(":AUser!~ALogin@some.host PRIVMSG #aChannel :" + testString + suffix));
 
 		assertEquals(tokens.size(), 4, "Unexpected length: " + tokens);
 		assertEquals(tokens.get(0), ":AUser!~ALogin@some.host");
@@ -46,13 +47,22 @@ public class UtilsTest {
 
 	@Test(dataProvider = "suffixDataProvider")
 	public void tokenizePing(String suffix) {
-		List<String> tokens = Utils.tokenizeLine("PING sa3214323" + suffix);
+		List<String> tokens = Utils.tokenizeLine(frame("PING sa3214323" + suffix));
 
 		assertEquals(tokens.size(), 2, "Unexpected length: " + tokens);
 		assertEquals(tokens.get(0), "PING");
 		assertEquals(tokens.get(1), "sa3214323");
 	}
 
+	/**
+	 * Trailing whitespace is trimmed by the framer, not the tokenizer
+	 */
+	protected static String frame(String line) {
+		LineFramer framer = new LineFramer(StandardCharsets.UTF_8);
+		framer.getBuffer().put((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+		return framer.nextLine();
+	}
+
 	@Test
 	public void parseCommandTest() {
 		assertEquals(Utils.parseCommand("?say ", "?say hi everybody"), "hi everybody");
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class VirtualThreadsTest {
+	protected static final Runnable NOOP = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	@Test
+	public void threadFactoryTest() {
+		ThreadFactory factory = VirtualThreads.newThreadFactory("test-thread%d", true);
+		Thread first = factory.newThread(NOOP);
+		Thread second = factory.newThread(NOOP);
+		assertEquals(first.getName(), "test-thread1");
+		assertEquals(second.getName(), "test-thread2");
+		assertEquals(factory.newThread(NOOP).isDaemon(), true);
+		if (!VirtualThreads.isEnabled())
+			assertFalse(VirtualThreads.newThreadFactory("test-thread%d", false).newThread(NOOP).isDaemon());
+		assertEquals(VirtualThreads.newThreadFactory("test-%d-thread", true).newThread(NOOP).getName(), "test-1-thread");
+	}
+
+	@Test
+	public void cachedThreadPoolTest() throws InterruptedException {
+		ExecutorService pool = VirtualThreads.newCachedThreadPool("testPool-thread%d", true);
+		final AtomicReference<String> threadName = new AtomicReference<>();
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				threadName.set(Thread.currentThread().getName());
+			}
+		});
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(threadName.get(), "testPool-thread1");
+	}
+
+	@Test
+	public void startThreadSubclassTest() throws InterruptedException {
+		final AtomicReference<Thread> ranIn = new AtomicReference<>();
+		Thread subclass = new Thread() {
+			@Override
+			public void run() {
+				ranIn.set(Thread.currentThread());
+			}
+		};
+		Thread started = VirtualThreads.start(subclass, "test-subclass", false);
+		started.join(10000);
+		assertFalse(started.isAlive());
+		assertSame(ranIn.get(), started);
+		assertEquals(started.getName(), "test-subclass");
+		if (!VirtualThreads.isEnabled())
+			assertSame(started, subclass);
+	}
+}
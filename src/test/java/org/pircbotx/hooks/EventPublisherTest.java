@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.SocketConnectEvent;
+import org.pircbotx.hooks.managers.GenericListenerManager;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class EventPublisherTest {
+	protected PircBotX bot1;
+	protected PircBotX bot2;
+	protected GenericListenerManager manager;
+
+	@BeforeMethod
+	public void setup() {
+		manager = new GenericListenerManager();
+		bot1 = new PircBotX(TestUtils.generateConfigurationBuilder().setListenerManager(manager).buildConfiguration());
+		bot2 = new PircBotX(TestUtils.generateConfigurationBuilder().setListenerManager(manager).buildConfiguration());
+	}
+
+	@Test
+	public void demandTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 16, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>();
+		assertFalse(manager.listenerExists(publisher));
+		publisher.subscribe(subscriber);
+		assertTrue(manager.listenerExists(publisher), "Publisher wasn't added when subscribed");
+
+		manager.onEvent(new ConnectEvent(bot1));
+		assertTrue(subscriber.events.isEmpty(), "Sent before request");
+		subscriber.subscription.request(2);
+		assertEquals(subscriber.events.size(), 1);
+		manager.onEvent(new ConnectEvent(bot2));
+		manager.onEvent(new ConnectEvent(bot1));
+		assertEquals(subscriber.events.size(), 2);
+		subscriber.subscription.request(1);
+		assertEquals(subscriber.events.size(), 3);
+
+		subscriber.subscription.cancel();
+		assertFalse(manager.listenerExists(publisher), "Publisher wasn't removed without subscribers");
+		manager.onEvent(new ConnectEvent(bot1));
+		assertEquals(subscriber.events.size(), 3);
+	}
+
+	@Test
+	public void filterTest() {
+		EventPublisher<Event> publisher = new EventPublisher<Event>(manager, Event.class, bot1, 16, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<Event> subscriber = new RecordingSubscriber<Event>();
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(publisher.getRoute(), ListenerRoute.bot(bot1));
+
+		manager.onEvent(new ConnectEvent(bot1));
+		manager.onEvent(new ConnectEvent(bot2));
+		manager.onEvent(new SocketConnectEvent(bot1));
+		assertEquals(subscriber.events.size(), 2);
+		for (Event curEvent : subscriber.events)
+			assertSame(curEvent.getBot(), bot1);
+
+		EventPublisher<SocketConnectEvent> typedPublisher = new EventPublisher<SocketConnectEvent>(manager, SocketConnectEvent.class, 16, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<SocketConnectEvent> typedSubscriber = new RecordingSubscriber<SocketConnectEvent>();
+		typedPublisher.subscribe(typedSubscriber);
+		typedSubscriber.subscription.request(Long.MAX_VALUE);
+		manager.onEvent(new ConnectEvent(bot1));
+		manager.onEvent(new SocketConnectEvent(bot2));
+		assertEquals(typedSubscriber.events.size(), 1);
+	}
+
+	@Test
+	public void fanOutTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 16, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<ConnectEvent> subscriber1 = new RecordingSubscriber<ConnectEvent>();
+		RecordingSubscriber<ConnectEvent> subscriber2 = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(subscriber1);
+		publisher.subscribe(subscriber2);
+		assertEquals(publisher.getSubscriberCount(), 2);
+		subscriber1.subscription.request(1);
+
+		ConnectEvent event = new ConnectEvent(bot1);
+		manager.onEvent(event);
+		assertSame(subscriber1.events.get(0), event);
+		assertTrue(subscriber2.events.isEmpty());
+		subscriber2.subscription.request(1);
+		assertSame(subscriber2.events.get(0), event);
+	}
+
+	@Test
+	public void dropOldestTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 2, EventPublisher.Overflow.DROP_OLDEST);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(subscriber);
+		List<ConnectEvent> events = new ArrayList<ConnectEvent>();
+		for (int i = 0; i < 4; i++) {
+			ConnectEvent event = new ConnectEvent(bot1);
+			events.add(event);
+			manager.onEvent(event);
+		}
+		subscriber.subscription.request(10);
+		assertEquals(subscriber.events, events.subList(2, 4));
+		assertEquals(publisher.getDroppedCount(), 2);
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	public void errorTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 1, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(subscriber);
+		manager.onEvent(new ConnectEvent(bot1));
+		manager.onEvent(new ConnectEvent(bot1));
+		assertTrue(subscriber.error instanceof IllegalStateException, "Overflow not signaled: " + subscriber.error);
+		assertTrue(subscriber.events.isEmpty());
+		assertFalse(manager.listenerExists(publisher));
+	}
+
+	@Test
+	public void invalidRequestTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 1, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(0);
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+		assertEquals(publisher.getSubscriberCount(), 0);
+	}
+
+	@Test
+	public void blockTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 1, EventPublisher.Overflow.BLOCK);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(subscriber);
+		//First fits in the buffer, second pauses the bot without holding up dispatch
+		manager.onEvent(new ConnectEvent(bot1));
+		assertFalse(bot1.isReadingPaused());
+		manager.onEvent(new ConnectEvent(bot1));
+		assertTrue(bot1.isReadingPaused(), "Full buffer didn't pause reading");
+		manager.onEvent(new ConnectEvent(bot1));
+		manager.onEvent(new ConnectEvent(bot2));
+		assertTrue(bot2.isReadingPaused());
+
+		subscriber.subscription.request(3);
+		assertEquals(subscriber.events.size(), 3);
+		assertTrue(bot1.isReadingPaused(), "Resumed before buffer had space");
+		subscriber.subscription.request(1);
+		assertEquals(subscriber.events.size(), 4);
+		assertFalse(bot1.isReadingPaused(), "Buffer space didn't resume reading");
+		assertFalse(bot2.isReadingPaused());
+
+		//Requested events don't count against the buffer
+		subscriber.subscription.request(1);
+		manager.onEvent(new ConnectEvent(bot1));
+		manager.onEvent(new ConnectEvent(bot1));
+		assertFalse(bot1.isReadingPaused());
+		manager.onEvent(new ConnectEvent(bot1));
+		assertTrue(bot1.isReadingPaused());
+		subscriber.subscription.cancel();
+		assertFalse(bot1.isReadingPaused(), "Cancel didn't resume reading");
+	}
+
+	@Test
+	public void cancelInOnSubscribeTest() {
+		final EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 1, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>() {
+			@Override
+			public void onSubscribe(EventPublisher.Subscription subscription) {
+				super.onSubscribe(subscription);
+				assertFalse(manager.listenerExists(publisher), "Registered before onSubscribe");
+				subscription.cancel();
+			}
+		};
+		publisher.subscribe(subscriber);
+		assertEquals(publisher.getSubscriberCount(), 0);
+		assertFalse(manager.listenerExists(publisher));
+	}
+
+	@Test
+	public void closeTest() {
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 4, EventPublisher.Overflow.ERROR);
+		RecordingSubscriber<ConnectEvent> subscriber = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(subscriber);
+		manager.onEvent(new ConnectEvent(bot1));
+		publisher.close();
+		assertFalse(manager.listenerExists(publisher));
+		assertFalse(subscriber.completed, "Completed before buffered events were sent");
+		subscriber.subscription.request(1);
+		assertEquals(subscriber.events.size(), 1);
+		assertTrue(subscriber.completed);
+
+		RecordingSubscriber<ConnectEvent> lateSubscriber = new RecordingSubscriber<ConnectEvent>();
+		publisher.subscribe(lateSubscriber);
+		assertTrue(lateSubscriber.completed);
+		assertFalse(manager.listenerExists(publisher));
+	}
+
+	@Test
+	public void flowTest() throws Exception {
+		Class<?> flowSubscriber;
+		try {
+			flowSubscriber = Class.forName("java.util.concurrent.Flow$Subscriber");
+		} catch (ClassNotFoundException e) {
+			throw new SkipException("Flow requires Java 9+");
+		}
+		final AtomicReference<Object> subscription = new AtomicReference<Object>();
+		final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+		Object subscriber = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{flowSubscriber}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("onSubscribe"))
+					subscription.set(args[0]);
+				else if (method.getName().equals("onNext"))
+					events.add(args[0]);
+				return null;
+			}
+		});
+		EventPublisher<ConnectEvent> publisher = new EventPublisher<ConnectEvent>(manager, ConnectEvent.class, 4, EventPublisher.Overflow.ERROR);
+		Object flowPublisher = publisher.toFlowPublisher();
+		Class.forName("java.util.concurrent.Flow$Publisher").getMethod("subscribe", flowSubscriber).invoke(flowPublisher, subscriber);
+		assertNotNull(subscription.get());
+		Class<?> flowSubscription = Class.forName("java.util.concurrent.Flow$Subscription");
+		flowSubscription.getMethod("request", long.class).invoke(subscription.get(), 1L);
+
+		ConnectEvent event = new ConnectEvent(bot1);
+		manager.onEvent(event);
+		assertEquals(events, Collections.singletonList(event));
+		flowSubscription.getMethod("cancel").invoke(subscription.get());
+		assertEquals(publisher.getSubscriberCount(), 0);
+	}
+
+	protected static class RecordingSubscriber<T> implements EventPublisher.Subscriber<T> {
+		protected EventPublisher.Subscription subscription;
+		protected final List<T> events = new ArrayList<T>();
+		protected Throwable error;
+		protected boolean completed;
+
+		@Override
+		public void onSubscribe(EventPublisher.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(T item) {
+			events.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.MotdEvent;
+import org.pircbotx.hooks.managers.ListenerManager;
+import org.pircbotx.hooks.types.GenericEvent;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class EventWaitersTest {
+	protected PircBotX bot;
+	protected ListenerManager listenerManager;
+
+	@BeforeMethod
+	public void setUp() {
+		bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		listenerManager = bot.getConfiguration().getListenerManager();
+	}
+
+	@Test
+	public void awaitEventTest() throws Exception {
+		CompletableFuture<MotdEvent> future = bot.awaitEvent(MotdEvent.class, new Predicate<MotdEvent>() {
+			@Override
+			public boolean test(MotdEvent event) {
+				return event.getMotd().equals("match");
+			}
+		});
+		assertTrue(listenerManager.listenerExists(bot.getEventWaiters()));
+		assertEquals(bot.getEventWaiters().getWaiterCount(), 1);
+
+		listenerManager.onEvent(new ConnectEvent(bot));
+		listenerManager.onEvent(new MotdEvent(bot, "other"));
+		PircBotX otherBot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		listenerManager.onEvent(new MotdEvent(otherBot, "match"));
+		assertFalse(future.isDone());
+
+		MotdEvent event = new MotdEvent(bot, "match");
+		listenerManager.onEvent(event);
+		assertSame(future.get(0, TimeUnit.SECONDS), event);
+		assertEquals(bot.getEventWaiters().getWaiterCount(), 0);
+		assertFalse(listenerManager.listenerExists(bot.getEventWaiters()));
+	}
+
+	@Test
+	public void interfaceTest() throws Exception {
+		CompletableFuture<GenericEvent> future = bot.awaitEvent(GenericEvent.class, new Predicate<GenericEvent>() {
+			@Override
+			public boolean test(GenericEvent event) {
+				return event instanceof MotdEvent;
+			}
+		});
+		MotdEvent event = new MotdEvent(bot, "motd");
+		listenerManager.onEvent(event);
+		assertSame(future.get(0, TimeUnit.SECONDS), event);
+	}
+
+	@Test
+	public void timeoutTest() throws InterruptedException {
+		CompletableFuture<MotdEvent> future = bot.awaitEvent(MotdEvent.class, new Predicate<MotdEvent>() {
+			@Override
+			public boolean test(MotdEvent event) {
+				return true;
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("Future did not time out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		} catch (TimeoutException e) {
+			fail("Timeout never fired");
+		}
+		assertEquals(bot.getEventWaiters().getWaiterCount(), 0);
+	}
+
+	@Test
+	public void cancelTest() {
+		CompletableFuture<MotdEvent> future = bot.awaitEvent(MotdEvent.class, new Predicate<MotdEvent>() {
+			@Override
+			public boolean test(MotdEvent event) {
+				return true;
+			}
+		});
+		future.cancel(false);
+		assertEquals(bot.getEventWaiters().getWaiterCount(), 0);
+		assertFalse(listenerManager.listenerExists(bot.getEventWaiters()));
+	}
+
+	@Test
+	public void waitForQueueTest() throws InterruptedException {
+		WaitForQueue queue = new WaitForQueue(bot, MotdEvent.class, GenericEvent.class);
+		MotdEvent event = new MotdEvent(bot, "motd");
+		listenerManager.onEvent(event);
+		assertSame(queue.waitFor(MotdEvent.class, 0, TimeUnit.SECONDS), event);
+		//Queued once even though it matches both types
+		assertNull(queue.waitFor(MotdEvent.class, 0, TimeUnit.SECONDS));
+
+		queue.close();
+		assertEquals(bot.getEventWaiters().getWaiterCount(), 0);
+		listenerManager.onEvent(event);
+		assertTrue(queue.eventQueue.isEmpty());
+	}
+
+	@Test
+	public void waitForQueueAllEventsTest() throws InterruptedException {
+		WaitForQueue queue = new WaitForQueue(bot);
+		//Dispatched before the first waitFor
+		MotdEvent event = new MotdEvent(bot, "motd");
+		listenerManager.onEvent(event);
+		assertSame(queue.waitFor(MotdEvent.class, 0, TimeUnit.SECONDS), event);
+
+		queue.close();
+		assertEquals(bot.getEventWaiters().getWaiterCount(), 0);
+	}
+}
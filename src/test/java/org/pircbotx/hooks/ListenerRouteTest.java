@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.User;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.managers.GenericListenerManager;
+import org.pircbotx.hooks.managers.ListenerTypeIndex;
+import org.pircbotx.snapshot.UserSnapshot;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class ListenerRouteTest {
+	protected PircBotX bot1;
+	protected PircBotX bot2;
+	protected Channel channel1;
+	protected Channel channel2;
+	protected User user1;
+	protected User user2;
+
+	@BeforeMethod
+	public void setup() {
+		bot1 = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		bot2 = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		channel1 = bot1.getUserChannelDao().createChannel("#aChannel");
+		channel2 = bot1.getUserChannelDao().createChannel("#otherChannel");
+		user1 = TestUtils.generateTestUserSource(bot1);
+		user2 = TestUtils.generateTestUserOther(bot1);
+	}
+
+	protected MessageEvent message(Channel channel, User user) {
+		return new MessageEvent(channel.getBot(), channel, channel.getName(), user, user, "hi", MessageTags.EMPTY);
+	}
+
+	@Test
+	public void indexTest() {
+		Listener unrouted = new RecordingListener();
+		Listener bot1Listener = ListenerRoute.bot(bot1).wrap(new RecordingListener());
+		Listener bot2Listener = ListenerRoute.bot(bot2).wrap(new RecordingListener());
+		Listener channelListener = ListenerRoute.channels(bot1, "#ACHANNEL").wrap(new RecordingListener());
+		Listener userListener = ListenerRoute.users(bot1, user1).wrap(new RecordingListener());
+		ListenerTypeIndex index = new ListenerTypeIndex();
+		index.setListeners(ImmutableList.of(unrouted, bot1Listener, bot2Listener, channelListener, userListener));
+
+		assertEquals(ImmutableSet.copyOf(index.getListeners(message(channel1, user1))),
+				ImmutableSet.of(unrouted, bot1Listener, channelListener, userListener));
+		assertEquals(ImmutableSet.copyOf(index.getListeners(message(channel2, user2))),
+				ImmutableSet.of(unrouted, bot1Listener));
+		Channel bot2Channel = bot2.getUserChannelDao().createChannel("#aChannel");
+		User bot2User = TestUtils.generateTestUserSource(bot2);
+		assertEquals(ImmutableSet.copyOf(index.getListeners(message(bot2Channel, bot2User))),
+				ImmutableSet.of(unrouted, bot2Listener));
+		assertEquals(index.getListeners(message(channel1, user1)).get(0), unrouted, "Unrouted listeners should come first");
+
+		//Class lookups ignore routes
+		assertEquals(index.getListeners(MessageEvent.class).size(), 5);
+		assertTrue(index.hasListeners(MessageEvent.class));
+	}
+
+	@Test
+	public void eventTypeTest() {
+		Listener channelListener = ListenerRoute.channels(channel1).wrap(new ListenerAdapter() {
+			@Override
+			public void onJoin(JoinEvent event) throws Exception {
+			}
+		});
+		ListenerTypeIndex index = new ListenerTypeIndex();
+		index.setListeners(ImmutableList.of(channelListener));
+
+		assertTrue(index.getListeners(message(channel1, user1)).isEmpty());
+		assertEquals(index.getListeners(new JoinEvent(bot1, channel1, user1, user1, MessageTags.EMPTY)),
+				ImmutableList.of(channelListener));
+		assertFalse(index.hasListeners(MessageEvent.class));
+	}
+
+	@Test
+	public void userSnapshotTest() throws Exception {
+		ListenerRoute route = ListenerRoute.users(bot1, user1);
+		assertTrue(route.matches(message(channel1, user1)));
+		assertTrue(route.matches(message(channel1, new UserSnapshot(user1))));
+		assertFalse(route.matches(message(channel1, user2)));
+
+		//Nick changes keep the route
+		bot1.getInputParser().handleLine(":" + user1.getHostmask() + " NICK :newNick");
+		assertEquals(user1.getNick(), "newNick");
+		assertTrue(route.matches(message(channel1, user1)));
+	}
+
+	@Test
+	public void managerTest() throws Exception {
+		GenericListenerManager manager = new GenericListenerManager();
+		RecordingListener delegate = new RecordingListener();
+		manager.addListener(ListenerRoute.channels(bot1, "#aChannel").wrap(delegate));
+
+		manager.onEvent(message(channel1, user1));
+		manager.onEvent(message(channel2, user1));
+		assertEquals(delegate.events.size(), 1);
+		assertEquals(((MessageEvent) delegate.events.get(0)).getChannel(), channel1);
+
+		//Equal wrappers remove the listener
+		assertTrue(manager.removeListener(ListenerRoute.channels(bot1, "#achannel").wrap(delegate)));
+		assertTrue(manager.getListeners().isEmpty());
+	}
+
+	@Test
+	public void unindexedDispatchTest() throws Exception {
+		RecordingListener delegate = new RecordingListener();
+		Listener routed = ListenerRoute.users(bot1, user2).wrap(delegate);
+		routed.onEvent(message(channel1, user1));
+		routed.onEvent(message(channel1, user2));
+		assertEquals(delegate.events.size(), 1);
+	}
+
+	@Test
+	public void temporaryListenerTest() {
+		TemporaryListener listener = new TemporaryListener(bot1) {
+		};
+		assertEquals(listener.getRoute(), ListenerRoute.bot(bot1));
+		assertNotEquals(listener.getRoute(), ListenerRoute.bot(bot2));
+		assertNotEquals(ListenerRoute.channels(bot1, "#aChannel"), ListenerRoute.channels(bot1, "#otherChannel"));
+		assertEquals(ListenerRoute.users(bot1, user1, user2), ListenerRoute.users(bot1, user2, user1));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void emptyChannelsTest() {
+		ListenerRoute.channels(bot1);
+	}
+
+	protected static class RecordingListener implements Listener {
+		protected final List<Event> events = new ArrayList<Event>();
+
+		@Override
+		public void onEvent(Event event) throws Exception {
+			events.add(event);
+		}
+	}
+}
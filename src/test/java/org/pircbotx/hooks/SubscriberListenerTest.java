@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.List;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.SocketConnectEvent;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+import org.pircbotx.hooks.types.GenericEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class SubscriberListenerTest {
+	@Test
+	public void generatedDispatcherTest() throws Exception {
+		EventDispatcher dispatcher = SubscriberListener.getDispatcher(Subscriber.class);
+		assertEquals(dispatcher.getClass().getName(), Subscriber.class.getName() + SubscriberListener.DISPATCHER_SUFFIX);
+		assertEquals(dispatcher.getEventTypes(), ImmutableSet.of(ConnectEvent.class, GenericEvent.class));
+		assertSame(SubscriberListener.getDispatcher(Subscriber.class), dispatcher);
+
+		Subscriber subscriber = new Subscriber();
+		ConnectEvent event = new ConnectEvent(null);
+		dispatcher.dispatch(subscriber, event);
+		assertEquals(subscriber.connectEvents, ImmutableList.of(event));
+		assertEquals(subscriber.allEvents, ImmutableList.of(event));
+	}
+
+	@Test
+	public void subclassTest() throws Exception {
+		//No methods of its own, so uses the dispatcher of Subscriber
+		assertSame(SubscriberListener.getDispatcher(OverridingSubscriber.class), SubscriberListener.getDispatcher(Subscriber.class));
+
+		OverridingSubscriber subscriber = new OverridingSubscriber();
+		ConnectEvent event = new ConnectEvent(null);
+		new SubscriberListener(subscriber).onEvent(event);
+		assertTrue(subscriber.connectEvents.isEmpty());
+		assertEquals(subscriber.overriddenEvents, ImmutableList.of(event));
+	}
+
+	@Test
+	public void reflectiveDispatcherTest() throws Exception {
+		EventDispatcher dispatcher = SubscriberListener.getDispatcher(PrivateSubscriber.class);
+		assertTrue(dispatcher instanceof SubscriberListener.ReflectiveDispatcher);
+		assertEquals(dispatcher.getEventTypes(), ImmutableSet.of(ConnectEvent.class, GenericEvent.class));
+
+		PrivateSubscriber subscriber = new PrivateSubscriber();
+		ConnectEvent event = new ConnectEvent(null);
+		dispatcher.dispatch(subscriber, event);
+		assertEquals(subscriber.connectEvents, ImmutableList.of(event));
+		assertEquals(subscriber.allEvents, ImmutableList.of(event));
+
+		//Generated and reflection dispatchers find the same methods
+		assertEquals(SubscriberListener.createReflectiveDispatcher(Subscriber.class).getEventTypes(),
+				SubscriberListener.getDispatcher(Subscriber.class).getEventTypes());
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void reflectiveExceptionTest() throws Exception {
+		new SubscriberListener(new PrivateSubscriber()).onEvent(new SocketConnectEvent(null));
+	}
+
+	@Test
+	public void listenerManagerTest() {
+		ThreadedListenerManager manager = new ThreadedListenerManager(MoreExecutors.newDirectExecutorService());
+		Subscriber subscriber = new Subscriber();
+		manager.addListener(new SubscriberListener(subscriber));
+		assertTrue(manager.hasListeners(ConnectEvent.class));
+		assertTrue(manager.hasListeners(DisconnectEvent.class));
+
+		ConnectEvent event = new ConnectEvent(null);
+		manager.onEvent(event);
+		assertEquals(subscriber.connectEvents, ImmutableList.of(event));
+
+		//Any wrapper of the same object removes it
+		assertTrue(manager.removeListener(new SubscriberListener(subscriber)));
+		assertFalse(manager.hasListeners(ConnectEvent.class));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void noMethodsTest() {
+		new SubscriberListener(new Object());
+	}
+
+	public static class Subscriber {
+		protected final List<Event> connectEvents = new ArrayList<Event>();
+		protected final List<GenericEvent> allEvents = new ArrayList<GenericEvent>();
+
+		@Subscribe
+		public void onConnect(ConnectEvent event) throws Exception {
+			connectEvents.add(event);
+		}
+
+		@Subscribe
+		void onAll(GenericEvent event) {
+			allEvents.add(event);
+		}
+	}
+
+	public static class OverridingSubscriber extends Subscriber {
+		protected final List<Event> overriddenEvents = new ArrayList<Event>();
+
+		@Override
+		public void onConnect(ConnectEvent event) throws Exception {
+			overriddenEvents.add(event);
+		}
+	}
+
+	private static class PrivateSubscriber {
+		protected final List<Event> connectEvents = new ArrayList<Event>();
+		protected final List<GenericEvent> allEvents = new ArrayList<GenericEvent>();
+
+		@Subscribe
+		public void onConnect(ConnectEvent event) {
+			connectEvents.add(event);
+		}
+
+		@Subscribe
+		protected String onAll(GenericEvent event) {
+			if (event instanceof SocketConnectEvent)
+				throw new IllegalStateException("Thrown from listener");
+			allEvents.add(event);
+			return "ignored";
+		}
+	}
+}
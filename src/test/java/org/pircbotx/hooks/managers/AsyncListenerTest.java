@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.hooks.AsyncListener;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.ListenerExceptionEvent;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class AsyncListenerTest {
+	protected PircBotX bot;
+	protected CompletableFuture<Void> stage;
+	protected AsyncListener listener;
+	protected CountDownLatch exceptionReceived;
+	protected MutableObject<ListenerExceptionEvent> exceptionEvent;
+	protected Listener exceptionListener;
+
+	@BeforeMethod
+	public void setup() {
+		bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		stage = new CompletableFuture<Void>();
+		listener = new AsyncListener() {
+			@Override
+			public CompletionStage<?> onEventAsync(Event event) throws Exception {
+				if (event instanceof ListenerExceptionEvent)
+					return null;
+				return stage;
+			}
+		};
+		exceptionReceived = new CountDownLatch(1);
+		exceptionEvent = new MutableObject<ListenerExceptionEvent>();
+		exceptionListener = new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				if (event instanceof ListenerExceptionEvent) {
+					exceptionEvent.setValue((ListenerExceptionEvent) event);
+					exceptionReceived.countDown();
+				}
+			}
+		};
+	}
+
+	@Test(timeOut = 10000)
+	public void inFlightTest() throws InterruptedException {
+		ThreadedListenerManager manager = new ThreadedListenerManager(MoreExecutors.newDirectExecutorService());
+		manager.addListener(listener);
+		manager.onEvent(new ConnectEvent(bot));
+		//The listener task is done but its stage isn't
+		assertEquals(manager.getInFlightCount(bot), 1);
+
+		final AtomicBoolean completed = new AtomicBoolean();
+		Thread completer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				completed.set(true);
+				stage.complete(null);
+			}
+		};
+		completer.start();
+		manager.shutdown(bot);
+		assertTrue(completed.get(), "shutdown didn't wait for the stage");
+		assertEquals(manager.getInFlightCount(bot), 0);
+	}
+
+	@Test(timeOut = 10000)
+	public void failureTest() throws InterruptedException {
+		ThreadedListenerManager manager = new ThreadedListenerManager(MoreExecutors.newDirectExecutorService());
+		manager.addListener(listener);
+		manager.addListener(exceptionListener);
+		Event event = new ConnectEvent(bot);
+		manager.onEvent(event);
+		assertNull(exceptionEvent.getValue());
+
+		IllegalStateException failure = new IllegalStateException("Async fail");
+		stage.completeExceptionally(failure);
+		exceptionReceived.await();
+		assertSame(exceptionEvent.getValue().getException(), failure);
+		assertSame(exceptionEvent.getValue().getListener(), listener);
+		assertSame(exceptionEvent.getValue().getSourceEvent(), event);
+		assertEquals(manager.getInFlightCount(bot), 0);
+	}
+
+	@Test(timeOut = 10000)
+	public void timeoutTest() throws InterruptedException {
+		GenericListenerManager manager = new GenericListenerManager();
+		manager.setAsyncListenerTimeout(50);
+		manager.addListener(listener);
+		manager.addListener(exceptionListener);
+		manager.onEvent(new ConnectEvent(bot));
+		assertEquals(manager.getInFlightCount(bot), 1);
+
+		manager.shutdown(bot);
+		exceptionReceived.await();
+		assertTrue(exceptionEvent.getValue().getException() instanceof TimeoutException);
+		assertTrue(stage.isCancelled(), "Timed out stage wasn't cancelled");
+		assertEquals(manager.getInFlightCount(bot), 0);
+
+		//Completing after the timeout does nothing
+		stage.complete(null);
+		assertEquals(manager.getInFlightCount(bot), 0);
+	}
+
+	@Test(timeOut = 10000)
+	public void timeoutReportThreadTest() throws InterruptedException {
+		GenericListenerManager manager = new GenericListenerManager();
+		manager.setAsyncListenerTimeout(50);
+		final MutableObject<String> reportThread = new MutableObject<String>();
+		final CountDownLatch blockReport = new CountDownLatch(1);
+		manager.addListener(listener);
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				if (event instanceof ListenerExceptionEvent) {
+					reportThread.setValue(Thread.currentThread().getName());
+					exceptionReceived.countDown();
+					blockReport.await();
+				}
+			}
+		});
+		manager.onEvent(new ConnectEvent(bot));
+		exceptionReceived.await();
+		assertNotEquals(reportThread.getValue(), "pircbotx-timeout");
+
+		//A slow exception listener doesn't hold up other timeouts
+		final CountDownLatch otherTimeout = new CountDownLatch(1);
+		bot.getEventWaiters().await(ConnectEvent.class, new Predicate<ConnectEvent>() {
+			@Override
+			public boolean test(ConnectEvent event) {
+				return true;
+			}
+		}, 10, TimeUnit.MILLISECONDS).whenComplete(new BiConsumer<ConnectEvent, Throwable>() {
+			@Override
+			public void accept(ConnectEvent event, Throwable error) {
+				otherTimeout.countDown();
+			}
+		});
+		assertTrue(otherTimeout.await(5, TimeUnit.SECONDS), "timeout thread blocked by exception listener");
+		blockReport.countDown();
+		manager.shutdown(bot);
+	}
+
+	@Test(timeOut = 10000)
+	public void completedStageTest() {
+		GenericListenerManager manager = new GenericListenerManager();
+		manager.addListener(listener);
+		manager.addListener(exceptionListener);
+		stage.complete(null);
+		manager.onEvent(new ConnectEvent(bot));
+		assertEquals(manager.getInFlightCount(bot), 0);
+		assertNull(exceptionEvent.getValue());
+	}
+
+	@Test(timeOut = 10000)
+	public void blockingOnEventTest() throws Exception {
+		stage.completeExceptionally(new IllegalStateException("Async fail"));
+		try {
+			listener.onEvent(new ConnectEvent(bot));
+			fail("Exception not thrown");
+		} catch (IllegalStateException e) {
+			assertEquals(e.getMessage(), "Async fail");
+		}
+	}
+}
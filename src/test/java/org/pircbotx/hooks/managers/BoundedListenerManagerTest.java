@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.TypedListener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.SocketConnectEvent;
+import org.pircbotx.hooks.managers.BoundedListenerManager.OverflowPolicy;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class BoundedListenerManagerTest {
+	@Test(timeOut = 10000)
+	public void blockTest() throws InterruptedException {
+		final BoundedListenerManager manager = new BoundedListenerManager(1, 1, OverflowPolicy.BLOCK);
+		CountingListener listener = new CountingListener(ConnectEvent.class, new CountDownLatch(1));
+		manager.addListener(listener);
+
+		manager.onEvent(new ConnectEvent(null));
+		assertEquals(manager.getPendingTasks(), 1);
+		Thread dispatcher = new Thread() {
+			@Override
+			public void run() {
+				manager.onEvent(new ConnectEvent(null));
+			}
+		};
+		dispatcher.start();
+		while (manager.getBlockedCount() == 0)
+			Thread.sleep(5);
+		assertTrue(dispatcher.isAlive(), "Dispatch didn't block");
+
+		listener.release.countDown();
+		dispatcher.join();
+		assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+		assertEquals(manager.getDroppedCount(), 0);
+	}
+
+	@Test(timeOut = 10000)
+	public void dropTest() throws InterruptedException {
+		BoundedListenerManager manager = new BoundedListenerManager(1, 1, OverflowPolicy.DROP)
+				.addDroppableEventType(DisconnectEvent.class);
+		CountingListener listener = new CountingListener(Event.class, new CountDownLatch(1));
+		manager.addListener(listener);
+
+		manager.onEvent(new ConnectEvent(null));
+		manager.onEvent(new DisconnectEvent(null, null, null));
+		manager.onEvent(new DisconnectEvent(null, null, null));
+		assertEquals(manager.getDroppedCount(), 2);
+		assertEquals(manager.getDroppedCountByEventType(), ImmutableMap.of(DisconnectEvent.class, 2L));
+		assertEquals(manager.getBlockedCount(), 0);
+		listener.release.countDown();
+	}
+
+	@Test(timeOut = 10000)
+	public void shedTest() throws InterruptedException {
+		BoundedListenerManager manager = new BoundedListenerManager(1, 1, OverflowPolicy.SHED);
+		CountingListener important = new CountingListener(ConnectEvent.class, new CountDownLatch(1));
+		CountingListener logger = new CountingListener(DisconnectEvent.class, new CountDownLatch(0));
+		manager.addListener(important, 10);
+		manager.addListener(logger, BoundedListenerManager.DEFAULT_PRIORITY);
+
+		manager.onEvent(new ConnectEvent(null));
+		manager.onEvent(new DisconnectEvent(null, null, null));
+		assertEquals(manager.getDroppedCount(), 1);
+		assertEquals(logger.received.getCount(), 1);
+
+		important.release.countDown();
+	}
+
+	@Test(timeOut = 10000)
+	public void dispatchFromListenerTest() throws InterruptedException {
+		final BoundedListenerManager manager = new BoundedListenerManager(2, 1, OverflowPolicy.BLOCK);
+		manager.addListener(new CountingListener(ConnectEvent.class, new CountDownLatch(0)) {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				//Would deadlock if it waited for the capacity it holds
+				manager.onEvent(new SocketConnectEvent(null));
+			}
+		});
+		CountingListener nested = new CountingListener(SocketConnectEvent.class, new CountDownLatch(0));
+		manager.addListener(nested);
+
+		manager.onEvent(new ConnectEvent(null));
+		assertTrue(nested.received.await(5, TimeUnit.SECONDS));
+		assertEquals(manager.getBlockedCount(), 0);
+	}
+
+	protected static class CountingListener implements TypedListener {
+		protected final Class<?> eventType;
+		protected final CountDownLatch release;
+		protected final CountDownLatch received = new CountDownLatch(1);
+
+		public CountingListener(Class<?> eventType, CountDownLatch release) {
+			this.eventType = eventType;
+			this.release = release;
+		}
+
+		@Override
+		public Set<Class<?>> getEventTypes() {
+			return ImmutableSet.<Class<?>>of(eventType);
+		}
+
+		@Override
+		public void onEvent(Event event) throws Exception {
+			release.await();
+			received.countDown();
+		}
+	}
+}
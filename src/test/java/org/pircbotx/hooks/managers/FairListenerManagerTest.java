@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.pircbotx.MultiBotManager;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class FairListenerManagerTest {
+	protected PircBotX noisyBot;
+	protected PircBotX quietBot;
+	protected CountDownLatch gate;
+	protected List<PircBotX> order;
+
+	@BeforeMethod
+	public void setup() {
+		noisyBot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		quietBot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		gate = new CountDownLatch(1);
+		order = Collections.synchronizedList(new ArrayList<PircBotX>());
+	}
+
+	/**
+	 * Records the order events run in, waiting for the gate first so tasks
+	 * queue up behind it
+	 */
+	protected Listener gatedListener() {
+		return new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				gate.await();
+				order.add(event.<PircBotX>getBot());
+			}
+		};
+	}
+
+	@Test(timeOut = 20000)
+	public void quietBotTest() {
+		FairListenerManager manager = new FairListenerManager(1);
+		manager.addListener(gatedListener());
+		for (int i = 0; i < 50; i++)
+			manager.onEvent(new ConnectEvent(noisyBot));
+		manager.onEvent(new ConnectEvent(quietBot));
+		assertEquals(manager.getStats(noisyBot).getQueued(), 49);
+		assertEquals(manager.getStats(noisyBot).getRunning(), 1);
+
+		gate.countDown();
+		manager.shutdown(noisyBot);
+		manager.shutdown(quietBot);
+		//Only the already running noisy task and at most one more go first
+		assertTrue(order.indexOf(quietBot) <= 2, "Quiet bot ran at " + order.indexOf(quietBot));
+		assertEquals(manager.getStats(noisyBot).getCompleted(), 50);
+		assertEquals(manager.getStats(quietBot).getCompleted(), 1);
+		assertTrue(manager.getStats(quietBot).getMaxQueueWaitNanos() > 0);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 20000)
+	public void weightTest() {
+		FairListenerManager manager = new FairListenerManager(1);
+		manager.setQuota(quietBot, FairListenerManager.BotQuota.builder().weight(3).build());
+		manager.addListener(gatedListener());
+		manager.onEvent(new ConnectEvent(noisyBot));
+		for (int i = 0; i < 20; i++) {
+			manager.onEvent(new ConnectEvent(noisyBot));
+			manager.onEvent(new ConnectEvent(quietBot));
+		}
+
+		gate.countDown();
+		manager.shutdown(noisyBot);
+		manager.shutdown(quietBot);
+		//Skip the task that was already running
+		List<PircBotX> turns = order.subList(1, 17);
+		assertEquals(Collections.frequency(turns, quietBot), 12, "Expected 3:1 turns " + turns);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 20000)
+	public void maxConcurrentTest() throws InterruptedException {
+		FairListenerManager manager = new FairListenerManager(4);
+		manager.setQuota(noisyBot, FairListenerManager.BotQuota.builder().maxConcurrent(1).build());
+		final AtomicInteger noisyRunning = new AtomicInteger();
+		final AtomicInteger maxNoisyRunning = new AtomicInteger();
+		final CountDownLatch quietRan = new CountDownLatch(1);
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				if (event.getBot() == quietBot) {
+					quietRan.countDown();
+					return;
+				}
+				int running = noisyRunning.incrementAndGet();
+				maxNoisyRunning.set(Math.max(maxNoisyRunning.get(), running));
+				gate.await();
+				noisyRunning.decrementAndGet();
+			}
+		});
+		for (int i = 0; i < 5; i++)
+			manager.onEvent(new ConnectEvent(noisyBot));
+		manager.onEvent(new ConnectEvent(quietBot));
+		assertTrue(quietRan.await(5, TimeUnit.SECONDS), "Quiet bot starved");
+		assertEquals(manager.getStats(noisyBot).getRunning(), 1);
+		assertEquals(manager.getStats(noisyBot).getQueued(), 4);
+
+		gate.countDown();
+		manager.shutdown(noisyBot);
+		assertEquals(maxNoisyRunning.get(), 1);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 20000)
+	public void dropWhenFullTest() {
+		FairListenerManager manager = new FairListenerManager(1);
+		manager.setQuota(noisyBot, FairListenerManager.BotQuota.builder().maxQueued(2).dropWhenFull(true).build());
+		manager.addListener(gatedListener());
+		for (int i = 0; i < 5; i++)
+			manager.onEvent(new ConnectEvent(noisyBot));
+		assertEquals(manager.getStats(noisyBot).getDropped(), 2);
+
+		gate.countDown();
+		manager.shutdown(noisyBot);
+		assertEquals(order.size(), 3);
+		assertEquals(manager.getInFlightCount(noisyBot), 0);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 20000)
+	public void blockWhenFullTest() throws InterruptedException {
+		final FairListenerManager manager = new FairListenerManager(1);
+		manager.setQuota(noisyBot, FairListenerManager.BotQuota.builder().maxQueued(1).build());
+		manager.addListener(gatedListener());
+		final CountDownLatch dispatched = new CountDownLatch(3);
+		Thread dispatcher = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 3; i++) {
+					manager.onEvent(new ConnectEvent(noisyBot));
+					dispatched.countDown();
+				}
+			}
+		};
+		dispatcher.start();
+		//One running and one queued, the third waits
+		assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS), "Dispatch didn't wait for space");
+		assertEquals(dispatched.getCount(), 1);
+		assertEquals(manager.getStats(noisyBot).getBlocked(), 1);
+
+		gate.countDown();
+		dispatched.await();
+		dispatcher.join();
+		manager.shutdown(noisyBot);
+		assertEquals(order.size(), 3);
+		manager.shutdown();
+	}
+
+	@Test
+	public void multiBotManagerTest() {
+		FairListenerManager listenerManager = new FairListenerManager(2);
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().setListenerManager(listenerManager).buildConfiguration());
+		FairListenerManager.BotQuota quota = FairListenerManager.BotQuota.builder().weight(5).maxConcurrent(1).build();
+		MultiBotManager multiBotManager = new MultiBotManager();
+		multiBotManager.addNetwork(bot, quota);
+		assertSame(listenerManager.getQuota(bot), quota);
+		assertSame(listenerManager.getQuota(noisyBot), listenerManager.getDefaultQuota());
+		assertEquals(multiBotManager.getBotStats(bot).getQueued(), 0);
+		listenerManager.shutdown();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void multiBotManagerRequiresFairTest() {
+		new MultiBotManager().addNetwork(noisyBot, FairListenerManager.BotQuota.builder().build());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidQuotaTest() {
+		FairListenerManager.BotQuota.builder().weight(0).build();
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.User;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class OrderedListenerManagerTest {
+	protected PircBotX bot;
+	protected Channel channel1;
+	protected Channel channel2;
+	protected User user;
+
+	@BeforeMethod
+	public void setup() {
+		bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		channel1 = bot.getUserChannelDao().createChannel("#aChannel");
+		channel2 = bot.getUserChannelDao().createChannel("#otherChannel");
+		user = TestUtils.generateTestUserSource(bot);
+	}
+
+	@Test(timeOut = 20000)
+	public void channelOrderTest() throws InterruptedException {
+		OrderedListenerManager manager = new OrderedListenerManager(64, 4);
+		final List<String> channel1Messages = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> channel2Messages = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch received = new CountDownLatch(400);
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				if (!(event instanceof MessageEvent))
+					return;
+				MessageEvent messageEvent = (MessageEvent) event;
+				if (messageEvent.getMessage().hashCode() % 7 == 0)
+					Thread.sleep(1);
+				(messageEvent.getChannel() == channel1 ? channel1Messages : channel2Messages).add(messageEvent.getMessage());
+				received.countDown();
+			}
+		});
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			expected.add("message " + i);
+			manager.onEvent(new MessageEvent(bot, channel1, channel1.getName(), user, user, "message " + i, MessageTags.EMPTY));
+			manager.onEvent(new MessageEvent(bot, channel2, channel2.getName(), user, user, "message " + i, MessageTags.EMPTY));
+		}
+		assertTrue(received.await(10, TimeUnit.SECONDS));
+		assertEquals(channel1Messages, expected);
+		assertEquals(channel2Messages, expected);
+	}
+
+	@Test
+	public void laneTest() {
+		OrderedListenerManager manager = new OrderedListenerManager(1024, 1);
+		MessageEvent channelEvent = new MessageEvent(bot, channel1, channel1.getName(), user, user, "hi", MessageTags.EMPTY);
+		Channel sameChannel = bot.getUserChannelDao().getChannel("#ACHANNEL");
+		MessageEvent sameChannelEvent = new MessageEvent(bot, sameChannel, sameChannel.getName(), user, user, "hi", MessageTags.EMPTY);
+		assertEquals(manager.getLane(sameChannelEvent), manager.getLane(channelEvent));
+
+		PrivateMessageEvent privateEvent = new PrivateMessageEvent(bot, user, user, "hi", MessageTags.EMPTY);
+		assertEquals(manager.getLane(new PrivateMessageEvent(bot, user, user, "again", MessageTags.EMPTY)), manager.getLane(privateEvent));
+		assertEquals(manager.getLane(new ConnectEvent(bot)), manager.getLane(new ConnectEvent(bot)));
+
+		for (Event curEvent : ImmutableList.<Event>of(channelEvent, privateEvent, new ConnectEvent(bot), new ConnectEvent(null))) {
+			int lane = manager.getLane(curEvent);
+			assertTrue(lane >= 0 && lane < manager.getLaneCount(), "Lane " + lane);
+		}
+	}
+
+	@Test(timeOut = 10000)
+	public void shutdownTest() {
+		OrderedListenerManager manager = new OrderedListenerManager(8, 2);
+		final AtomicBoolean finished = new AtomicBoolean();
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				Thread.sleep(100);
+				finished.set(true);
+			}
+		});
+		manager.onEvent(new ConnectEvent(bot));
+		manager.shutdown(bot);
+		assertTrue(finished.get(), "shutdown didn't wait for listener");
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.TypedListener;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.SocketConnectEvent;
+import org.pircbotx.hooks.managers.RingBufferListenerManager.WaitStrategy;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class RingBufferListenerManagerTest {
+	@DataProvider
+	public Object[][] waitStrategyDataProvider() {
+		return new Object[][]{{WaitStrategy.BUSY_SPIN}, {WaitStrategy.YIELD}, {WaitStrategy.PARK}};
+	}
+
+	@Test(dataProvider = "waitStrategyDataProvider", timeOut = 20000)
+	public void orderTest(WaitStrategy waitStrategy) throws InterruptedException {
+		RingBufferListenerManager manager = new RingBufferListenerManager(64, waitStrategy);
+		RecordingListener listener1 = new RecordingListener(10000);
+		RecordingListener listener2 = new RecordingListener(10000);
+		manager.addListener(listener1);
+		manager.addListener(listener2);
+
+		List<Event> expected = new ArrayList<Event>();
+		for (int i = 0; i < 10000; i++) {
+			Event event = new ConnectEvent(null);
+			expected.add(event);
+			manager.onEvent(event);
+		}
+		assertTrue(listener1.received.await(10, TimeUnit.SECONDS));
+		assertTrue(listener2.received.await(10, TimeUnit.SECONDS));
+		assertEquals(listener1.events, expected);
+		assertEquals(listener2.events, expected);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 10000)
+	public void eventTypeTest() throws InterruptedException {
+		RingBufferListenerManager manager = new RingBufferListenerManager(16, WaitStrategy.PARK);
+		final List<Event> events = new ArrayList<Event>();
+		manager.addListener(new TypedListener() {
+			@Override
+			public Set<Class<?>> getEventTypes() {
+				return ImmutableSet.<Class<?>>of(ConnectEvent.class);
+			}
+
+			@Override
+			public void onEvent(Event event) throws Exception {
+				events.add(event);
+			}
+		});
+		assertFalse(manager.hasListeners(DisconnectEvent.class));
+
+		Event connectEvent = new ConnectEvent(null);
+		manager.onEvent(new DisconnectEvent(null, null, null));
+		manager.onEvent(connectEvent);
+		manager.shutdown(null);
+		assertEquals(events.size(), 1);
+		assertSame(events.get(0), connectEvent);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 10000)
+	public void dispatchFromConsumerTest() throws InterruptedException {
+		final RingBufferListenerManager manager = new RingBufferListenerManager(2, WaitStrategy.YIELD);
+		final AtomicInteger nested = new AtomicInteger();
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				if (event instanceof ConnectEvent)
+					//More than the ring can hold while this consumer is busy
+					for (int i = 0; i < 10; i++)
+						manager.onEvent(new SocketConnectEvent(null));
+				else
+					nested.incrementAndGet();
+			}
+		});
+		manager.onEvent(new ConnectEvent(null));
+		manager.shutdown(null);
+		while (nested.get() != 10)
+			Thread.sleep(1);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 10000)
+	public void spilledOrderTest() throws InterruptedException {
+		final RingBufferListenerManager manager = new RingBufferListenerManager(2, WaitStrategy.YIELD);
+		final List<Event> dispatched = new ArrayList<Event>();
+		manager.addListener(new TypedListener() {
+			@Override
+			public Set<Class<?>> getEventTypes() {
+				return ImmutableSet.<Class<?>>of(ConnectEvent.class);
+			}
+
+			@Override
+			public void onEvent(Event event) throws Exception {
+				//More than the ring can hold while this consumer is busy
+				for (int i = 0; i < 10; i++) {
+					Event nestedEvent = new SocketConnectEvent(null);
+					dispatched.add(nestedEvent);
+					manager.onEvent(nestedEvent);
+				}
+			}
+		});
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		RecordingListener recorder = new RecordingListener(11) {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				threads.add(Thread.currentThread());
+				super.onEvent(event);
+			}
+		};
+		manager.addListener(recorder);
+
+		manager.onEvent(new ConnectEvent(null));
+		assertTrue(recorder.received.await(5, TimeUnit.SECONDS));
+		manager.shutdown(null);
+		//Other listeners run spilled events in their own thread and in order
+		assertEquals(threads.size(), 1);
+		assertNotEquals(threads.iterator().next(), Thread.currentThread());
+		assertEquals(recorder.events.subList(1, 11), dispatched);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 10000)
+	public void shutdownTest() {
+		RingBufferListenerManager manager = new RingBufferListenerManager(16, WaitStrategy.PARK);
+		final AtomicBoolean finished = new AtomicBoolean();
+		Listener listener = new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				Thread.sleep(100);
+				finished.set(true);
+			}
+		};
+		manager.addListener(listener);
+		assertTrue(manager.listenerExists(listener));
+		manager.onEvent(new ConnectEvent(null));
+		manager.shutdown(null);
+		assertTrue(finished.get(), "shutdown didn't wait for listener");
+
+		manager.shutdown();
+		assertTrue(manager.getListeners().isEmpty());
+		assertFalse(manager.hasListeners(ConnectEvent.class));
+	}
+
+	protected static class RecordingListener implements Listener {
+		protected final List<Event> events = new ArrayList<Event>();
+		protected final CountDownLatch received;
+
+		public RecordingListener(int expected) {
+			received = new CountDownLatch(expected);
+		}
+
+		@Override
+		public void onEvent(Event event) throws Exception {
+			events.add(event);
+			received.countDown();
+		}
+	}
+}
@@ -17,12 +17,28 @@
  */
 package org.pircbotx.hooks.managers;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.lang3.mutable.MutableObject;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.TypedListener;
 import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
 import org.pircbotx.hooks.events.ListenerExceptionEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.hooks.events.ServerResponseEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
 import static org.testng.Assert.*;
 import org.testng.annotations.Test;
 
@@ -53,4 +69,141 @@ public class ThreadedListenerManagerTest {
 		assertEquals(eventResult.getValue().getSourceEvent(), event);
 		assertNotNull(eventResult.getValue().getException());
 	}
+
+	@Test
+	public void adapterEventTypesTest() {
+		ListenerAdapter adapter = new ListenerAdapter() {
+			@Override
+			public void onConnect(ConnectEvent event) throws Exception {
+			}
+
+			@Override
+			public void onGenericMessage(GenericMessageEvent event) throws Exception {
+			}
+		};
+		assertEquals(ListenerTypeIndex.getEventTypes(adapter), ImmutableSet.of(ConnectEvent.class, GenericMessageEvent.class));
+		assertTrue(ListenerTypeIndex.handles(adapter, MessageEvent.class));
+		assertTrue(ListenerTypeIndex.handles(adapter, PrivateMessageEvent.class));
+		assertFalse(ListenerTypeIndex.handles(adapter, DisconnectEvent.class));
+
+		ListenerAdapter overridesOnEvent = new ListenerAdapter() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				super.onEvent(event);
+			}
+		};
+		assertEquals(ListenerTypeIndex.getEventTypes(overridesOnEvent), ListenerTypeIndex.ALL_EVENTS);
+		assertTrue(ListenerTypeIndex.getEventTypes(new ListenerAdapter() {
+		}).isEmpty());
+	}
+
+	@Test
+	public void dispatchOnlyToInterestedTest() {
+		ThreadedListenerManager manager = new ThreadedListenerManager(MoreExecutors.newDirectExecutorService());
+		final List<Event> typedEvents = new ArrayList<Event>();
+		final List<Event> allEvents = new ArrayList<Event>();
+		manager.addListener(new TypedListener() {
+			@Override
+			public Set<Class<?>> getEventTypes() {
+				return ImmutableSet.<Class<?>>of(ConnectEvent.class);
+			}
+
+			@Override
+			public void onEvent(Event event) throws Exception {
+				typedEvents.add(event);
+			}
+		});
+		assertTrue(manager.hasListeners(ConnectEvent.class));
+		assertFalse(manager.hasListeners(ServerResponseEvent.class));
+
+		Event connectEvent = new ConnectEvent(null);
+		Event disconnectEvent = new DisconnectEvent(null, null, null);
+		manager.onEvent(connectEvent);
+		manager.onEvent(disconnectEvent);
+		assertEquals(typedEvents, ImmutableList.of(connectEvent));
+
+		Listener allListener = new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				allEvents.add(event);
+			}
+		};
+		manager.addListener(allListener);
+		assertTrue(manager.hasListeners(ServerResponseEvent.class));
+		manager.onEvent(disconnectEvent);
+		assertEquals(allEvents, ImmutableList.of(disconnectEvent));
+
+		manager.removeListener(allListener);
+		assertFalse(manager.hasListeners(ServerResponseEvent.class));
+	}
+
+	@Test(timeOut = 10000)
+	public void shutdownWaitsTest() throws InterruptedException {
+		ThreadedListenerManager manager = new ThreadedListenerManager();
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean finished = new AtomicBoolean();
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				started.countDown();
+				Thread.sleep(100);
+				finished.set(true);
+			}
+		});
+		assertEquals(manager.getInFlightCount(bot), 0);
+		manager.shutdown(bot);
+
+		manager.onEvent(new ConnectEvent(bot));
+		started.await();
+		assertEquals(manager.getInFlightCount(bot), 1);
+		manager.shutdown(bot);
+		assertTrue(finished.get(), "shutdown didn't wait for listener");
+		assertEquals(manager.getInFlightCount(bot), 0);
+		manager.shutdown();
+	}
+
+	@Test(timeOut = 10000)
+	public void shutdownSnapshotTest() throws InterruptedException {
+		final ThreadedListenerManager manager = new ThreadedListenerManager();
+		final PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		final CountDownLatch firstStarted = new CountDownLatch(1);
+		final CountDownLatch releaseFirst = new CountDownLatch(1);
+		final CountDownLatch releaseLater = new CountDownLatch(1);
+		manager.addListener(new Listener() {
+			@Override
+			public void onEvent(Event event) throws Exception {
+				if (event instanceof ConnectEvent) {
+					firstStarted.countDown();
+					releaseFirst.await();
+				} else
+					releaseLater.await();
+			}
+		});
+		manager.onEvent(new ConnectEvent(bot));
+		firstStarted.await();
+		assertTrue(manager.inFlight.containsKey(bot));
+
+		//Queued after shutdown started, must not be waited for
+		final CountDownLatch shutdownDone = new CountDownLatch(1);
+		Thread shutdownThread = new Thread() {
+			@Override
+			public void run() {
+				manager.shutdown(bot);
+				shutdownDone.countDown();
+			}
+		};
+		shutdownThread.start();
+		while (manager.inFlight.containsKey(bot))
+			Thread.sleep(10);
+		manager.onEvent(new DisconnectEvent(bot, null, null));
+		releaseFirst.countDown();
+		shutdownDone.await();
+		assertEquals(manager.getInFlightCount(bot), 1, "later task should still be running");
+
+		releaseLater.countDown();
+		manager.shutdown(bot);
+		assertFalse(manager.inFlight.containsKey(bot), "shutdown bot still tracked");
+		manager.shutdown();
+	}
 }
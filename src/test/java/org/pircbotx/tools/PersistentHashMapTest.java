@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2010-2022 The PircBotX Project Authors
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * PircBotX is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class PersistentHashMapTest {
+	@Test
+	public void plusMinusTest() {
+		PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+		PersistentHashMap<String, Integer> map = empty.plus("a", 1).plus("b", 2);
+		assertTrue(empty.isEmpty());
+		assertEquals(map.size(), 2);
+		assertEquals(map.get("a"), (Integer) 1);
+		assertNull(map.get("c"));
+		assertSame(map.plus("a", map.get("a")), map, "Unchanged map not reused");
+		assertSame(map.minus("c"), map, "Unchanged map not reused");
+
+		PersistentHashMap<String, Integer> changed = map.plus("a", 3).minus("b");
+		assertEquals(changed.size(), 1);
+		assertEquals(changed.get("a"), (Integer) 3);
+		//Original unchanged
+		assertEquals(map.get("a"), (Integer) 1);
+		assertEquals(map.get("b"), (Integer) 2);
+		assertTrue(changed.minus("a").isEmpty());
+	}
+
+	@Test
+	public void collisionTest() {
+		//"Aa" and "BB" have the same hash code
+		PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty()
+				.plus("Aa", 1)
+				.plus("BB", 2)
+				.plus("C", 3);
+		assertEquals(map.size(), 3);
+		assertEquals(map.get("Aa"), (Integer) 1);
+		assertEquals(map.get("BB"), (Integer) 2);
+		PersistentHashMap<String, Integer> removed = map.minus("Aa");
+		assertEquals(removed.size(), 2);
+		assertNull(removed.get("Aa"));
+		assertEquals(removed.get("BB"), (Integer) 2);
+		assertEquals(map.keySet().size(), 3);
+	}
+
+	@Test
+	public void randomTest() {
+		Random random = new Random(1);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+		for (int i = 0; i < 20000; i++) {
+			Integer key = random.nextInt(5000);
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.minus(key);
+			} else {
+				expected.put(key, i);
+				map = map.plus(key, i);
+			}
+			assertEquals(map.size(), expected.size());
+		}
+		assertEquals(map, expected);
+		assertEquals(new HashMap<Integer, Integer>(map), expected);
+	}
+
+	@Test
+	public void plusAllTest() {
+		Random random = new Random(2);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+		for (int round = 0; round < 20; round++) {
+			//Alternate between rebuilding and adding one by one
+			Map<Integer, Integer> entries = new HashMap<Integer, Integer>();
+			int count = (round % 2 == 0) ? 2000 : 10;
+			for (int i = 0; i < count; i++)
+				entries.put(random.nextInt(20000), round);
+			expected.putAll(entries);
+			map = map.plusAll(entries);
+			assertEquals(map.size(), expected.size());
+			assertEquals(map, expected);
+		}
+		for (Integer curKey : expected.keySet())
+			assertEquals(map.get(curKey), expected.get(curKey));
+		assertEquals(map.minus(expected.keySet().iterator().next()).size(), expected.size() - 1);
+
+		//Colliding hashes
+		Map<String, Integer> colliding = new HashMap<String, Integer>();
+		colliding.put("Aa", 1);
+		colliding.put("BB", 2);
+		colliding.put("C#", 3);
+		PersistentHashMap<String, Integer> collidingMap = PersistentHashMap.<String, Integer>empty().plusAll(colliding);
+		assertEquals(collidingMap, colliding);
+		assertEquals(collidingMap.minus("BB").size(), 2);
+		assertEquals(collidingMap.plus("Aa", 4).get("Aa"), (Integer) 4);
+	}
+}